@@ -6,11 +6,16 @@ import org.act.temporalProperty.index.value.IndexMetaData;
 import org.act.temporalProperty.index.value.IndexQueryRegion;
 import org.act.temporalProperty.index.value.rtree.IndexEntry;
 import org.act.temporalProperty.meta.ValueContentType;
+import org.act.temporalProperty.query.SnapshotConsumer;
 import org.act.temporalProperty.query.TimeIntervalKey;
 import org.act.temporalProperty.query.TimePointL;
 import org.act.temporalProperty.query.aggr.AggregationIndexQueryResult;
 import org.act.temporalProperty.query.aggr.ValueGroupingMap;
+import org.act.temporalProperty.query.range.DoubleRangeColumns;
 import org.act.temporalProperty.query.range.InternalEntryRangeQueryCallBack;
+import org.act.temporalProperty.query.range.LongRangeColumns;
+import org.act.temporalProperty.query.range.RangeColumns;
+import org.act.temporalProperty.query.range.RangeQueryIterator;
 import org.act.temporalProperty.util.Slice;
 
 import java.util.List;
@@ -52,6 +57,52 @@ public interface TemporalPropertyStore
     // query together with cache data
 	Object getRangeValue(long entityId, int proId, TimePointL start, TimePointL end, InternalEntryRangeQueryCallBack callBack, MemTable cache );
 
+	/**
+	 * 拉取式的时间段查询, 结果在迭代时才计算, 可以随时停止(如LIMIT查询).
+	 * 返回的迭代器读取调用时的数据快照, 迭代期间不持有系统的锁, 不阻塞写操作; 不再使用时应调用close().
+	 * @param entityId 时态属性所属的点/边的id
+	 * @param proId 时态属性id
+	 * @param start 需要查询的时间的起始时间
+	 * @param end 需要查询的时间的结束时间
+	 * @return [start, end]内按时间排列的有效值区间(区间已被裁剪到[start, end]内)
+	 */
+	RangeQueryIterator rangeIterator( long entityId, int proId, TimePointL start, TimePointL end );
+
+	// query together with cache data
+	RangeQueryIterator rangeIterator( long entityId, int proId, TimePointL start, TimePointL end, MemTable cache );
+
+	/**
+	 * 数值属性(INT/LONG/FLOAT/DOUBLE)的时间段查询, 结果按列保存在基本类型数组中, 查询过程中不对每个值创建对象.
+	 * @return [start, end]内的各个区间及其值(INVALID的区间也包含在内, 其isValid为false)
+	 */
+	DoubleRangeColumns getRangeDoubles( long entityId, int proId, TimePointL start, TimePointL end );
+
+	/**
+	 * 同getRangeDoubles, 只适用于INT/LONG属性
+	 */
+	LongRangeColumns getRangeLongs( long entityId, int proId, TimePointL start, TimePointL end );
+
+	/**
+	 * 把结果写入(并返回)给定的result, 以便在多次查询间复用其数组
+	 */
+	<T extends RangeColumns> T getRangeColumns( long entityId, int proId, TimePointL start, TimePointL end, T result );
+
+	/**
+	 * 查询所有entity的某个属性在时间点time上的值(图快照). 只顺序扫描一遍相关的文件, 而不是对每个entity分别查找.
+	 * @param proId 时态属性id
+	 * @param time 需要查询的时间
+	 * @param consumer 按entityId从小到大接收(entityId, 值), 没有值的entity被跳过
+	 */
+	void snapshotAt( int proId, TimePointL time, SnapshotConsumer consumer );
+
+	/**
+	 * 查询某个属性在[from, to]内有值变化(有entry起始于这段时间)的entity.
+	 * 开启Options.changeLog后, 磁盘文件只读取其变更日志, 耗时与变化的数量成正比; 否则需要扫描相关文件.
+	 * 结果可能包含少量值并未改变的entity(如重复写入相同的值), 但不会遗漏.
+	 * @return 从小到大排列且不重复的entityId
+	 */
+	long[] changedEntities( int proId, TimePointL from, TimePointL to );
+
 	ValueContentType getPropertyValueType( int propertyId );
 
 	/**
@@ -83,6 +134,20 @@ public interface TemporalPropertyStore
 	 */
 	boolean deleteEntityProperty(Slice id);
 
+	/**
+	 * 删除某个时态属性中某个eid在[start, end]内的数据, 之后这段时间上没有值(INVALID).
+	 * 删除只写入MemTable, 不读写磁盘文件; 被覆盖的数据在读取时被屏蔽, 直到合并重写文件时才被丢弃.
+	 * @return 是否删除成功, 属性不存在时返回false
+	 */
+	boolean deleteEntityProperty(long entityId, int proId, TimePointL start, TimePointL end);
+
+	/**
+	 * 设置属性的保留期限: horizon之前的数据过期. 完全早于horizon的StableFile(及其Buffer和索引文件)由合并线程整体删除,
+	 * 跨越horizon的文件在下次写回时去掉过期数据. 之后查询horizon之前的时间抛出{@link org.act.temporalProperty.exception.DataExpiredException}.
+	 * @return 是否设置成功, 属性不存在或horizon早于当前的保留期限时返回false
+	 */
+	boolean setRetentionHorizon(int proId, TimePointL horizon);
+
 	/**
 	 * Aggregation查询是getRangeValue的一种alias而已.
 	 */
@@ -114,6 +179,18 @@ public interface TemporalPropertyStore
 	 */
 	long createAggrMinMaxIndex(int propertyId, TimePointL start, TimePointL end, int every, int timeUnit, IndexType type);
 
+	/**
+	 * 创建AGGR_SUM索引(可加速[在某段时间上求值的和, 按时长加权的平均值, 值的个数]的查询操作), 只能用于INT, LONG, FLOAT, DOUBLE属性.
+	 * 每个时间分组保存(值×时长之和, 有值的总时长, 开始于分组内的值的个数), 查询结果见{@link AggregationIndexQueryResult#getSum()}等.
+	 * @param propertyId 要索引的属性ID
+	 * @param start      索引起始时间
+	 * @param end        索引结束时间
+	 * @param every      see {@link org.act.temporalProperty.index.aggregation.AggregationIndexMeta#calcInterval(int, int, int, int)} for more detail.
+	 * @param timeUnit   can be Calendar.SECOND|HOUR|DAY|WEEK|SEMI_MONTH|MONTH|YEAR, see {@link org.act.temporalProperty.index.aggregation.AggregationIndexMeta#calcInterval(int, int, int, int)} for more detail.
+	 * @return index ID
+	 */
+	long createAggrSumIndex(int propertyId, TimePointL start, TimePointL end, int every, int timeUnit);
+
 
 	/**
 	 * 使用Aggregation索引进行查询(加速)
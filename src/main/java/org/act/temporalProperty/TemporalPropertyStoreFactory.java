@@ -1,5 +1,6 @@
 package org.act.temporalProperty;
 
+import org.act.temporalProperty.impl.Options;
 import org.act.temporalProperty.impl.TemporalPropertyStoreImpl;
 
 import java.io.File;
@@ -18,4 +19,14 @@ public class TemporalPropertyStoreFactory
     public static TemporalPropertyStore newPropertyStore(File dbDir ) throws Throwable {
         return new TemporalPropertyStoreImpl( dbDir );
     }
+
+	/**
+	 * 返回新的动态属性存储实例
+	 * @param dbDir 保存动态属性存储文件的目录
+	 * @param options 存储设置, 如MemTable大小, 是否使用堆外MemTable
+	 * @return
+	 */
+    public static TemporalPropertyStore newPropertyStore(File dbDir, Options options ) throws Throwable {
+        return new TemporalPropertyStoreImpl( dbDir, options );
+    }
 }
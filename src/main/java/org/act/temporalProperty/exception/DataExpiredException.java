@@ -0,0 +1,25 @@
+package org.act.temporalProperty.exception;
+
+import org.act.temporalProperty.query.TimePointL;
+
+/**
+ * 查询的时间早于属性的保留期限(retention horizon), 这部分数据已过期被删除
+ */
+public class DataExpiredException extends TPSRuntimeException {
+    private final int propertyId;
+    private final TimePointL horizon;
+
+    public DataExpiredException(int propertyId, TimePointL time, TimePointL horizon) {
+        super("time {} of property {} is before its retention horizon {}", time, propertyId, horizon);
+        this.propertyId = propertyId;
+        this.horizon = horizon;
+    }
+
+    public int getPropertyId() {
+        return propertyId;
+    }
+
+    public TimePointL getHorizon() {
+        return horizon;
+    }
+}
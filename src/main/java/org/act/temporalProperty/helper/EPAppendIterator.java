@@ -3,6 +3,9 @@ package org.act.temporalProperty.helper;
 import org.act.temporalProperty.impl.*;
 import org.act.temporalProperty.vo.EntityPropertyId;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Created by song on 2018-01-24.
  * this class is used in range query for disk file to build a combined iterator of one entity.
@@ -14,17 +17,16 @@ import org.act.temporalProperty.vo.EntityPropertyId;
 public class EPAppendIterator extends SameLevelMergeIterator {
     // each sub iterator's time should be inc (e.g. 0 is the earliest time)
     private EntityPropertyId id;
+    private final List<SearchableIterator> appended = new ArrayList<>();
 
     public EPAppendIterator(EntityPropertyId id) {
         this.id = id;
     }
 
     public void append(SearchableIterator iterator) {
-        if(isEP(iterator)){
-            add(iterator);
-        }else {
-            add(new EPEntryIterator(id, iterator));
-        }
+        SearchableIterator sub = isEP(iterator) ? iterator : new EPEntryIterator(id, iterator);
+        appended.add(sub);
+        add(sub);
     }
 
     private boolean isEP(SearchableIterator iterator) {
@@ -36,12 +38,21 @@ public class EPAppendIterator extends SameLevelMergeIterator {
     @Override
     public boolean seekFloor(InternalKey targetKey) {
         checkIfValidKey(targetKey);
-        //直接返回下层SameLevelMergeIterator的结果。因为子Iterator都生成的是同一个entity的entry。（entity property都一样）
-        return super.seekFloor( targetKey );
+        // 每个子Iterator都会停在自己的floor entry上, 只有最后一个(最晚的文件)的才是真正的floor, 其余的跳过不晚于targetKey的entry
+        SearchableIterator floor = null;
+        for(SearchableIterator sub : appended){
+            if(sub.seekFloor(targetKey)) floor = sub;
+        }
+        for(SearchableIterator sub : appended){
+            if(sub == floor) continue;
+            while(sub.hasNext() && sub.peek().getKey().getStartTime().compareTo(targetKey.getStartTime()) <= 0) sub.next();
+        }
+        rebuildHeap();
+        return floor != null;
     }
 
     private void checkIfValidKey(InternalKey target) {
-        if(!target.getId().equals(id)) throw new IllegalArgumentException("target should has same entity id and same property id");
+        if(!target.hasId(id.getPropertyId(), id.getEntityId())) throw new IllegalArgumentException("target should has same entity id and same property id");
     }
 
     @Override
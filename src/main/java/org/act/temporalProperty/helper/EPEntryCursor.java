@@ -0,0 +1,118 @@
+package org.act.temporalProperty.helper;
+
+import org.act.temporalProperty.exception.TPSRuntimeException;
+import org.act.temporalProperty.impl.EntryCursor;
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.vo.EntityPropertyId;
+
+/**
+ * EPEntryIterator的游标版本: 只保留指定entityID和PropertyID的数据.
+ * 由于底层数据按key有序, 读到更大的id时即停止, 不会继续扫描文件的剩余部分.
+ */
+public class EPEntryCursor implements EntryCursor
+{
+    private final EntryCursor in;
+    private final int propertyId;
+    private final long entityId;
+    private boolean done = false;
+
+    public EPEntryCursor( EntityPropertyId id, EntryCursor in )
+    {
+        this.in = in;
+        this.propertyId = id.getPropertyId();
+        this.entityId = id.getEntityId();
+        this.seekToFirst();
+    }
+
+    @Override
+    public void seekToFirst()
+    {
+        done = false;
+        in.seekFloor( propertyId, entityId, TimePointL.Init.val() );
+    }
+
+    @Override
+    public void seekFloor( int propertyId, long entityId, long time )
+    {
+        if ( propertyId != this.propertyId || entityId != this.entityId )
+        {
+            throw new TPSRuntimeException( "id not match!" );
+        }
+        done = false;
+        in.seekFloor( propertyId, entityId, time );
+    }
+
+    @Override
+    public boolean advance()
+    {
+        while ( !done && in.advance() )
+        {
+            int r = Integer.compare( in.propertyId(), propertyId );
+            if ( r == 0 ) r = Long.compare( in.entityId(), entityId );
+            if ( r == 0 )
+            {
+                return true;
+            }
+            else if ( r > 0 )
+            {
+                done = true;
+            }
+        }
+        done = true;
+        return false;
+    }
+
+    @Override
+    public int propertyId()
+    {
+        return propertyId;
+    }
+
+    @Override
+    public long entityId()
+    {
+        return entityId;
+    }
+
+    @Override
+    public long startTimeLong()
+    {
+        return in.startTimeLong();
+    }
+
+    @Override
+    public ValueType valueType()
+    {
+        return in.valueType();
+    }
+
+    @Override
+    public Slice valueBase()
+    {
+        return in.valueBase();
+    }
+
+    @Override
+    public int valueOffset()
+    {
+        return in.valueOffset();
+    }
+
+    @Override
+    public int valueLength()
+    {
+        return in.valueLength();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "EPEntryCursor{" +
+                "in=" + in +
+                ", proId=" + propertyId +
+                ", eid=" + entityId +
+                '}';
+    }
+}
@@ -15,9 +15,13 @@ public class EPEntryIterator extends AbstractSearchableIterator {
 
     private final SearchableIterator iter;
     private final EntityPropertyId id;
+    private final int propertyId;
+    private final long entityId;
 
     public EPEntryIterator(EntityPropertyId entityPropertyId, SearchableIterator iterator){
         this.id = entityPropertyId;
+        this.propertyId = entityPropertyId.getPropertyId();
+        this.entityId = entityPropertyId.getEntityId();
         this.iter = iterator;
         this.seekToFirst();
     }
@@ -32,7 +36,7 @@ public class EPEntryIterator extends AbstractSearchableIterator {
     @Override
     public boolean seekFloor(InternalKey targetKey )
     {
-        if(targetKey.getId().equals( id ))
+        if(targetKey.hasId( propertyId, entityId ))
         {
             this.resetState();
             if(iter.seekFloor( targetKey ) && this.hasNext()){
@@ -46,7 +50,7 @@ public class EPEntryIterator extends AbstractSearchableIterator {
     }
 
     private boolean validId(InternalEntry entry) {
-        return entry.getKey().getId().equals(id);
+        return entry.getKey().hasId(propertyId, entityId);
     }
 
     @Override
@@ -32,7 +32,7 @@ public class EPMergeIterator extends TwoLevelMergeIterator
         InternalEntry entry = super.computeNext();
         if ( entry != null )
         {
-            if ( entry.getKey().getId().equals( id ) )
+            if ( entry.getKey().hasId( id.getPropertyId(), id.getEntityId() ) )
             {
                 return entry;
             }
@@ -20,7 +20,7 @@ public class EqualValFilterIterator extends CompareLastReturnedIterator<Internal
         if(lastReturned!=null){
             InternalKey preKey = lastReturned.getKey();
             InternalKey curKey = cur.getKey();
-            if (curKey.getId().equals(preKey.getId()) &&
+            if (curKey.sameId(preKey) &&
                     curKey.getValueType() == preKey.getValueType() &&
                     cur.getValue().equals(lastReturned.getValue())) {
                 return false;
@@ -0,0 +1,41 @@
+package org.act.temporalProperty.helper;
+
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.impl.InternalKey;
+import org.act.temporalProperty.impl.SearchableIterator;
+import org.act.temporalProperty.query.TimePointL;
+
+/**
+ * Remove entries which are entirely before the retention horizon, i.e. the next entry of the same entity
+ * starts no later than the horizon. The entry covering the horizon is kept (with its original start time).
+ */
+public class ExpiredEntryFilterIterator extends PairViewFilterByNextIterator<InternalEntry> implements SearchableIterator {
+    private final long horizon;
+
+    public ExpiredEntryFilterIterator(SearchableIterator in, TimePointL horizon) {
+        super(in);
+        this.horizon = horizon.val();
+    }
+
+    @Override
+    protected boolean shouldReturnFirst(InternalEntry cur, InternalEntry next) {
+        if(next==null) return true;
+        InternalKey nextKey = next.getKey();
+        return !(nextKey.sameId(cur.getKey()) && nextKey.getStartTimeLong() <= horizon);
+    }
+
+    @Override
+    public void seekToFirst() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean seekFloor(InternalKey targetKey) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String toString() {
+        return "ExpiredEntryFilterIterator{horizon=" + horizon + ", in=" + super.toString() + "}";
+    }
+}
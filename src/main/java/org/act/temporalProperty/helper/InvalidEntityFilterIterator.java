@@ -18,7 +18,7 @@ public class InvalidEntityFilterIterator extends PairViewFilterByNextIterator<In
         InternalKey curKey = cur.getKey();
         if(next!=null) {
             InternalKey nextKey = next.getKey();
-            if (nextKey.getId().equals(curKey.getId())) {
+            if (nextKey.sameId(curKey)) {
                 lastTwoIDEqual = true;
                 return true;
             } else {
@@ -0,0 +1,136 @@
+package org.act.temporalProperty.helper;
+
+import org.act.temporalProperty.impl.EntryCursor;
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.util.Slice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * SameLevelMergeIterator(EPAppendIterator)的游标版本, 按key顺序合并同一层的多个游标(如多个文件).
+ * 使用前必须先调用seekFloor()或seekToFirst().
+ */
+public class SameLevelMergeCursor implements EntryCursor
+{
+    private final List<EntryCursor> cursors = new ArrayList<>();
+    private final PriorityQueue<EntryCursor> heap = new PriorityQueue<>( EntryCursor::compare );
+    private final List<EntryCursor> seeking = new ArrayList<>();
+    private EntryCursor current;
+
+    public void add( EntryCursor cursor )
+    {
+        cursors.add( cursor );
+    }
+
+    @Override
+    public void seekToFirst()
+    {
+        heap.clear();
+        current = null;
+        for ( EntryCursor c : cursors )
+        {
+            c.seekToFirst();
+            if ( c.advance() ) heap.add( c );
+        }
+    }
+
+    /**
+     * 与SameLevelMergeIterator不同, 若多个子游标都有不大于目标key的entry, 只保留其中最大的一个(真正的floor entry),
+     * 其他子游标跳过不大于目标key的entry.
+     */
+    @Override
+    public void seekFloor( int propertyId, long entityId, long time )
+    {
+        heap.clear();
+        current = null;
+        EntryCursor floor = null;
+        for ( EntryCursor c : cursors )
+        {
+            c.seekFloor( propertyId, entityId, time );
+            if ( c.advance() )
+            {
+                seeking.add( c );
+                if ( EntryCursor.compare( c, propertyId, entityId, time ) <= 0 && (floor == null || EntryCursor.compare( c, floor ) > 0) )
+                {
+                    floor = c;
+                }
+            }
+        }
+        for ( EntryCursor c : seeking )
+        {
+            boolean has = true;
+            if ( c != floor )
+            {
+                while ( has && EntryCursor.compare( c, propertyId, entityId, time ) <= 0 )
+                {
+                    has = c.advance();
+                }
+            }
+            if ( has ) heap.add( c );
+        }
+        seeking.clear();
+    }
+
+    @Override
+    public boolean advance()
+    {
+        if ( current != null && current.advance() )
+        {
+            heap.add( current );
+        }
+        current = heap.poll();
+        return current != null;
+    }
+
+    @Override
+    public int propertyId()
+    {
+        return current.propertyId();
+    }
+
+    @Override
+    public long entityId()
+    {
+        return current.entityId();
+    }
+
+    @Override
+    public long startTimeLong()
+    {
+        return current.startTimeLong();
+    }
+
+    @Override
+    public ValueType valueType()
+    {
+        return current.valueType();
+    }
+
+    @Override
+    public Slice valueBase()
+    {
+        return current.valueBase();
+    }
+
+    @Override
+    public int valueOffset()
+    {
+        return current.valueOffset();
+    }
+
+    @Override
+    public int valueLength()
+    {
+        return current.valueLength();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SameLevelMergeCursor{" +
+                "cursors=" + cursors +
+                '}';
+    }
+}
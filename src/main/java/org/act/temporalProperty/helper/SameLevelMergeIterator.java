@@ -67,7 +67,7 @@ public class SameLevelMergeIterator extends AbstractSearchableIterator
         heap = new PriorityQueue<>(cp);
         for(SearchableIterator i: iterators){
             i.seekToFirst();
-            heap.add(i);
+            if(i.hasNext()) heap.add(i);
         }
     }
 
@@ -79,11 +79,22 @@ public class SameLevelMergeIterator extends AbstractSearchableIterator
         // if any one of the iterators seekFloor is true, then we can confirm there is one entry less or eq to targetKey.
         for(SearchableIterator i: iterators){
             if(i.seekFloor( targetKey )) flag = true;
-            heap.add(i);
+            if(i.hasNext()) heap.add(i);
         }
         return flag;
     }
 
+    /**
+     * 子iterator的位置被直接改变后, 按它们的当前位置重新建堆
+     */
+    protected void rebuildHeap() {
+        super.resetState();
+        heap = new PriorityQueue<>(cp);
+        for(SearchableIterator i: iterators){
+            if(i.hasNext()) heap.add(i);
+        }
+    }
+
     @Override
     public String toString() {
         return "SameLevelMergeIterator@"+hashCode()+"{" +
@@ -2,15 +2,21 @@ package org.act.temporalProperty.helper;
 
 import org.act.temporalProperty.exception.TPSMetaLoadFailedException;
 import org.act.temporalProperty.exception.TPSRuntimeException;
+import org.act.temporalProperty.impl.FileBuffer;
 import org.act.temporalProperty.impl.Filename;
+import org.act.temporalProperty.impl.Filename.FileInfo;
 import org.act.temporalProperty.impl.LogReader;
 import org.act.temporalProperty.impl.MemTable;
 import org.act.temporalProperty.vo.TimeIntervalValueEntry;
+import org.act.temporalProperty.meta.ManifestLog;
+import org.act.temporalProperty.meta.PropertyMetaData;
 import org.act.temporalProperty.meta.SystemMeta;
 import org.act.temporalProperty.meta.SystemMetaController;
 import org.act.temporalProperty.meta.SystemMetaFile;
 import org.act.temporalProperty.table.*;
 import org.act.temporalProperty.util.Slice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.nio.channels.FileChannel;
@@ -23,6 +29,7 @@ import java.util.Set;
  * Created by song on 2018-01-17.
  */
 public class StoreInitial {
+    private static final Logger log = LoggerFactory.getLogger( StoreInitial.class );
     private final String metaName = "meta.info";
     private final String metaTmpName = "meta.info.tmp";
     private final File rootDir;
@@ -46,6 +53,13 @@ public class StoreInitial {
 
     private SystemMeta findAndLoadMeta(File rootDir) throws TPSMetaLoadFailedException {
         if(rootDir!=null && rootDir.isDirectory()) {
+            try {
+                SystemMeta meta = ManifestLog.recover(rootDir);
+                if(meta!=null) return meta;
+            } catch (IOException e) {
+                throw new TPSMetaLoadFailedException("failed to read manifest in "+rootDir.getAbsolutePath(), e);
+            }
+            // 旧版本只有meta.info
             String[] files = rootDir.list();
             if(files!=null && files.length==0) return null;
             if(files!=null) {
@@ -88,6 +102,56 @@ public class StoreInitial {
         }
     }
 
+    /**
+     * 元信息恢复后调用: 文件总是先写新文件, 落盘并记入MANIFEST后才删除旧文件,
+     * 所以崩溃后目录中多出的文件(写到一半的*.tmp, 未发布的合并结果, 已发布但未删除的旧文件)都可以直接删除.
+     * Buffer创建时不立即写元信息, 所以数据文件仍在而元信息中没有的Buffer重新加入元信息.
+     * 索引目录中的文件编号与元信息的对应关系不可靠, 只删除*.tmp.
+     */
+    public void removeOrphanFiles(SystemMeta meta) throws IOException {
+        for(PropertyMetaData pMeta : meta.getProperties().values()){
+            File proDir = new File(rootDir, pMeta.getPropertyId().toString());
+            File[] files = proDir.listFiles();
+            if(files==null) continue;
+            for(File f : files){
+                FileInfo info = Filename.parseFileName(f);
+                if(info==null) continue;
+                long number = info.getFileNumber();
+                boolean stableLive = pMeta.getStableFiles().containsKey(number);
+                boolean unstableLive = pMeta.getUnStableFiles().containsKey(number);
+                boolean orphan;
+                switch(info.getFileType()){
+                case STABLEFILE: case STABLE_CHANGE_LOG: case STBUFFER_DELTA: orphan = !stableLive; break;
+                case UNSTABLEFILE: case UNSTABLE_CHANGE_LOG: case BUFFER_DELTA: orphan = !unstableLive; break;
+                case STBUFFER:
+                    orphan = !stableLive;
+                    if(stableLive && pMeta.getStableBuffers(number)==null) pMeta.addStableBuffer(number, new FileBuffer(number));
+                    break;
+                case BUFFER:
+                    orphan = !unstableLive;
+                    if(unstableLive && pMeta.getUnstableBuffers(number)==null) pMeta.addUnstableBuffer(number, new FileBuffer(number));
+                    break;
+                case UNFINISHED: orphan = true; break;
+                default: orphan = false;
+                }
+                if(orphan){
+                    log.info("remove orphan file {}", f);
+                    Files.delete(f.toPath());
+                }
+            }
+        }
+        File[] indexFiles = new File(rootDir, "index").listFiles();
+        if(indexFiles!=null) {
+            for(File f : indexFiles){
+                FileInfo info = Filename.parseFileName(f);
+                if(info!=null && info.getFileType()==Filename.FileType.UNFINISHED){
+                    log.info("remove orphan file {}", f);
+                    Files.delete(f.toPath());
+                }
+            }
+        }
+    }
+
     public MemTable getMemTable() {
         try{
             String tempFileName = Filename.tempFileName(0);
@@ -0,0 +1,89 @@
+package org.act.temporalProperty.impl;
+
+import org.act.temporalProperty.util.Slice;
+
+/**
+ * 可复用的(可变的)游标, 是{@link SearchableIterator}在扫描热路径上的无对象分配版本.
+ * 用法: 先调用seekToFirst()或seekFloor(), 之后每次advance()返回true时, 通过各个getter读取当前entry.
+ * 各getter在下一次advance()/seek之前有效, 它们不创建任何对象.
+ *
+ * value以(valueBase, valueOffset, valueLength)的形式给出, 指向Block或MemTable中的原始数据,
+ * 因此在底层的Table/MemTable存活期间一直有效(即使游标已经前进), 可以被合并游标暂存.
+ */
+public interface EntryCursor
+{
+    /**
+     * 之后的第一次advance()定位到第一个entry
+     */
+    void seekToFirst();
+
+    /**
+     * 语义同{@link SearchableIterator#seekFloor(InternalKey)}: 之后的第一次advance()定位到不大于目标key的最后一个entry,
+     * 若不存在这样的entry, 则定位到第一个entry.
+     */
+    void seekFloor( int propertyId, long entityId, long time );
+
+    /**
+     * @return false if no more entry
+     */
+    boolean advance();
+
+    int propertyId();
+
+    long entityId();
+
+    long startTimeLong();
+
+    ValueType valueType();
+
+    Slice valueBase();
+
+    int valueOffset();
+
+    int valueLength();
+
+    default int valueInt()
+    {
+        return valueBase().getInt( valueOffset() );
+    }
+
+    default long valueLong()
+    {
+        return valueBase().getLong( valueOffset() );
+    }
+
+    default float valueFloat()
+    {
+        return valueBase().getFloat( valueOffset() );
+    }
+
+    default double valueDouble()
+    {
+        return valueBase().getDouble( valueOffset() );
+    }
+
+    /**
+     * 注意: 会创建一个新的Slice对象(但不复制数据)
+     */
+    default Slice value()
+    {
+        return valueBase().slice( valueOffset(), valueLength() );
+    }
+
+    /**
+     * 按(propertyId, entityId, time)比较当前entry与给定的key, 与{@link InternalKey#compareTo(InternalKey)}的顺序相同.
+     */
+    static int compare( EntryCursor c, int propertyId, long entityId, long time )
+    {
+        int r = Integer.compare( c.propertyId(), propertyId );
+        if ( r != 0 ) return r;
+        r = Long.compare( c.entityId(), entityId );
+        if ( r != 0 ) return r;
+        return Long.compare( c.startTimeLong(), time );
+    }
+
+    static int compare( EntryCursor a, EntryCursor b )
+    {
+        return compare( a, b.propertyId(), b.entityId(), b.startTimeLong() );
+    }
+}
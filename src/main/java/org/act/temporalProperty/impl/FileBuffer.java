@@ -2,44 +2,109 @@ package org.act.temporalProperty.impl;
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
 
+import org.act.temporalProperty.exception.TPSRuntimeException;
+import org.act.temporalProperty.query.TimeInterval;
 import org.act.temporalProperty.query.TimeIntervalKey;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.query.TemporalValue;
+import org.act.temporalProperty.table.TableBuilder;
+import org.act.temporalProperty.table.TableComparator;
+import org.act.temporalProperty.table.TwoLevelMergeCursor;
+import org.act.temporalProperty.table.TwoLevelMergeIterator;
 import org.act.temporalProperty.table.UnSortedTable;
+import org.act.temporalProperty.util.FileUtils;
 import org.act.temporalProperty.util.Slice;
 import org.act.temporalProperty.util.SliceInput;
 import org.act.temporalProperty.util.SliceOutput;
+import org.act.temporalProperty.vo.EntityPropertyId;
 
 /**
  * 是系统处理对StableFile或UnStableFile插入操作的机制，对应设计文档中的Buffer,包括了内存中的结果和对应的备份文件。每一个FileBuffer固定对应一个StableFile或UnStableFile。
  *
+ * 内存中只保存最近的写入(memTable及其备份日志), 超过SPILL_SIZE后写成一个有序的delta文件(Filename.bufferDeltaFileName),
+ * 日志随之清空. 读取时按从新到旧的顺序合并memTable和各delta文件. 因此Buffer占用的堆内存有上限, 启动时也只需回放最后一段日志.
  */
 public class FileBuffer implements Closeable
 {
-    private MemTable memTable; //内存中保存数据
+    private static final long SPILL_SIZE = 1024 * 1024;
+    // delta文件超过这个数量时合并成一个
+    private static final int MAX_DELTAS = 8;
+    // Buffer(memTable和delta文件)超过这个大小时写回对应的文件, 见SinglePropertyStore.BufferRewriteTask
+    public static final long REWRITE_SIZE = 10 * SPILL_SIZE;
+
+    private volatile MemTable memTable; //内存中保存数据
     private UnSortedTable discTable;//对应磁盘中的备份文件
     private long number =-1;
     private String fName;
+    private TableCache cache;
+    // 已溢出的delta文件(绝对路径), 从旧到新. 只整体替换, 读取者拿到的列表不会再变
+    private volatile List<String> deltas = Collections.emptyList();
+    // deltas中前frozen个正在被写回对应的文件(见SinglePropertyStore.BufferRewriteTask), 不参与delta的合并
+    private int frozen = 0;
+    private volatile long deltaSize;
+    private long nextDeltaSeq;
+    // 启动时只记录备份文件, 第一次访问时(或预热时)才回放到memTable中
+    private volatile boolean loaded = false;
 
     public FileBuffer(long id){
         this.number = id;
     }
 
-    public FileBuffer(File unSortedTableFile, long id) throws IOException{
+    public FileBuffer(File unSortedTableFile, long id, TableCache cache) throws IOException{
         this(id);
         this.fName = unSortedTableFile.getAbsolutePath();
+        this.cache = cache;
         this.memTable = new MemTable();
-        Files.deleteIfExists(unSortedTableFile.toPath());
+        for(File f : files()) Files.delete(f.toPath());
         Files.createFile(unSortedTableFile.toPath());
         this.discTable = new UnSortedTable(unSortedTableFile);
+        this.loaded = true;
     }
 
-    public void init(File bufLogFile ) throws IOException{
+    public void init(File bufLogFile, TableCache cache ) throws IOException{
         this.fName = bufLogFile.getAbsolutePath();
-        this.memTable = new MemTable();
-        this.discTable = new UnSortedTable(bufLogFile);
-        this.discTable.initFromFile( this.memTable );
+        this.cache = cache;
+    }
+
+    /**
+     * 找到delta文件并回放备份日志, 已加载时直接返回. 可被多个线程同时调用
+     */
+    public void load() throws IOException{
+        if(loaded) return;
+        synchronized (this){
+            if(loaded) return;
+            if(fName==null) throw new IOException("should init first!");
+            TreeMap<Long, String> found = listDeltas();
+            List<String> paths = new ArrayList<>(found.values());
+            for(String path : paths) deltaSize += new File(path).length();
+            this.nextDeltaSeq = found.isEmpty() ? 0 : found.lastKey() + 1;
+            this.deltas = paths;
+            MemTable table = new MemTable();
+            this.discTable = new UnSortedTable(new File(fName));
+            this.discTable.initFromFile( table );
+            this.memTable = table;
+            this.loaded = true;
+        }
+    }
+
+    // 读取路径上不便抛出IOException
+    private void loadUnchecked(){
+        try {
+            load();
+        } catch (IOException e) {
+            throw new TPSRuntimeException("load buffer "+fName+" failed", e);
+        }
     }
 
 
@@ -50,14 +115,128 @@ public class FileBuffer implements Closeable
      * @throws IOException
      */
     public void add( TimeIntervalKey key, Slice value ) throws IOException{
-        if(discTable==null || memTable==null ){
-            throw new IOException("should init first!");
-        }
+        load();
         discTable.add( key, value );
         this.memTable.addInterval( key, value );
+        if(memTable.approximateMemUsage() > SPILL_SIZE) spill();
+    }
+
+    // 先写出delta文件再清空日志, 中途崩溃时两者内容相同, 重复回放不影响结果
+    private synchronized void spill() throws IOException{
+        List<String> newDeltas = new ArrayList<>(deltas);
+        newDeltas.add(writeDelta(memTable.iterator()));
+        this.deltas = newDeltas;
+        this.memTable = new MemTable();
+        File logFile = new File(fName);
+        discTable.close();
+        Files.delete(logFile.toPath());
+        Files.createFile(logFile.toPath());
+        discTable = new UnSortedTable(logFile);
+        if(newDeltas.size() - frozen > MAX_DELTAS) compactDeltas();
+    }
+
+    private void compactDeltas() throws IOException{
+        List<String> old = deltas.subList(frozen, deltas.size());
+        String merged = writeDelta(deltaIterator(old));
+        List<String> newDeltas = new ArrayList<>(deltas.subList(0, frozen));
+        newDeltas.add(merged);
+        this.deltas = newDeltas;
+        for(File f : removeDeltas(old)) Files.delete(f.toPath());
+    }
+
+    // 正在读取这些文件的查询仍持有它们, TableCache在它们不再被引用后才关闭文件
+    private List<File> removeDeltas(List<String> paths){
+        List<File> result = new ArrayList<>();
+        for(String path : paths){
+            File f = new File(path);
+            deltaSize -= f.length();
+            cache.evict(path);
+            result.add(f);
+        }
+        return result;
+    }
+
+    private String writeDelta(SearchableIterator iterator) throws IOException{
+        File target = new File(Filename.bufferDeltaFileName(fName, nextDeltaSeq++));
+        File tmp = new File(target.getPath() + ".tmp");
+        try(FileOutputStream stream = new FileOutputStream(tmp); FileChannel channel = stream.getChannel()){
+            TableBuilder builder = new TableBuilder(new Options(), channel, TableComparator.instance());
+            while(iterator.hasNext()){
+                InternalEntry entry = iterator.next();
+                builder.add(entry.getKey().encode(), entry.getValue());
+            }
+            builder.finish();
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        FileUtils.syncDirectory(target.getParentFile());
+        deltaSize += target.length();
+        return target.getAbsolutePath();
+    }
+
+    private TreeMap<Long, String> listDeltas(){
+        TreeMap<Long, String> result = new TreeMap<>();
+        File logFile = new File(fName);
+        String prefix = logFile.getName() + ".";
+        String[] names = logFile.getParentFile().list();
+        if(names == null) return result;
+        for(String name : names){
+            if(!name.startsWith(prefix)) continue;
+            File f = new File(logFile.getParentFile(), name);
+            try{
+                result.put(Long.parseLong(name.substring(prefix.length())), f.getAbsolutePath());
+            }catch(NumberFormatException e){
+                f.delete(); // 未写完的.tmp文件
+            }
+        }
+        return result;
+    }
+
+    private SearchableIterator deltaIterator(List<String> paths){
+        SearchableIterator result = null;
+        for(String path : paths){
+            SearchableIterator iter = cache.newIterator(path);
+            result = result == null ? iter : TwoLevelMergeIterator.merge(iter, result);
+        }
+        return result;
+    }
+
+    /**
+     * 把目前的全部内容(memTable先溢出为delta)冻结, 用于写回对应的文件. 冻结期间仍可继续写入.
+     * @return 被冻结的delta文件, 从旧到新
+     */
+    public synchronized List<String> freeze() throws IOException{
+        load();
+        if(!memTable.isEmpty()) spill();
+        this.frozen = deltas.size();
+        return new ArrayList<>(deltas);
+    }
+
+    public synchronized boolean isFrozen(){
+        return frozen > 0;
+    }
+
+    public SearchableIterator frozenIterator(List<String> frozenDeltas){
+        return deltaIterator(frozenDeltas);
+    }
+
+    /**
+     * 冻结的内容已写入对应的文件, 从Buffer中去掉, 返回需要(在解锁后)删除的文件. 需在merge锁内调用
+     */
+    public synchronized List<File> dropFrozen(){
+        List<String> old = deltas.subList(0, frozen);
+        List<File> result = removeDeltas(old);
+        this.deltas = new ArrayList<>(deltas.subList(frozen, deltas.size()));
+        this.frozen = 0;
+        return result;
+    }
+
+    // 写回失败时调用, 冻结的内容留在Buffer中
+    public synchronized void unfreeze(){
+        this.frozen = 0;
     }
 
     public void force() throws IOException{
+        if(!loaded) return; // 未加载的Buffer没有新写入的数据
         discTable.addCheckPoint();
     }
 
@@ -67,21 +246,135 @@ public class FileBuffer implements Closeable
      */
     public SearchableIterator iterator()
     {
-        return this.memTable.iterator();
+        loadUnchecked();
+        // 在锁内取deltas并打开其中的文件: compactDeltas和dropFrozen也在锁内替换deltas, 之后旧的delta文件会被删除,
+        // 已打开的文件删除后仍可读取. 先取memTable再取deltas: 溢出时先加入delta再替换memTable, 这样不会漏掉数据
+        synchronized (this) {
+            MemTable mem = this.memTable;
+            List<String> paths = this.deltas;
+            if(paths.isEmpty()) return mem.iterator();
+            return TwoLevelMergeIterator.merge(mem.iterator(), deltaIterator(paths));
+        }
     }
 
     /**
-     * 当Buffer参与任何合并过程之后，需要将其删除。在删除之前需调用close()方法。
+     * 同iterator(), 但memTable中只取id的数据的副本, 之后写入Buffer的数据不可见. 用于不持有锁读取的快照(rangeIterator)
+     */
+    public SearchableIterator snapshotIterator( EntityPropertyId id )
+    {
+        loadUnchecked();
+        synchronized (this) {
+            MemTable mem = this.memTable.snapshot( id );
+            List<String> paths = this.deltas;
+            if(paths.isEmpty()) return mem.iterator();
+            return TwoLevelMergeIterator.merge(mem.iterator(), deltaIterator(paths));
+        }
+    }
+
+    public EntryCursor cursor()
+    {
+        loadUnchecked();
+        // 同iterator(), 在锁内打开delta文件
+        synchronized (this) {
+            MemTable mem = this.memTable;
+            List<String> paths = this.deltas;
+            EntryCursor result = null;
+            for(String path : paths){
+                EntryCursor c = cache.getTable(path).cursor();
+                result = result == null ? c : new TwoLevelMergeCursor(c, result);
+            }
+            return result == null ? mem.cursor() : new TwoLevelMergeCursor(mem.cursor(), result);
+        }
+    }
+
+    /**
+     * Buffer在[start, end]内是否有该entity的数据, 同{@link MemTable#overlap(EntityPropertyId, TimePointL, TimePointL)}:
+     * Unknown标记也算, 只要它在[start, end]内
+     */
+    public boolean overlap( EntityPropertyId id, TimePointL start, TimePointL end )
+    {
+        return visit( id.getPropertyId(), id.getEntityId(), start.val(), end.val(), true, ( s, e ) -> true );
+    }
+
+    /**
+     * Buffer在[start, end]内是否有该属性的数据, 同{@link MemTable#overlap(int, TimePointL, TimePointL)}
+     */
+    public boolean overlap( int proId, TimePointL start, TimePointL end )
+    {
+        return visit( proId, -1, start.val(), end.val(), true, ( s, e ) -> true );
+    }
+
+    /**
+     * 同{@link MemTable#coverTime(TemporalValue, Set, TimePointL, TimePointL)}
+     */
+    public void coverTime( TemporalValue<Boolean> tMap, Set<Integer> proIds, TimePointL start, TimePointL end )
+    {
+        for ( int proId : proIds )
+        {
+            visit( proId, -1, start.val(), end.val(), false, ( s, e ) -> {
+                tMap.put( new TimeInterval( s, e ), true );
+                return false;
+            } );
+        }
+    }
+
+    private interface IntervalVisitor
+    {
+        // 返回true时停止
+        boolean visit( long start, long end );
+    }
+
+    /**
+     * 依次访问该属性(entityId>=0时只看该entity)在[start, end]内有值的区间(已截断到[start, end]).
+     * withUnknown为true时, 起始时间在[start, end]内的Unknown区间也被访问
+     */
+    private boolean visit( int proId, long entityId, long start, long end, boolean withUnknown, IntervalVisitor visitor )
+    {
+        EntryCursor c = cursor();
+        c.seekFloor( proId, Math.max( entityId, 0 ), entityId < 0 ? TimePointL.Init.val() : start );
+        boolean valid = false;
+        long curEntity = -1, curStart = 0;
+        while ( c.advance() )
+        {
+            if ( c.propertyId() < proId || (entityId >= 0 && c.propertyId() == proId && c.entityId() < entityId) ) continue;
+            if ( c.propertyId() > proId || (entityId >= 0 && c.entityId() > entityId) ) break;
+            long time = c.startTimeLong();
+            long prevEnd = c.entityId() == curEntity ? time - 1 : TimePointL.Now.val();
+            if ( valid && curStart <= end && prevEnd >= start &&
+                    visitor.visit( Math.max( curStart, start ), Math.min( prevEnd, end ) ) ) return true;
+            valid = c.valueType() != ValueType.UNKNOWN || (withUnknown && time >= start);
+            curEntity = c.entityId();
+            curStart = time;
+        }
+        return valid && curStart <= end && visitor.visit( Math.max( curStart, start ), end );
+    }
+
+    /**
+     * 当Buffer参与任何合并过程之后，需要将其删除。在删除之前需调用close()方法, 之后删除files()中的文件。
      */
     @Override
-    public void close() throws IOException
+    public synchronized void close() throws IOException
     {
         this.memTable = null;
-        this.discTable.close();
+        this.loaded = true; // 关闭后不再加载
+        if(this.discTable!=null) this.discTable.close();
+        if(this.cache!=null) for(String path : deltas) cache.evict(path);
+    }
+
+    /**
+     * Buffer在磁盘上的所有文件: 备份日志和delta文件
+     */
+    public List<File> files(){
+        List<File> result = new ArrayList<>();
+        File logFile = new File(fName);
+        if(logFile.exists()) result.add(logFile);
+        for(String path : listDeltas().values()) result.add(new File(path));
+        return result;
     }
 
     public long size(){
-        return this.memTable.approximateMemUsage();
+        loadUnchecked();
+        return this.memTable.approximateMemUsage() + deltaSize;
     }
 
     public long getNumber() {
@@ -94,6 +387,7 @@ public class FileBuffer implements Closeable
                 "number=" + number +
                 ", fName='" + fName + '\'' +
                 ", memtable=" + memTable +
+                ", deltas=" + deltas +
                 '}';
     }
 
@@ -105,9 +399,4 @@ public class FileBuffer implements Closeable
         long id = in.readLong();
         return new FileBuffer(id);
     }
-
-    public MemTable getMemTable()
-    {
-        return memTable;
-    }
 }
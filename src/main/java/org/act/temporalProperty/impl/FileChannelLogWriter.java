@@ -60,6 +60,21 @@ public class FileChannelLogWriter
         this.fileChannel = new FileOutputStream(file).getChannel();
     }
 
+    /**
+     * @param append 在已有内容之后继续写, 否则清空文件
+     */
+    public FileChannelLogWriter(File file, long fileNumber, boolean append)
+            throws FileNotFoundException
+    {
+        Preconditions.checkNotNull(file, "file is null");
+        Preconditions.checkArgument(fileNumber >= 0, "fileNumber is negative");
+
+        this.file = file;
+        this.fileNumber = fileNumber;
+        this.fileChannel = new FileOutputStream(file, append).getChannel();
+        this.blockOffset = append ? (int) (file.length() % BLOCK_SIZE) : 0;
+    }
+
     @Override
     public boolean isClosed()
     {
@@ -23,15 +23,23 @@ public final class Filename
      */
     public enum FileType
     {
-        STBUFFER,
-        BUFFER,
+        STBUFFER,       // st.000001.buffer
+        BUFFER,         // un.000001.buffer
+        STBUFFER_DELTA, // st.000001.buffer.000002, 编号为所属Buffer的编号
+        BUFFER_DELTA,   // un.000001.buffer.000002
+        STABLEFILE,     // st.000001.table
+        UNSTABLEFILE,   // un.000001.table
+        STABLE_CHANGE_LOG,   // st.000001.change
+        UNSTABLE_CHANGE_LOG, // un.000001.change
+        VALUE_INDEX,    // value.000001.index
+        AGGR_INDEX,     // aggr.000001.index
         LOG,
         DB_LOCK,
-        STABLEFILE,
-        UNSTABLEFILE,
-        DESCRIPTOR,
+        DESCRIPTOR,     // MANIFEST-000001
+        META_INFO,      // 旧版本的meta.info(.tmp)
         CURRENT,
-        TEMP,
+        TEMP,           // 000000.dbtmp, 关闭时写出的MemTable
+        UNFINISHED,     // *.tmp, 写到一半的文件, 发布时才改名
         INFO_LOG  // Either the current one, or an old one
     }
 
@@ -44,6 +52,15 @@ public final class Filename
     {
         return makeFileName( number, "un", "buffer" );
     }
+
+    /**
+     * Buffer溢出到磁盘的第seq个有序delta文件, 如st.000004.buffer.000001
+     * @param bufferFileName Buffer备份文件的名称(或路径)
+     */
+    public static String bufferDeltaFileName(String bufferFileName, long seq)
+    {
+        return String.format( "%s.%06d", bufferFileName, seq );
+    }
     
     /**
      * 返回对应编号的日志文件的名称
@@ -87,6 +104,14 @@ public final class Filename
         return new File(proDir, unStableFileName(fileNumber)).getAbsolutePath();
     }
 
+    /**
+     * 返回对应编号的数据文件的变更日志的名称
+     */
+    public static String changeLogFileName(long number, boolean stable)
+    {
+        return makeFileName( number, stable ? "st" : "un", "change" );
+    }
+
     public static String valIndexFileName(long fileId) {
         return makeFileName(fileId, "value", "index");
     }
@@ -98,9 +123,8 @@ public final class Filename
 
 
     /**
-     * 返回对应编号的描述文件的名称，目前还没有用到。
+     * 返回对应编号的元信息增量日志的名称, 见ManifestLog
      */
-    @Deprecated
     public static String descriptorFileName(long number)
     {
         Preconditions.checkArgument(number >= 0, "number is negative");
@@ -147,61 +171,77 @@ public final class Filename
     }
 
     /**
-     * If filename is a leveldb file, store the type of the file in *type.
-     * The number encoded in the filename is stored in *number.  If the
-     * filename was successfully parsed, returns true.  Else return false.
+     * 解析存储目录中的文件名, 返回文件类型和编号, 不认识的文件返回null.
+     * 启动时据此删除元信息中没有的(崩溃时留下的)文件.
      */
     public static FileInfo parseFileName(File file)
     {
         // Owned filenames have the form:
-        //    dbname/CURRENT
-        //    dbname/LOCK
-        //    dbname/LOG
-        //    dbname/LOG.old
+        //    dbname/IS.RUNNING.LOCK
         //    dbname/MANIFEST-[0-9]+
-        //    dbname/[0-9]+.(log|sst|dbtmp)
+        //    dbname/meta.info(.tmp)
+        //    dbname/[0-9]+.(log|dbtmp)
+        //    dbname/propertyId/(st|un).[0-9]+.(table|buffer|change)
+        //    dbname/propertyId/(st|un).[0-9]+.buffer.[0-9]+
+        //    dbname/index/(value|aggr).[0-9]+.index
+        //    any of above + .tmp
         String fileName = file.getName();
-        if ("CURRENT".equals(fileName)) {
-            return new FileInfo(FileType.CURRENT);
-        }
-        else if ("LOCK".equals(fileName)) {
-            return new FileInfo(FileType.DB_LOCK);
-        }
-        else if ("LOG".equals(fileName)) {
-            return new FileInfo(FileType.INFO_LOG);
-        }
-        else if ("LOG.old".equals(fileName)) {
-            return new FileInfo(FileType.INFO_LOG);
-        }
-        else if (fileName.startsWith("MANIFEST-")) {
-            long fileNumber = Long.parseLong(removePrefix(fileName, "MANIFEST-"));
-            return new FileInfo(FileType.DESCRIPTOR, fileNumber);
-        }
-        else if (fileName.endsWith(".log")) {
-            long fileNumber = Long.parseLong(removeSuffix(fileName, ".log"));
-            return new FileInfo(FileType.LOG, fileNumber);
-        }
-        else if (fileName.endsWith(".st")) {
-            long fileNumber = Long.parseLong(removeSuffix(fileName, ".st"));
-            return new FileInfo(FileType.STABLEFILE, fileNumber);
-        }
-        else if( fileName.endsWith( ".un" ) )
-        {
-            long fileNumber = Long.parseLong( removeSuffix( fileName, ".un" ) );
-            return new FileInfo( FileType.UNSTABLEFILE, fileNumber );
-        }
-        else if (fileName.endsWith(".dbtmp")) {
-            long fileNumber = Long.parseLong(removeSuffix(fileName, ".dbtmp"));
-            return new FileInfo(FileType.TEMP, fileNumber);
+        try {
+            if ("CURRENT".equals(fileName)) {
+                return new FileInfo(FileType.CURRENT);
+            }
+            else if (lockFileName().equals(fileName)) {
+                return new FileInfo(FileType.DB_LOCK);
+            }
+            else if ("LOG".equals(fileName) || "LOG.old".equals(fileName)) {
+                return new FileInfo(FileType.INFO_LOG);
+            }
+            else if ("meta.info".equals(fileName) || "meta.info.tmp".equals(fileName)) {
+                return new FileInfo(FileType.META_INFO);
+            }
+            else if (fileName.endsWith(".tmp")) {
+                return new FileInfo(FileType.UNFINISHED);
+            }
+            else if (fileName.startsWith("MANIFEST-")) {
+                long fileNumber = Long.parseLong(removePrefix(fileName, "MANIFEST-"));
+                return new FileInfo(FileType.DESCRIPTOR, fileNumber);
+            }
+            else if (fileName.endsWith(".log")) {
+                long fileNumber = Long.parseLong(removeSuffix(fileName, ".log"));
+                return new FileInfo(FileType.LOG, fileNumber);
+            }
+            else if (fileName.endsWith(".dbtmp")) {
+                long fileNumber = Long.parseLong(removeSuffix(fileName, ".dbtmp"));
+                return new FileInfo(FileType.TEMP, fileNumber);
+            }
+            String[] parts = fileName.split("\\.");
+            if (parts.length == 3) {
+                long fileNumber = Long.parseLong(parts[1]);
+                boolean stable = "st".equals(parts[0]);
+                if (!stable && !"un".equals(parts[0])) {
+                    if ("index".equals(parts[2]) && "value".equals(parts[0])) return new FileInfo(FileType.VALUE_INDEX, fileNumber);
+                    if ("index".equals(parts[2]) && "aggr".equals(parts[0])) return new FileInfo(FileType.AGGR_INDEX, fileNumber);
+                    return null;
+                }
+                switch (parts[2]) {
+                case "table":
+                    return new FileInfo(stable ? FileType.STABLEFILE : FileType.UNSTABLEFILE, fileNumber);
+                case "buffer":
+                    return new FileInfo(stable ? FileType.STBUFFER : FileType.BUFFER, fileNumber);
+                case "change":
+                    return new FileInfo(stable ? FileType.STABLE_CHANGE_LOG : FileType.UNSTABLE_CHANGE_LOG, fileNumber);
+                default:
+                    return null;
+                }
+            }
+            else if (parts.length == 4 && "buffer".equals(parts[2]) && ("st".equals(parts[0]) || "un".equals(parts[0]))) {
+                Long.parseLong(parts[3]);
+                long fileNumber = Long.parseLong(parts[1]);
+                return new FileInfo("st".equals(parts[0]) ? FileType.STBUFFER_DELTA : FileType.BUFFER_DELTA, fileNumber);
+            }
         }
-        else if(fileName.endsWith( ".buf" ))
-        {
-            long fileNumber = Long.parseLong(removeSuffix(fileName, ".buf"));
-            return new FileInfo(FileType.BUFFER, fileNumber);
-        }else if(fileName.endsWith( ".stbuf" ))
-        {
-            long fileNumber = Long.parseLong(removeSuffix(fileName, ".stbuf"));
-            return new FileInfo(FileType.STBUFFER, fileNumber);
+        catch (NumberFormatException e) {
+            return null;
         }
         return null;
     }
@@ -7,7 +7,6 @@ import org.act.temporalProperty.util.*;
 import com.google.common.base.Preconditions;
 import org.act.temporalProperty.vo.EntityPropertyId;
 
-import java.util.Objects;
 
 import static org.act.temporalProperty.util.SizeOf.SIZE_OF_INT;
 import static org.act.temporalProperty.util.SizeOf.SIZE_OF_LONG;
@@ -19,11 +18,17 @@ import static org.act.temporalProperty.util.SizeOf.SIZE_OF_LONG;
  */
 public class InternalKey implements Comparable<InternalKey>
 {
-    private final EntityPropertyId id;
     /**
-     * 一个动态属性某个值的起始时间
+     * 属性id和点/边id保存为基本类型, EntityPropertyId只在调用getId()时才创建(或使用构造时传入的)
      */
-    private final TimePointL startTime;
+    private final int propertyId;
+    private final long entityId;
+    private EntityPropertyId id;
+    /**
+     * 一个动态属性某个值的起始时间. 保存为long, 只在调用getStartTime()时才创建TimePointL
+     */
+    private final long startTime;
+    private TimePointL startTimePoint;
     /**
      * 值类型：invalid or value or unknown
      */
@@ -42,16 +47,31 @@ public class InternalKey implements Comparable<InternalKey>
         Preconditions.checkNotNull(startTime);
 
         this.id = Id;
-        this.startTime = startTime;
+        this.propertyId = Id.getPropertyId();
+        this.entityId = Id.getEntityId();
+        this.startTime = startTime.val();
+        this.startTimePoint = startTime;
         this.valueType = valueType;
     }
 
+    public InternalKey(EntityPropertyId Id, long startTime, ValueType valueType)
+    {
+        this(Id.getPropertyId(), Id.getEntityId(), startTime, valueType);
+        this.id = Id;
+    }
+
     public InternalKey(int propertyId, long entityId, TimePointL startTime, ValueType valueType)
     {
-        Preconditions.checkNotNull(startTime);
+        this(propertyId, entityId, startTime.val(), valueType);
+        this.startTimePoint = startTime;
+    }
+
+    public InternalKey(int propertyId, long entityId, long startTime, ValueType valueType)
+    {
         Preconditions.checkNotNull(valueType);
 
-        this.id = new EntityPropertyId(entityId, propertyId);
+        this.propertyId = propertyId;
+        this.entityId = entityId;
         this.startTime = startTime;
         this.valueType = valueType;
     }
@@ -71,23 +91,54 @@ public class InternalKey implements Comparable<InternalKey>
      */
     public EntityPropertyId getId()
     {
-        return id;
+        EntityPropertyId result = id;
+        if (result == null) {
+            result = new EntityPropertyId(entityId, propertyId);
+            id = result;
+        }
+        return result;
     }
 
     public int getPropertyId()
     {
-        return id.getPropertyId();
+        return propertyId;
     }
 
     public long getEntityId()
     {
-        return id.getEntityId();
+        return entityId;
+    }
+
+    /**
+     * 与getId().equals(o.getId())相同, 但不创建对象
+     */
+    public boolean sameId(InternalKey o)
+    {
+        return propertyId == o.propertyId && entityId == o.entityId;
+    }
+
+    public boolean hasId(int propertyId, long entityId)
+    {
+        return this.propertyId == propertyId && this.entityId == entityId;
     }
     
     /**
      * @return 返回此key对应值的起始有效时间
      */
     public TimePointL getStartTime()
+    {
+        TimePointL t = startTimePoint;
+        if (t == null) {
+            t = TimePointL.of(startTime);
+            startTimePoint = t;
+        }
+        return t;
+    }
+
+    /**
+     * 与getStartTime().val()相同, 但不创建对象
+     */
+    public long getStartTimeLong()
     {
         return startTime;
     }
@@ -112,14 +163,14 @@ public class InternalKey implements Comparable<InternalKey>
             return false;
         }
         InternalKey that = (InternalKey) o;
-        return  id.equals(that.id) &&
+        return  sameId(that) &&
                 startTime == that.startTime &&
                 valueType == that.valueType;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, startTime, valueType);
+        return 31 * (31 * (31 * propertyId + Long.hashCode(entityId)) + Long.hashCode(startTime)) + valueType.hashCode();
     }
 
     @Override
@@ -137,29 +188,34 @@ public class InternalKey implements Comparable<InternalKey>
 
     @Override
     public int compareTo(InternalKey o) {
-        int result = this.getId().compareTo(o.getId());
+        int result = Integer.compare(propertyId, o.propertyId);
+        if( 0 == result ) {
+            result = Long.compare(entityId, o.entityId);
+        }
         if( 0 != result ) {
             return result;
         }else {
-            return this.getStartTime().compareTo(o.getStartTime());
+            return Long.compare(this.startTime, o.startTime);
         }
     }
 
     public Slice encode()
     {
         DynamicSliceOutput out = new DynamicSliceOutput(SIZE_OF_INT + 2*SIZE_OF_LONG);
-        getId().encode(out);
-        out.writeLong(SequenceNumber.packTimeAndValueType( startTime.valInt(), valueType ) );
+        out.writeInt(propertyId);
+        out.writeLong(entityId);
+        out.writeLong(SequenceNumber.packTimeAndValueType( startTime, valueType ) );
         return out.slice();
     }
 
     public static InternalKey decode(SliceInput in)
     {
-        EntityPropertyId id = EntityPropertyId.decode(in);
+        int propertyId = in.readInt();
+        long entityId = in.readLong();
         long tmp = in.readLong();
-        int time = SequenceNumber.unpackTime(tmp);
+        long time = SequenceNumber.unpackTime(tmp);
         ValueType valueType = SequenceNumber.unpackValueType(tmp);
-        return new InternalKey(id.getPropertyId(), id.getEntityId(), new TimePointL(time), valueType);
+        return new InternalKey(propertyId, entityId, time, valueType);
     }
 
     public static InternalKey decode(Slice in)
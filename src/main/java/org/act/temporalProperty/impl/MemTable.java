@@ -2,33 +2,50 @@ package org.act.temporalProperty.impl;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.AbstractIterator;
-import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
 import org.act.temporalProperty.exception.ValueUnknownException;
 import org.act.temporalProperty.helper.AbstractSearchableIterator;
 import org.act.temporalProperty.helper.DebugIterator;
+import org.act.temporalProperty.query.PrimitiveTemporalValue;
 import org.act.temporalProperty.query.TemporalValue;
 import org.act.temporalProperty.query.TimeInterval;
 import org.act.temporalProperty.query.TimeIntervalKey;
 import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.OffHeapArena;
 import org.act.temporalProperty.util.Slice;
 import org.act.temporalProperty.util.Slices;
 import org.act.temporalProperty.vo.EntityPropertyId;
 import org.act.temporalProperty.vo.TimeIntervalValueEntry;
-import org.apache.commons.lang3.tuple.Triple;
 
 import java.util.*;
 import java.util.Map.Entry;
 
 /**
  * Modified MemTable, which only expose time interval API.
+ * 每个(entity, property)的时态值保存为一个PrimitiveTemporalValue, approximateMemUsage()是各部分实际占用内存的估计值.
+ * 用MemTable(OffHeapArena)构造时值保存在堆外, 在MemTable合并到磁盘后用release()一次性释放.
  */
 public class MemTable
 {
-    private final TreeMap<EntityPropertyId, TemporalValue<Value>> table = new TreeMap<>(EntityPropertyId::compareTo);
+    // TreeMap.Entry + EntityPropertyId
+    private static final int ENTRY_OVERHEAD = 40 + 24;
+
+    private final TreeMap<EntityPropertyId, PrimitiveTemporalValue> table = new TreeMap<>(ID_ORDER);
+
+    private final OffHeapArena offHeap;
 
     private long approximateMemoryUsage = 0;
 
+    public MemTable()
+    {
+        this.offHeap = null;
+    }
+
+    public MemTable( OffHeapArena offHeap )
+    {
+        this.offHeap = offHeap;
+    }
+
     public boolean isEmpty()
     {
         return table.isEmpty();
@@ -36,21 +53,32 @@ public class MemTable
 
     public long approximateMemUsage()
     {
-        return approximateMemoryUsage;
+        return offHeap == null ? approximateMemoryUsage : approximateMemoryUsage + offHeap.allocatedBytes();
+    }
+
+    /**
+     * 释放堆外内存(如果有). 调用者需保证已经没有线程在读取该MemTable(包括separateByProperty()的结果).
+     */
+    public void release()
+    {
+        if ( offHeap != null )
+        {
+            offHeap.release();
+        }
     }
 
     public void addToNow( InternalKey key, Slice value )
     {
         Preconditions.checkArgument( key.getValueType() != ValueType.UNKNOWN );
         EntityPropertyId id = key.getId();
-        add( id, new TimeInterval( key.getStartTime() ), new Value( key.getValueType(), value ) );
+        add( id, new TimeInterval( key.getStartTime() ), key.getValueType(), value );
     }
 
     public void addInterval( InternalKey key, TimePointL endTime, Slice value )
     {
         Preconditions.checkNotNull( key );
         Preconditions.checkArgument( key.getStartTime().compareTo(endTime) <= 0 );
-        add( key.getId(), new TimeInterval( key.getStartTime(), endTime ), new Value( key.getValueType(), value ) );
+        add( key.getId(), new TimeInterval( key.getStartTime(), endTime ), key.getValueType(), value );
     }
 
     public void addInterval( TimeIntervalKey key, Slice value )
@@ -58,30 +86,37 @@ public class MemTable
         Preconditions.checkNotNull( key );
         ValueType valueType = key.getValueType();
         Preconditions.checkArgument( valueType!=ValueType.VALUE);
-        add( key.getId(), key, new Value( key.getValueType(), value ) );
+        add( key.getId(), key, key.getValueType(), value );
     }
 
-    private void add(EntityPropertyId id, TimeInterval interval, Value value )
+    private void add(EntityPropertyId id, TimeInterval interval, ValueType valueType, Slice value )
     {
-//        System.out.println(interval);
-        table.computeIfAbsent( id, ( i ) -> new TemporalValue<>() ).put( interval, value );
-        approximateMemoryUsage += (12 + 8 + value.val.length());
+        PrimitiveTemporalValue tv = table.get( id );
+        if ( tv == null )
+        {
+            tv = offHeap == null ? new PrimitiveTemporalValue() : new PrimitiveTemporalValue( offHeap );
+            table.put( id, tv );
+            approximateMemoryUsage += ENTRY_OVERHEAD + tv.memUsage();
+        }
+        long before = tv.memUsage();
+        tv.put( interval, valueType, value );
+        approximateMemoryUsage += tv.memUsage() - before;
     }
 
     public Slice get( InternalKey key ) throws ValueUnknownException
     {
         Preconditions.checkNotNull( key, "key is null" );
-        TemporalValue<Value> entityMap = table.get( key.getId() );
+        PrimitiveTemporalValue entityMap = table.get( key.getId() );
         if ( entityMap == null )
         {
             throw new ValueUnknownException(); //no entity
         }
-        Value entry = entityMap.get( key.getStartTime() );
-        if ( entry != null )
+        int i = entityMap.floorIndex( key.getStartTimeLong() );
+        if ( i >= 0 && !entityMap.isUnknown( i ) )
         {
-            if ( entry.valueType != ValueType.INVALID )
+            if ( entityMap.valueType( i ) != ValueType.INVALID )
             {
-                return entry.val;
+                return entityMap.value( i );
             }
             else //else: invalid value
             {
@@ -98,17 +133,18 @@ public class MemTable
     {
         Map<Integer,TemporalValue<Boolean>> result = new HashMap<>();
         StringBuilder sb = new StringBuilder();
-        for ( Entry<EntityPropertyId, TemporalValue<Value>> entityEntry : table.entrySet() )
+        for ( Entry<EntityPropertyId, PrimitiveTemporalValue> entityEntry : table.entrySet() )
         {
             int proId = entityEntry.getKey().getPropertyId();
             result.putIfAbsent( proId, new TemporalValue<>() );
             TemporalValue<Boolean> tMap = result.get( proId );
-            TemporalValue<Value> entityMap = entityEntry.getValue();
-            Iterator<Entry<TimeInterval,Value>> it = entityMap.intervalEntries();
-            while ( it.hasNext() )
+            PrimitiveTemporalValue entityMap = entityEntry.getValue();
+            for ( int i = 0; i < entityMap.size(); i++ )
             {
-                Entry<TimeInterval,Value> entry = it.next();
-                tMap.put( entry.getKey(), true );
+                if ( !entityMap.isUnknown( i ) )
+                {
+                    tMap.put( entityMap.interval( i ), true );
+                }
             }
         }
         sb.append( "propertyCount(" ).append( result.size() ).append( ")" );
@@ -126,6 +162,11 @@ public class MemTable
         return DebugIterator.wrap(new MemTableIterator(table));
     }
 
+    public EntryCursor cursor()
+    {
+        return new MemTableCursor(table);
+    }
+
     public PeekingIterator<Entry<TimeIntervalKey,Slice>> intervalEntryIterator()
     {
         return new IntervalIterator();
@@ -133,7 +174,7 @@ public class MemTable
 
     public boolean overlap( EntityPropertyId id, TimePointL startTime, TimePointL endTime )
     {
-        TemporalValue<Value> entityMap = table.get( id );
+        PrimitiveTemporalValue entityMap = table.get( id );
         if ( entityMap == null )
         {
             return false;
@@ -144,10 +185,21 @@ public class MemTable
         }
     }
 
+    /**
+     * 只含id的数据的堆内副本, 在持有锁时创建, 之后不持有锁也可以读取
+     */
+    public MemTable snapshot( EntityPropertyId id )
+    {
+        MemTable result = new MemTable();
+        PrimitiveTemporalValue tv = table.get( id );
+        if ( tv != null ) result.addEntry( id, tv.copy() );
+        return result;
+    }
+
     public Map<Integer,MemTable> separateByProperty()
     {
         Map<Integer,MemTable> result = new TreeMap<>();
-        for ( Entry<EntityPropertyId, TemporalValue<Value>> e : table.entrySet() )
+        for ( Entry<EntityPropertyId, PrimitiveTemporalValue> e : table.entrySet() )
         {
             int proId = e.getKey().getPropertyId();
             result.computeIfAbsent( proId, i -> new MemTable() ).addEntry( e.getKey(), e.getValue() );
@@ -155,18 +207,19 @@ public class MemTable
         return result;
     }
 
-    private void addEntry( EntityPropertyId key, TemporalValue<Value> value )
+    private void addEntry( EntityPropertyId key, PrimitiveTemporalValue value )
     {
         table.put( key, value );
+        approximateMemoryUsage += ENTRY_OVERHEAD + value.memUsage();
     }
 
     public boolean overlap(int proId, TimePointL startTime, TimePointL endTime )
     {
-        for ( Entry<EntityPropertyId,TemporalValue<Value>> entityEntry : table.entrySet() )
+        for ( Entry<EntityPropertyId,PrimitiveTemporalValue> entityEntry : table.entrySet() )
         {
             if ( entityEntry.getKey().getPropertyId() == proId )
             {
-                TemporalValue<Value> entityMap = entityEntry.getValue();
+                PrimitiveTemporalValue entityMap = entityEntry.getValue();
                 if ( entityMap.overlap( startTime, endTime ) )
                 {
                     return true;
@@ -176,35 +229,30 @@ public class MemTable
         return false;
     }
 
+    /**
+     * 把proIds中各属性在[start, end]内有值(非Unknown)的区间标记到tMap中
+     */
     public void coverTime( TemporalValue<Boolean> tMap, Set<Integer> proIds, TimePointL start, TimePointL end )
     {
-        for ( Entry<EntityPropertyId, TemporalValue<Value>> entityEntry : table.entrySet() )
+        for ( Entry<EntityPropertyId, PrimitiveTemporalValue> entityEntry : table.entrySet() )
         {
             if ( proIds.contains( entityEntry.getKey().getPropertyId() ) )
             {
-                TemporalValue<Value> entityMap = entityEntry.getValue();
-                Iterator<Entry<TimeInterval,Value>> it = entityMap.intervalEntries( start, end );
-                while ( it.hasNext() )
+                PrimitiveTemporalValue entityMap = entityEntry.getValue();
+                for ( int i = Math.max( 0, entityMap.floorIndex( start.val() ) ); i < entityMap.size() && entityMap.time( i ) <= end.val(); i++ )
                 {
-                    Entry<TimeInterval,Value> entry = it.next();
-                    tMap.put( entry.getKey(), true );
+                    if ( !entityMap.isUnknown( i ) )
+                    {
+                        TimeInterval interval = entityMap.interval( i );
+                        if ( interval.start().compareTo( start ) < 0 ) interval = interval.changeStart( start );
+                        if ( interval.end().compareTo( end ) > 0 ) interval = interval.changeEnd( end );
+                        tMap.put( interval, true );
+                    }
                 }
             }
         }
     }
 
-    private class Value
-    {
-        ValueType valueType;
-        Slice val;
-
-        Value(ValueType valueType, Slice val)
-        {
-            this.valueType = valueType;
-            this.val = val;
-        }
-    }
-
     /**
      * 迭代结果中不可能有连续的Unknown项。
      * 理由：1. 同一个TemporalValue中不可能操作后出现连续两个Unknown标记的数据项。（产生unknown的原因是这里的值原先是unknown状态（可能
@@ -213,39 +261,39 @@ public class MemTable
      */
     public static class MemTableIterator extends AbstractSearchableIterator
     {
-        private final TreeMap<EntityPropertyId, TemporalValue<Value>> table;
-        private PeekingIterator<Entry<EntityPropertyId, TemporalValue<Value>>> tPropIter;
-        private PeekingIterator<Triple<TimePointL,Boolean,Value>> tValIter;
+        private final TreeMap<EntityPropertyId, PrimitiveTemporalValue> table;
+        private Iterator<Entry<EntityPropertyId, PrimitiveTemporalValue>> tPropIter;
+        private PrimitiveTemporalValue tValue;
+        private int tValIndex;
         private EntityPropertyId curId;
+        private final Probe probe = new Probe();
 
-        MemTableIterator(TreeMap<EntityPropertyId, TemporalValue<Value>> table)
+        MemTableIterator(TreeMap<EntityPropertyId, PrimitiveTemporalValue> table)
         {
             this.table = table;
-            this.tPropIter = Iterators.peekingIterator( table.entrySet().iterator() );
+            this.tPropIter = table.entrySet().iterator();
         }
 
         @Override
         protected InternalEntry computeNext()
         {
-            while ( tValIter == null || !tValIter.hasNext() )
+            while ( tValue == null || tValIndex >= tValue.size() )
             {
                 if ( tPropIter.hasNext() ) {
-                    Entry<EntityPropertyId, TemporalValue<Value>> entry = tPropIter.next();
-                    TemporalValue<Value> tpValue = entry.getValue();
-                    tValIter = tpValue.pointEntries();
+                    Entry<EntityPropertyId, PrimitiveTemporalValue> entry = tPropIter.next();
+                    tValue = entry.getValue();
+                    tValIndex = 0;
                     curId = entry.getKey();
                 } else {
                     return endOfData();
                 }
             }
-            Triple<TimePointL,Boolean,Value> entry = tValIter.next();
-            Value v = entry.getRight();
-            TimePointL startTime = entry.getLeft();
-            Boolean isUnknown = entry.getMiddle();
-            if ( isUnknown ) {
+            int i = tValIndex++;
+            long startTime = tValue.time( i );
+            if ( tValue.isUnknown( i ) ) {
                 return new InternalEntry( new InternalKey( curId, startTime, ValueType.UNKNOWN ), Slices.EMPTY_SLICE );
             } else {
-                return new InternalEntry( new InternalKey( curId, startTime, v.valueType ), v.val );
+                return new InternalEntry( new InternalKey( curId, startTime, tValue.valueType( i ) ), tValue.value( i ) );
             }
         }
 
@@ -253,8 +301,8 @@ public class MemTable
         public void seekToFirst()
         {
             super.resetState();
-            tPropIter = Iterators.peekingIterator( table.entrySet().iterator() );
-            tValIter = null;
+            tPropIter = table.entrySet().iterator();
+            tValue = null;
             curId = null;
         }
 
@@ -262,14 +310,17 @@ public class MemTable
         public boolean seekFloor(InternalKey targetKey )
         {
             super.resetState();
-            Entry<EntityPropertyId, TemporalValue<Value>> result = table.floorEntry(targetKey.getId());
+            Entry<EntityPropertyId, PrimitiveTemporalValue> result = probe.set(targetKey.getPropertyId(), targetKey.getEntityId()).floorEntry(table);
             if(result != null){
-                tPropIter = Iterators.peekingIterator( table.tailMap(result.getKey(), true).entrySet().iterator() );
-                tValIter = result.getValue().pointEntries(targetKey.getStartTime());
+                tPropIter = table.tailMap(result.getKey(), false).entrySet().iterator();
+                tValue = result.getValue();
+                tValIndex = tValue.floorIndex( targetKey.getStartTimeLong() );
+                if ( tValIndex < 0 ) tValIndex = 0; // no point before target time: start from the first point of this id
                 curId = result.getKey();
                 return super.seekFloor(targetKey);
             }else{
-                tPropIter = Iterators.peekingIterator( table.tailMap(targetKey.getId(), true).entrySet().iterator() );
+                tPropIter = table.entrySet().iterator(); // every id is greater than target
+                tValue = null;
                 return false;
             }
         }
@@ -280,39 +331,220 @@ public class MemTable
         }
     }
 
+    /**
+     * MemTableIterator的游标版本, entry本身不创建对象, value直接指向PrimitiveTemporalValue的arena(堆外时为一个副本).
+     * 与MemTableIterator不同, seekFloor时若目标entity在目标时间之前没有数据, 则从该entity的第一个时间点开始.
+     */
+    public static class MemTableCursor implements EntryCursor
+    {
+        private final TreeMap<EntityPropertyId, PrimitiveTemporalValue> table;
+        private Iterator<Entry<EntityPropertyId, PrimitiveTemporalValue>> tPropIter;
+        private PrimitiveTemporalValue tValue;
+        private int next;
+        private int cur;
+        private EntityPropertyId curId;
+        private Slice valueBase;
+        private int valueOffset;
+        private int valueLength;
+        private final Probe probe = new Probe();
+
+        MemTableCursor(TreeMap<EntityPropertyId, PrimitiveTemporalValue> table)
+        {
+            this.table = table;
+            seekToFirst();
+        }
+
+        @Override
+        public void seekToFirst()
+        {
+            tPropIter = table.entrySet().iterator();
+            tValue = null;
+        }
+
+        @Override
+        public void seekFloor( int propertyId, long entityId, long time )
+        {
+            Entry<EntityPropertyId, PrimitiveTemporalValue> ceiling = probe.set( propertyId, entityId ).ceilingEntry( table );
+            tValue = null;
+            if ( ceiling == null ) {
+                tPropIter = Collections.emptyIterator();
+            } else if ( ID_ORDER.compare( ceiling.getKey(), probe ) == 0 ) {
+                tPropIter = table.tailMap( ceiling.getKey(), false ).entrySet().iterator();
+                tValue = ceiling.getValue();
+                next = Math.max( 0, tValue.floorIndex( time ) );
+                curId = ceiling.getKey();
+            } else {
+                tPropIter = table.tailMap( ceiling.getKey(), true ).entrySet().iterator();
+            }
+        }
+
+        @Override
+        public boolean advance()
+        {
+            while ( tValue == null || next >= tValue.size() )
+            {
+                if ( tPropIter.hasNext() ) {
+                    Entry<EntityPropertyId, PrimitiveTemporalValue> entry = tPropIter.next();
+                    tValue = entry.getValue();
+                    next = 0;
+                    curId = entry.getKey();
+                } else {
+                    tValue = null;
+                    return false;
+                }
+            }
+            cur = next++;
+            if ( tValue.isUnknown( cur ) ) {
+                valueBase = Slices.EMPTY_SLICE;
+                valueOffset = 0;
+                valueLength = 0;
+            } else if ( tValue.isOffHeap() ) {
+                valueBase = tValue.value( cur );
+                valueOffset = 0;
+                valueLength = valueBase.length();
+            } else {
+                valueBase = tValue.valueBase();
+                valueOffset = tValue.valueOffset( cur );
+                valueLength = tValue.valueLength( cur );
+            }
+            return true;
+        }
+
+        @Override
+        public int propertyId()
+        {
+            return curId.getPropertyId();
+        }
+
+        @Override
+        public long entityId()
+        {
+            return curId.getEntityId();
+        }
+
+        @Override
+        public long startTimeLong()
+        {
+            return tValue.time( cur );
+        }
+
+        @Override
+        public ValueType valueType()
+        {
+            return tValue.isUnknown( cur ) ? ValueType.UNKNOWN : tValue.valueType( cur );
+        }
+
+        @Override
+        public Slice valueBase()
+        {
+            return valueBase;
+        }
+
+        @Override
+        public int valueOffset()
+        {
+            return valueOffset;
+        }
+
+        @Override
+        public int valueLength()
+        {
+            return valueLength;
+        }
+
+        @Override
+        public String toString() {
+            return "MemTableCursor{}";
+        }
+    }
+
     private class IntervalIterator extends AbstractIterator<Entry<TimeIntervalKey,Slice>> implements PeekingIterator<Entry<TimeIntervalKey,Slice>>
     {
-        private PeekingIterator<Entry<EntityPropertyId, TemporalValue<Value>>> tpIter;
-        private PeekingIterator<Entry<TimeInterval,Value>> tvIntIter;
+        private final Iterator<Entry<EntityPropertyId, PrimitiveTemporalValue>> tpIter;
+        private PrimitiveTemporalValue tValue;
+        private int tValIndex;
         private EntityPropertyId curId;
 
         private IntervalIterator()
         {
-            tpIter = Iterators.peekingIterator( table.entrySet().iterator() );
+            tpIter = table.entrySet().iterator();
         }
 
         @Override
         protected Entry<TimeIntervalKey,Slice> computeNext()
         {
-            while ( tvIntIter == null || !tvIntIter.hasNext() )
+            while ( true )
             {
-                if ( tpIter.hasNext() )
+                while ( tValue == null || tValIndex >= tValue.size() )
                 {
-                    Entry<EntityPropertyId, TemporalValue<Value>> entry = tpIter.next();
-                    tvIntIter = entry.getValue().intervalEntries();
-                    curId = entry.getKey();
+                    if ( tpIter.hasNext() )
+                    {
+                        Entry<EntityPropertyId, PrimitiveTemporalValue> entry = tpIter.next();
+                        tValue = entry.getValue();
+                        tValIndex = 0;
+                        curId = entry.getKey();
+                    }
+                    else
+                    {
+                        return endOfData();
+                    }
                 }
-                else
+                int i = tValIndex++;
+                if ( !tValue.isUnknown( i ) )
                 {
-                    return endOfData();
+                    TimeInterval tInt = tValue.interval( i );
+                    TimeIntervalKey intervalKey = new TimeIntervalKey( curId, tInt.start(), tInt.end(), tValue.valueType( i ) );
+                    return new TimeIntervalValueEntry( intervalKey, tValue.value( i ) );
                 }
             }
-            Entry<TimeInterval,Value> entry = tvIntIter.next();
-            TimeInterval tInt = entry.getKey();
-            Value value = entry.getValue();
-            TimeIntervalKey intervalKey = new TimeIntervalKey( curId, tInt.start(), tInt.end(), value.valueType);
-            return new TimeIntervalValueEntry( intervalKey, value.val );
         }
     }
 
+
+    /**
+     * table的顺序, 与EntityPropertyId.compareTo相同. 除EntityPropertyId外还可以比较Probe, 查找时不需要创建EntityPropertyId.
+     */
+    private static final Comparator<Object> ID_ORDER = ( a, b ) -> {
+        int result = Integer.compare( propertyIdOf( a ), propertyIdOf( b ) );
+        return result != 0 ? result : Long.compare( entityIdOf( a ), entityIdOf( b ) );
+    };
+
+    private static int propertyIdOf( Object id )
+    {
+        return id instanceof Probe ? ((Probe) id).propertyId : ((EntityPropertyId) id).getPropertyId();
+    }
+
+    private static long entityIdOf( Object id )
+    {
+        return id instanceof Probe ? ((Probe) id).entityId : ((EntityPropertyId) id).getEntityId();
+    }
+
+    /**
+     * 查找table时使用的可重用key, 只能通过ID_ORDER与table中的key比较, 不会被map或其视图(tailMap等)保存.
+     */
+    private static final class Probe
+    {
+        private int propertyId;
+        private long entityId;
+
+        Probe set( int propertyId, long entityId )
+        {
+            this.propertyId = propertyId;
+            this.entityId = entityId;
+            return this;
+        }
+
+        // 以raw type调用, table的comparator是ID_ORDER, 所以可以传入Probe
+        @SuppressWarnings( { "unchecked", "rawtypes" } )
+        Entry<EntityPropertyId, PrimitiveTemporalValue> floorEntry( TreeMap<EntityPropertyId, PrimitiveTemporalValue> table )
+        {
+            return ((NavigableMap) table).floorEntry( this );
+        }
+
+        @SuppressWarnings( { "unchecked", "rawtypes" } )
+        Entry<EntityPropertyId, PrimitiveTemporalValue> ceilingEntry( TreeMap<EntityPropertyId, PrimitiveTemporalValue> table )
+        {
+            return ((NavigableMap) table).ceilingEntry( this );
+        }
+    }
 }
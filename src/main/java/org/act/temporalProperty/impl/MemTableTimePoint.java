@@ -123,7 +123,7 @@ public class MemTableTimePoint implements SeekingIterable<Slice, Slice>
             return null;
         }
         InternalKey ansKey = InternalKey.decode( entry.getKey() );
-        if( !ansKey.getId().equals( key.getId() ) )
+        if( !ansKey.sameId( key ) )
             return null;
         return entry.getValue();
     }
@@ -20,6 +20,12 @@ public class Options
     private boolean paranoidChecks;
     private long cacheSize;
     private float blockEmptyRatio = 1.0f;
+    private boolean offHeapMemTable = false;
+    private long targetFileSize = 1L << 30;
+    private boolean changeLog = false;
+    private boolean lazyBufferLoad = false;
+    private int bufferLoadThreads = Runtime.getRuntime().availableProcessors();
+    private int indexTableCacheSize = 100;
 
     static void checkArgNotNull(Object value, String name)
     {
@@ -66,6 +72,90 @@ public class Options
         return this;
     }
 
+    /**
+     * MemTable中的值是否保存在堆外
+     */
+    public boolean offHeapMemTable()
+    {
+        return offHeapMemTable;
+    }
+
+    public Options offHeapMemTable(boolean offHeapMemTable)
+    {
+        this.offHeapMemTable = offHeapMemTable;
+        return this;
+    }
+
+    /**
+     * 合并生成StableFile时单个文件的目标大小, 预计超过此大小时输出按时间分为多个StableFile
+     */
+    public long targetFileSize()
+    {
+        return targetFileSize;
+    }
+
+    public Options targetFileSize(long targetFileSize)
+    {
+        this.targetFileSize = targetFileSize;
+        return this;
+    }
+
+    /**
+     * 合并时是否为每个数据文件生成按时间排序的变更日志, 用于加速changedEntities查询
+     */
+    public boolean changeLog()
+    {
+        return changeLog;
+    }
+
+    public Options changeLog(boolean changeLog)
+    {
+        this.changeLog = changeLog;
+        return this;
+    }
+
+    /**
+     * 启动时不等待Buffer回放完成: 各属性的Buffer在后台加载, 加载完成之前被访问的Buffer在访问时加载
+     */
+    public boolean lazyBufferLoad()
+    {
+        return lazyBufferLoad;
+    }
+
+    public Options lazyBufferLoad(boolean lazyBufferLoad)
+    {
+        this.lazyBufferLoad = lazyBufferLoad;
+        return this;
+    }
+
+    /**
+     * 启动时并行回放各属性Buffer的线程数
+     */
+    public int bufferLoadThreads()
+    {
+        return bufferLoadThreads;
+    }
+
+    public Options bufferLoadThreads(int bufferLoadThreads)
+    {
+        this.bufferLoadThreads = bufferLoadThreads;
+        return this;
+    }
+
+    /**
+     * 同时保持打开(已映射并解析了index block)的索引文件数
+     */
+    public int indexTableCacheSize()
+    {
+        return indexTableCacheSize;
+    }
+
+    public Options indexTableCacheSize(int indexTableCacheSize)
+    {
+        this.indexTableCacheSize = indexTableCacheSize;
+        return this;
+    }
+
     public int maxOpenFiles()
     {
         return maxOpenFiles;
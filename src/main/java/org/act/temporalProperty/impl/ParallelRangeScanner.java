@@ -0,0 +1,125 @@
+package org.act.temporalProperty.impl;
+
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.query.range.CombinableRangeQueryCallBack;
+import org.act.temporalProperty.query.range.InternalEntryRangeQueryCallBack;
+import org.act.temporalProperty.vo.EntityPropertyId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 并行地聚合时间段查询所涉及的各个磁盘文件(及其Buffer), 只用于{@link CombinableRangeQueryCallBack}.
+ * stable/unstable文件负责的时间段互不相交, 所以每个文件可以在单独的线程中边读边聚合, 不需要缓存entry, 最后按时间顺序合并各段结果.
+ * 所有文件中只有最后一个不晚于查询起始时间的entry(即真正的floor entry)参与聚合, 更早的entry被忽略.
+ */
+public class ParallelRangeScanner
+{
+    /**
+     * 至少涉及这么多个文件时才并行聚合, 否则直接顺序读取更快.
+     */
+    public static final int MIN_PARALLEL_SEGMENTS = 2;
+
+    private final ForkJoinPool pool;
+
+    public ParallelRangeScanner( ForkJoinPool pool )
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * 一个文件在查询中负责的时间段[start, end]
+     */
+    static final class Segment
+    {
+        final SearchableIterator iterator;
+        final TimePointL start;
+        TimePointL end;
+
+        Segment( SearchableIterator iterator, TimePointL start )
+        {
+            this.iterator = iterator;
+            this.start = start;
+        }
+    }
+
+    /**
+     * 把各文件定位到查询起始时间, 找出含有查询区间内数据的文件及其负责的时间段. 只读取每个文件的第一个entry.
+     * @param iterators 每个文件的iterator, 必须按文件时间先后排列
+     * @return 按时间先后排列, 覆盖整个[start, end]; 查询区间内没有任何数据时为空
+     */
+    static List<Segment> plan( EntityPropertyId id, List<SearchableIterator> iterators, TimePointL start, TimePointL end )
+    {
+        List<Segment> result = new ArrayList<>();
+        InternalKey searchKey = new InternalKey( id, start );
+        for ( SearchableIterator iterator : iterators )
+        {
+            iterator.seekFloor( searchKey );
+            if ( !iterator.hasNext() ) continue;
+            TimePointL first = iterator.peek().getKey().getStartTime();
+            if ( first.compareTo( start ) <= 0 )
+            {
+                // 之前的文件中的floor entry都更早, 作废
+                result.clear();
+                result.add( new Segment( iterator, start ) );
+            }
+            else if ( first.compareTo( end ) <= 0 )
+            {
+                result.add( new Segment( iterator, result.isEmpty() ? start : first ) );
+            }
+        }
+        for ( int i = 0; i < result.size(); i++ )
+        {
+            result.get( i ).end = (i == result.size() - 1) ? end : result.get( i + 1 ).start.pre();
+        }
+        return result;
+    }
+
+    /**
+     * 对每一段使用callback.segment()生成的回调并行聚合, 然后合并结果.
+     * @param segments plan()的返回值, 不能为空
+     */
+    public Object aggregate( CombinableRangeQueryCallBack callback, String valueType, List<Segment> segments )
+    {
+        List<ForkJoinTask<Object>> tasks = new ArrayList<>( segments.size() );
+        for ( Segment segment : segments )
+        {
+            InternalEntryRangeQueryCallBack partial = callback.segment( segment.start, segment.end );
+            partial.setValueType( valueType );
+            tasks.add( pool.submit( () -> feed( partial, segment ) ) );
+        }
+        List<Object> partials = new ArrayList<>( tasks.size() );
+        for ( ForkJoinTask<Object> task : tasks )
+        {
+            partials.add( task.join() );
+        }
+        return callback.combine( partials );
+    }
+
+    private static Object feed( InternalEntryRangeQueryCallBack callback, Segment segment )
+    {
+        SearchableIterator iterator = segment.iterator;
+        while ( iterator.hasNext() )
+        {
+            InternalEntry entry = iterator.next();
+            InternalKey key = entry.getKey();
+            if ( key.getStartTime().compareTo( segment.end ) > 0 ) break;
+            ValueType valueType = key.getValueType() == ValueType.UNKNOWN ? ValueType.INVALID : key.getValueType();
+            if ( key.getStartTime().compareTo( segment.start ) < 0 )
+            {
+                callback.onNewEntry( new InternalEntry( new InternalKey( key.getPropertyId(), key.getEntityId(), segment.start, valueType ), entry.getValue() ) );
+            }
+            else if ( valueType != key.getValueType() )
+            {
+                callback.onNewEntry( new InternalEntry( new InternalKey( key.getPropertyId(), key.getEntityId(), key.getStartTimeLong(), valueType ), entry.getValue() ) );
+            }
+            else
+            {
+                callback.onNewEntry( entry );
+            }
+        }
+        return callback.onReturn();
+    }
+}
@@ -52,14 +52,20 @@ public final class SequenceNumber
      *  NEW FORMAT BY SJH (2018.5)
      * | ValueType | time |
      *      3bit    61bits
+     * time是61位的有符号数(TimePointL.Init为-2), 早期只写入int范围内的时间, 格式相同, 所以旧文件可以直接读取.
      */
-    public static long packTimeAndValueType( int time, ValueType valueType )
+    public static final long MAX_TIME = (1L << 60) - 1;
+    public static final long MIN_TIME = -(1L << 60);
+    private static final long TIME_MASK = 0x1FFF_FFFF_FFFF_FFFFL;
+
+    public static long packTimeAndValueType( long time, ValueType valueType )
     {
         Preconditions.checkNotNull(valueType, "valueType is null");
+        Preconditions.checkArgument( time >= MIN_TIME && time <= MAX_TIME, "time %s out of range", time );
         long tmp = 0L;
         tmp = tmp | valueType.getPersistentId();
         tmp = tmp << 61;
-        tmp = tmp | time;
+        tmp = tmp | (time & TIME_MASK);
         return tmp;
     }
 
@@ -68,8 +74,8 @@ public final class SequenceNumber
         return ValueType.getValueTypeByPersistentId( (int) (num >>> 61) );
     }
 
-    public static int unpackTime( long num )
+    public static long unpackTime( long num )
     {
-        return (int) (num & 0x1FFF_FFFF_FFFF_FFFFL);
+        return (num << 3) >> 3; // sign extend the 61bit time
     }
 }
@@ -4,16 +4,23 @@ import com.google.common.collect.PeekingIterator;
 import org.act.temporalProperty.TemporalPropertyStore;
 import org.act.temporalProperty.exception.TPSNHException;
 import org.act.temporalProperty.helper.EPAppendIterator;
+import org.act.temporalProperty.helper.EPEntryCursor;
+import org.act.temporalProperty.helper.EPEntryIterator;
+import org.act.temporalProperty.helper.ExpiredEntryFilterIterator;
 import org.act.temporalProperty.index.IndexStore;
 import org.act.temporalProperty.index.IndexUpdater;
 import org.act.temporalProperty.meta.PropertyMetaData;
 import org.act.temporalProperty.query.TimeIntervalKey;
 import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.table.ChangeLog;
+import org.act.temporalProperty.table.TwoLevelMergeCursor;
 import org.act.temporalProperty.table.TwoLevelMergeIterator;
 import org.act.temporalProperty.table.MergeProcess.MergeTask;
+import org.act.temporalProperty.table.MMapTable;
 import org.act.temporalProperty.table.Table;
 import org.act.temporalProperty.table.TableBuilder;
 import org.act.temporalProperty.table.TableComparator;
+import org.act.temporalProperty.util.Closeables;
 import org.act.temporalProperty.util.FileUtils;
 import org.act.temporalProperty.util.Slice;
 import org.act.temporalProperty.vo.EntityPropertyId;
@@ -26,8 +33,11 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 
@@ -41,6 +51,8 @@ public class SinglePropertyStore
     private File proDir;
     private Logger log = LoggerFactory.getLogger( TemporalPropertyStoreImpl.class );
     private TableCache cache;
+    // merge()中超过大小的Buffer, 等待MergeProcess取走并在后台写回文件. 只在合并线程中访问
+    private final List<BufferRewriteTask> rewriteTasks = new ArrayList<>();
 
     /**
      * 实例化方法
@@ -52,14 +64,15 @@ public class SinglePropertyStore
         this.proDir = new File(dbDir, propertyMeta.getPropertyId().toString());
         if(!proDir.exists() && !proDir.mkdir()) throw new IOException("create property dir failed: "+proDir.getAbsolutePath());
         this.cache = cache;
-        this.loadBuffers();
+        this.initBuffers();
     }
 
-    private void loadBuffers() throws IOException {
+    // 只检查并记录Buffer的备份文件, 回放见SystemMeta.initStore和FileBuffer.load()
+    private void initBuffers() throws IOException {
         for(FileBuffer buffer : propertyMeta.getUnstableBuffers().values()){
             File bufferFile = new File(this.proDir, Filename.unbufferFileName(buffer.getNumber()));
             if (bufferFile.exists()) {
-                buffer.init(bufferFile);
+                buffer.init(bufferFile, cache);
             }else{
                 throw new IOException("buffer file not found: "+bufferFile.getAbsolutePath());
             }
@@ -67,7 +80,7 @@ public class SinglePropertyStore
         for(FileBuffer buffer : propertyMeta.getStableBuffers().values()){
             File bufferFile = new File(this.proDir, Filename.stbufferFileName(buffer.getNumber()));
             if (bufferFile.exists()) {
-                buffer.init(bufferFile);
+                buffer.init(bufferFile, cache);
             }else{
                 throw new IOException("buffer file not found: "+bufferFile.getAbsolutePath());
             }
@@ -97,37 +110,147 @@ public class SinglePropertyStore
     }
 
     EPAppendIterator getRangeValueIter(EntityPropertyId id, TimePointL startTime, TimePointL endTime)
+    {
+        EPAppendIterator iterator = new EPAppendIterator(id);
+        for(SearchableIterator fileIterator : getRangeValueSegments(id, startTime, endTime)){
+            iterator.append(fileIterator);
+        }
+        return iterator;
+    }
+
+    /**
+     * 时间段查询涉及的每个磁盘文件(已与其Buffer合并)的iterator, 按文件负责的时间先后排列.
+     * 各文件负责的时间段互不相交, 因此可以分别(并行)读取后按顺序拼接.
+     */
+    List<SearchableIterator> getRangeValueSegments(EntityPropertyId id, TimePointL startTime, TimePointL endTime)
+    {
+        return rangeValueSegments(id, startTime, endTime, false);
+    }
+
+    /**
+     * 同getRangeValueSegments(), 但Buffer中内存里的数据是副本, 返回后不持有锁也可以读取(见FileBuffer.snapshotIterator)
+     */
+    List<SearchableIterator> getRangeValueSnapshot(EntityPropertyId id, TimePointL startTime, TimePointL endTime)
+    {
+        return rangeValueSegments(id, startTime, endTime, true);
+    }
+
+    private List<SearchableIterator> rangeValueSegments(EntityPropertyId id, TimePointL startTime, TimePointL endTime, boolean snapshot)
     {
         List<FileMetaData> stList = propertyMeta.overlappedStable(startTime, endTime);
         List<FileMetaData> unList = propertyMeta.unFloorTime(endTime);
         stList.sort(Comparator.comparing(FileMetaData::getSmallest));
         unList.sort(Comparator.comparing(FileMetaData::getSmallest));
 
-        EPAppendIterator iterator = new EPAppendIterator(id);
+        List<SearchableIterator> segments = new ArrayList<>(stList.size() + unList.size());
         for(FileMetaData meta : stList){
             SearchableIterator fileIterator = this.cache.newIterator(Filename.stPath(proDir, meta.getNumber()));
             FileBuffer buffer = propertyMeta.getStableBuffers( meta.getNumber() );
             if( null != buffer ){
-                iterator.append(TwoLevelMergeIterator.merge(buffer.iterator(), fileIterator));
-            }else {
-                iterator.append(fileIterator);
+                fileIterator = TwoLevelMergeIterator.merge(snapshot ? buffer.snapshotIterator(id) : buffer.iterator(), fileIterator);
             }
+            segments.add(new EPEntryIterator(id, fileIterator));
         }
         for( FileMetaData meta : unList ){
             SearchableIterator fileIterator = this.cache.newIterator(Filename.unPath(proDir, meta.getNumber()));
             FileBuffer buffer = propertyMeta.getUnstableBuffers( meta.getNumber() );
             if( null != buffer ){
-                iterator.append(TwoLevelMergeIterator.merge(buffer.iterator(), fileIterator));
-            }else {
-                iterator.append(fileIterator);
+                fileIterator = TwoLevelMergeIterator.merge(snapshot ? buffer.snapshotIterator(id) : buffer.iterator(), fileIterator);
             }
+            segments.add(new EPEntryIterator(id, fileIterator));
+        }
+        return segments;
+    }
+
+    /**
+     * getRangeValueSegments()的游标版本
+     */
+    List<EntryCursor> getRangeValueCursors(EntityPropertyId id, TimePointL startTime, TimePointL endTime)
+    {
+        List<FileMetaData> stList = propertyMeta.overlappedStable(startTime, endTime);
+        List<FileMetaData> unList = propertyMeta.unFloorTime(endTime);
+        stList.sort(Comparator.comparing(FileMetaData::getSmallest));
+        unList.sort(Comparator.comparing(FileMetaData::getSmallest));
+
+        List<EntryCursor> segments = new ArrayList<>(stList.size() + unList.size());
+        for(FileMetaData meta : stList){
+            EntryCursor fileCursor = this.cache.getTable(Filename.stPath(proDir, meta.getNumber())).cursor();
+            FileBuffer buffer = propertyMeta.getStableBuffers( meta.getNumber() );
+            if( null != buffer ){
+                fileCursor = new TwoLevelMergeCursor(buffer.cursor(), fileCursor);
+            }
+            segments.add(new EPEntryCursor(id, fileCursor));
+        }
+        for( FileMetaData meta : unList ){
+            EntryCursor fileCursor = this.cache.getTable(Filename.unPath(proDir, meta.getNumber())).cursor();
+            FileBuffer buffer = propertyMeta.getUnstableBuffers( meta.getNumber() );
+            if( null != buffer ){
+                fileCursor = new TwoLevelMergeCursor(buffer.cursor(), fileCursor);
+            }
+            segments.add(new EPEntryCursor(id, fileCursor));
+        }
+        return segments;
+    }
+
+    /**
+     * 时间点time上所有entity的值所在的磁盘文件(已与其Buffer合并)的游标, 与getPointValue查找的文件相同:
+     * time晚于所有stable文件时, 为起始时间不晚于time的unstable文件以及最新的stable文件, 否则为包含time的stable文件.
+     */
+    List<EntryCursor> getSnapshotCursors(TimePointL time)
+    {
+        List<EntryCursor> cursors = new ArrayList<>();
+        boolean hasStable = propertyMeta.hasStable();
+        if(!hasStable || time.compareTo(propertyMeta.stMaxTime()) > 0){
+            for(FileMetaData meta : propertyMeta.unFloorTime(time)){
+                EntryCursor fileCursor = this.cache.getTable(Filename.unPath(proDir, meta.getNumber())).cursor();
+                FileBuffer buffer = propertyMeta.getUnstableBuffers( meta.getNumber() );
+                cursors.add( null == buffer ? fileCursor : new TwoLevelMergeCursor(buffer.cursor(), fileCursor) );
+            }
+        }
+        if(hasStable){
+            FileMetaData meta = time.compareTo(propertyMeta.stMaxTime()) > 0 ? propertyMeta.latestStableMeta() : propertyMeta.getStContainsTime(time);
+            EntryCursor fileCursor = this.cache.getTable(Filename.stPath(proDir, meta.getNumber())).cursor();
+            FileBuffer buffer = propertyMeta.getStableBuffers( meta.getNumber() );
+            cursors.add( null == buffer ? fileCursor : new TwoLevelMergeCursor(buffer.cursor(), fileCursor) );
+        }
+        return cursors;
+    }
+
+    /**
+     * 把[from, to]内有变化的entity加入out. 有变更日志的文件只读取日志, 其余文件和所有Buffer需要扫描.
+     */
+    void changedEntities(TimePointL from, TimePointL to, ChangeLog.IdCollector out) throws IOException
+    {
+        int proId = propertyMeta.getPropertyId();
+        if(propertyMeta.hasStable()) {
+            for (FileMetaData meta : propertyMeta.overlappedStable(from, to)) {
+                fileChanges(meta.getNumber(), true, from.val(), to.val(), out);
+                FileBuffer buffer = propertyMeta.getStableBuffers(meta.getNumber());
+                if (null != buffer) ChangeLog.scan(buffer.cursor(), proId, from.val(), to.val(), out);
+            }
+        }
+        for (FileMetaData meta : propertyMeta.unFloorTime(to)) {
+            fileChanges(meta.getNumber(), false, from.val(), to.val(), out);
+            FileBuffer buffer = propertyMeta.getUnstableBuffers(meta.getNumber());
+            if (null != buffer) ChangeLog.scan(buffer.cursor(), proId, from.val(), to.val(), out);
+        }
+    }
+
+    private void fileChanges(long number, boolean stable, long from, long to, ChangeLog.IdCollector out) throws IOException
+    {
+        File changeLog = new File(proDir, Filename.changeLogFileName(number, stable));
+        if (changeLog.exists()) {
+            ChangeLog.read(changeLog, from, to, out);
+        } else {
+            String path = stable ? Filename.stPath(proDir, number) : Filename.unPath(proDir, number);
+            ChangeLog.scan(this.cache.getTable(path).cursor(), propertyMeta.getPropertyId(), from, to, out);
         }
-        return iterator;
     }
 
     private Slice unPointValue(InternalKey searchKey) {
         List<FileMetaData> checkList = propertyMeta.unFloorTime(searchKey.getStartTime());
-        checkList.sort(Comparator.comparing(FileMetaData::getSmallest));
+        // 从最新的文件开始找: 较早文件中该entity的最后一项在较晚文件的时间范围内已不再有效
+        checkList.sort(Comparator.comparing(FileMetaData::getSmallest).reversed());
         for (FileMetaData meta : checkList) {
             SearchableIterator iterator = this.cache.newIterator(Filename.unPath(proDir, meta.getNumber()));
             FileBuffer buffer = propertyMeta.getUnstableBuffers(meta.getNumber());
@@ -137,9 +260,9 @@ public class SinglePropertyStore
             if(iterator.seekFloor(searchKey)){
                 Entry<InternalKey, Slice> entry = iterator.next();
                 InternalKey resultKey = entry.getKey();
-                if (    resultKey.getId().equals(searchKey.getId()) && // same entity id && same property id.
+                if (    resultKey.sameId(searchKey) && // same entity id && same property id.
 //                        resultKey.getValueType().isValue() && // this is not correct, value can be invalid.-- But it is irrelevant, the result is same.
-                        resultKey.getStartTime().compareTo(searchKey.getStartTime())<=0) {
+                        resultKey.getStartTimeLong()<=searchKey.getStartTimeLong()) {
                     return entry.getValue();
                 } // else continue search others
             } // else (searchKey smaller than iterator.firstKey) continue
@@ -162,9 +285,9 @@ public class SinglePropertyStore
         if(iterator.seekFloor(searchKey)){
             Entry<InternalKey, Slice> entry = iterator.next();
             InternalKey resultKey = entry.getKey();
-            if (    resultKey.getId().equals(searchKey.getId()) &&
+            if (    resultKey.sameId(searchKey) &&
                     resultKey.getValueType().isValue() && // this is not correct, value can be invalid.
-                    resultKey.getStartTime().compareTo(searchKey.getStartTime())<=0) {
+                    resultKey.getStartTimeLong()<=searchKey.getStartTimeLong()) {
                 return entry.getValue();
             }else{
                 return null;
@@ -182,50 +305,62 @@ public class SinglePropertyStore
         MemTable toMerge = new MemTable();
         boolean stExist = propertyMeta.hasStable();
         boolean unExist = propertyMeta.hasUnstable();
+        // 文件的时间范围在合并过程中不变, 分割点只计算一次; 比较都用long, 只有真正分割区间时才用到TimePointL
+        TimePointL stMaxTime = stExist ? propertyMeta.stMaxTime() : null;
+        TimePointL unMaxTime = unExist ? propertyMeta.unMaxTime() : null;
+        TimePointL stNext = stExist ? stMaxTime.next() : null;
+        TimePointL unNext = unExist ? unMaxTime.next() : null;
+        long st = stExist ? stMaxTime.val() : 0;
+        long un = unExist ? unMaxTime.val() : 0;
+        // 被切开的区间的后半段都从磁盘文件结尾的下一时刻开始
+        long boundary = unExist ? un + 1 : st + 1;
+        ChangeLog.IdCollector continued = new ChangeLog.IdCollector();
         while( iterator.hasNext() ){
             Entry<TimeIntervalKey,Slice> entry = iterator.next();
             TimeIntervalKey timeInterval = entry.getKey();
             Slice val = entry.getValue();
+            long entityId = timeInterval.getId().getEntityId();
+            if( timeInterval.start().val() == boundary ) continued.removeLast( entityId );
             if( !unExist && !stExist ){
                 toMerge.addInterval(timeInterval, val);
             }else if( unExist && !stExist){
-                TimePointL unMaxTime = propertyMeta.unMaxTime();
-                if(timeInterval.lessThan( unMaxTime.next() ) ) {
+                if(timeInterval.lessThan( un + 1 ) ) {
                     insertUnstableBuffer(timeInterval, val);
-                }else if(timeInterval.greaterOrEq( unMaxTime.next() )){
+                }else if(timeInterval.greaterOrEq( un + 1 )){
                     toMerge.addInterval(timeInterval, val);
                 }else{
                     insertUnstableBuffer( timeInterval.changeEnd( unMaxTime ), val );
-                    toMerge.addInterval( timeInterval.changeStart( unMaxTime.next() ), val );
+                    toMerge.addInterval( timeInterval.changeStart( unNext ), val );
+                    continued.add( entityId );
                 }
             }else if(!unExist && stExist){
-                TimePointL stMaxTime = propertyMeta.stMaxTime();
-                if( timeInterval.lessThan( stMaxTime.next() )){
+                if( timeInterval.lessThan( st + 1 )){
                     insertStableBuffer(timeInterval, val);
-                }else if(timeInterval.greaterOrEq( stMaxTime.next() )){
+                }else if(timeInterval.greaterOrEq( st + 1 )){
                     toMerge.addInterval(timeInterval, val);
                 }else{
                     insertStableBuffer( timeInterval.changeEnd( stMaxTime ), val );
-                    toMerge.addInterval( timeInterval.changeStart( stMaxTime.next() ), val );
+                    toMerge.addInterval( timeInterval.changeStart( stNext ), val );
+                    continued.add( entityId );
                 }
             }else{//unExist && stExist
-                TimePointL stMaxTime = propertyMeta.stMaxTime();
-                TimePointL unMaxTime = propertyMeta.unMaxTime();
-                if( timeInterval.span( stMaxTime, unMaxTime.next() )){ // timeInterval.start < stMaxTime <= unMaxTime+1 <= timeInterval.end
+                if( timeInterval.span( st, un + 1 )){ // timeInterval.start < stMaxTime <= unMaxTime+1 <= timeInterval.end
                     insertStableBuffer( timeInterval.changeEnd( stMaxTime ), val );
-                    insertUnstableBuffer( timeInterval.changeStart( stMaxTime.next() ).changeEnd( unMaxTime ), val );
-                    toMerge.addInterval( timeInterval.changeStart( unMaxTime.next() ), val );
-                }else if( timeInterval.lessThan( stMaxTime.next() )){
+                    insertUnstableBuffer( timeInterval.changeStart( stNext ).changeEnd( unMaxTime ), val );
+                    toMerge.addInterval( timeInterval.changeStart( unNext ), val );
+                    continued.add( entityId );
+                }else if( timeInterval.lessThan( st + 1 )){
                     insertStableBuffer(timeInterval, val );
-                }else if(timeInterval.greaterOrEq( unMaxTime.next() )){
+                }else if(timeInterval.greaterOrEq( un + 1 )){
                     toMerge.addInterval( timeInterval, val );
-                }else if(timeInterval.span( stMaxTime.next() )){ // timeInterval.start < stMaxTime+1 <= timeInterval.end
+                }else if(timeInterval.span( st + 1 )){ // timeInterval.start < stMaxTime+1 <= timeInterval.end
                     insertStableBuffer( timeInterval.changeEnd( stMaxTime ), val );
-                    insertUnstableBuffer( timeInterval.changeStart( stMaxTime.next() ), val );
-                }else if(timeInterval.span( unMaxTime.next() )){
+                    insertUnstableBuffer( timeInterval.changeStart( stNext ), val );
+                }else if(timeInterval.span( un + 1 )){
                     insertUnstableBuffer( timeInterval.changeEnd( unMaxTime ), val );
-                    toMerge.addInterval( timeInterval.changeStart( unMaxTime.next() ), val );
-                }else if(timeInterval.between( stMaxTime.next(), unMaxTime )){ // stMaxTime+1 <= timeInterval.start <= timeInterval.end <= unMaxTime
+                    toMerge.addInterval( timeInterval.changeStart( unNext ), val );
+                    continued.add( entityId );
+                }else if(timeInterval.between( st + 1, un )){ // stMaxTime+1 <= timeInterval.start <= timeInterval.end <= unMaxTime
                     insertUnstableBuffer( timeInterval, val );
                 }else{
                     throw new TPSNHException( "no such scenery!" );
@@ -233,7 +368,10 @@ public class SinglePropertyStore
             }
         }
         if(!toMerge.isEmpty()){
-            return new MergeTask( proDir, toMerge, propertyMeta, this.cache, index );
+            MergeTask task = new MergeTask( proDir, toMerge, propertyMeta, this.cache, index );
+            task.setContinued( boundary, continued.toSortedArray() );
+            abandonRewrites( task );
+            return task;
         }else{
             return null;
         }
@@ -253,7 +391,7 @@ public class SinglePropertyStore
             FileBuffer buffer = propertyMeta.getUnstableBuffers( meta.getNumber() );
             if( null == buffer ) {
                 String fileName = Filename.unbufferFileName(meta.getNumber());
-                buffer = new FileBuffer(new File(this.proDir, fileName), meta.getNumber());
+                buffer = new FileBuffer(new File(this.proDir, fileName), meta.getNumber(), cache);
                 propertyMeta.addUnstableBuffer(meta.getNumber(), buffer);
             }
             TimeIntervalKey validKey = key;
@@ -264,8 +402,8 @@ public class SinglePropertyStore
                 validKey = validKey.changeEnd(TimePointL.Now);
             }
             buffer.add( validKey, value );
-            if(buffer.size()>1024*1024*10) {
-                unBufferToFile( meta, buffer );
+            if(buffer.size()>FileBuffer.REWRITE_SIZE && !buffer.isFrozen()) {
+                rewriteTasks.add( new BufferRewriteTask( meta, buffer, false ) );
             }
         }
     }
@@ -277,7 +415,7 @@ public class SinglePropertyStore
             FileBuffer buffer = propertyMeta.getStableBuffers( meta.getNumber() );
             if( null == buffer ) {
                 String fileName = Filename.stbufferFileName(meta.getNumber());
-                buffer = new FileBuffer(new File(this.proDir, fileName), meta.getNumber());
+                buffer = new FileBuffer(new File(this.proDir, fileName), meta.getNumber(), cache);
                 propertyMeta.addStableBuffer(meta.getNumber(), buffer);
             }
             TimeIntervalKey validKey = key;
@@ -288,67 +426,187 @@ public class SinglePropertyStore
                 validKey = validKey.changeEnd(TimePointL.Now);
             }
             buffer.add( validKey, value );
-            if(buffer.size()>1024*1024*10) {
-                stBufferToFile( meta, buffer );
+            if(buffer.size()>FileBuffer.REWRITE_SIZE && !buffer.isFrozen()) {
+                rewriteTasks.add( new BufferRewriteTask( meta, buffer, true ) );
             }
         }
     }
 
-    private void unBufferToFile(FileMetaData meta, FileBuffer buffer) throws IOException {
-        IndexUpdater indexUpdater = index.onBufferDelUpdate( propertyMeta.getPropertyId(), false, meta, buffer.getMemTable());
-        String filePath = Filename.unPath(proDir, meta.getNumber());
-        String bufferPath = Filename.unbufferFileName(meta.getNumber());
-        File tempFile = buffer2file( filePath, bufferPath, buffer, indexUpdater );
-        propertyMeta.delUnstableBuffer(meta.getNumber());
-        indexUpdater.finish(meta);
-        indexUpdater.updateMeta();
-        indexUpdater.cleanUp();
-        if(!tempFile.renameTo(new File(filePath))) throw new IOException("rename failed!");
+    // 本次合并会把这些UnStableFile连同Buffer一起合并掉, 写回没有意义, 放弃并解冻
+    private void abandonRewrites( MergeTask task ) throws IOException {
+        Iterator<BufferRewriteTask> iter = rewriteTasks.iterator();
+        while (iter.hasNext()) {
+            BufferRewriteTask rewrite = iter.next();
+            if (!rewrite.stable && task.merges(rewrite.meta.getNumber())) {
+                iter.remove();
+                rewrite.cleanUp();
+            }
+        }
     }
 
-    private void stBufferToFile(FileMetaData meta, FileBuffer buffer) throws IOException {
-        IndexUpdater indexUpdater = index.onBufferDelUpdate( propertyMeta.getPropertyId(), true, meta, buffer.getMemTable());
-        String filePath = Filename.stPath(proDir, meta.getNumber());
-        String bufferFileName = Filename.stbufferFileName(meta.getNumber());
-        File tempFile = buffer2file(filePath, bufferFileName, buffer, indexUpdater);
-        propertyMeta.delStableBuffer(meta.getNumber());
-        indexUpdater.finish(meta);
-        indexUpdater.updateMeta();
-        indexUpdater.cleanUp();
-        if(!tempFile.renameTo(new File(filePath))) throw new IOException("rename failed!");
+    /**
+     * 取出merge()中产生的Buffer写回任务, 由MergeProcess交给后台线程执行
+     */
+    public List<BufferRewriteTask> pollRewriteTasks() {
+        List<BufferRewriteTask> result = new ArrayList<>(rewriteTasks);
+        rewriteTasks.clear();
+        return result;
     }
 
-    private File buffer2file( String filePath, String bufferFileName, FileBuffer buffer, IndexUpdater indexUpdater ) throws IOException {
-        File tempFile = new File(this.proDir, Filename.tempFileName(6));
-        Files.deleteIfExists(tempFile.toPath());
-        Files.createFile(tempFile.toPath());
-
-        FileOutputStream stream = new FileOutputStream(tempFile);
-        FileChannel channel = stream.getChannel();
-        TableBuilder builder = new TableBuilder(new Options(), channel, TableComparator.instance());
-        Table table = this.cache.getTable(filePath);
-
-        /*
-          写存储过程
-          会被stable file和unstable file的合并过程同时调用，鉴于只需测试stable file的合并过程（unstable file 没有索引文件）
-          使用bufferFileName做判断，若"st"开头则是合并stable file
-         */
-        SearchableIterator iterator = TwoLevelMergeIterator.merge(buffer.iterator(), new PackInternalKeyIterator(table.iterator()));
+    /**
+     * 把Buffer中已冻结的内容写回对应的文件. runTask()在后台线程中执行且不持有锁, 期间Buffer仍可继续写入;
+     * updateMeta()和cleanUp()由合并线程(在两次合并之间)调用, 在merge锁内替换文件并从Buffer中去掉已写回的delta.
+     * 若文件在此期间已被合并或删除, 则放弃本次结果.
+     */
+    public class BufferRewriteTask implements BackgroundTask
+    {
+        private final FileMetaData meta;
+        private final FileBuffer buffer;
+        private final boolean stable;
+        private final List<String> frozen;
+        private final String filePath;
+        private final File tempFile;
+        private final IndexUpdater indexUpdater;
+        // 在创建时单独打开并由本任务在读完后关闭, 不用TableCache中的Table: 文件可能在读取期间被并发的合并移出缓存并删除,
+        // 已打开的文件删除后仍可读取. 冻结的delta通过TableCache打开, 被evict后由Finalizer在不再被引用时关闭
+        private Table table;
+        private final SearchableIterator bufferIter;
+        private final SearchableIterator changeIter;
+        private File tempChangeLog;
+        private List<File> obsolete;
+
+        // 在合并线程中创建
+        BufferRewriteTask(FileMetaData meta, FileBuffer buffer, boolean stable) throws IOException {
+            this.meta = meta;
+            this.buffer = buffer;
+            this.stable = stable;
+            this.frozen = buffer.freeze();
+            this.filePath = stable ? Filename.stPath(proDir, meta.getNumber()) : Filename.unPath(proDir, meta.getNumber());
+            this.tempFile = new File(filePath + ".tmp");
+            this.indexUpdater = index.onBufferDelUpdate( propertyMeta.getPropertyId(), stable, meta, buffer);
+            this.table = openTable(filePath);
+            this.bufferIter = buffer.frozenIterator(frozen);
+            this.changeIter = buffer.frozenIterator(frozen);
+        }
+
+        @Override
+        public void runTask() throws IOException {
+            tempChangeLog = appendChangeLog(meta.getNumber(), stable, changeIter);
+            // 跨越保留期限的文件在写回时顺便去掉过期的entry
+            boolean trim = stable && propertyMeta.isExpired(meta.getSmallest());
+            try {
+                buffer2file(table, tempFile, bufferIter, indexUpdater, trim);
+            } finally {
+                closeTable();
+            }
+            indexUpdater.finish(meta);
+        }
+
+        private void closeTable() throws IOException {
+            if(table != null) {
+                table.close();
+                table = null;
+            }
+        }
+
+        @Override
+        public void updateMeta() throws IOException {
+            FileBuffer current = stable ? propertyMeta.getStableBuffers(meta.getNumber()) : propertyMeta.getUnstableBuffers(meta.getNumber());
+            if(current != buffer) return; // 文件已被合并(UnStableFile)或已过期删除
+            cache.evict(filePath);
+            Files.move(tempFile.toPath(), new File(filePath).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if(tempChangeLog != null) {
+                File changeLog = new File(proDir, Filename.changeLogFileName(meta.getNumber(), stable));
+                Files.move(tempChangeLog.toPath(), changeLog.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            FileUtils.syncDirectory(proDir);
+            obsolete = buffer.dropFrozen();
+            indexUpdater.updateMeta();
+        }
+
+        // 执行失败或被放弃时删除临时文件, 冻结的内容留在Buffer中
+        @Override
+        public void cleanUp() throws IOException {
+            closeTable();
+            if(obsolete != null) {
+                for(File f : obsolete) Files.deleteIfExists(f.toPath());
+                indexUpdater.cleanUp();
+            } else {
+                buffer.unfreeze();
+                Files.deleteIfExists(tempFile.toPath());
+                if(tempChangeLog != null) Files.deleteIfExists(tempChangeLog.toPath());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "BufferRewriteTask{" + filePath + ", frozen=" + frozen + '}';
+        }
+    }
+
+    private static Table openTable(String filePath) throws IOException {
+        FileChannel channel = FileChannel.open(new File(filePath).toPath(), StandardOpenOption.READ);
+        try {
+            return new MMapTable(filePath, channel, TableComparator.instance(), false);
+        } catch (IOException e) {
+            Closeables.closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    // Buffer写回文件后就不再被单独扫描, 所以要把其中的entry加入文件的变更日志(如果有). 返回写好的临时文件
+    private File appendChangeLog(long number, boolean stable, SearchableIterator iterator) throws IOException {
+        File changeLog = new File(proDir, Filename.changeLogFileName(number, stable));
+        if(!changeLog.exists()) return null;
+        ChangeLog.Builder builder = ChangeLog.load(changeLog);
         while (iterator.hasNext()) {
-            InternalEntry entry = iterator.next();
-            builder.add(entry.getKey().encode(), entry.getValue());
-            indexUpdater.update( entry );
-        }
-        builder.finish();
-        channel.close();
-        stream.close();
-        table.close();
-        this.cache.evict(filePath);
-        File originFile = new File(filePath);
-        Files.delete(originFile.toPath());
-        buffer.close();
-        Files.delete(new File(this.proDir, bufferFileName).toPath());
-        return tempFile;
+            InternalKey key = iterator.next().getKey();
+            builder.add(key.getStartTimeLong(), key.getEntityId());
+        }
+        File temp = new File(changeLog.getPath() + ".tmp");
+        builder.writeTo(temp);
+        return temp;
+    }
+
+    private void buffer2file( Table table, File tempFile, SearchableIterator bufferIter, IndexUpdater indexUpdater, boolean trimExpired ) throws IOException {
+        Files.deleteIfExists(tempFile.toPath());
+        try(FileOutputStream stream = new FileOutputStream(tempFile); FileChannel channel = stream.getChannel()) {
+            TableBuilder builder = new TableBuilder(new Options(), channel, TableComparator.instance());
+            SearchableIterator iterator = TwoLevelMergeIterator.merge(bufferIter, new PackInternalKeyIterator(table.iterator()));
+            if(trimExpired) iterator = new ExpiredEntryFilterIterator(iterator, propertyMeta.getRetentionHorizon());
+            while (iterator.hasNext()) {
+                InternalEntry entry = iterator.next();
+                builder.add(entry.getKey().encode(), entry.getValue());
+                indexUpdater.update( entry );
+            }
+            builder.finish();
+        }
+    }
+
+    /**
+     * 删除完全早于保留期限的StableFile(及其Buffer, 变更日志和索引文件), 耗时与文件数成正比.
+     * 需在merge锁内调用, 返回的文件由调用者在解锁后删除.
+     */
+    public List<File> dropExpiredFiles() throws IOException {
+        List<File> toDelete = new ArrayList<>();
+        for(FileMetaData meta : propertyMeta.expiredStable()){
+            long number = meta.getNumber();
+            String path = Filename.stPath(proDir, number);
+            cache.evict(path);
+            toDelete.add(new File(path));
+            FileBuffer buffer = propertyMeta.getStableBuffers(number);
+            if(buffer != null){
+                buffer.close();
+                propertyMeta.delStableBuffer(number);
+                toDelete.addAll(buffer.files());
+            }
+            File changeLog = new File(proDir, Filename.changeLogFileName(number, true));
+            if(changeLog.exists()) toDelete.add(changeLog);
+            toDelete.addAll(index.onStableFileDropped(propertyMeta.getPropertyId(), number));
+            propertyMeta.delStable(number);
+            log.debug("drop expired stable file {} of property {}", number, propertyMeta.getPropertyId());
+        }
+        return toDelete;
     }
 
     // boolean stand for: isStable.
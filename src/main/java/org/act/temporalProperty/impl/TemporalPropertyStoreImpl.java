@@ -4,8 +4,12 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.PeekingIterator;
 import org.act.temporalProperty.TemporalPropertyStore;
 import org.act.temporalProperty.exception.TPSNHException;
+import org.act.temporalProperty.exception.DataExpiredException;
 import org.act.temporalProperty.exception.TPSRuntimeException;
 import org.act.temporalProperty.exception.ValueUnknownException;
+import org.act.temporalProperty.helper.EPAppendIterator;
+import org.act.temporalProperty.helper.EPEntryCursor;
+import org.act.temporalProperty.helper.SameLevelMergeCursor;
 import org.act.temporalProperty.helper.StoreInitial;
 import org.act.temporalProperty.helper.EPEntryIterator;
 import org.act.temporalProperty.helper.EPMergeIterator;
@@ -15,18 +19,28 @@ import org.act.temporalProperty.index.value.IndexQueryRegion;
 import org.act.temporalProperty.index.value.rtree.IndexEntry;
 import org.act.temporalProperty.meta.PropertyMetaData;
 import org.act.temporalProperty.meta.SystemMeta;
-import org.act.temporalProperty.meta.SystemMetaController;
 import org.act.temporalProperty.meta.ValueContentType;
+import org.act.temporalProperty.query.SnapshotConsumer;
 import org.act.temporalProperty.query.TemporalValue;
 import org.act.temporalProperty.query.TimeIntervalKey;
 import org.act.temporalProperty.query.TimePointL;
 import org.act.temporalProperty.query.aggr.AggregationIndexQueryResult;
 import org.act.temporalProperty.query.aggr.ValueGroupingMap;
+import org.act.temporalProperty.query.range.CombinableRangeQueryCallBack;
+import org.act.temporalProperty.query.range.CursorRangeQueryCallBack;
+import org.act.temporalProperty.query.range.DoubleRangeColumns;
 import org.act.temporalProperty.query.range.InternalEntryRangeQueryCallBack;
+import org.act.temporalProperty.query.range.LongRangeColumns;
+import org.act.temporalProperty.query.range.RangeColumns;
+import org.act.temporalProperty.query.range.RangeQueryIterator;
+import org.act.temporalProperty.table.ChangeLog;
+import org.act.temporalProperty.table.TwoLevelMergeCursor;
 import org.act.temporalProperty.table.TwoLevelMergeIterator;
 import org.act.temporalProperty.table.MergeProcess;
 import org.act.temporalProperty.table.TableComparator;
+import org.act.temporalProperty.util.OffHeapArena;
 import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.util.Slices;
 import org.act.temporalProperty.vo.EntityPropertyId;
 import org.act.temporalProperty.vo.TimeIntervalValueEntry;
 import org.apache.commons.lang3.tuple.Triple;
@@ -40,6 +54,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import static com.google.common.base.Preconditions.*;
 
@@ -51,10 +66,12 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
     private SystemMeta meta;
     private MergeProcess mergeProcess;
     private File dbDir;
+    private final Options options;
     private TableCache cache;
     private MemTable memTable;
     private MemTable stableMemTable; // a full memtable, which only used for query and (to be) merged, never write.
     private IndexStore index;
+    private final ParallelRangeScanner rangeScanner = new ParallelRangeScanner( ForkJoinPool.commonPool() );
 
     private boolean forbiddenWrite = false;
     private FileReader lockFile; // keeps opened while system is running to prevent delete of the storage dir;
@@ -63,16 +80,31 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
      * @param dbDir 存储动态属性数据的目录地址
      */
     public TemporalPropertyStoreImpl( File dbDir ) throws Throwable
+    {
+        this( dbDir, new Options() );
+    }
+
+    /**
+     * @param dbDir 存储动态属性数据的目录地址
+     * @param options 目前使用其中的writeBufferSize, offHeapMemTable, targetFileSize, changeLog, lazyBufferLoad, bufferLoadThreads和indexTableCacheSize
+     */
+    public TemporalPropertyStoreImpl( File dbDir, Options options ) throws Throwable
     {
         this.dbDir = dbDir;
+        this.options = options;
         this.init();
         this.cache = new TableCache( 25, TableComparator.instance(), false );
-        this.index = new IndexStore( new File( dbDir, "index" ), this, meta.getIndexes(), meta.indexNextId(), meta.indexNextFileId() );
-        this.meta.initStore( dbDir, cache, index);
-        this.mergeProcess = new MergeProcess( dbDir.getAbsolutePath(), meta, index );
+        this.index = new IndexStore( new File( dbDir, "index" ), this, meta.getIndexes(), meta.indexNextId(), meta.indexNextFileId(), options );
+        this.meta.initStore( dbDir, cache, index, options );
+        this.mergeProcess = new MergeProcess( dbDir.getAbsolutePath(), meta, index, options );
         this.mergeProcess.start();
     }
 
+    private MemTable newMemTable()
+    {
+        return options.offHeapMemTable() ? new MemTable( new OffHeapArena() ) : new MemTable();
+    }
+
     /**
      * 系统启动时调用，主要作用是将上次系统关闭时写入磁盘的数据读入内存
      */
@@ -81,6 +113,7 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
         StoreInitial starter = new StoreInitial( dbDir );
         lockFile = starter.init();
         this.meta = starter.getMetaInfo();
+        starter.removeOrphanFiles( this.meta );
         this.memTable = starter.getMemTable();
     }
 
@@ -96,6 +129,7 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
         this.flushMemTable2Disk();
         this.closeAllBuffer();
         this.flushMetaInfo2Disk();
+        this.meta.closeManifest();
         this.lockFile.close();
         Files.delete( new File( dbDir, Filename.lockFileName() ).toPath() );
     }
@@ -107,6 +141,7 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
         this.meta.lock.lockShared();
         try
         {
+            checkNotExpired( proId, time );
             try
             {
                 return memTable.get( searchKey );
@@ -150,24 +185,27 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
         meta.lock.lockShared();
         try
         {
+            checkNotExpired( proId, start );
             PropertyMetaData pMeta = meta.getProperties().get( proId );
             callback.setValueType( pMeta.getType().name() );
 
             EntityPropertyId id = new EntityPropertyId(entityId, proId);
-            SearchableIterator memIter = new EPEntryIterator( id, memTable.iterator() );
-            if ( this.stableMemTable != null )
+            if ( callback instanceof CursorRangeQueryCallBack )
             {
-                memIter = new EPMergeIterator( id, stableMemTable.iterator(), memIter );
+                return getRangeValueByCursor( id, start, end, (CursorRangeQueryCallBack) callback, cache );
             }
-            SearchableIterator diskIter = meta.getStore( proId ).getRangeValueIter( id, start, end );
-            SearchableIterator mergedIterator = new EPMergeIterator( id, diskIter, memIter );
-
-            if(cache!=null)
+            List<SearchableIterator> segments = meta.getStore( proId ).getRangeValueSegments( id, start, end );
+            if ( callback instanceof CombinableRangeQueryCallBack && segments.size() >= ParallelRangeScanner.MIN_PARALLEL_SEGMENTS && !memOverlap( id, start, end, cache ) )
             {
-                mergedIterator = new EPMergeIterator( id, mergedIterator, cache.iterator() );
+                List<ParallelRangeScanner.Segment> plan = ParallelRangeScanner.plan( id, segments, start, end );
+                if ( !plan.isEmpty() )
+                {
+                    return rangeScanner.aggregate( (CombinableRangeQueryCallBack) callback, pMeta.getType().name(), plan );
+                }
             }
-
-            mergedIterator = new UnknownToInvalidIterator( mergedIterator );
+            EPAppendIterator diskIter = new EPAppendIterator( id );
+            for ( SearchableIterator segment : segments ) diskIter.append( segment );
+            SearchableIterator mergedIterator = mergeWithMemory( id, diskIter, memTable, stableMemTable, cache );
 
             InternalKey searchKey = new InternalKey( id, start );
             mergedIterator.seekFloor( searchKey );
@@ -181,7 +219,7 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
                 {
                     firstLoop = false;
                     if ( time.compareTo(start) < 0 )
-                    { callback.onNewEntry( new InternalEntry( new InternalKey( key.getId(), start, key.getValueType() ), entry.getValue() ) ); }
+                    { callback.onNewEntry( new InternalEntry( new InternalKey( key.getPropertyId(), key.getEntityId(), start, key.getValueType() ), entry.getValue() ) ); }
                     else
                     {
                         callback.onNewEntry( entry );
@@ -208,6 +246,214 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
         }
     }
 
+    @Override
+    public void snapshotAt( int proId, TimePointL time, SnapshotConsumer consumer )
+    {
+        Preconditions.checkArgument( proId >= 0 );
+        Preconditions.checkArgument( consumer != null );
+        meta.lock.lockShared();
+        try
+        {
+            checkNotExpired( proId, time );
+            SameLevelMergeCursor diskCursor = new SameLevelMergeCursor();
+            for ( EntryCursor fileCursor : meta.getStore( proId ).getSnapshotCursors( time ) )
+            {
+                diskCursor.add( fileCursor );
+            }
+            EntryCursor memCursor = memTable.cursor();
+            if ( this.stableMemTable != null )
+            {
+                memCursor = new TwoLevelMergeCursor( memCursor, stableMemTable.cursor() );
+            }
+            snapshot( new TwoLevelMergeCursor( memCursor, diskCursor ), proId, time.val(), consumer );
+        }
+        finally
+        {
+            meta.lock.unlockShared();
+        }
+    }
+
+    @Override
+    public long[] changedEntities( int proId, TimePointL from, TimePointL to )
+    {
+        Preconditions.checkArgument( proId >= 0 );
+        Preconditions.checkArgument( from.compareTo( to ) <= 0 );
+        meta.lock.lockShared();
+        try
+        {
+            checkNotExpired( proId, from );
+            ChangeLog.IdCollector ids = new ChangeLog.IdCollector();
+            meta.getStore( proId ).changedEntities( from, to, ids );
+            ChangeLog.scan( memTable.cursor(), proId, from.val(), to.val(), ids );
+            if ( this.stableMemTable != null )
+            {
+                ChangeLog.scan( stableMemTable.cursor(), proId, from.val(), to.val(), ids );
+            }
+            return ids.toSortedArray();
+        }
+        catch ( IOException e )
+        {
+            throw new TPSRuntimeException( "read change log failed", e );
+        }
+        finally
+        {
+            meta.lock.unlockShared();
+        }
+    }
+
+    // one pass over cursor, which is ordered by (entity, time), emit the last entry not later than `time` of each entity.
+    static void snapshot( EntryCursor cursor, int proId, long time, SnapshotConsumer consumer )
+    {
+        cursor.seekFloor( proId, 0, TimePointL.Init.val() );
+        boolean hasEntity = false;
+        long entityId = -1;
+        ValueType floorType = null;
+        Slice floorBase = null;
+        int floorOffset = 0, floorLength = 0;
+        while ( cursor.advance() )
+        {
+            if ( cursor.propertyId() < proId ) continue;
+            if ( cursor.propertyId() > proId ) break;
+            if ( !hasEntity || cursor.entityId() != entityId )
+            {
+                if ( floorType != null && floorType.isValue() ) consumer.accept( entityId, floorBase.slice( floorOffset, floorLength ) );
+                hasEntity = true;
+                entityId = cursor.entityId();
+                floorType = null;
+            }
+            if ( cursor.startTimeLong() <= time )
+            {
+                floorType = cursor.valueType();
+                floorBase = cursor.valueBase();
+                floorOffset = cursor.valueOffset();
+                floorLength = cursor.valueLength();
+            }
+        }
+        if ( floorType != null && floorType.isValue() ) consumer.accept( entityId, floorBase.slice( floorOffset, floorLength ) );
+    }
+
+    @Override
+    public DoubleRangeColumns getRangeDoubles( long entityId, int proId, TimePointL start, TimePointL end )
+    {
+        return getRangeColumns( entityId, proId, start, end, new DoubleRangeColumns() );
+    }
+
+    @Override
+    public LongRangeColumns getRangeLongs( long entityId, int proId, TimePointL start, TimePointL end )
+    {
+        return getRangeColumns( entityId, proId, start, end, new LongRangeColumns() );
+    }
+
+    @Override
+    public <T extends RangeColumns> T getRangeColumns( long entityId, int proId, TimePointL start, TimePointL end, T result )
+    {
+        result.reset( start, end );
+        getRangeValue( entityId, proId, start, end, result );
+        return result;
+    }
+
+    // same as getRangeValue, but no object is created per entry. caller should hold the shared lock.
+    private Object getRangeValueByCursor( EntityPropertyId id, TimePointL start, TimePointL end, CursorRangeQueryCallBack callback, MemTable cache )
+    {
+        SameLevelMergeCursor diskCursor = new SameLevelMergeCursor();
+        for ( EntryCursor segment : meta.getStore( id.getPropertyId() ).getRangeValueCursors( id, start, end ) )
+        {
+            diskCursor.add( segment );
+        }
+        EntryCursor memCursor = new EPEntryCursor( id, memTable.cursor() );
+        if ( this.stableMemTable != null )
+        {
+            memCursor = new TwoLevelMergeCursor( memCursor, new EPEntryCursor( id, stableMemTable.cursor() ) );
+        }
+        EntryCursor cursor = new TwoLevelMergeCursor( memCursor, diskCursor );
+        if ( cache != null )
+        {
+            cursor = new TwoLevelMergeCursor( new EPEntryCursor( id, cache.cursor() ), cursor );
+        }
+        cursor = new UnknownToInvalidCursor( cursor );
+
+        long startTime = start.val();
+        long endTime = end.val();
+        cursor.seekFloor( id.getPropertyId(), id.getEntityId(), startTime );
+        boolean firstLoop = true;
+        while ( cursor.advance() )
+        {
+            long time = cursor.startTimeLong();
+            if ( firstLoop )
+            {
+                firstLoop = false;
+                callback.onNewEntry( cursor, Math.max( time, startTime ) );
+            }
+            else if ( time <= endTime )
+            {
+                callback.onNewEntry( cursor, time );
+            }
+            else
+            {
+                break;
+            }
+        }
+        return callback.onReturn();
+    }
+
+    @Override
+    public RangeQueryIterator rangeIterator( long entityId, int proId, TimePointL start, TimePointL end )
+    {
+        return rangeIterator( entityId, proId, start, end, null );
+    }
+
+    @Override
+    public RangeQueryIterator rangeIterator( long entityId, int proId, TimePointL start, TimePointL end, MemTable cache )
+    {
+        Preconditions.checkArgument( start.compareTo(end) <= 0 );
+        Preconditions.checkArgument( entityId >= 0 && proId >= 0 );
+        // the shared lock is only held while the snapshot is taken: disk files are opened (they stay readable after being
+        // evicted or deleted by a merge), and the entity's data in memTable/stableMemTable and in the buffers' memory is
+        // copied, since they are modified or released later. the caller's cache is used as is.
+        meta.lock.lockShared();
+        try
+        {
+            checkNotExpired( proId, start );
+            EntityPropertyId id = new EntityPropertyId(entityId, proId);
+            // files are read one after another (not decoded in parallel), so nothing is read before the caller pulls it.
+            EPAppendIterator diskIter = new EPAppendIterator( id );
+            for ( SearchableIterator segment : meta.getStore( proId ).getRangeValueSnapshot( id, start, end ) )
+            {
+                diskIter.append( segment );
+            }
+            MemTable stableMem = stableMemTable == null ? null : stableMemTable.snapshot( id );
+            return new RangeQueryIterator( id, mergeWithMemory( id, diskIter, memTable.snapshot( id ), stableMem, cache ), start, end );
+        }
+        finally
+        {
+            meta.lock.unlockShared();
+        }
+    }
+
+    // merge disk data with mem, stableMem and cache (latter overwrites former), UNKNOWN entries are turned into INVALID.
+    private SearchableIterator mergeWithMemory( EntityPropertyId id, SearchableIterator diskIter, MemTable mem, MemTable stableMem, MemTable cache )
+    {
+        SearchableIterator memIter = new EPEntryIterator( id, mem.iterator() );
+        if ( stableMem != null )
+        {
+            memIter = new EPMergeIterator( id, stableMem.iterator(), memIter );
+        }
+        SearchableIterator mergedIterator = new EPMergeIterator( id, diskIter, memIter );
+        if ( cache != null )
+        {
+            mergedIterator = new EPMergeIterator( id, mergedIterator, cache.iterator() );
+        }
+        return new UnknownToInvalidIterator( mergedIterator );
+    }
+
+    // whether memory tables (which are merged after disk files in range query) contain data of the entity in [start, end]
+    private boolean memOverlap( EntityPropertyId id, TimePointL start, TimePointL end, MemTable cache )
+    {
+        return memTable.overlap( id, start, end ) ||
+                (stableMemTable != null && stableMemTable.overlap( id, start, end )) ||
+                (cache != null && cache.overlap( id, start, end ));
+    }
+
     public ValueContentType getPropertyValueType( int propertyId )
     {
         PropertyMetaData pMeta = meta.getProperties().get( propertyId );
@@ -260,6 +506,19 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
                 throw new TPSNHException( "create property failed: " + key.getId().getPropertyId() + " type: "+key.getValueType() );
             }
         }
+        try
+        {
+            return addToMemTable( key, value );
+        }
+        finally
+        {
+            meta.lock.unlockExclusive();
+        }
+    }
+
+    // must hold the exclusive lock
+    private boolean addToMemTable( TimeIntervalKey key, Slice value )
+    {
         try
         {
             if ( forbiddenWrite )
@@ -268,12 +527,15 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
             }
 
             this.memTable.addInterval( key, value );
-            if ( this.memTable.approximateMemUsage() >= 4 * 1024 * 1024 )
+            if ( this.memTable.approximateMemUsage() >= options.writeBufferSize() )
             {
                 forbiddenWrite = true;
                 this.mergeProcess.add( this.memTable ); // may await at current line.
+                // the previous stable memtable has been merged to disk (add() returns after that), and no reader is running (exclusive lock).
+                MemTable merged = this.stableMemTable;
                 this.stableMemTable = this.memTable;
-                this.memTable = new MemTable();
+                this.memTable = newMemTable();
+                if ( merged != null ) merged.release();
                 forbiddenWrite = false;
             }
             meta.lock.memTableSubmitted();
@@ -283,10 +545,6 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
             e.printStackTrace();
             return false;
         }
-        finally
-        {
-            meta.lock.unlockExclusive();
-        }
         return true;
     }
 
@@ -296,15 +554,14 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
         meta.lock.lockExclusive();
         try
         {
-            meta.getProperties().remove( propertyId );
+            meta.delProperty( propertyId );
             meta.getStore( propertyId ).destroy();
-            Set<IndexMetaData> indexSet = meta.getIndexes();
-            for ( IndexMetaData iMeta : indexSet )
+            for ( IndexMetaData iMeta : new ArrayList<>( meta.getIndexes() ) )
             {
                 Set<Integer> pids = new HashSet<>( iMeta.getPropertyIdList() );
                 if ( pids.contains( propertyId ) )
                 {
-                    indexSet.remove( iMeta );
+                    meta.delIndex( iMeta );
                 }
             }
             index.deleteIndex( propertyId );
@@ -324,8 +581,59 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
     @Override
     public boolean deleteEntityProperty( Slice id )
     {
-        //TODO deleteEntityProperty
-        return false;
+        EntityPropertyId epId = EntityPropertyId.decode( id.input() );
+        return deleteEntityProperty( epId.getEntityId(), epId.getPropertyId(), TimePointL.Init, TimePointL.Now );
+    }
+
+    @Override
+    public boolean deleteEntityProperty( long entityId, int proId, TimePointL start, TimePointL end )
+    {
+        Preconditions.checkArgument( start.compareTo( end ) <= 0 );
+        meta.lock.lockExclusive();
+        try
+        {
+            if ( !meta.getProperties().containsKey( proId ) )
+            {
+                return false;
+            }
+            // INVALID区间即范围删除标记: 读取和合并时按区间覆盖旧数据(TwoLevelMergeIterator), 合并重写文件时被覆盖的数据才被丢弃
+            return addToMemTable( new TimeIntervalKey( new EntityPropertyId( entityId, proId ), start, end, ValueType.INVALID ), Slices.EMPTY_SLICE );
+        }
+        finally
+        {
+            meta.lock.unlockExclusive();
+        }
+    }
+
+    @Override
+    public boolean setRetentionHorizon( int proId, TimePointL horizon )
+    {
+        meta.lock.lockExclusive();
+        try
+        {
+            PropertyMetaData pMeta = meta.getProperties().get( proId );
+            if ( pMeta == null || horizon.compareTo( pMeta.getRetentionHorizon() ) < 0 )
+            {
+                return false;
+            }
+            pMeta.setRetentionHorizon( horizon );
+            mergeProcess.dropExpiredFiles();
+            return true;
+        }
+        finally
+        {
+            meta.lock.unlockExclusive();
+        }
+    }
+
+    // caller should hold the lock.
+    private void checkNotExpired( int proId, TimePointL time )
+    {
+        PropertyMetaData pMeta = meta.getProperties().get( proId );
+        if ( pMeta != null && pMeta.isExpired( time ) )
+        {
+            throw new DataExpiredException( proId, time, pMeta.getRetentionHorizon() );
+        }
     }
 
     @Override
@@ -372,6 +680,28 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
         }
     }
 
+    @Override
+    public long createAggrSumIndex(int propertyId, TimePointL start, TimePointL end, int every, int timeUnit )
+    {
+        meta.lock.lockExclusive();
+        try
+        {
+            PropertyMetaData pMeta = meta.getProperties().get( propertyId );
+            long indexId = index.createAggrSumIndex( pMeta, start, end, every, timeUnit );
+            mergeProcess.createNewIndex();
+            return indexId;
+        }
+        catch ( IOException e )
+        {
+            e.printStackTrace();
+            throw new TPSRuntimeException( "error when create index.", e );
+        }
+        finally
+        {
+            meta.lock.unlockExclusive();
+        }
+    }
+
     @Override
     public Object aggregate( long entityId, int proId, TimePointL startTime, TimePointL endTime, InternalEntryRangeQueryCallBack callback )
     {
@@ -390,6 +720,7 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
         meta.lock.lockShared();
         try
         {
+            checkNotExpired( proId, startTime );
             PropertyMetaData pMeta = meta.getProperties().get( proId );
             return index.queryAggrIndex( entityId, pMeta, startTime, endTime, indexId, cache);
         }
@@ -572,7 +903,7 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
     {
         try
         {
-            SystemMetaController.forceToDisk( this.dbDir, this.meta );
+            this.meta.force( this.dbDir );
         }
         catch ( IOException e )
         {
@@ -630,7 +961,7 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
         PropertyMetaData p = this.meta.getProperties().get( proId );
         for ( FileBuffer buffer : p.overlappedBuffers( startTime, endTime ) )
         {
-            if ( buffer.getMemTable().overlap( id, startTime, endTime ) )
+            if ( buffer.overlap( id, startTime, endTime ) )
             {
                 return true;
             }
@@ -656,7 +987,7 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
         PropertyMetaData p = this.meta.getProperties().get( proId );
         for ( FileBuffer buffer : p.overlappedBuffers( startTime, endTime ) )
         {
-            if ( buffer.getMemTable().overlap( proId, startTime, endTime ) )
+            if ( buffer.overlap( proId, startTime, endTime ) )
             {
                 return true;
             }
@@ -672,7 +1003,7 @@ public class TemporalPropertyStoreImpl implements TemporalPropertyStore
             PropertyMetaData p = this.meta.getProperties().get( proId );
             for ( FileBuffer buffer : p.overlappedBuffers( timeMin, timeMax ) )
             {
-                buffer.getMemTable().coverTime( tMap, proIdSet, timeMin, timeMax );
+                buffer.coverTime( tMap, proIdSet, timeMin, timeMax );
             }
         }
         if ( this.stableMemTable != null )
@@ -0,0 +1,81 @@
+package org.act.temporalProperty.impl;
+
+import org.act.temporalProperty.util.Slice;
+
+/**
+ * UnknownToInvalidIterator的游标版本: 把UNKNOWN的entry转换为Invalid的entry
+ */
+public class UnknownToInvalidCursor implements EntryCursor
+{
+    private final EntryCursor in;
+
+    public UnknownToInvalidCursor( EntryCursor in ) {this.in = in;}
+
+    @Override
+    public void seekToFirst()
+    {
+        in.seekToFirst();
+    }
+
+    @Override
+    public void seekFloor( int propertyId, long entityId, long time )
+    {
+        in.seekFloor( propertyId, entityId, time );
+    }
+
+    @Override
+    public boolean advance()
+    {
+        return in.advance();
+    }
+
+    @Override
+    public int propertyId()
+    {
+        return in.propertyId();
+    }
+
+    @Override
+    public long entityId()
+    {
+        return in.entityId();
+    }
+
+    @Override
+    public long startTimeLong()
+    {
+        return in.startTimeLong();
+    }
+
+    @Override
+    public ValueType valueType()
+    {
+        ValueType type = in.valueType();
+        return type == ValueType.UNKNOWN ? ValueType.INVALID : type;
+    }
+
+    @Override
+    public Slice valueBase()
+    {
+        return in.valueBase();
+    }
+
+    @Override
+    public int valueOffset()
+    {
+        return in.valueOffset();
+    }
+
+    @Override
+    public int valueLength()
+    {
+        return in.valueLength();
+    }
+
+    @Override
+    public String toString() {
+        return "UnknownToInvalidCursor{" +
+                "in=" + in +
+                '}';
+    }
+}
@@ -22,7 +22,7 @@ public class UnknownToInvalidIterator extends AbstractSearchableIterator
             InternalKey key = entry.getKey();
             if ( key.getValueType() == ValueType.UNKNOWN )
             {
-                return new InternalEntry( new InternalKey( key.getId(), key.getStartTime(), ValueType.INVALID ), entry.getValue() );
+                return new InternalEntry( new InternalKey( key.getPropertyId(), key.getEntityId(), key.getStartTimeLong(), ValueType.INVALID ), entry.getValue() );
             }
             else
             {
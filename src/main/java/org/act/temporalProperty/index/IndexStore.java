@@ -15,6 +15,7 @@ import java.io.IOException;
 import java.util.*;
 
 import static org.act.temporalProperty.index.IndexType.AGGR_DURATION;
+import static org.act.temporalProperty.index.IndexType.AGGR_SUM;
 import static org.act.temporalProperty.index.IndexType.SINGLE_VALUE;
 import static org.act.temporalProperty.index.IndexUpdater.*;
 
@@ -30,11 +31,11 @@ public class IndexStore {
     private ValueIndexOperator value;
     private IndexMetaManager meta;
 
-    public IndexStore(File indexDir, TemporalPropertyStoreImpl store, Set<IndexMetaData> indexes, long nextId, long nextFileId) throws IOException {
+    public IndexStore(File indexDir, TemporalPropertyStoreImpl store, Set<IndexMetaData> indexes, long nextId, long nextFileId, Options options) throws IOException {
         if(!indexDir.exists() && !indexDir.mkdir()) throw new IOException("unable to create index dir");
         this.tpStore = store;
         this.indexDir = indexDir;
-        this.cache = new IndexTableCache(indexDir, 4);
+        this.cache = new IndexTableCache(indexDir, options.indexTableCacheSize());
         this.meta = new IndexMetaManager( indexes, nextId, nextFileId );
         this.aggr = new AggregationIndexOperator( indexDir, store, cache, meta );
         this.value = new ValueIndexOperator( indexDir, store, cache, meta );
@@ -79,6 +80,10 @@ public class IndexStore {
         return aggr.createMinMax(pMeta, start, end, every, timeUnit, type);
     }
 
+    public long createAggrSumIndex(PropertyMetaData pMeta, TimePointL start, TimePointL end, int every, int timeUnit) throws IOException {
+        return aggr.createSum(pMeta, start, end, every, timeUnit);
+    }
+
     public List<IndexEntry> queryValueIndex( IndexQueryRegion condition, MemTable cache ) throws IOException {
         return value.query(condition, cache);
     }
@@ -107,7 +112,7 @@ public class IndexStore {
         return meta.isOnline( indexId );
     }
 
-    public IndexUpdater onBufferDelUpdate( int propertyId, boolean isStable, FileMetaData fMeta, MemTable mem )
+    public IndexUpdater onBufferDelUpdate( int propertyId, boolean isStable, FileMetaData fMeta, FileBuffer buffer )
     {
         IndexUpdater.AllIndexUpdater indexUpdater = new IndexUpdater.AllIndexUpdater();
         List<IndexMetaData> indexes = meta.getByProId( propertyId );
@@ -117,9 +122,9 @@ public class IndexStore {
             {
                 for(IndexFileMeta fileMeta : i.allFiles())
                 {
-                    if(mem.overlap( propertyId, fileMeta.getStartTime(), fileMeta.getEndTime() ))
+                    if(buffer.overlap( propertyId, fileMeta.getStartTime(), fileMeta.getEndTime() ))
                     {
-                        indexUpdater.add( new MultiPropertyValueBufferMergeUpdater( meta, indexDir, i, fMeta.getNumber(), isStable ) );
+                        indexUpdater.add( new MultiPropertyValueBufferMergeUpdater( meta, cache, indexDir, i, fMeta.getNumber(), isStable ) );
                     }
                 }
             }
@@ -128,19 +133,23 @@ public class IndexStore {
                 IndexFileMeta fileMeta = i.getByCorFileId( fMeta.getNumber(), isStable );
                 if ( fileMeta != null )
                 {
-                    if(mem.overlap( propertyId, fileMeta.getStartTime(), fileMeta.getEndTime() ))
+                    if(buffer.overlap( propertyId, fileMeta.getStartTime(), fileMeta.getEndTime() ))
                     {
                         if ( i.getType() == SINGLE_VALUE )
                         {
-                            indexUpdater.add( new SinglePropertyValueBufferMergeUpdater(meta, indexDir, i, fMeta.getNumber(), isStable ) );
+                            indexUpdater.add( new SinglePropertyValueBufferMergeUpdater(meta, cache, indexDir, i, fMeta.getNumber(), isStable ) );
                         }
                         else if ( i.getType() == AGGR_DURATION )
                         {
-                            indexUpdater.add( new DurationBufferMergeUpdater( meta, indexDir, i, fMeta.getNumber(), isStable) );
+                            indexUpdater.add( new DurationBufferMergeUpdater( meta, cache, indexDir, i, fMeta.getNumber(), isStable) );
+                        }
+                        else if ( i.getType() == AGGR_SUM )
+                        {
+                            indexUpdater.add( new SumBufferMergeUpdater( meta, cache, indexDir, i, fMeta.getNumber(), isStable ) );
                         }
                         else
                         {
-                            indexUpdater.add( new MinMaxBufferMergeUpdater( meta, indexDir, i, fMeta.getNumber(), isStable ));
+                            indexUpdater.add( new MinMaxBufferMergeUpdater( meta, cache, indexDir, i, fMeta.getNumber(), isStable ));
                         }
                     }
                 }
@@ -165,7 +174,7 @@ public class IndexStore {
                 {
                     if(mem.overlap( propertyId, fileMeta.getStartTime(), fileMeta.getEndTime() ))
                     {
-                        indexUpdater.add(new MultiPropertyValueIndexFileUpdater(meta, indexDir, i, mergeParticipants, propertyId) );
+                        indexUpdater.add(new MultiPropertyValueIndexFileUpdater(meta, cache, indexDir, i, mergeParticipants, propertyId) );
                     }
                 }
             }
@@ -175,15 +184,19 @@ public class IndexStore {
                 {
                     if ( i.getType() == SINGLE_VALUE )
                     {
-                        indexUpdater.add( new SinglePropertyValueIndexFileUpdater(meta, indexDir, i, mergeParticipants, true ) );
+                        indexUpdater.add( new SinglePropertyValueIndexFileUpdater(meta, cache, indexDir, i, mergeParticipants, true ) );
                     }
                     else if ( i.getType() == AGGR_DURATION )
                     {
-                        indexUpdater.add( new DurationMergeUpgradeUpdater( meta, indexDir, i, mergeParticipants, true ) );
+                        indexUpdater.add( new DurationMergeUpgradeUpdater( meta, cache, indexDir, i, mergeParticipants, true ) );
+                    }
+                    else if ( i.getType() == AGGR_SUM )
+                    {
+                        indexUpdater.add( new SumFileUpgradeUpdater( meta, cache, indexDir, i, mergeParticipants, true ) );
                     }
                     else
                     {
-                        indexUpdater.add( new MinMaxFileUpgradeUpdater( meta, indexDir, i, mergeParticipants, true ) );
+                        indexUpdater.add( new MinMaxFileUpgradeUpdater( meta, cache, indexDir, i, mergeParticipants, true ) );
                     }
                 }
             }
@@ -198,6 +211,29 @@ public class IndexStore {
         }
     }
 
+    /**
+     * StableFile因过期被删除时, 去掉与它一一对应的索引文件(MULTI_VALUE索引不按文件划分, 不处理).
+     * 需在merge锁内调用, 返回的文件由调用者在解锁后删除.
+     */
+    public List<File> onStableFileDropped( int propertyId, long fileNumber )
+    {
+        List<File> toDelete = new ArrayList<>();
+        for ( IndexMetaData i : meta.getByProId( propertyId ) )
+        {
+            if ( i.getType() == IndexType.MULTI_VALUE ) continue;
+            IndexFileMeta fileMeta = i.getByCorFileId( fileNumber, true );
+            if ( fileMeta == null ) continue;
+            String fileName = i.getType() == SINGLE_VALUE ?
+                              Filename.valIndexFileName( fileMeta.getFileId() ) :
+                              Filename.aggrIndexFileName( fileMeta.getFileId() );
+            File indexFile = new File( indexDir, fileName );
+            cache.evict( indexFile.getAbsolutePath() );
+            i.delFileByCorFileId( fileNumber, true );
+            toDelete.add( indexFile );
+        }
+        return toDelete;
+    }
+
     public IndexUpdater emptyUpdate()
     {
         return new IndexUpdater()
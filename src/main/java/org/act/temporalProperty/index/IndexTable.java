@@ -8,6 +8,7 @@ import org.act.temporalProperty.index.value.rtree.IndexEntry;
 import org.act.temporalProperty.index.value.rtree.IndexEntryOperator;
 import org.act.temporalProperty.query.aggr.AggregationIndexKey;
 import org.act.temporalProperty.table.MMapTable;
+import org.act.temporalProperty.table.Table;
 import org.act.temporalProperty.table.TableComparator;
 import org.act.temporalProperty.util.Slice;
 
@@ -23,6 +24,8 @@ import java.util.List;
 public class IndexTable {
 
     private final FileChannel channel;
+    // Aggregation索引文件解析后的Table(文件映射, footer和index block), 第一次查询时创建, 之后的查询共用
+    private volatile MMapTable aggrTable;
 
     public IndexTable(FileChannel fileChannel) {
         this.channel = fileChannel;
@@ -41,6 +44,26 @@ public class IndexTable {
     }
 
     public SeekingIterator<Slice, Slice> aggrIterator(String filePath) throws IOException {
-        return new MMapTable( filePath, channel, AggregationIndexKey.sliceComparator, false).iterator();
+        MMapTable table = aggrTable;
+        if ( table == null )
+        {
+            synchronized ( this )
+            {
+                table = aggrTable;
+                if ( table == null )
+                {
+                    table = new MMapTable( filePath, channel, AggregationIndexKey.sliceComparator, false );
+                    aggrTable = table;
+                }
+            }
+        }
+        return table.iterator();
+    }
+
+    /**
+     * @return 已经打开的Aggregation索引Table, 没有打开过则为null
+     */
+    Table openedAggrTable() {
+        return aggrTable;
     }
 }
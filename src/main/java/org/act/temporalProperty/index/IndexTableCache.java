@@ -4,8 +4,11 @@ import com.google.common.base.Preconditions;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
 import org.act.temporalProperty.impl.Filename;
+import org.act.temporalProperty.table.Table;
 import org.act.temporalProperty.util.Closeables;
+import org.act.temporalProperty.util.Finalizer;
 import org.act.temporalProperty.util.Slice;
 
 import java.io.File;
@@ -21,12 +24,20 @@ import java.util.concurrent.ExecutionException;
 public class IndexTableCache {
 
     private final LoadingCache<String, IndexTableFile> cache;
+    private final Finalizer<Table> finalizer = new Finalizer<>(1);
 
+    /**
+     * @param tableCacheSize 最多缓存的索引文件数. 被移出缓存的Aggregation索引Table在不再被使用(没有iterator引用)后关闭
+     */
     public IndexTableCache(final File indexDir, int tableCacheSize)
     {
         Preconditions.checkNotNull(indexDir, "databaseName is null");
         cache = CacheBuilder.newBuilder()
                 .maximumSize(tableCacheSize)
+                .removalListener((RemovalListener<String, IndexTableFile>) notification -> {
+                    Table table = notification.getValue().getTable().openedAggrTable();
+                    if (table != null) finalizer.addCleanup(table, table.closer());
+                })
                 .build(new CacheLoader<String, IndexTableFile>(){
                     @Override
                     public IndexTableFile load(String fileAbsPath) throws IOException{
@@ -55,6 +66,7 @@ public class IndexTableCache {
      */
     public void close(){
         cache.invalidateAll();
+        finalizer.destroy();
     }
 
     /**
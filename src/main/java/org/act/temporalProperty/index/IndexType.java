@@ -8,7 +8,7 @@ import org.act.temporalProperty.meta.ValueContentType;
  */
 public enum IndexType {
     SINGLE_VALUE(0), MULTI_VALUE(1),
-    AGGR_DURATION(2), AGGR_MIN(3), AGGR_MAX(4), AGGR_MIN_MAX(5);
+    AGGR_DURATION(2), AGGR_MIN(3), AGGR_MAX(4), AGGR_MIN_MAX(5), AGGR_SUM(6);
 
     int id;
     IndexType(int id){
@@ -22,13 +22,14 @@ public enum IndexType {
     }
 
     public static IndexType decode(int i){
-        Preconditions.checkArgument(0<=i && i<=5);
+        Preconditions.checkArgument(0<=i && i<=6);
         switch (i){
             case 0: return SINGLE_VALUE;
             case 1: return MULTI_VALUE;
             case 2: return AGGR_DURATION;
             case 3: return AGGR_MIN;
             case 4: return AGGR_MAX;
+            case 6: return AGGR_SUM;
             default:return AGGR_MIN_MAX;
         }
     }
@@ -10,6 +10,7 @@ import org.act.temporalProperty.index.aggregation.AggregationIndexMeta;
 import org.act.temporalProperty.index.aggregation.Interval2AggrEntryIterator;
 import org.act.temporalProperty.index.aggregation.MinMaxAggrEntryIterator;
 import org.act.temporalProperty.index.aggregation.MinMaxAggrIndexWriter;
+import org.act.temporalProperty.index.aggregation.SumAggrIndexWriter;
 import org.act.temporalProperty.index.aggregation.TimeGroupBuilder;
 import org.act.temporalProperty.index.value.IndexBuilderCallback;
 import org.act.temporalProperty.index.value.IndexMetaData;
@@ -39,7 +40,8 @@ import java.util.NavigableSet;
 /**
  * update index for one or more (multi-property time value index) property.
  * should update all index relevant.
- * first setMergeInfo() is called, then update called many times, then updateMeta() once, cleanUp() once.
+ * first setMergeInfo() is called, then update called many times, then finish() once for each output file,
+ * then updateMeta() once, cleanUp() once.
  *
  * Created by song on 2018-05-06.
  */
@@ -53,6 +55,55 @@ public interface IndexUpdater
 
     void cleanUp() throws IOException;
 
+    /**
+     * 合并输出分为多个文件时, 取出属于targetMeta时间范围的entry:
+     * 每个entity在起始时间之前的最后一个entry以起始时间作为新的起始时间, 晚于结束时间的entry丢弃.
+     * data需按InternalKey排序.
+     */
+    static List<InternalEntry> clip( List<InternalEntry> data, FileMetaData targetMeta )
+    {
+        TimePointL start = targetMeta.getSmallest();
+        TimePointL end = targetMeta.getLargest();
+        List<InternalEntry> result = new ArrayList<>();
+        InternalEntry floor = null;
+        for ( InternalEntry entry : data )
+        {
+            InternalKey key = entry.getKey();
+            if ( floor != null && !floor.getKey().sameId( key ) )
+            {
+                result.add( clipStart( floor, start ) );
+                floor = null;
+            }
+            int cmp = key.getStartTime().compareTo( start );
+            if ( cmp < 0 )
+            {
+                floor = entry;
+                continue;
+            }
+            if ( floor != null )
+            {
+                if ( cmp > 0 ) result.add( clipStart( floor, start ) );
+                floor = null;
+            }
+            if ( key.getStartTime().compareTo( end ) <= 0 ) result.add( entry );
+        }
+        if ( floor != null ) result.add( clipStart( floor, start ) );
+        return result;
+    }
+
+    // 删除被替换的索引文件, 先从IndexTableCache中移除, 否则缓存中的Table会一直映射着已删除的文件
+    static void deleteIndexFile( IndexTableCache cache, File file ) throws IOException
+    {
+        cache.evict( file.getAbsolutePath() );
+        Files.delete( file.toPath() );
+    }
+
+    static InternalEntry clipStart( InternalEntry entry, TimePointL start )
+    {
+        InternalKey key = entry.getKey();
+        return new InternalEntry( new InternalKey( key.getPropertyId(), key.getEntityId(), start, key.getValueType() ), entry.getValue() );
+    }
+
     class AllIndexUpdater implements IndexUpdater
     {
         private final List<IndexUpdater> updaters = new ArrayList<>();
@@ -98,36 +149,29 @@ public interface IndexUpdater
     {
         protected final IndexMetaData meta;
         protected final List<Long> delFileId;
-        private IndexFileMeta newFileMeta;
-        private IndexBuilderCallback dataCollector;
+        private final List<InternalEntry> data = new ArrayList<>();
+        private final List<IndexFileMeta> newFileMetas = new ArrayList<>();
         private IndexEntryOperator op;
         private IndexMetaManager sysIndexMeta;
         protected File indexDir;
         protected Boolean corIsStable;
+        protected IndexTableCache cache;
 
-        public SinglePropertyValueIndexFileUpdater( IndexMetaManager sysIndexMeta, File indexDir, IndexMetaData indexMetaData, List<Long> deletedUnstableFileId, Boolean corIsStable )
+        public SinglePropertyValueIndexFileUpdater( IndexMetaManager sysIndexMeta, IndexTableCache cache, File indexDir, IndexMetaData indexMetaData, List<Long> deletedUnstableFileId, Boolean corIsStable )
         {
             this.sysIndexMeta = sysIndexMeta;
+            this.cache = cache;
             this.indexDir = indexDir;
             this.meta = indexMetaData;
             this.delFileId = deletedUnstableFileId;
             this.corIsStable = corIsStable;
             this.op = new IndexEntryOperator( meta.getValueTypes(), 4096 );
-            this.dataCollector = new IndexBuilderCallback( meta.getPropertyIdList(), op );
         }
 
         @Override
         public void update( InternalEntry entry )
         {
-            InternalKey key = entry.getKey();
-            if ( key.getValueType() == ValueType.INVALID )
-            {
-                dataCollector.onCall( key.getPropertyId(), key.getEntityId(), key.getStartTime(), null );
-            }
-            else
-            {
-                dataCollector.onCall( key.getPropertyId(), key.getEntityId(), key.getStartTime(), entry.getValue() );
-            }
+            data.add( entry );
         }
 
         @Override
@@ -137,7 +181,7 @@ public interface IndexUpdater
             {
                 meta.delFileByCorFileId( fileId, false );
             }
-            meta.addFile( this.newFileMeta );
+            newFileMetas.forEach( meta::addFile );
         }
 
         @Override
@@ -147,13 +191,26 @@ public interface IndexUpdater
             {
                 IndexFileMeta fMeta = meta.getByCorFileId( fileId, false );
                 File originFile = new File( indexDir, Filename.aggrIndexFileName( fMeta.getFileId() ) );
-                Files.delete( originFile.toPath() );
+                IndexUpdater.deleteIndexFile( cache, originFile );
             }
         }
 
         @Override
         public void finish( FileMetaData targetMeta ) throws IOException
         {
+            IndexBuilderCallback dataCollector = new IndexBuilderCallback( meta.getPropertyIdList(), op );
+            for ( InternalEntry entry : IndexUpdater.clip( this.data, targetMeta ) )
+            {
+                InternalKey key = entry.getKey();
+                if ( key.getValueType() == ValueType.INVALID )
+                {
+                    dataCollector.onCall( key.getPropertyId(), key.getEntityId(), key.getStartTime(), null );
+                }
+                else
+                {
+                    dataCollector.onCall( key.getPropertyId(), key.getEntityId(), key.getStartTime(), entry.getValue() );
+                }
+            }
             PeekingIterator<IndexEntry> data = dataCollector.getIterator( targetMeta.getSmallest(), targetMeta.getLargest() );
             long fileId = sysIndexMeta.nextFileId();
             String indexFilePath = Filename.valIndexFileName( fileId );
@@ -166,17 +223,17 @@ public interface IndexUpdater
                 }
                 writer.finish();
                 long fileSize = channel.size();
-                this.newFileMeta = new IndexFileMeta( meta.getId(), fileId, fileSize, targetMeta.getSmallest(), targetMeta.getLargest(), targetMeta.getNumber(), corIsStable,
-                                                      Collections.emptySet() );
+                newFileMetas.add( new IndexFileMeta( meta.getId(), fileId, fileSize, targetMeta.getSmallest(), targetMeta.getLargest(), targetMeta.getNumber(),
+                                                     corIsStable, Collections.emptySet() ) );
             }
         }
     }
 
     class SinglePropertyValueBufferMergeUpdater extends SinglePropertyValueIndexFileUpdater
     {
-        public SinglePropertyValueBufferMergeUpdater( IndexMetaManager sysIndexMeta, File indexDir, IndexMetaData indexMetaData, long deletedFileId, Boolean corIsStable )
+        public SinglePropertyValueBufferMergeUpdater( IndexMetaManager sysIndexMeta, IndexTableCache cache, File indexDir, IndexMetaData indexMetaData, long deletedFileId, Boolean corIsStable )
         {
-            super( sysIndexMeta, indexDir, indexMetaData, Lists.newArrayList( deletedFileId ), corIsStable );
+            super( sysIndexMeta, cache, indexDir, indexMetaData, Lists.newArrayList( deletedFileId ), corIsStable );
         }
 
         @Override
@@ -185,7 +242,7 @@ public interface IndexUpdater
             Long fileId = delFileId.get( 0 );
             IndexFileMeta fMeta = meta.getByCorFileId( fileId, corIsStable );
             File originFile = new File( indexDir, Filename.valIndexFileName( fMeta.getFileId() ) );
-            Files.delete( originFile.toPath() );
+            IndexUpdater.deleteIndexFile( cache, originFile );
         }
     }
 
@@ -193,16 +250,18 @@ public interface IndexUpdater
     {
         protected final IndexMetaData meta;
         protected final List<Long> delFileId;
-        protected IndexFileMeta newFileMeta;
+        protected final List<IndexFileMeta> newFileMetas = new ArrayList<>();
 
         private int proId;
         private List<InternalEntry> propertyNewData = new ArrayList<>();
         private IndexMetaManager sysIndexMeta;
         private File indexDir;
+        protected IndexTableCache cache;
 
-        public MultiPropertyValueIndexFileUpdater( IndexMetaManager sysIndexMeta, File indexDir, IndexMetaData indexMetaData, List<Long> deletedUnstableFileId, int proId )
+        public MultiPropertyValueIndexFileUpdater( IndexMetaManager sysIndexMeta, IndexTableCache cache, File indexDir, IndexMetaData indexMetaData, List<Long> deletedUnstableFileId, int proId )
         {
             this.sysIndexMeta = sysIndexMeta;
+            this.cache = cache;
             this.indexDir = indexDir;
             this.proId = proId;
             this.meta = indexMetaData;
@@ -222,7 +281,7 @@ public interface IndexUpdater
             {
                 meta.delFileByCorFileId( fileId, false );
             }
-            meta.addFile( this.newFileMeta );
+            newFileMetas.forEach( meta::addFile );
         }
 
         @Override
@@ -232,7 +291,7 @@ public interface IndexUpdater
             {
                 IndexFileMeta fMeta = meta.getByCorFileId( fileId, false );
                 File originFile = new File( indexDir, Filename.aggrIndexFileName( fMeta.getFileId() ) );
-                Files.delete( originFile.toPath() );
+                IndexUpdater.deleteIndexFile( cache, originFile );
             }
         }
 
@@ -269,7 +328,7 @@ public interface IndexUpdater
             }
 
             SearchableIterator merged =
-                    TwoLevelMergeIterator.merge( new List2SearchableIterator( propertyNewData ), new List2SearchableIterator( propertyOldIntervalData ) );
+                    TwoLevelMergeIterator.merge( new List2SearchableIterator( IndexUpdater.clip( propertyNewData, targetMeta ) ), new List2SearchableIterator( propertyOldIntervalData ) );
             while ( merged.hasNext() )
             {
                 InternalEntry entry = merged.next();
@@ -297,17 +356,17 @@ public interface IndexUpdater
 
                 writer.finish();
                 long fileSize = channel.size();
-                this.newFileMeta = new IndexFileMeta( meta.getId(), fileId, fileSize, targetMeta.getSmallest(), targetMeta.getLargest(), 0, false,
-                                                      Collections.emptyList() );
+                newFileMetas.add( new IndexFileMeta( meta.getId(), fileId, fileSize, targetMeta.getSmallest(), targetMeta.getLargest(), 0, false,
+                                                     Collections.emptyList() ) );
             }
         }
     }
 
     class MultiPropertyValueBufferMergeUpdater extends MinMaxFileUpgradeUpdater
     {
-        public MultiPropertyValueBufferMergeUpdater( IndexMetaManager meta, File indexDir, IndexMetaData indexMetaData, long deletedFileId, boolean isStable )
+        public MultiPropertyValueBufferMergeUpdater( IndexMetaManager meta, IndexTableCache cache, File indexDir, IndexMetaData indexMetaData, long deletedFileId, boolean isStable )
         {
-            super( meta, indexDir, indexMetaData, Lists.newArrayList( deletedFileId ), isStable );
+            super( meta, cache, indexDir, indexMetaData, Lists.newArrayList( deletedFileId ), isStable );
         }
 
         @Override
@@ -317,7 +376,7 @@ public interface IndexUpdater
             {
                 IndexFileMeta fMeta = meta.getByCorFileId( fileId, false );
                 File originFile = new File( indexDir, Filename.aggrIndexFileName( fMeta.getFileId() ) );
-                Files.delete( originFile.toPath() );
+                IndexUpdater.deleteIndexFile( cache, originFile );
             }
         }
     }
@@ -328,14 +387,16 @@ public interface IndexUpdater
         protected final TimeGroupBuilder timeGroup;
         protected final List<Long> delFileId;
         protected final List<InternalEntry> data = new ArrayList<>();
-        protected IndexFileMeta newFileMeta;
+        protected final List<IndexFileMeta> newFileMetas = new ArrayList<>();
         protected IndexMetaManager sysIndexMeta;
         protected File indexDir;
         protected Boolean corIsStable;
+        protected IndexTableCache cache;
 
-        public AggregationIndexFileUpdater( IndexMetaManager sysIndexMeta, File indexDir, IndexMetaData indexMetaData, List<Long> deletedUnstableFileId, boolean corIsStable )
+        public AggregationIndexFileUpdater( IndexMetaManager sysIndexMeta, IndexTableCache cache, File indexDir, IndexMetaData indexMetaData, List<Long> deletedUnstableFileId, boolean corIsStable )
         {
             this.sysIndexMeta = sysIndexMeta;
+            this.cache = cache;
             this.indexDir = indexDir;
             this.corIsStable = corIsStable;
             this.meta = (AggregationIndexMeta) indexMetaData;
@@ -356,7 +417,7 @@ public interface IndexUpdater
             {
                 meta.delFileByCorFileId( fileId, false );
             }
-            meta.addFile( this.newFileMeta );
+            newFileMetas.forEach( meta::addFile );
         }
 
         @Override
@@ -366,7 +427,7 @@ public interface IndexUpdater
             {
                 IndexFileMeta fMeta = meta.getByCorFileId( fileId, false );
                 File originFile = new File( indexDir, Filename.aggrIndexFileName( fMeta.getFileId() ) );
-                Files.delete( originFile.toPath() );
+                IndexUpdater.deleteIndexFile( cache, originFile );
             }
         }
     }
@@ -374,15 +435,15 @@ public interface IndexUpdater
     // update index when multi storage file merge to higher level.
     class DurationMergeUpgradeUpdater extends AggregationIndexFileUpdater
     {
-        public DurationMergeUpgradeUpdater( IndexMetaManager meta, File indexDir, IndexMetaData indexMetaData, List<Long> deletedUnstableFileId, boolean isStable )
+        public DurationMergeUpgradeUpdater( IndexMetaManager meta, IndexTableCache cache, File indexDir, IndexMetaData indexMetaData, List<Long> deletedUnstableFileId, boolean isStable )
         {
-            super( meta, indexDir, indexMetaData, deletedUnstableFileId, isStable );
+            super( meta, cache, indexDir, indexMetaData, deletedUnstableFileId, isStable );
         }
 
         @Override
         public void finish( FileMetaData targetMeta ) throws IOException
         {
-            PeekingIterator<InternalEntry> iterator = Iterators.peekingIterator( data.iterator() );
+            PeekingIterator<InternalEntry> iterator = Iterators.peekingIterator( IndexUpdater.clip( data, targetMeta ).iterator() );
             // 将原始时间点Entry数据转换为时间区间Entry数据
             Iterator<EntityTimeIntervalEntry> interval = new SimplePoint2IntervalIterator( iterator, targetMeta.getLargest() );
 
@@ -395,25 +456,25 @@ public interface IndexUpdater
             // 排序后写入文件
             long fileId = sysIndexMeta.nextFileId();
             File indexFile = new File( indexDir, Filename.aggrIndexFileName( fileId ) );
-            AggregationIndexFileWriter w = new AggregationIndexFileWriter( data, indexFile );
+            AggregationIndexFileWriter w = new AggregationIndexFileWriter( data, indexFile, subTimeGroup );
             long fileSize = w.write();
-            this.newFileMeta = new IndexFileMeta( meta.getId(), fileId, fileSize, targetMeta.getSmallest(), targetMeta.getLargest(), targetMeta.getNumber(), corIsStable,
-                                                  subTimeGroup );
+            newFileMetas.add( new IndexFileMeta( meta.getId(), fileId, fileSize, targetMeta.getSmallest(), targetMeta.getLargest(), targetMeta.getNumber(),
+                                                 corIsStable, subTimeGroup ) );
         }
     }
 
     // update index when multi storage file merge to higher level.
     class MinMaxFileUpgradeUpdater extends AggregationIndexFileUpdater
     {
-        public MinMaxFileUpgradeUpdater( IndexMetaManager meta, File indexDir, IndexMetaData indexMetaData, List<Long> deletedUnstableFileId, boolean isStable )
+        public MinMaxFileUpgradeUpdater( IndexMetaManager meta, IndexTableCache cache, File indexDir, IndexMetaData indexMetaData, List<Long> deletedUnstableFileId, boolean isStable )
         {
-            super( meta, indexDir, indexMetaData, deletedUnstableFileId, isStable );
+            super( meta, cache, indexDir, indexMetaData, deletedUnstableFileId, isStable );
         }
 
         @Override
         public void finish( FileMetaData targetMeta ) throws IOException
         {
-            PeekingIterator<InternalEntry> iterator = Iterators.peekingIterator( data.iterator() );
+            PeekingIterator<InternalEntry> iterator = Iterators.peekingIterator( IndexUpdater.clip( data, targetMeta ).iterator() );
             // 将原始时间点Entry数据转换为时间区间Entry数据
             Iterator<EntityTimeIntervalEntry> interval = new SimplePoint2IntervalIterator( iterator, targetMeta.getLargest() );
 
@@ -428,10 +489,36 @@ public interface IndexUpdater
             long fileId = sysIndexMeta.nextFileId();
             File indexFile = new File( indexDir, Filename.aggrIndexFileName( fileId ) );
             MinMaxAggrIndexWriter w =
-                    new MinMaxAggrIndexWriter( data, indexFile, ValueGroupingMap.getComparator( this.meta.getValueTypes().get( 0 ) ), this.meta.getType() );
+                    new MinMaxAggrIndexWriter( data, indexFile, ValueGroupingMap.getComparator( this.meta.getValueTypes().get( 0 ) ), this.meta.getType(), subTimeGroup );
+            long fileSize = w.write();
+            newFileMetas.add( new IndexFileMeta( meta.getId(), fileId, fileSize, targetMeta.getSmallest(), targetMeta.getLargest(), targetMeta.getNumber(),
+                                                 corIsStable, subTimeGroup ) );
+        }
+    }
+
+    // update index when multi storage file merge to higher level.
+    class SumFileUpgradeUpdater extends AggregationIndexFileUpdater
+    {
+        public SumFileUpgradeUpdater( IndexMetaManager meta, IndexTableCache cache, File indexDir, IndexMetaData indexMetaData, List<Long> deletedUnstableFileId, boolean isStable )
+        {
+            super( meta, cache, indexDir, indexMetaData, deletedUnstableFileId, isStable );
+        }
+
+        @Override
+        public void finish( FileMetaData targetMeta ) throws IOException
+        {
+            PeekingIterator<InternalEntry> iterator = Iterators.peekingIterator( IndexUpdater.clip( data, targetMeta ).iterator() );
+            // 将原始时间点Entry数据转换为时间区间Entry数据
+            Iterator<EntityTimeIntervalEntry> interval = new SimplePoint2IntervalIterator( iterator, targetMeta.getLargest() );
+
+            // 按时间分块累加后写入文件
+            NavigableSet<TimePointL> subTimeGroup = timeGroup.calcNewGroup( targetMeta.getSmallest(), targetMeta.getLargest() );
+            long fileId = sysIndexMeta.nextFileId();
+            File indexFile = new File( indexDir, Filename.aggrIndexFileName( fileId ) );
+            SumAggrIndexWriter w = new SumAggrIndexWriter( interval, subTimeGroup, this.meta.getValueTypes().get( 0 ), indexFile );
             long fileSize = w.write();
-            this.newFileMeta = new IndexFileMeta( meta.getId(), fileId, fileSize, targetMeta.getSmallest(), targetMeta.getLargest(), targetMeta.getNumber(), corIsStable,
-                                                  subTimeGroup );
+            newFileMetas.add( new IndexFileMeta( meta.getId(), fileId, fileSize, targetMeta.getSmallest(), targetMeta.getLargest(), targetMeta.getNumber(),
+                                                 corIsStable, subTimeGroup ) );
         }
     }
 
@@ -439,9 +526,9 @@ public interface IndexUpdater
     class DurationBufferMergeUpdater extends DurationMergeUpgradeUpdater
     {
 
-        public DurationBufferMergeUpdater( IndexMetaManager meta, File indexDir, IndexMetaData indexMetaData, long deletedFileId, boolean isStable )
+        public DurationBufferMergeUpdater( IndexMetaManager meta, IndexTableCache cache, File indexDir, IndexMetaData indexMetaData, long deletedFileId, boolean isStable )
         {
-            super( meta, indexDir, indexMetaData, Lists.newArrayList( deletedFileId ), isStable );
+            super( meta, cache, indexDir, indexMetaData, Lists.newArrayList( deletedFileId ), isStable );
         }
 
         @Override
@@ -450,16 +537,34 @@ public interface IndexUpdater
             Long fileId = delFileId.get( 0 );
             IndexFileMeta fMeta = meta.getByCorFileId( fileId, corIsStable );
             File originFile = new File( indexDir, Filename.aggrIndexFileName( fMeta.getFileId() ) );
-            Files.delete( originFile.toPath() );
+            IndexUpdater.deleteIndexFile( cache, originFile );
         }
     }
 
     class MinMaxBufferMergeUpdater extends MinMaxFileUpgradeUpdater
     {
 
-        public MinMaxBufferMergeUpdater( IndexMetaManager meta, File indexDir, IndexMetaData indexMetaData, long deletedFileId, boolean isStable )
+        public MinMaxBufferMergeUpdater( IndexMetaManager meta, IndexTableCache cache, File indexDir, IndexMetaData indexMetaData, long deletedFileId, boolean isStable )
+        {
+            super( meta, cache, indexDir, indexMetaData, Lists.newArrayList( deletedFileId ), isStable );
+        }
+
+        @Override
+        public void cleanUp() throws IOException
+        {
+            Long fileId = delFileId.get( 0 );
+            IndexFileMeta fMeta = meta.getByCorFileId( fileId, corIsStable );
+            File originFile = new File( indexDir, Filename.aggrIndexFileName( fMeta.getFileId() ) );
+            IndexUpdater.deleteIndexFile( cache, originFile );
+        }
+    }
+
+    class SumBufferMergeUpdater extends SumFileUpgradeUpdater
+    {
+
+        public SumBufferMergeUpdater( IndexMetaManager meta, IndexTableCache cache, File indexDir, IndexMetaData indexMetaData, long deletedFileId, boolean isStable )
         {
-            super( meta, indexDir, indexMetaData, Lists.newArrayList( deletedFileId ), isStable );
+            super( meta, cache, indexDir, indexMetaData, Lists.newArrayList( deletedFileId ), isStable );
         }
 
         @Override
@@ -468,7 +573,7 @@ public interface IndexUpdater
             Long fileId = delFileId.get( 0 );
             IndexFileMeta fMeta = meta.getByCorFileId( fileId, corIsStable );
             File originFile = new File( indexDir, Filename.aggrIndexFileName( fMeta.getFileId() ) );
-            Files.delete( originFile.toPath() );
+            IndexUpdater.deleteIndexFile( cache, originFile );
         }
     }
 }
@@ -1,6 +1,7 @@
 package org.act.temporalProperty.index.aggregation;
 
 import org.act.temporalProperty.impl.*;
+import org.act.temporalProperty.query.TimePointL;
 import org.act.temporalProperty.query.aggr.AggregationIndexKey;
 import org.act.temporalProperty.table.TableBuilder;
 import org.act.temporalProperty.table.TableComparator;
@@ -19,10 +20,12 @@ public class AggregationIndexFileWriter {
 
     private final Iterator<AggregationIndexEntry> data;
     private final File file;
+    private final List<TimePointL> timeGroups;
 
-    public AggregationIndexFileWriter(List<AggregationIndexEntry> data, File file) {
+    public AggregationIndexFileWriter(List<AggregationIndexEntry> data, File file, NavigableSet<TimePointL> timeGroups) {
         this.data = data.iterator();
         this.file = file;
+        this.timeGroups = new ArrayList<>(timeGroups);
     }
 
     public long write() throws IOException {
@@ -30,31 +33,26 @@ public class AggregationIndexFileWriter {
             FileChannel targetChannel = targetStream.getChannel();
             TableBuilder builder = new TableBuilder( new Options(), targetChannel, AggregationIndexKey.sliceComparator);
             // merge same AggregationIndexKey, sum up their duration.
-            AggregationIndexEntry lastEntry = null;
-            long duration = 0;
+            Map<AggregationIndexKey, Slice> level0 = new TreeMap<>();
             while (data.hasNext()) {
                 AggregationIndexEntry entry = data.next();
-                if(lastEntry==null){
-                    duration = entry.getDuration();
-                }else if(entry.getKey().equals(lastEntry.getKey())) {
-                    duration += entry.getDuration();
-                } else{ // key not equal, so we add lastKey.
-                    Slice dur = new Slice(8);
-                    dur.setLong(0, duration);
-                    builder.add(lastEntry.getKey().encode(), dur);
-                    duration = entry.getDuration();
-                }
-                lastEntry = entry;
-            }
-            if(lastEntry!=null) {
-                Slice dur = new Slice(8);
-                dur.setLong(0, duration);
-                builder.add(lastEntry.getKey().encode(), dur);
+                level0.merge(entry.getKey(), duration(entry.getDuration()), AggregationIndexFileWriter::sum);
             }
+            AggregationRollup.write(builder, level0, timeGroups, (valueGroupId, a, b) -> sum(a, b));
             builder.finish();
             long fileSize = targetChannel.size();
             targetChannel.close();
             return fileSize;
         }
     }
+
+    private static Slice duration(long duration) {
+        Slice dur = new Slice(8);
+        dur.setLong(0, duration);
+        return dur;
+    }
+
+    private static Slice sum(Slice a, Slice b) {
+        return duration(a.getLong(0) + b.getLong(0));
+    }
 }
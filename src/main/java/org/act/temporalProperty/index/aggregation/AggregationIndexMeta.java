@@ -14,10 +14,10 @@ import org.act.temporalProperty.util.SliceOutput;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 /**
  * Created by song on 2018-04-06.
@@ -117,13 +117,28 @@ public class AggregationIndexMeta extends IndexMetaData {
         return decode(in.input());
     }
 
-    public TreeSet<TimePointL> getTimeGroupAvailable(TimePointL start, TimePointL end )
+    /**
+     * 索引文件中完整包含在[start, end)内的time group. 每个文件的time group列表的最后一个时间只是结束边界,
+     * 相邻文件之间的时间不属于任何group.
+     * @return group开始时间 -> 下一个group的开始时间(不含)
+     */
+    public TreeMap<TimePointL, TimePointL> getTimeGroupAvailable(TimePointL start, TimePointL end )
     {
-        TreeSet<TimePointL> result = new TreeSet<>();
+        TreeMap<TimePointL, TimePointL> result = new TreeMap<>();
         Collection<IndexFileMeta> files = this.getFilesByTime( start, end );
         for ( IndexFileMeta f : files )
         {
-            result.addAll( f.getTimeGroups() );
+            List<TimePointL> groups = f.getTimeGroups();
+            // 从第一个不早于start的group开始, 只访问查询范围内的group
+            int first = Collections.binarySearch( groups, start );
+            if ( first < 0 ) first = -first - 1;
+            for ( int i = first + 1; i < groups.size(); i++ )
+            {
+                TimePointL gStart = groups.get( i - 1 );
+                TimePointL gEnd = groups.get( i );
+                if ( gEnd.compareTo( end ) > 0 ) break;
+                result.put( gStart, gEnd );
+            }
         }
         return result;
     }
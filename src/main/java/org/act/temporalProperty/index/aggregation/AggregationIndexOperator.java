@@ -21,6 +21,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.function.BiConsumer;
 
 import static org.act.temporalProperty.index.IndexType.*;
 /**
@@ -35,6 +36,7 @@ public class AggregationIndexOperator
 
     private final DurationIndexManager durationIndex = new DurationIndexManager();
     private final MinMaxIndexManager minMaxIndex = new MinMaxIndexManager();
+    private final SumIndexManager sumIndex = new SumIndexManager();
 
     public AggregationIndexOperator( File indexDir, TemporalPropertyStoreImpl store, IndexTableCache cache, IndexMetaManager meta )
     {
@@ -57,6 +59,8 @@ public class AggregationIndexOperator
                                                               every,
                                                               timeUnit,
                                                               valueGrouping.map() );
+        // 汇总节点的层号占用value group id的高位
+        valueGrouping.map().values().forEach( AggregationRollup::checkValueGroupId );
         // 添加元信息到meta
         sysIndexMeta.addOfflineMeta( meta );
         return indexId;
@@ -81,6 +85,23 @@ public class AggregationIndexOperator
         return indexId;
     }
 
+    public long createSum(PropertyMetaData pMeta, TimePointL start, TimePointL end, int every, int timeUnit) throws IOException {
+        IndexValueType valueType = IndexValueType.convertFrom( pMeta.getType() );
+        if ( valueType == IndexValueType.STRING ) throw new TPSRuntimeException( "AGGR_SUM index needs a numeric property, got {}", valueType );
+        long indexId = sysIndexMeta.nextIndexId();
+        AggregationIndexMeta meta = new AggregationIndexMeta( indexId,
+                                                              AGGR_SUM,
+                                                              pMeta.getPropertyId(),
+                                                              valueType,
+                                                              start,
+                                                              end,
+                                                              every,
+                                                              timeUnit,
+                                                              new TreeMap<>() );
+        sysIndexMeta.addOfflineMeta( meta );
+        return indexId;
+    }
+
     public AggregationIndexQueryResult query(long entityId, int proId, TimePointL start, TimePointL end, long indexId, MemTable cache ) throws IOException {
         AggregationIndexMeta meta = (AggregationIndexMeta) sysIndexMeta.getByIndexId( indexId );
         if(meta==null || meta.getPropertyIdList().get(0)!=proId){
@@ -91,6 +112,8 @@ public class AggregationIndexOperator
                 return durationIndex.query(entityId, meta, start, end, cache);
             } else if (indexType == AGGR_MIN || indexType == AGGR_MAX || indexType == AGGR_MIN_MAX) {
                 return minMaxIndex.query(entityId, meta, start, end, cache);
+            } else if (indexType == AGGR_SUM) {
+                return sumIndex.query(entityId, meta, start, end, cache);
             }else{
                 throw new TPSRuntimeException("index is not aggregation type!");
             }
@@ -107,6 +130,10 @@ public class AggregationIndexOperator
             {
                 result.add( new CreateDurationIndexTask( meta ) );
             }
+            else if ( meta.getType() == AGGR_SUM )
+            {
+                result.add( new CreateSumIndexTask( meta ) );
+            }
             else
             {
                 result.add( new CreateMinMaxIndexTask( meta ) );
@@ -131,17 +158,17 @@ public class AggregationIndexOperator
             if ( timeGroups.needQueryStorage() )
             {
                 // 根据索引信息(timeUnit, every, valueGroup)构建一个range查询
-                DurationStatisticAggregationQuery packedQuery = packQuery( meta, start, end );
                 int proId = meta.getPropertyIdList().get(0);
                 for ( Entry<TimePointL, TimePointL> time : timeGroups.getQueryIntervals() )
                 {
-                    // 进行range查询并返回结果
+                    // 进行range查询并返回结果, 每段的区间不同, 各用一个查询
                     TimePointL timeRangeStart = time.getKey();
                     TimePointL timeRangeEnd = time.getValue();
-                    Map<Integer,Integer> rangeQueryResult =
-                            (Map<Integer,Integer>) tpStore.getRangeValue( entityId, proId, timeRangeStart, timeRangeEnd, packedQuery, cache );
+                    IncrementalDurationAggregationQuery packedQuery = packQuery( meta, timeRangeStart, timeRangeEnd );
+                    Map<Integer,Long> rangeQueryResult =
+                            (Map<Integer,Long>) tpStore.getRangeValue( entityId, proId, timeRangeStart, timeRangeEnd, packedQuery, cache );
                     // 合并结果
-                    result = mergeAggrResult(result, rangeQueryResult);
+                    result = mergeAggrResult(result, toIntDuration(rangeQueryResult));
                 }
             }
             return new AggregationIndexQueryResult( result, timeGroups.getAccelerateTime() );
@@ -149,50 +176,17 @@ public class AggregationIndexOperator
 
         private Map<Integer,Integer> queryIndex( long entityId, AggregationIndexMeta meta, IntervalStatus status ) throws IOException
         {
-            TimePointL startTimeGroup = status.getTimeStartGroup();
-            TimePointL endTimeGroup = status.getTimeEndGroup();
             Map<Integer,Integer> result = new TreeMap<>();
-            Collection<IndexFileMeta> fileShouldSearch = meta.getFilesByTime( startTimeGroup, endTimeGroup );
-            for ( IndexFileMeta fMeta : fileShouldSearch)
-            {
-                queryOneFile( result, fMeta.getFileId(), entityId, startTimeGroup, endTimeGroup, status );
-            }
+            readIndex( entityId, meta, status, ( valueGroupId, value ) ->
+                    result.merge( valueGroupId, (int) value.getLong( 0 ), ( oldVal, newVal ) -> oldVal + newVal ) );
             return result;
         }
 
-        private void queryOneFile(Map<Integer,Integer> result, long indexFileId, long entityId, TimePointL startTimeGroup, TimePointL endTimeGroup, IntervalStatus status ) throws IOException
-        {
-            String filePath = new File( indexDir, Filename.aggrIndexFileName( indexFileId ) ).getAbsolutePath();
-            SeekingIterator<Slice,Slice> iterator = cache.getTable( filePath ).aggrIterator( filePath );
-            AggregationIndexKey searchKey = new AggregationIndexKey( entityId, startTimeGroup, 0 );
-            iterator.seek( searchKey.encode() );
-            while ( iterator.hasNext() )
-            {
-                Entry<Slice,Slice> entry = iterator.next();
-                AggregationIndexKey key = new AggregationIndexKey( entry.getKey() );
-                if ( key.compareTo( searchKey ) < 0 ) {continue;}
-                TimePointL timeGroupId = key.getTimeGroupId();
-                if ( key.getEntityId() == entityId && startTimeGroup.compareTo(timeGroupId)<=0 && timeGroupId.compareTo(endTimeGroup) <= 0 )
-                {
-                    if ( status.isValid( timeGroupId ) )
-                    {
-                        result.putIfAbsent( key.getValueGroupId(), 0 );
-                        int duration = entry.getValue().getInt( 0 );
-                        result.merge( key.getValueGroupId(), duration, ( oldVal, newVal ) -> oldVal + newVal );
-                    }//else: continue
-                }
-                else
-                {
-                    return;
-                }
-            }
-        }
-
-        private DurationStatisticAggregationQuery packQuery(AggregationIndexMeta meta, TimePointL start, TimePointL end )
+        private IncrementalDurationAggregationQuery packQuery(AggregationIndexMeta meta, TimePointL start, TimePointL end )
         {
             TreeMap<Slice, Integer> vGroup = meta.getValGroupMap();
 
-            return new DurationStatisticAggregationQuery<Integer>( start, end )
+            return new IncrementalDurationAggregationQuery<Integer>( start, end )
             {
                 @Override
                 public void setValueType(String valueType) {
@@ -209,6 +203,17 @@ public class AggregationIndexOperator
             };
         }
 
+        // 结果仍以int表示时长, 溢出时抛出异常而不是返回错误的值
+        private Map<Integer,Integer> toIntDuration( Map<Integer,Long> durations )
+        {
+            Map<Integer,Integer> result = new TreeMap<>();
+            for ( Entry<Integer,Long> entry : durations.entrySet() )
+            {
+                result.put( entry.getKey(), Math.toIntExact( entry.getValue() ) );
+            }
+            return result;
+        }
+
         private Map<Integer,Integer> mergeAggrResult( Map<Integer,Integer> a, Map<Integer,Integer> b )
         {
             Map<Integer,Integer> smaller = (a.size() < b.size() ? a : b);
@@ -285,47 +290,19 @@ public class AggregationIndexOperator
 
         private TreeMap<Integer,Slice> queryIndex( long entityId, AggregationIndexMeta meta, Comparator<? super Slice> cp, IntervalStatus status, boolean shouldAddMin, boolean shouldAddMax ) throws IOException
         {
-            TimePointL startTimeGroup = status.getTimeStartGroup();
-            TimePointL endTimeGroup = status.getTimeEndGroup();
             TreeMap<Integer,Slice> result = new TreeMap<>();
-            for ( IndexFileMeta fMeta : meta.getFilesByTime( startTimeGroup, endTimeGroup ) )
+            readIndex( entityId, meta, status, ( valueGroupId, val ) ->
             {
-                queryOneFile( result, fMeta.getFileId(), entityId, startTimeGroup, endTimeGroup, cp, status, shouldAddMin, shouldAddMax );
-            }
-            return result;
-        }
-
-        private void queryOneFile(Map<Integer,Slice> result, long indexFileId, long entityId, TimePointL startTimeGroup, TimePointL endTimeGroup, Comparator<? super Slice> cp, IntervalStatus status, boolean shouldAddMin, boolean shouldAddMax ) throws IOException
-        {
-            String filePath = new File( indexDir, Filename.aggrIndexFileName( indexFileId ) ).getAbsolutePath();
-            SeekingIterator<Slice,Slice> iterator = cache.getTable( filePath ).aggrIterator( filePath );
-
-            iterator.seek( new AggregationIndexKey( entityId, startTimeGroup, AggregationQuery.MIN ).encode() );
-            while ( iterator.hasNext() )
-            {
-                Entry<Slice,Slice> entry = iterator.next();
-                AggregationIndexKey key = new AggregationIndexKey( entry.getKey() );
-                TimePointL timeGroupId = key.getTimeGroupId();
-                if ( key.getEntityId() == entityId && startTimeGroup.compareTo(timeGroupId)<=0 && timeGroupId.compareTo(endTimeGroup)<=0 )
+                if ( shouldAddMin && valueGroupId == AggregationQuery.MIN )
                 {
-                    if ( status.isValid( timeGroupId ) )
-                    {
-                        Slice val = entry.getValue();
-                        if ( shouldAddMin && key.getValueGroupId() == AggregationQuery.MIN )
-                        {
-                            result.merge( AggregationQuery.MIN, val, ( oldVal, newVal ) -> (cp.compare( newVal, oldVal ) < 0) ? newVal : oldVal );
-                        }
-                        if ( shouldAddMax && key.getValueGroupId() == AggregationQuery.MAX )
-                        {
-                            result.merge( AggregationQuery.MAX, val, ( oldVal, newVal ) -> (cp.compare( newVal, oldVal ) > 0) ? newVal : oldVal );
-                        }
-                    }//else: continue
+                    result.merge( AggregationQuery.MIN, val, ( oldVal, newVal ) -> (cp.compare( newVal, oldVal ) < 0) ? newVal : oldVal );
                 }
-                else
+                if ( shouldAddMax && valueGroupId == AggregationQuery.MAX )
                 {
-                    return;
+                    result.merge( AggregationQuery.MAX, val, ( oldVal, newVal ) -> (cp.compare( newVal, oldVal ) > 0) ? newVal : oldVal );
                 }
-            }
+            } );
+            return result;
         }
 
         private AbstractTimeIntervalAggrQuery packQuery(AggregationIndexMeta meta, Comparator<? super Slice> cp, TimePointL start, TimePointL end )
@@ -380,29 +357,97 @@ public class AggregationIndexOperator
         }
     }
 
+    private class SumIndexManager {
+
+        public AggregationIndexQueryResult query(long entityId, AggregationIndexMeta meta, TimePointL start, TimePointL end, MemTable cache ) throws IOException {
+            IndexValueType type = meta.getValueTypes().get( 0 );
+            SumAggrValue result = new SumAggrValue( type );
+            // 找出可以用索引加速的时间区间
+            IntervalStatus timeGroups = accelerateGroups( meta, start, end, entityId, cache );
+            if ( timeGroups.canAccelerate() )
+            {
+                readIndex( entityId, meta, timeGroups, ( valueGroupId, value ) -> result.merge( SumAggrValue.decode( value, type ) ) );
+            }
+            // 查询开始时刻的值若开始于start之前, 索引和边缘区间都不计数它, 需要单独加上
+            boolean carried = false;
+            boolean startQueried = false;
+            int proId = meta.getPropertyIdList().get( 0 );
+            for ( Entry<TimePointL, TimePointL> time : timeGroups.getQueryIntervals() )
+            {
+                SumEdgeQuery edge = rangeQuery( entityId, proId, time.getKey(), time.getValue(), type, cache );
+                result.merge( edge.onReturn() );
+                if ( time.getKey().equals( start ) )
+                {
+                    startQueried = true;
+                    carried = edge.isCarried();
+                }
+            }
+            if ( !startQueried )
+            {
+                carried = rangeQuery( entityId, proId, start, start, type, cache ).isCarried();
+            }
+            if ( carried ) result.addCount( 1 );
+            return new AggregationIndexQueryResult( result.getSum(), result.getDuration(), result.getCount(), timeGroups.getAccelerateTime() );
+        }
+
+        private SumEdgeQuery rangeQuery( long entityId, int proId, TimePointL from, TimePointL to, IndexValueType type, MemTable cache )
+        {
+            SumEdgeQuery query = new SumEdgeQuery( type, from, to );
+            tpStore.getRangeValue( entityId, proId, SumEdgeQuery.queryStart( from ), to, query, cache );
+            return query;
+        }
+    }
+
+    /**
+     * 读取索引文件中所有有效time group的索引值. 每段连续的有效time group由{@link AggregationRollup}分解为少量汇总节点,
+     * consumer对每个节点的每个value group调用一次.
+     */
+    private void readIndex( long entityId, AggregationIndexMeta meta, IntervalStatus status, BiConsumer<Integer,Slice> consumer ) throws IOException
+    {
+        for ( IndexFileMeta fMeta : meta.getFilesByTime( status.getTimeStartGroup(), status.getTimeEndGroup() ) )
+        {
+            String filePath = new File( indexDir, Filename.aggrIndexFileName( fMeta.getFileId() ) ).getAbsolutePath();
+            SeekingIterator<Slice,Slice> iterator = cache.getTable( filePath ).aggrIterator( filePath );
+            List<TimePointL> groups = fMeta.getTimeGroups();
+            int i = 0;
+            while ( i < groups.size() - 1 )
+            {
+                if ( !status.isValid( groups.get( i ) ) )
+                {
+                    i++;
+                    continue;
+                }
+                int j = i;
+                while ( j < groups.size() - 1 && status.isValid( groups.get( j ) ) ) j++;
+                AggregationRollup.read( iterator, entityId, groups, i, j, consumer );
+                i = j;
+            }
+        }
+    }
+
     private IntervalStatus accelerateGroups(AggregationIndexMeta meta, TimePointL start, TimePointL end, long entityId, MemTable cache )
     {
         int proId = meta.getPropertyIdList().get( 0 );
-        List<TimePointL> time = Lists.newArrayList( meta.getTimeGroupAvailable( start, end.next() ) );
         IntervalStatus status = new IntervalStatus();
-        if ( time.size() > 1 ) {
-            for ( int i = 1; i < time.size(); i++ ) {
-                TimePointL iStart = time.get( i - 1 );
-                TimePointL iEnd = time.get( i );
-                if ( !tpStore.cacheOverlap( proId, entityId, iStart, iEnd.pre(), cache ) ) {
-                    status.addValidTimeGroup( iStart, iStart, iEnd.pre() );
-                } else {
-                    status.addInvalidTimeRange( iStart, iEnd.pre() );
-                }
-            }
-            if ( time.get( 0 ).compareTo(start) > 0 ) {
-                status.addInvalidTimeRange( start, time.get( 0 ).pre() );
+        // 未被完整的group覆盖的时间(包括相邻索引文件之间的时间)都需要range查询
+        TimePointL covered = start;
+        for ( Entry<TimePointL, TimePointL> group : meta.getTimeGroupAvailable( start, end.next() ).entrySet() )
+        {
+            TimePointL iStart = group.getKey();
+            TimePointL iEnd = group.getValue().pre();
+            if ( iStart.compareTo( covered ) < 0 ) continue;
+            if ( iStart.compareTo( covered ) > 0 ) {
+                status.addInvalidTimeRange( covered, iStart.pre() );
             }
-            if ( time.get( time.size() - 1 ).compareTo(end) < 0 ) {
-                status.addInvalidTimeRange( time.get( time.size() - 1 ), end );
+            if ( !tpStore.cacheOverlap( proId, entityId, iStart, iEnd, cache ) ) {
+                status.addValidTimeGroup( iStart, iStart, iEnd );
+            } else {
+                status.addInvalidTimeRange( iStart, iEnd );
             }
-        } else {
-            status.addInvalidTimeRange( start, end );
+            covered = group.getValue();
+        }
+        if ( covered.compareTo( end ) <= 0 ) {
+            status.addInvalidTimeRange( covered, end );
         }
         return status;
     }
@@ -509,7 +554,7 @@ public class AggregationIndexOperator
                 // 排序后写入文件
                 long fileId = sysIndexMeta.nextFileId();
                 File indexFile = new File( indexDir, Filename.aggrIndexFileName( fileId ) );
-                AggregationIndexFileWriter w = new AggregationIndexFileWriter( data, indexFile );
+                AggregationIndexFileWriter w = new AggregationIndexFileWriter( data, indexFile, subTimeGroup );
                 long fileSize = w.write();
                 IndexFileMeta fileMeta = new IndexFileMeta(
                         meta.getId(),
@@ -571,7 +616,62 @@ public class AggregationIndexOperator
                 // 索引文件
                 long fileId = sysIndexMeta.nextFileId();
                 File indexFile = new File( indexDir, Filename.aggrIndexFileName( fileId ) );
-                MinMaxAggrIndexWriter w = new MinMaxAggrIndexWriter( data, indexFile, ValueGroupingMap.getComparator( this.meta.getValueTypes().get( 0 ) ), this.meta.getType() );
+                MinMaxAggrIndexWriter w = new MinMaxAggrIndexWriter( data, indexFile, ValueGroupingMap.getComparator( this.meta.getValueTypes().get( 0 ) ), this.meta.getType(), subTimeGroup );
+                long fileSize = w.write();
+                IndexFileMeta fileMeta = new IndexFileMeta(
+                        meta.getId(),
+                        fileId,
+                        fileSize,
+                        dataFileMeta.getSmallest(),
+                        dataFileMeta.getLargest(),
+                        i.getMiddle().getNumber(),
+                        i.getLeft(),
+                        subTimeGroup );
+                meta.addFile( fileMeta );
+            }
+        }
+
+        @Override
+        public void updateMeta() throws IOException
+        {
+            sysIndexMeta.setOnline( this.meta );
+        }
+
+        @Override
+        public void cleanUp() throws IOException
+        {
+            // do nothing.
+        }
+    }
+
+    private class CreateSumIndexTask implements BackgroundTask
+    {
+        private final AggregationIndexMeta meta;
+        private final TimeGroupBuilder timeGroup;
+
+        public CreateSumIndexTask( AggregationIndexMeta meta )
+        {
+            this.meta = meta;
+            this.timeGroup = meta.getTimeGroupMap();
+        }
+
+        @Override
+        public void runTask() throws IOException
+        {
+            // 获得构造索引文件需要的, 用于读取存储数据的iterator
+            List<Triple<Boolean,FileMetaData,SearchableIterator>> raw = tpStore.buildIndexIterator( meta.getTimeStart(), meta.getTimeEnd(), meta.getPropertyIdList() );
+            for ( Triple<Boolean,FileMetaData,SearchableIterator> i : raw )
+            {
+                SearchableIterator iterator = new PropertyFilterIterator( meta.getPropertyIdList(), i.getRight() );
+                // 将原始时间点Entry数据转换为时间区间Entry数据
+                Iterator<EntityTimeIntervalEntry> interval = new SimplePoint2IntervalIterator( iterator, meta.getTimeEnd() );
+
+                // 按时间分块累加(值×时长, 时长, 个数)后写入文件
+                FileMetaData dataFileMeta = i.getMiddle();
+                NavigableSet<TimePointL> subTimeGroup = timeGroup.calcNewGroup( dataFileMeta.getSmallest(), dataFileMeta.getLargest() );
+                long fileId = sysIndexMeta.nextFileId();
+                File indexFile = new File( indexDir, Filename.aggrIndexFileName( fileId ) );
+                SumAggrIndexWriter w = new SumAggrIndexWriter( interval, subTimeGroup, meta.getValueTypes().get( 0 ), indexFile );
                 long fileSize = w.write();
                 IndexFileMeta fileMeta = new IndexFileMeta(
                         meta.getId(),
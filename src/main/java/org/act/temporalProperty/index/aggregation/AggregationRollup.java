@@ -0,0 +1,186 @@
+package org.act.temporalProperty.index.aggregation;
+
+import org.act.temporalProperty.exception.TPSRuntimeException;
+import org.act.temporalProperty.impl.SeekingIterator;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.query.aggr.AggregationIndexKey;
+import org.act.temporalProperty.table.TableBuilder;
+import org.act.temporalProperty.util.Slice;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * 多分辨率(层次)的Aggregation索引. 一个索引文件除了每个time group的索引值(第0层)外, 还保存各层的汇总节点:
+ * 第L层的第j个节点汇总文件中从第j*2^L个time group开始的连续2^L个time group, 即一棵按time group划分的线段树.
+ * 查询时每段连续的有效time group被分解为O(log n)个节点, 读取的索引项数不再随查询的时间长度线性增长.
+ *
+ * 汇总节点的key与第0层相同: (entity, 节点的第一个time group, value group), 层号保存在value group id的高8位,
+ * 所以value group id必须在[-2^23, 2^23)之内. 文件的第一项(entity id为-1)记录文件的最高层号, 没有这一项的旧文件只有第0层.
+ */
+public class AggregationRollup
+{
+    private static final int LEVEL_SHIFT = 24;
+    private static final int MAX_VALUE_GROUP = (1 << (LEVEL_SHIFT - 1)) - 1;
+    private static final int MIN_VALUE_GROUP = -(1 << (LEVEL_SHIFT - 1));
+    private static final long LEVEL_ENTITY = -1;
+
+    /**
+     * 合并同一value group的两个索引值
+     */
+    public interface Merger
+    {
+        Slice merge( int valueGroupId, Slice a, Slice b );
+    }
+
+    private AggregationRollup()
+    {
+    }
+
+    public static void checkValueGroupId( int valueGroupId )
+    {
+        if ( valueGroupId < MIN_VALUE_GROUP || valueGroupId > MAX_VALUE_GROUP )
+        {
+            throw new TPSRuntimeException( "value group id {} out of range [{}, {}]", valueGroupId, MIN_VALUE_GROUP, MAX_VALUE_GROUP );
+        }
+    }
+
+    static int encode( int level, int valueGroupId )
+    {
+        return level == 0 ? valueGroupId : (level << LEVEL_SHIFT) | (valueGroupId & ((1 << LEVEL_SHIFT) - 1));
+    }
+
+    static int levelOf( int id )
+    {
+        return (id < 0 || id <= MAX_VALUE_GROUP) ? 0 : id >>> LEVEL_SHIFT;
+    }
+
+    static int valueGroupOf( int id )
+    {
+        return levelOf( id ) == 0 ? id : (id << (32 - LEVEL_SHIFT)) >> (32 - LEVEL_SHIFT);
+    }
+
+    /**
+     * 写入第0层的索引项及所有的汇总节点
+     * @param level0 第0层的索引项, key的time group必须在timeGroups中
+     * @param timeGroups 文件的time group开始时间, 最后一个时间只是结束边界
+     */
+    static void write( TableBuilder builder, Map<AggregationIndexKey,Slice> level0, List<TimePointL> timeGroups, Merger merger ) throws IOException
+    {
+        int groupCount = timeGroups.size() - 1;
+        int maxLevel = groupCount < 1 ? 0 : 31 - Integer.numberOfLeadingZeros( groupCount );
+        Map<TimePointL,Integer> groupIndex = new HashMap<>();
+        for ( int i = 0; i < groupCount; i++ ) groupIndex.put( timeGroups.get( i ), i );
+
+        TreeMap<AggregationIndexKey,Slice> all = new TreeMap<>( level0 );
+        // 上一层的节点: (entity, 节点序号) -> (value group -> 值)
+        Map<Long,TreeMap<Integer,Map<Integer,Slice>>> lower = new HashMap<>();
+        for ( Entry<AggregationIndexKey,Slice> entry : level0.entrySet() )
+        {
+            AggregationIndexKey key = entry.getKey();
+            Integer index = groupIndex.get( key.getTimeGroupId() );
+            if ( index == null ) continue;
+            lower.computeIfAbsent( key.getEntityId(), k -> new TreeMap<>() )
+                 .computeIfAbsent( index, k -> new HashMap<>() )
+                 .put( key.getValueGroupId(), entry.getValue() );
+        }
+        for ( int level = 1; level <= maxLevel; level++ )
+        {
+            int nodeCount = groupCount >> level;
+            Map<Long,TreeMap<Integer,Map<Integer,Slice>>> upper = new HashMap<>();
+            for ( Entry<Long,TreeMap<Integer,Map<Integer,Slice>>> entity : lower.entrySet() )
+            {
+                TreeMap<Integer,Map<Integer,Slice>> nodes = new TreeMap<>();
+                for ( Entry<Integer,Map<Integer,Slice>> child : entity.getValue().entrySet() )
+                {
+                    int parent = child.getKey() >> 1;
+                    if ( parent >= nodeCount ) break;
+                    Map<Integer,Slice> values = nodes.computeIfAbsent( parent, k -> new HashMap<>() );
+                    for ( Entry<Integer,Slice> v : child.getValue().entrySet() )
+                    {
+                        int valueGroupId = v.getKey();
+                        values.merge( valueGroupId, v.getValue(), ( a, b ) -> merger.merge( valueGroupId, a, b ) );
+                    }
+                }
+                for ( Entry<Integer,Map<Integer,Slice>> node : nodes.entrySet() )
+                {
+                    TimePointL start = timeGroups.get( node.getKey() << level );
+                    for ( Entry<Integer,Slice> v : node.getValue().entrySet() )
+                    {
+                        all.put( new AggregationIndexKey( entity.getKey(), start, encode( level, v.getKey() ) ), v.getValue() );
+                    }
+                }
+                upper.put( entity.getKey(), nodes );
+            }
+            lower = upper;
+        }
+
+        Slice levels = new Slice( 4 );
+        levels.setInt( 0, maxLevel );
+        builder.add( new AggregationIndexKey( LEVEL_ENTITY, TimePointL.Init, 0 ).encode(), levels );
+        for ( Entry<AggregationIndexKey,Slice> entry : all.entrySet() )
+        {
+            builder.add( entry.getKey().encode(), entry.getValue() );
+        }
+    }
+
+    /**
+     * 读取一个索引文件中timeGroups[from, to)这些time group的索引值, 对每个节点的每个value group调用一次consumer
+     */
+    static void read( SeekingIterator<Slice,Slice> iterator, long entityId, List<TimePointL> timeGroups, int from, int to, BiConsumer<Integer,Slice> consumer )
+    {
+        int maxLevel = maxLevel( iterator );
+        for ( int[] node : decompose( from, to, maxLevel ) )
+        {
+            int level = node[0];
+            TimePointL start = timeGroups.get( node[1] );
+            AggregationIndexKey searchKey = new AggregationIndexKey( entityId, start, Integer.MIN_VALUE );
+            // seek定位到不大于searchKey的项
+            iterator.seek( searchKey.encode() );
+            while ( iterator.hasNext() )
+            {
+                Entry<Slice,Slice> entry = iterator.next();
+                AggregationIndexKey key = new AggregationIndexKey( entry.getKey() );
+                if ( key.compareTo( searchKey ) < 0 ) continue;
+                if ( key.getEntityId() != entityId || !key.getTimeGroupId().equals( start ) ) break;
+                if ( levelOf( key.getValueGroupId() ) == level )
+                {
+                    consumer.accept( valueGroupOf( key.getValueGroupId() ), entry.getValue() );
+                }
+            }
+        }
+    }
+
+    private static int maxLevel( SeekingIterator<Slice,Slice> iterator )
+    {
+        iterator.seekToFirst();
+        if ( iterator.hasNext() )
+        {
+            Entry<Slice,Slice> first = iterator.peek();
+            if ( new AggregationIndexKey( first.getKey() ).getEntityId() == LEVEL_ENTITY ) return first.getValue().getInt( 0 );
+        }
+        return 0;
+    }
+
+    /**
+     * 把time group序号区间[from, to)分解为尽量少的节点, 每个节点为{层号, 第一个time group的序号}
+     */
+    static List<int[]> decompose( int from, int to, int maxLevel )
+    {
+        List<int[]> nodes = new ArrayList<>();
+        while ( from < to )
+        {
+            int level = Math.min( maxLevel, from == 0 ? 31 : Integer.numberOfTrailingZeros( from ) );
+            while ( from + (1L << level) > to ) level--;
+            nodes.add( new int[]{ level, from } );
+            from += 1 << level;
+        }
+        return nodes;
+    }
+}
@@ -31,9 +31,11 @@ public class MinMaxAggrIndexWriter {
     private final Map<Pair<Long, TimePointL>, Slice> max = new TreeMap<Pair<Long, TimePointL>, Slice>();
     private final boolean buildMin;
     private final boolean buildMax;
+    private final List<TimePointL> timeGroups;
 
-    public MinMaxAggrIndexWriter(List<Triple<Long, TimePointL, Slice>> data, File file, Comparator<Slice> valCp, IndexType type) {
+    public MinMaxAggrIndexWriter(List<Triple<Long, TimePointL, Slice>> data, File file, Comparator<Slice> valCp, IndexType type, NavigableSet<TimePointL> timeGroups) {
         this.file = file;
+        this.timeGroups = new ArrayList<>(timeGroups);
         this.cp = valCp;
         buildMin = (type==AGGR_MIN || type==AGGR_MIN_MAX);
         buildMax = (type==AGGR_MAX || type==AGGR_MIN_MAX);
@@ -48,13 +50,15 @@ public class MinMaxAggrIndexWriter {
         try(FileOutputStream targetStream = new FileOutputStream(file)) {
             FileChannel targetChannel = targetStream.getChannel();
             TableBuilder builder = new TableBuilder( new Options(), targetChannel, AggregationIndexKey.sliceComparator );
+            Map<AggregationIndexKey, Slice> level0 = new TreeMap<>();
             for(Map.Entry<Pair<Long, TimePointL>, Slice> entry : min.entrySet()){
-                Pair<Long, TimePointL> key = entry.getKey();
-                if ( buildMin )
-                { builder.add( toSlice( key, true ), entry.getValue() ); }
-                if ( buildMax )
-                { builder.add( toSlice( key, false ), max.get( key ) ); }
+                level0.put(toKey(entry.getKey(), true), entry.getValue());
             }
+            for(Map.Entry<Pair<Long, TimePointL>, Slice> entry : max.entrySet()){
+                level0.put(toKey(entry.getKey(), false), entry.getValue());
+            }
+            AggregationRollup.write(builder, level0, timeGroups,
+                    (valueGroupId, a, b) -> valueGroupId == AggregationQuery.MIN ? min(a, b) : max(a, b));
             builder.finish();
             targetChannel.force(true);
             return targetChannel.size();
@@ -77,10 +81,10 @@ public class MinMaxAggrIndexWriter {
         }
     }
 
-    private Slice toSlice(Pair<Long, TimePointL> key, boolean isMin )
+    private AggregationIndexKey toKey(Pair<Long, TimePointL> key, boolean isMin )
     {
         long entityId = key.getLeft();
         TimePointL timeGroupId = key.getRight();
-        return new AggregationIndexKey( entityId, timeGroupId, isMin ? AggregationQuery.MIN : AggregationQuery.MAX ).encode();
+        return new AggregationIndexKey( entityId, timeGroupId, isMin ? AggregationQuery.MIN : AggregationQuery.MAX );
     }
 }
@@ -0,0 +1,93 @@
+package org.act.temporalProperty.index.aggregation;
+
+import org.act.temporalProperty.exception.TPSNHException;
+import org.act.temporalProperty.impl.Options;
+import org.act.temporalProperty.index.EntityTimeIntervalEntry;
+import org.act.temporalProperty.index.IndexValueType;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.query.aggr.AggregationIndexKey;
+import org.act.temporalProperty.table.TableBuilder;
+import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.util.TimeIntervalUtil;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+
+/**
+ * 写AGGR_SUM索引文件: 每个(entity, time group)一条记录, key的valueGroupId为0, 值为{@link SumAggrValue}.
+ * 跨越多个时间分组的区间被切开, 只在值开始的分组中计数. 另外写入{@link AggregationRollup}的汇总节点.
+ */
+public class SumAggrIndexWriter
+{
+    private final File file;
+    private final IndexValueType type;
+    private final List<TimePointL> timeGroups;
+    private final Map<Pair<Long,TimePointL>,SumAggrValue> groups = new TreeMap<>();
+
+    /**
+     * @param intervals should only contains one property.
+     * @param intervalStarts interval start time point TreeSet
+     */
+    public SumAggrIndexWriter( Iterator<EntityTimeIntervalEntry> intervals, NavigableSet<TimePointL> intervalStarts, IndexValueType type, File file )
+    {
+        this.file = file;
+        this.type = type;
+        this.timeGroups = new ArrayList<>( intervalStarts );
+        if ( intervalStarts.size() < 2 ) throw new TPSNHException( "time interval too less!" );
+        TimePointL intervalBegin = intervalStarts.first();
+        TimePointL intervalFinish = intervalStarts.last().pre();
+        while ( intervals.hasNext() )
+        {
+            EntityTimeIntervalEntry entry = intervals.next();
+            if ( !TimeIntervalUtil.overlap( entry.start(), entry.end(), intervalBegin, intervalFinish ) ) continue;
+            TimePointL cur = entry.start().compareTo( intervalBegin ) < 0 ? intervalBegin : entry.start();
+            TimePointL end = entry.end().compareTo( intervalFinish ) > 0 ? intervalFinish : entry.end();
+            while ( cur.compareTo( end ) <= 0 )
+            {
+                TimePointL timeGroupId = intervalStarts.floor( cur );
+                TimePointL next = intervalStarts.higher( cur );
+                TimePointL pieceEnd = next.pre().compareTo( end ) < 0 ? next.pre() : end;
+                groups.computeIfAbsent( Pair.of( entry.entityId(), timeGroupId ), k -> new SumAggrValue( type ) )
+                      .add( type, entry.value(), pieceEnd.val() - cur.val() + 1, cur.equals( entry.start() ) );
+                cur = next;
+            }
+        }
+    }
+
+    Map<Pair<Long,TimePointL>,SumAggrValue> groups()
+    {
+        return groups;
+    }
+
+    public long write() throws IOException
+    {
+        try ( FileOutputStream targetStream = new FileOutputStream( file ) )
+        {
+            FileChannel targetChannel = targetStream.getChannel();
+            TableBuilder builder = new TableBuilder( new Options(), targetChannel, AggregationIndexKey.sliceComparator );
+            Map<AggregationIndexKey,Slice> level0 = new TreeMap<>();
+            for ( Map.Entry<Pair<Long,TimePointL>,SumAggrValue> entry : groups.entrySet() )
+            {
+                Pair<Long,TimePointL> key = entry.getKey();
+                level0.put( new AggregationIndexKey( key.getLeft(), key.getRight(), 0 ), entry.getValue().encode() );
+            }
+            AggregationRollup.write( builder, level0, timeGroups, ( valueGroupId, a, b ) -> {
+                SumAggrValue merged = SumAggrValue.decode( a, type );
+                merged.merge( SumAggrValue.decode( b, type ) );
+                return merged.encode();
+            } );
+            builder.finish();
+            targetChannel.force( true );
+            return targetChannel.size();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.act.temporalProperty.index.aggregation;
+
+import org.act.temporalProperty.exception.TPSRuntimeException;
+import org.act.temporalProperty.index.IndexValueType;
+import org.act.temporalProperty.util.Slice;
+
+/**
+ * AGGR_SUM索引中一个时间分组(或一段range查询)的统计值:
+ * 值×时长之和(INT, LONG 用long累加, FLOAT, DOUBLE 用double累加), 有值的总时长, 开始时间在分组内的值的个数.
+ * 编码为24字节: sum(long或double), duration(long), count(long).
+ */
+public class SumAggrValue
+{
+    private final boolean integral;
+    private long longSum;
+    private double doubleSum;
+    private long duration;
+    private long count;
+
+    public SumAggrValue( IndexValueType type )
+    {
+        this.integral = isIntegral( type );
+    }
+
+    public static SumAggrValue decode( Slice raw, IndexValueType type )
+    {
+        SumAggrValue v = new SumAggrValue( type );
+        if ( v.integral ) v.longSum = raw.getLong( 0 );
+        else v.doubleSum = Double.longBitsToDouble( raw.getLong( 0 ) );
+        v.duration = raw.getLong( 8 );
+        v.count = raw.getLong( 16 );
+        return v;
+    }
+
+    public Slice encode()
+    {
+        Slice raw = new Slice( 24 );
+        if ( integral ) raw.setLong( 0, longSum );
+        else raw.setLong( 0, Double.doubleToLongBits( doubleSum ) );
+        raw.setLong( 8, duration );
+        raw.setLong( 16, count );
+        return raw;
+    }
+
+    /**
+     * 值value持续了length个时间点, isStart表示值的开始时间在本分组内
+     */
+    public void add( IndexValueType type, Slice value, long length, boolean isStart )
+    {
+        if ( integral ) longSum += (type == IndexValueType.INT ? value.getInt( 0 ) : value.getLong( 0 )) * length;
+        else doubleSum += (type == IndexValueType.FLOAT ? value.getFloat( 0 ) : value.getDouble( 0 )) * length;
+        duration += length;
+        if ( isStart ) count++;
+    }
+
+    public void merge( SumAggrValue other )
+    {
+        longSum += other.longSum;
+        doubleSum += other.doubleSum;
+        duration += other.duration;
+        count += other.count;
+    }
+
+    void addCount( long n )
+    {
+        count += n;
+    }
+
+    /**
+     * @return INT, LONG 属性为Long, FLOAT, DOUBLE 属性为Double
+     */
+    public Number getSum()
+    {
+        return integral ? (Number) longSum : (Number) doubleSum;
+    }
+
+    public long getDuration()
+    {
+        return duration;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    static boolean isIntegral( IndexValueType type )
+    {
+        switch ( type )
+        {
+        case INT:
+        case LONG:
+            return true;
+        case FLOAT:
+        case DOUBLE:
+            return false;
+        default:
+            throw new TPSRuntimeException( "AGGR_SUM index needs a numeric property, got " + type );
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.act.temporalProperty.index.aggregation;
+
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.impl.InternalKey;
+import org.act.temporalProperty.index.IndexValueType;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.query.range.InternalEntryRangeQueryCallBack;
+import org.act.temporalProperty.util.Slice;
+
+/**
+ * AGGR_SUM索引不能覆盖的区间[from, to]的range查询, 结果为{@link SumAggrValue}, 只统计[from, to]内的部分.
+ * range查询应从from的前一个时间点开始(from为0时从from开始): 第一个entry的开始时间被截到查询开始时间,
+ * 这样才能区分from时刻的值是在from开始的(计数), 还是从之前延续过来的(不计数, isCarried()为true).
+ */
+class SumEdgeQuery implements InternalEntryRangeQueryCallBack
+{
+    private final IndexValueType type;
+    private final TimePointL from;
+    private final TimePointL to;
+    private final SumAggrValue result;
+    private TimePointL lastTime;
+    private Slice lastValue;
+    private boolean carried = false;
+
+    SumEdgeQuery( IndexValueType type, TimePointL from, TimePointL to )
+    {
+        this.type = type;
+        this.from = from;
+        this.to = to;
+        this.result = new SumAggrValue( type );
+    }
+
+    static TimePointL queryStart( TimePointL from )
+    {
+        return from.val() > 0 ? from.pre() : from;
+    }
+
+    @Override
+    public void setValueType( String valueType )
+    {
+        // type is given by the index.
+    }
+
+    @Override
+    public void onNewEntry( InternalEntry entry )
+    {
+        InternalKey key = entry.getKey();
+        closeInterval( key.getStartTime().pre() );
+        if ( key.getValueType().isValue() )
+        {
+            lastTime = key.getStartTime();
+            lastValue = entry.getValue();
+        }
+    }
+
+    // 值从lastTime持续到end
+    private void closeInterval( TimePointL end )
+    {
+        if ( lastTime == null ) return;
+        TimePointL start = lastTime.compareTo( from ) < 0 ? from : lastTime;
+        if ( start.compareTo( end ) <= 0 )
+        {
+            boolean isStart = lastTime.compareTo( from ) >= 0;
+            result.add( type, lastValue, end.val() - start.val() + 1, isStart );
+            if ( !isStart ) carried = true;
+        }
+        lastTime = null;
+    }
+
+    @Override
+    public SumAggrValue onReturn()
+    {
+        if ( lastTime != null && lastTime.compareTo( to ) <= 0 ) closeInterval( to );
+        return result;
+    }
+
+    boolean isCarried()
+    {
+        return carried;
+    }
+}
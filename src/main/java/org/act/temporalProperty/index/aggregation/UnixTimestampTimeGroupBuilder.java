@@ -24,6 +24,7 @@ import java.util.*;
  * 8:19:00=8:19:00-0:0:1是时间轴按分钟划分后, end之前的最大时间时间减一秒.
  * 由于every=7, 所以每连续的7分钟作为一组
  * timeUnit can be Calendar.SECOND|HOUR|DAY|WEEK|SEMI_MONTH|MONTH|YEAR
+ * 秒, 分钟, 小时的分组直接用时间戳计算, 其他单位的分组开始时间只用Calendar计算一次并缓存
  */
 
 public class UnixTimestampTimeGroupBuilder extends TimeGroupBuilder {
@@ -33,6 +34,12 @@ public class UnixTimestampTimeGroupBuilder extends TimeGroupBuilder {
     private final int tEvery;
     private final int timeUnit;
     private final Calendar startPoint;
+    // 秒, 分钟, 小时每组的毫秒数是固定的(Calendar.add对这些单位直接加毫秒数), 可以直接算出分组; 其他单位为0
+    private final long fixedStep;
+    // 日, 月, 年的分组长度随夏令时和月份变化, 缓存已经算出的分组开始时间, 按需向后扩展
+    private long[] boundaries = new long[16];
+    private int boundaryCount = 0;
+    private Calendar boundaryCursor;
 
     public UnixTimestampTimeGroupBuilder(TimePointL timeStart, TimePointL timeEnd, int tEvery, int timeUnit )
     {
@@ -43,6 +50,18 @@ public class UnixTimestampTimeGroupBuilder extends TimeGroupBuilder {
         Calendar tmp = Calendar.getInstance();
         tmp.setTimeInMillis( timeStart.val() );
         this.startPoint = DateUtils.ceiling(tmp, timeUnit);//索引的起始时间
+        this.fixedStep = fixedStep( timeUnit ) * tEvery;
+    }
+
+    private static long fixedStep( int timeUnit )
+    {
+        switch ( timeUnit )
+        {
+        case Calendar.SECOND: return DateUtils.MILLIS_PER_SECOND;
+        case Calendar.MINUTE: return DateUtils.MILLIS_PER_MINUTE;
+        case Calendar.HOUR: return DateUtils.MILLIS_PER_HOUR;
+        default: return 0;
+        }
     }
 
     @Override
@@ -52,15 +71,38 @@ public class UnixTimestampTimeGroupBuilder extends TimeGroupBuilder {
         long beginT = common.start().val();
         long finishT = common.end().val();
         TreeSet<TimePointL> set = new TreeSet<>();
-
-        Calendar intervalStart = (Calendar) startPoint.clone();
-        while( intervalStart.getTimeInMillis() < beginT ) {
-            intervalStart.add( timeUnit, tEvery );
-        }//找到了起点：intervalStart现在是第一个大于等于beginT的valid时间点
-        while( intervalStart.getTimeInMillis() < finishT){//注意这里是小于无等于因为intervalStart是TimeGroup的开始时间而不是结束时间
-            set.add(new TimePointL(intervalStart.getTimeInMillis()));
-            intervalStart.add( timeUnit, tEvery );
+        if ( fixedStep > 0 )
+        {
+            // 第一个大于等于beginT的group开始时间
+            long startT = startPoint.getTimeInMillis();
+            long t = beginT <= startT ? startT : startT + ((beginT - startT - 1) / fixedStep + 1) * fixedStep;
+            for ( ; t < finishT; t += fixedStep ) set.add( new TimePointL( t ) );//注意这里是小于无等于因为t是TimeGroup的开始时间而不是结束时间
+        }
+        else
+        {
+            synchronized ( this )
+            {
+                extendBoundaries( finishT );
+                int i = Arrays.binarySearch( boundaries, 0, boundaryCount, beginT );
+                for ( i = i < 0 ? -i - 1 : i; i < boundaryCount && boundaries[i] < finishT; i++ ) set.add( new TimePointL( boundaries[i] ) );
+            }
         }
         return set;
     }
+
+    // 保证缓存的group开始时间覆盖到第一个不小于finishT的时间
+    private void extendBoundaries( long finishT )
+    {
+        if ( boundaryCursor == null )
+        {
+            boundaryCursor = (Calendar) startPoint.clone();
+            boundaries[boundaryCount++] = boundaryCursor.getTimeInMillis();
+        }
+        while ( boundaries[boundaryCount - 1] < finishT )
+        {
+            boundaryCursor.add( timeUnit, tEvery );
+            if ( boundaryCount == boundaries.length ) boundaries = Arrays.copyOf( boundaries, boundaryCount * 2 );
+            boundaries[boundaryCount++] = boundaryCursor.getTimeInMillis();
+        }
+    }
 }
@@ -6,6 +6,7 @@ import org.act.temporalProperty.index.IndexFileMeta;
 import org.act.temporalProperty.index.IndexType;
 import org.act.temporalProperty.index.IndexValueType;
 import org.act.temporalProperty.index.aggregation.AggregationIndexMeta;
+import org.act.temporalProperty.meta.ManifestLog;
 import org.act.temporalProperty.query.TimePointL;
 import org.act.temporalProperty.util.DynamicSliceOutput;
 import org.act.temporalProperty.util.Slice;
@@ -34,6 +35,7 @@ public class IndexMetaData {
     private Map<Long,IndexFileMeta> unstableFileIds = new HashMap<>();
     private TreeMap<TimePointL,IndexFileMeta> fileByTime = new TreeMap<>();
     private boolean online;
+    private ManifestLog.Edits edits; // 加入SystemMeta后, 修改记录到增量日志
 
     public IndexMetaData(long id, IndexType type, List<Integer> pidList, List<IndexValueType> types, TimePointL start, TimePointL end ) {
         Preconditions.checkArgument( start.compareTo(end) <= 0 );
@@ -69,6 +71,13 @@ public class IndexMetaData {
     public void setOnline()
     {
         online = true;
+        if ( edits != null ) edits.putIndex( this );
+    }
+
+    public void setEdits( ManifestLog.Edits edits )
+    {
+        this.edits = edits;
+        edits.putIndex( this );
     }
 
     public boolean isOnline()
@@ -135,7 +144,7 @@ public class IndexMetaData {
 
     public IndexMetaData( SliceInput in ){
         this.type = IndexType.decode(in.readInt());
-        this.id = in.readInt();
+        this.id = in.readLong();
         this.timeStart = TimePointL.decode(in);
         this.timeEnd = TimePointL.decode(in);
         int count = in.readInt();
@@ -173,6 +182,7 @@ public class IndexMetaData {
             unstableFileIds.put( fileMeta.getCorFileId(), fileMeta );
             fileByTime.put( fileMeta.getStartTime(), fileMeta );
         }
+        if ( edits != null ) edits.putIndex( this );
     }
 
     public IndexFileMeta getByCorFileId( long fileId, boolean isStable )
@@ -208,6 +218,7 @@ public class IndexMetaData {
             IndexFileMeta fMeta = entry.getValue();
             return fMeta.isCorIsStable()==isStable && fMeta.getCorFileId() == fileId;
         });
+        if ( edits != null ) edits.putIndex( this );
     }
 
     /**
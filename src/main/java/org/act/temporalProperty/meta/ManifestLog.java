@@ -0,0 +1,397 @@
+package org.act.temporalProperty.meta;
+
+import org.act.temporalProperty.impl.FileBuffer;
+import org.act.temporalProperty.impl.FileMetaData;
+import org.act.temporalProperty.impl.Filename;
+import org.act.temporalProperty.impl.LogReader;
+import org.act.temporalProperty.impl.LogWriter;
+import org.act.temporalProperty.impl.Logs;
+import org.act.temporalProperty.index.value.IndexMetaData;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.DynamicSliceOutput;
+import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.util.SliceInput;
+import org.act.temporalProperty.util.SliceOutput;
+import org.act.temporalProperty.util.Slices;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import static org.act.temporalProperty.TemporalPropertyStore.MagicNumber;
+import static org.act.temporalProperty.TemporalPropertyStore.Version;
+
+/**
+ * 元信息的增量日志(MANIFEST-xxxxxx), 代替每次合并都重写整个meta.info.
+ *
+ * SystemMeta被看作key-value集合: 每个属性, 每个数据文件, 每个Buffer, 每个索引各是一条记录.
+ * 日志的第一条记录是文件头(同meta.info), 第二条是全量快照, 之后每次force只追加上次force之后新增/修改/删除的记录.
+ * 修改在meta被修改时(增删文件, Buffer, 索引等)记录到Edits中, force时取出写入日志, 不需要重新编码整个meta.
+ * 追加的内容超过快照大小(且超过COMPACT_MIN_SIZE)时写一个编号加一的新日志(只含快照), 完成后删除旧日志.
+ * 启动时从编号最大且快照完整的日志回放. 没有日志时读取旧版本的meta.info.
+ */
+public class ManifestLog
+{
+    private static final String PREFIX = "MANIFEST-";
+    private static final long COMPACT_MIN_SIZE = 1024 * 1024;
+
+    private static final byte DEL = 0;
+    private static final byte PUT = 1;
+
+    private static final byte PROPERTY = 1;
+    private static final byte STABLE = 2;
+    private static final byte UNSTABLE = 3;
+    private static final byte STABLE_BUFFER = 4;
+    private static final byte UNSTABLE_BUFFER = 5;
+    private static final byte INDEX = 6;
+    private static final byte INDEX_COUNTER = 7;
+
+    private final File dir;
+    private long number;
+    private LogWriter writer;
+    private long snapshotSize;
+    private long appendedSize;
+
+    private ManifestLog( File dir )
+    {
+        this.dir = dir;
+    }
+
+    /**
+     * 在dir中新建一个日志并写入meta的快照, 之后可以用append追加修改
+     */
+    public static ManifestLog create( File dir, SystemMeta meta ) throws IOException
+    {
+        ManifestLog log = new ManifestLog( dir );
+        long maxNumber = -1;
+        for ( long n : existingNumbers( dir ) ) maxNumber = Math.max( maxNumber, n );
+        // 先取出已记录的修改再生成快照, 之后的修改会在下次append时写入
+        meta.edits().drain();
+        log.writeSnapshot( maxNumber + 1, toEntries( meta ) );
+        return log;
+    }
+
+    /**
+     * 追加meta上次写入之后记录的修改, 没有修改时不写
+     */
+    public synchronized void append( SystemMeta meta ) throws IOException
+    {
+        Map<Slice,Slice> edits = meta.edits().drain();
+        if ( edits.isEmpty() ) return;
+        DynamicSliceOutput out = new DynamicSliceOutput( 1024 );
+        out.writeInt( edits.size() );
+        for ( Entry<Slice,Slice> entry : edits.entrySet() )
+        {
+            writeEntry( out, entry.getValue() == null ? DEL : PUT, entry.getKey(), entry.getValue() );
+        }
+        Slice edit = out.slice();
+        if ( appendedSize + edit.length() > Math.max( snapshotSize, COMPACT_MIN_SIZE ) )
+        {
+            writeSnapshot( number + 1, toEntries( meta ) );
+        }
+        else
+        {
+            writer.addRecord( edit, true );
+            appendedSize += edit.length();
+        }
+    }
+
+    public synchronized void close() throws IOException
+    {
+        writer.close();
+    }
+
+    /**
+     * 从dir中编号最大的完整日志恢复SystemMeta
+     * @return null 如果没有可用的日志
+     */
+    public static SystemMeta recover( File dir ) throws IOException
+    {
+        List<Long> numbers = existingNumbers( dir );
+        numbers.sort( ( a, b ) -> Long.compare( b, a ) );
+        for ( long n : numbers )
+        {
+            Map<Slice,Slice> entries = replay( new File( dir, Filename.descriptorFileName( n ) ) );
+            if ( entries != null ) return fromEntries( entries );
+        }
+        return null;
+    }
+
+    private void writeSnapshot( long newNumber, Map<Slice,Slice> entries ) throws IOException
+    {
+        DynamicSliceOutput header = new DynamicSliceOutput( 64 );
+        header.write( MagicNumber.getBytes() );
+        header.writeInt( Version );
+        header.writeLong( System.currentTimeMillis() );
+
+        DynamicSliceOutput out = new DynamicSliceOutput( 1024 * 64 );
+        out.writeInt( entries.size() );
+        for ( Entry<Slice,Slice> entry : entries.entrySet() )
+        {
+            writeEntry( out, PUT, entry.getKey(), entry.getValue() );
+        }
+        Slice snapshot = out.slice();
+
+        LogWriter newWriter = Logs.createMetaWriter( new File( dir, Filename.descriptorFileName( newNumber ) ) );
+        newWriter.addRecord( header.slice(), false );
+        newWriter.addRecord( snapshot, true );
+        // 新日志的快照已落盘, 旧日志(以及旧版本的meta.info)不再需要
+        if ( writer != null ) writer.close();
+        for ( long n : existingNumbers( dir ) )
+        {
+            if ( n < newNumber ) Files.deleteIfExists( new File( dir, Filename.descriptorFileName( n ) ).toPath() );
+        }
+        Files.deleteIfExists( new File( dir, "meta.info" ).toPath() );
+
+        this.writer = newWriter;
+        this.number = newNumber;
+        this.snapshotSize = snapshot.length();
+        this.appendedSize = 0;
+    }
+
+    // 快照不完整时返回null, 末尾不完整的增量记录被忽略
+    private static Map<Slice,Slice> replay( File file ) throws IOException
+    {
+        try ( FileInputStream in = new FileInputStream( file ); FileChannel channel = in.getChannel() )
+        {
+            LogReader reader = new LogReader( channel, null, true, 0 );
+            Slice header = reader.readRecord();
+            if ( header == null ) return null;
+            SliceInput headerIn = header.input();
+            String magic = new String( headerIn.readBytes( 40 ).getBytes() );
+            int version = headerIn.readInt();
+            if ( !magic.equals( MagicNumber ) || version != Version ) return null;
+            Slice snapshot = reader.readRecord();
+            if ( snapshot == null ) return null;
+            Map<Slice,Slice> entries = new LinkedHashMap<>();
+            Slice edit = snapshot;
+            do
+            {
+                SliceInput editIn = edit.input();
+                int count = editIn.readInt();
+                for ( int i = 0; i < count; i++ )
+                {
+                    byte op = editIn.readByte();
+                    Slice key = editIn.readSlice( editIn.readInt() );
+                    if ( op == PUT )
+                    {
+                        entries.put( key, editIn.readSlice( editIn.readInt() ) );
+                    }
+                    else
+                    {
+                        entries.remove( key );
+                    }
+                }
+            }
+            while ( (edit = reader.readRecord()) != null );
+            return entries;
+        }
+    }
+
+    private static List<Long> existingNumbers( File dir )
+    {
+        List<Long> result = new ArrayList<>();
+        String[] files = dir.list();
+        if ( files == null ) return result;
+        for ( String name : files )
+        {
+            if ( !name.startsWith( PREFIX ) ) continue;
+            try
+            {
+                result.add( Long.parseLong( name.substring( PREFIX.length() ) ) );
+            }
+            catch ( NumberFormatException ignored )
+            {
+            }
+        }
+        return result;
+    }
+
+    private static void writeEntry( SliceOutput out, byte op, Slice key, Slice value )
+    {
+        out.writeByte( op );
+        out.writeInt( key.length() );
+        out.writeBytes( key );
+        if ( op == PUT )
+        {
+            out.writeInt( value.length() );
+            out.writeBytes( value );
+        }
+    }
+
+    private static Slice key( byte kind, long a, long b )
+    {
+        DynamicSliceOutput out = new DynamicSliceOutput( 17 );
+        out.writeByte( kind );
+        out.writeLong( a );
+        out.writeLong( b );
+        return out.slice();
+    }
+
+    private static Slice propertyValue( PropertyMetaData p )
+    {
+        DynamicSliceOutput out = new DynamicSliceOutput( 12 );
+        out.writeInt( p.getType().getId() );
+        p.getRetentionHorizon().encode( out );
+        return out.slice();
+    }
+
+    private static Slice indexCounterValue( long nextId, long nextFileId )
+    {
+        DynamicSliceOutput out = new DynamicSliceOutput( 16 );
+        out.writeLong( nextId );
+        out.writeLong( nextFileId );
+        return out.slice();
+    }
+
+    // 全量快照, 只在新建日志时使用
+    private static Map<Slice,Slice> toEntries( SystemMeta meta )
+    {
+        Map<Slice,Slice> entries = new LinkedHashMap<>();
+        for ( PropertyMetaData p : meta.getProperties().values() )
+        {
+            int pid = p.getPropertyId();
+            entries.put( key( PROPERTY, pid, 0 ), propertyValue( p ) );
+            for ( FileMetaData f : p.getStableFiles().values() )
+            {
+                entries.put( key( STABLE, pid, f.getNumber() ), FileMetaDataController.encode( f ) );
+            }
+            for ( FileMetaData f : p.getUnStableFiles().values() )
+            {
+                entries.put( key( UNSTABLE, pid, f.getNumber() ), FileMetaDataController.encode( f ) );
+            }
+            for ( Long n : p.getStableBuffers().keySet() )
+            {
+                entries.put( key( STABLE_BUFFER, pid, n ), Slices.EMPTY_SLICE );
+            }
+            for ( Long n : p.getUnstableBuffers().keySet() )
+            {
+                entries.put( key( UNSTABLE_BUFFER, pid, n ), Slices.EMPTY_SLICE );
+            }
+        }
+        for ( IndexMetaData i : meta.getIndexes() )
+        {
+            entries.put( key( INDEX, i.getId(), 0 ), i.encode() );
+        }
+        entries.put( key( INDEX_COUNTER, 0, 0 ), indexCounterValue( meta.indexNextId(), meta.indexNextFileId() ) );
+        return entries;
+    }
+
+    private static SystemMeta fromEntries( Map<Slice,Slice> entries )
+    {
+        SystemMeta meta = new SystemMeta();
+        Map<Integer,PropertyMetaData> props = new HashMap<>();
+        for ( Entry<Slice,Slice> entry : entries.entrySet() )
+        {
+            SliceInput key = entry.getKey().input();
+            if ( key.readByte() != PROPERTY ) continue;
+            int pid = (int) key.readLong();
+            SliceInput val = entry.getValue().input();
+            PropertyMetaData p = new PropertyMetaData( pid, ValueContentType.decode( val.readInt() ) );
+            p.setRetentionHorizon( TimePointL.decode( val ) );
+            props.put( pid, p );
+            meta.addProperty( p );
+        }
+        for ( Entry<Slice,Slice> entry : entries.entrySet() )
+        {
+            SliceInput key = entry.getKey().input();
+            byte kind = key.readByte();
+            long a = key.readLong();
+            long b = key.readLong();
+            switch ( kind )
+            {
+            case STABLE:
+                props.get( (int) a ).addStable( FileMetaDataController.decode( entry.getValue() ) );
+                break;
+            case UNSTABLE:
+                props.get( (int) a ).addUnstable( FileMetaDataController.decode( entry.getValue() ) );
+                break;
+            case STABLE_BUFFER:
+                props.get( (int) a ).addStableBuffer( b, new FileBuffer( b ) );
+                break;
+            case UNSTABLE_BUFFER:
+                props.get( (int) a ).addUnstableBuffer( b, new FileBuffer( b ) );
+                break;
+            case INDEX:
+                meta.addIndex( IndexMetaData.decode( entry.getValue() ) );
+                break;
+            case INDEX_COUNTER:
+                SliceInput val = entry.getValue().input();
+                meta.setIndexNextId( val.readLong() );
+                meta.setIndexNextFileId( val.readLong() );
+                break;
+            default:
+            }
+        }
+        return meta;
+    }
+
+    /**
+     * meta被修改时记录的修改(value为null表示删除), 同一条记录只保留最后一次修改.
+     * 修改可能来自合并线程和前台线程, 所以方法都是同步的.
+     */
+    public static class Edits
+    {
+        private Map<Slice,Slice> pending = new LinkedHashMap<>();
+
+        public synchronized void putProperty( PropertyMetaData p )
+        {
+            pending.put( key( PROPERTY, p.getPropertyId(), 0 ), propertyValue( p ) );
+        }
+
+        public synchronized void delProperty( int propertyId )
+        {
+            pending.put( key( PROPERTY, propertyId, 0 ), null );
+        }
+
+        public synchronized void putFile( int propertyId, boolean isStable, FileMetaData file )
+        {
+            pending.put( key( isStable ? STABLE : UNSTABLE, propertyId, file.getNumber() ), FileMetaDataController.encode( file ) );
+        }
+
+        public synchronized void delFile( int propertyId, boolean isStable, long number )
+        {
+            pending.put( key( isStable ? STABLE : UNSTABLE, propertyId, number ), null );
+        }
+
+        public synchronized void putBuffer( int propertyId, boolean isStable, long number )
+        {
+            pending.put( key( isStable ? STABLE_BUFFER : UNSTABLE_BUFFER, propertyId, number ), Slices.EMPTY_SLICE );
+        }
+
+        public synchronized void delBuffer( int propertyId, boolean isStable, long number )
+        {
+            pending.put( key( isStable ? STABLE_BUFFER : UNSTABLE_BUFFER, propertyId, number ), null );
+        }
+
+        public synchronized void putIndex( IndexMetaData index )
+        {
+            pending.put( key( INDEX, index.getId(), 0 ), index.encode() );
+        }
+
+        public synchronized void delIndex( long indexId )
+        {
+            pending.put( key( INDEX, indexId, 0 ), null );
+        }
+
+        public synchronized void putIndexCounter( long nextId, long nextFileId )
+        {
+            pending.put( key( INDEX_COUNTER, 0, 0 ), indexCounterValue( nextId, nextFileId ) );
+        }
+
+        synchronized Map<Slice,Slice> drain()
+        {
+            Map<Slice,Slice> result = pending;
+            pending = new LinkedHashMap<>();
+            return result;
+        }
+    }
+}
@@ -30,6 +30,10 @@ public class PropertyMetaData {
     private final TreeMap<Long, FileMetaData> unStableFiles = new TreeMap<>();
     //所有UnStableFile对应的Buffer
     private final TreeMap<Long, FileBuffer> unStableFileBuffers = new TreeMap<>();
+    //保留期限, 之前的数据已过期
+    private TimePointL retentionHorizon = TimePointL.Init;
+    //加入SystemMeta后, 修改记录到增量日志
+    private ManifestLog.Edits edits;
     //    private final TreeMap<Long, FileMetaData> memLogs = new TreeMap<>();
 
     public PropertyMetaData(int propertyId, ValueContentType type){
@@ -57,18 +61,31 @@ public class PropertyMetaData {
         return PropertyMetaDataController.encode(this);
     }
 
+    // 过期的StableFile被删除后编号不再连续
     public long nextStableId(){
-        return stableFiles.size();
+        return stableFiles.isEmpty() ? 0 : stableFiles.lastKey() + 1;
+    }
+
+    // 记录当前的属性和所有文件, Buffer
+    void setEdits(ManifestLog.Edits edits) {
+        this.edits = edits;
+        edits.putProperty(this);
+        for(FileMetaData file : stableFiles.values()) edits.putFile(propertyId, true, file);
+        for(FileMetaData file : unStableFiles.values()) edits.putFile(propertyId, false, file);
+        for(Long number : stableFileBuffers.keySet()) edits.putBuffer(propertyId, true, number);
+        for(Long number : unStableFileBuffers.keySet()) edits.putBuffer(propertyId, false, number);
     }
 
     public void addUnstable(FileMetaData file) {
         unStableFiles.put(file.getNumber(), file);
         unstableByTime.put(file.getSmallest(), file);
+        if(edits!=null) edits.putFile(propertyId, false, file);
     }
 
     public void addStable(FileMetaData file) {
         stableFiles.put(file.getNumber(), file);
         stableByTime.put(file.getSmallest(), file);
+        if(edits!=null) edits.putFile(propertyId, true, file);
     }
 
     public FileMetaData latestStableMeta(){
@@ -97,14 +114,21 @@ public class PropertyMetaData {
         FileMetaData meta = unStableFiles.get(fileNumber);
         unstableByTime.remove(meta.getSmallest());
         unStableFiles.remove(meta.getNumber());
+        if(edits!=null) edits.delFile(propertyId, false, fileNumber);
+    }
+
+    public void delStable(long fileNumber) {
+        FileMetaData meta = stableFiles.remove(fileNumber);
+        stableByTime.remove(meta.getSmallest());
+        if(edits!=null) edits.delFile(propertyId, true, fileNumber);
     }
 
     public void delUnstableBuffer(Long fileNumber) {
-        unStableFileBuffers.remove(fileNumber);
+        if(unStableFileBuffers.remove(fileNumber)!=null && edits!=null) edits.delBuffer(propertyId, false, fileNumber);
     }
 
     public void delStableBuffer(long number) {
-        stableFileBuffers.remove(number);
+        if(stableFileBuffers.remove(number)!=null && edits!=null) edits.delBuffer(propertyId, true, number);
     }
 
     // returned meta's time is ASC order
@@ -180,6 +204,30 @@ public class PropertyMetaData {
         return stableByTime.get(start);
     }
 
+    public TimePointL getRetentionHorizon() {
+        return retentionHorizon;
+    }
+
+    public void setRetentionHorizon(TimePointL horizon) {
+        this.retentionHorizon = horizon;
+        if(edits!=null) edits.putProperty(this);
+    }
+
+    public boolean isExpired(TimePointL time) {
+        return time.compareTo(retentionHorizon) < 0;
+    }
+
+    /**
+     * 完全早于保留期限的StableFile. 最新的StableFile除外: 查询UnStableFile时需要它提供各entity的起始值.
+     */
+    public List<FileMetaData> expiredStable() {
+        List<FileMetaData> result = new ArrayList<>();
+        for(FileMetaData meta : stableByTime.headMap(retentionHorizon, false).values()){
+            if(meta.getLargest().compareTo(retentionHorizon) < 0 && meta != latestStableMeta()) result.add(meta);
+        }
+        return result;
+    }
+
     public boolean hasStable(){
         return !stableFiles.isEmpty();
     }
@@ -194,10 +242,12 @@ public class PropertyMetaData {
 
     public void addUnstableBuffer(long number, FileBuffer buffer) {
         unStableFileBuffers.put(number, buffer);
+        if(edits!=null) edits.putBuffer(propertyId, false, number);
     }
 
     public void addStableBuffer(long number, FileBuffer buffer) {
         stableFileBuffers.put(number, buffer);
+        if(edits!=null) edits.putBuffer(propertyId, true, number);
     }
 
     @Override
@@ -209,6 +259,7 @@ public class PropertyMetaData {
                 ", stableFileBuffers=" + stableFileBuffers +
                 ", unStableFiles=" + unStableFiles +
                 ", unStableFileBuffers=" + unStableFileBuffers +
+                ", retentionHorizon=" + retentionHorizon +
                 '}';
     }
 
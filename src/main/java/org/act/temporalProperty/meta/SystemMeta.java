@@ -6,9 +6,16 @@ import org.act.temporalProperty.impl.*;
 import org.act.temporalProperty.index.IndexStore;
 import org.act.temporalProperty.index.value.IndexMetaData;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -16,6 +23,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * Created by song on 2018-01-17.
  */
 public class SystemMeta {
+    private static Logger log = LoggerFactory.getLogger( SystemMeta.class );
     public final StoreLock lock = new StoreLock();
 
     private final Map<Integer, PropertyMetaData> properties = new HashMap<>();
@@ -25,6 +33,8 @@ public class SystemMeta {
     private final Map<Integer, SinglePropertyStore> propertyStores = new HashMap<>();
     private TableCache cache;
     private File dbDir;
+    private ManifestLog manifest;
+    private final ManifestLog.Edits edits = new ManifestLog.Edits();
 
     public SystemMeta(){
 
@@ -54,23 +64,94 @@ public class SystemMeta {
 
     public void addIndex(IndexMetaData iMeta) {
         indexes.add(iMeta);
+        iMeta.setEdits(edits);
+    }
+
+    public void delIndex(IndexMetaData iMeta) {
+        indexes.remove(iMeta);
+        edits.delIndex(iMeta.getId());
     }
 
     public void addProperty(PropertyMetaData pMeta) {
         properties.put(pMeta.getPropertyId(), pMeta);
+        pMeta.setEdits(edits);
+    }
+
+    // 删除属性及其所有文件, Buffer的元信息
+    public PropertyMetaData delProperty(int propertyId) {
+        PropertyMetaData pMeta = properties.remove(propertyId);
+        if(pMeta!=null){
+            for(Long number : pMeta.getStableFiles().keySet()) edits.delFile(propertyId, true, number);
+            for(Long number : pMeta.getUnStableFiles().keySet()) edits.delFile(propertyId, false, number);
+            for(Long number : pMeta.getStableBuffers().keySet()) edits.delBuffer(propertyId, true, number);
+            for(Long number : pMeta.getUnstableBuffers().keySet()) edits.delBuffer(propertyId, false, number);
+            edits.delProperty(propertyId);
+        }
+        return pMeta;
+    }
+
+    ManifestLog.Edits edits() {
+        return edits;
     }
 
+    // 第一次调用时新建增量日志(写入快照), 之后只追加变化
     public void force(File dir) throws IOException {
-        SystemMetaController.forceToDisk(dir, this);
+        if(manifest==null){
+            manifest = ManifestLog.create(dir, this);
+        }else{
+            manifest.append(this);
+        }
+    }
+
+    public void closeManifest() throws IOException {
+        if(manifest!=null){
+            manifest.close();
+            manifest = null;
+        }
     }
 
-    public void initStore(File storeDir, TableCache cache, IndexStore indexStore ) throws Throwable {
+    public void initStore(File storeDir, TableCache cache, IndexStore indexStore, Options options ) throws Throwable {
         this.dbDir = storeDir;
         this.cache = cache;
         for( PropertyMetaData pMeta : properties.values()){
             SinglePropertyStore onePropStore = new SinglePropertyStore(pMeta, storeDir, cache, indexStore);
             propertyStores.put(pMeta.getPropertyId(), onePropStore);
         }
+        loadBuffers(options);
+    }
+
+    // 各属性的Buffer并行回放. lazy模式下不等待, 回放完成之前被访问的Buffer由访问线程加载
+    private void loadBuffers(Options options) throws Throwable {
+        if(propertyStores.isEmpty()) return;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(options.bufferLoadThreads(), propertyStores.size()), r -> {
+            Thread t = new Thread(r, "TPS-BufferLoader");
+            t.setDaemon(true);
+            return t;
+        });
+        List<Future<?>> tasks = new ArrayList<>();
+        for(PropertyMetaData pMeta : properties.values()){
+            // 在启动线程中取出Buffer列表, 合并线程启动后会修改它
+            List<FileBuffer> buffers = new ArrayList<>(pMeta.getUnstableBuffers().values());
+            buffers.addAll(pMeta.getStableBuffers().values());
+            tasks.add(pool.submit(() -> {
+                try {
+                    for(FileBuffer buffer : buffers) buffer.load();
+                } catch (IOException e) {
+                    log.error("load buffers of property {} failed", pMeta.getPropertyId(), e);
+                    throw e;
+                }
+                return null;
+            }));
+        }
+        pool.shutdown();
+        if(options.lazyBufferLoad()) return;
+        for(Future<?> task : tasks){
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
     }
 
     @Override
@@ -88,6 +169,7 @@ public class SystemMeta {
 
     public void setIndexNextId(long indexNextId) {
         this.indexNextId = indexNextId;
+        edits.putIndexCounter(this.indexNextId, this.indexNextFileId);
     }
 
     public long indexNextFileId()
@@ -98,5 +180,6 @@ public class SystemMeta {
     public void setIndexNextFileId( long nextFileId )
     {
         this.indexNextFileId = nextFileId;
+        edits.putIndexCounter( this.indexNextId, this.indexNextFileId );
     }
 }
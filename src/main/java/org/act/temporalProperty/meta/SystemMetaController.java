@@ -5,6 +5,7 @@ import org.act.temporalProperty.impl.LogReader;
 import org.act.temporalProperty.impl.LogWriter;
 import org.act.temporalProperty.impl.Logs;
 import org.act.temporalProperty.index.value.IndexMetaData;
+import org.act.temporalProperty.query.TimePointL;
 import org.act.temporalProperty.util.DynamicSliceOutput;
 import org.act.temporalProperty.util.Slice;
 import org.act.temporalProperty.util.SliceInput;
@@ -16,6 +17,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Collection;
 
 import static org.act.temporalProperty.TemporalPropertyStore.MagicNumber;
@@ -44,6 +46,17 @@ public class SystemMetaController {
         for(IndexMetaData p: indexes){
             p.encode(out);
         }
+        // 保留期限附加在末尾, 旧版本的meta文件没有这一段
+        int expiring = 0;
+        for(PropertyMetaData p: props){
+            if(!p.getRetentionHorizon().isInit()) expiring++;
+        }
+        out.writeInt(expiring);
+        for(PropertyMetaData p: props){
+            if(p.getRetentionHorizon().isInit()) continue;
+            out.writeInt(p.getPropertyId());
+            p.getRetentionHorizon().encode(out);
+        }
     }
 
     public static SystemMeta decode(SliceInput in){
@@ -60,6 +73,13 @@ public class SystemMetaController {
             IndexMetaData iMeta = new IndexMetaData(in);
             meta.addIndex(iMeta);
         }
+        if(in.isReadable()){
+            count = in.readInt();
+            for(int i=0; i<count; i++){
+                int proId = in.readInt();
+                meta.getProperties().get(proId).setRetentionHorizon(TimePointL.decode(in));
+            }
+        }
         return meta;
     }
 
@@ -121,10 +141,7 @@ public class SystemMetaController {
             writer.close();
 
             File oldFile = new File(dir, "meta.info");
-            if( oldFile.exists() ) {
-                if( !oldFile.delete()) throw new IOException("can not delete old meta file");
-            }
-            Files.move(tmpFile.toPath(), tmpFile.toPath().resolveSibling(oldFile.getName()));
+            Files.move(tmpFile.toPath(), oldFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         }catch ( IOException e ){
             //FIXME
             e.printStackTrace();
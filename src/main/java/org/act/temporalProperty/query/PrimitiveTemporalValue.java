@@ -0,0 +1,302 @@
+package org.act.temporalProperty.query;
+
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.util.OffHeapArena;
+import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.util.Slices;
+
+import java.util.Arrays;
+
+/**
+ * MemTable专用的TemporalValue: 时间点保存在有序的long[]中, 每个时间点的(值类型, Unknown标记, 值在arena中的位置和长度)压缩为一个long,
+ * 值的字节依次追加到一个byte[] arena中. 语义与{@code TemporalValue<MemTable.Value>}相同.
+ * 按时间顺序写入(最常见的情况)时只需在数组末尾追加.
+ *
+ * arena中的数据写入后不再修改(覆盖的值只是不再被引用, arena扩容时才被清理), 因此value()返回的视图在之后的写入后仍然有效.
+ *
+ * 若构造时给定了OffHeapArena, 值保存在堆外(由所属MemTable统一释放), value()返回堆内的副本, 此时valueBase()/valueOffset()不可用.
+ */
+public class PrimitiveTemporalValue
+{
+    /**
+     * 对象本身, 三个数组及arena视图的大致开销(bytes)
+     */
+    public static final int OBJECT_OVERHEAD = 16 + 40 + 3 * 16 + 32;
+
+    private static final int UNKNOWN = 0xF;
+    private static final int MAX_VALUE_LENGTH = 0xFF_FFFF;
+
+    private long[] times = new long[2];
+    private long[] refs = new long[2]; // offset(32bit) | length(24bit) | type(8bit, UNKNOWN or ValueType persistent id)
+    private int size = 0;
+
+    private final OffHeapArena offHeap;
+    private byte[] arena;
+    private Slice arenaSlice;
+    private int arenaUsed = 0;
+    private int arenaLive = 0; // bytes still referenced
+
+    public PrimitiveTemporalValue()
+    {
+        this.offHeap = null;
+        this.arena = new byte[16];
+        this.arenaSlice = new Slice( arena );
+    }
+
+    public PrimitiveTemporalValue( OffHeapArena offHeap )
+    {
+        this.offHeap = offHeap;
+        this.arena = new byte[0];
+        this.arenaSlice = Slices.EMPTY_SLICE;
+    }
+
+    public boolean isOffHeap()
+    {
+        return offHeap != null;
+    }
+
+    /**
+     * 与TemporalValue.put相同: [start, end]内的值被替换为value; end不是NOW时, end+1上若原来没有时间点, 则放上原来覆盖end+1的值,
+     * 原来没有值时放一个Unknown标记.
+     */
+    public void put( TimeInterval interval, ValueType valueType, Slice value )
+    {
+        long start = interval.start().val();
+        long ref = store( valueType, value );
+        if ( interval.end().isNow() )
+        {
+            int from = ceilIndex( start );
+            release( from, size );
+            size = from;
+            insert( size, start, ref );
+        }
+        else
+        {
+            long endNext = interval.end().val() + 1;
+            int from = ceilIndex( start );
+            int to = ceilIndex( endNext ); // points in [start, end] are [from, to)
+            boolean hasEndNext = to < size && times[to] == endNext;
+            // 原来覆盖end+1的值. 堆内时是arena的视图, arena整理后旧数组不变, 所以视图仍有效
+            Slice endValue = !hasEndNext && to > 0 && !isUnknown( to - 1 ) ? value( to - 1 ) : null;
+            ValueType endType = endValue == null ? null : valueType( to - 1 );
+            release( from, to );
+            remove( from, to );
+            insert( from, start, ref );
+            if ( !hasEndNext )
+            {
+                // ref已在数组中, 再次store时arena整理会同时更新它
+                insert( from + 1, endNext, endValue == null ? UNKNOWN : store( endType, endValue ) );
+            }
+        }
+    }
+
+    /**
+     * @return 不晚于time的最后一个时间点的下标, 若不存在则为-1
+     */
+    public int floorIndex( long time )
+    {
+        int i = Arrays.binarySearch( times, 0, size, time );
+        return i >= 0 ? i : -i - 2;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public long time( int i )
+    {
+        return times[i];
+    }
+
+    public boolean isUnknown( int i )
+    {
+        return (refs[i] & 0xFF) == UNKNOWN;
+    }
+
+    /**
+     * 只对非Unknown的时间点有效
+     */
+    public ValueType valueType( int i )
+    {
+        return ValueType.getValueTypeByPersistentId( (int) (refs[i] & 0xFF) );
+    }
+
+    /**
+     * 整个arena, 配合valueOffset/valueLength使用, 不创建对象
+     */
+    public Slice valueBase()
+    {
+        return arenaSlice;
+    }
+
+    public int valueOffset( int i )
+    {
+        return (int) (refs[i] >>> 32);
+    }
+
+    public int valueLength( int i )
+    {
+        return (int) ((refs[i] >>> 8) & MAX_VALUE_LENGTH);
+    }
+
+    /**
+     * 创建一个指向arena的视图, 堆外时则是一个副本
+     */
+    public Slice value( int i )
+    {
+        if ( offHeap != null )
+        {
+            return offHeap.get( valueOffset( i ), valueLength( i ) );
+        }
+        return arenaSlice.slice( valueOffset( i ), valueLength( i ) );
+    }
+
+    /**
+     * 第i个时间点的值的有效区间: 到下一个时间点之前, 最后一个时间点则到NOW
+     */
+    public TimeInterval interval( int i )
+    {
+        TimePointL end = i + 1 < size ? TimePointL.of( times[i + 1] - 1 ) : TimePointL.Now;
+        return new TimeInterval( TimePointL.of( times[i] ), end );
+    }
+
+    public boolean overlap( TimePointL startTime, TimePointL endTime )
+    {
+        int floor = floorIndex( endTime.val() );
+        if ( floor < 0 )
+        {
+            return false;
+        }
+        else if ( isUnknown( floor ) )
+        {
+            return times[floor] >= startTime.val();
+        }
+        else
+        {
+            return true;
+        }
+    }
+
+    /**
+     * 堆内的副本, 之后对本对象的写入或堆外内存的释放都不影响副本
+     */
+    public PrimitiveTemporalValue copy()
+    {
+        PrimitiveTemporalValue result = new PrimitiveTemporalValue();
+        for ( int i = 0; i < size; i++ )
+        {
+            result.insert( i, times[i], isUnknown( i ) ? UNKNOWN : result.store( valueType( i ), value( i ) ) );
+        }
+        return result;
+    }
+
+    /**
+     * 实际占用的堆内存(bytes), 包括数组中未使用的部分. 不包括OffHeapArena中的数据.
+     */
+    public long memUsage()
+    {
+        return OBJECT_OVERHEAD + 16L * times.length + arena.length;
+    }
+
+    private long store( ValueType valueType, Slice value )
+    {
+        int length = value.length();
+        if ( length > MAX_VALUE_LENGTH )
+        {
+            throw new IllegalArgumentException( "value too long: " + length );
+        }
+        if ( offHeap != null )
+        {
+            return ((long) offHeap.allocate( value ) << 32) | ((long) length << 8) | valueType.getPersistentId();
+        }
+        ensureArena( length );
+        value.getBytes( 0, arena, arenaUsed, length );
+        long ref = ((long) arenaUsed << 32) | ((long) length << 8) | valueType.getPersistentId();
+        arenaUsed += length;
+        arenaLive += length;
+        return ref;
+    }
+
+    private void ensureArena( int length )
+    {
+        if ( arenaUsed + length <= arena.length )
+        {
+            return;
+        }
+        byte[] newArena;
+        if ( arenaLive + length <= arena.length / 2 )
+        {
+            newArena = new byte[arena.length]; // more than half garbage: compact only
+        }
+        else
+        {
+            newArena = new byte[Math.max( arena.length * 2, arenaLive + length )];
+        }
+        // copy live values, old arena is left untouched so earlier views stay valid.
+        int used = 0;
+        for ( int i = 0; i < size; i++ )
+        {
+            if ( !isUnknown( i ) )
+            {
+                int len = valueLength( i );
+                System.arraycopy( arena, valueOffset( i ), newArena, used, len );
+                refs[i] = ((long) used << 32) | (refs[i] & 0xFFFF_FFFFL);
+                used += len;
+            }
+        }
+        arena = newArena;
+        arenaSlice = new Slice( arena );
+        arenaUsed = used;
+        arenaLive = used;
+    }
+
+    // smallest index whose time >= t
+    private int ceilIndex( long t )
+    {
+        int i = Arrays.binarySearch( times, 0, size, t );
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private void release( int from, int to )
+    {
+        if ( offHeap != null ) return; // off-heap space is freed with the whole arena
+        for ( int i = from; i < to; i++ )
+        {
+            if ( !isUnknown( i ) ) arenaLive -= valueLength( i );
+        }
+    }
+
+    private void remove( int from, int to )
+    {
+        if ( from < to )
+        {
+            System.arraycopy( times, to, times, from, size - to );
+            System.arraycopy( refs, to, refs, from, size - to );
+            size -= to - from;
+        }
+    }
+
+    private void insert( int index, long time, long ref )
+    {
+        if ( size == times.length )
+        {
+            int capacity = times.length * 2;
+            times = Arrays.copyOf( times, capacity );
+            refs = Arrays.copyOf( refs, capacity );
+        }
+        if ( index < size )
+        {
+            System.arraycopy( times, index, times, index + 1, size - index );
+            System.arraycopy( refs, index, refs, index + 1, size - index );
+        }
+        times[index] = time;
+        refs[index] = ref;
+        size++;
+    }
+}
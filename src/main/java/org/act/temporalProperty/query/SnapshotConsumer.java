@@ -0,0 +1,15 @@
+package org.act.temporalProperty.query;
+
+import org.act.temporalProperty.util.Slice;
+
+/**
+ * 接收某个属性在某个时间点上所有entity的值, 见{@link org.act.temporalProperty.TemporalPropertyStore#snapshotAt(int, TimePointL, SnapshotConsumer)}
+ */
+public interface SnapshotConsumer
+{
+    /**
+     * 按entityId从小到大依次调用, 没有值(或值为INVALID)的entity不会出现.
+     * @param value 指向存储中原始数据的视图, 若需要修改请先复制
+     */
+    void accept( long entityId, Slice value );
+}
@@ -30,6 +30,10 @@ public class TemporalValue<V>
     {
     }
 
+    /**
+     * [start, end]内的值被替换为value. end+1上原来没有时间点时, 放上原来覆盖end+1的值(如先写的较长区间的后半段),
+     * 原来没有值时放一个Unknown标记.
+     */
     public void put( TimeInterval interval, V value )
     {
         if ( interval.end().isNow() )
@@ -37,7 +41,8 @@ public class TemporalValue<V>
             map.tailMap( interval.start(), true ).clear();
             map.put( interval.start(), val( value ) );
         }else{
-            ValWithFlag end = map.get( interval.end().next() );
+            Entry<TimePointL, ValWithFlag> floor = map.floorEntry( interval.end().next() );
+            ValWithFlag end = floor == null ? null : floor.getValue();
             map.subMap( interval.start(), true, interval.end(), true ).clear();
             map.put( interval.start(), val( value ) );
             if ( end == null )
@@ -62,7 +62,7 @@ public class TimeInterval extends TInterval<TimePointL>
     @Override
     public int hashCode()
     {
-        return Objects.hash( start(), end() );
+        return 31 * Long.hashCode( from() ) + Long.hashCode( to() );
     }
 
     @Override
@@ -33,12 +33,12 @@ public class TimeIntervalKey extends TimeInterval
 
     public InternalKey getStartKey()
     {
-        return new InternalKey( id, start(), valueType );
+        return new InternalKey( id, from(), valueType );
     }
 
     public InternalKey getEndKey()
     {
-        return new InternalKey( id, end().next(), ValueType.UNKNOWN );
+        return new InternalKey( id, to() + 1, ValueType.UNKNOWN );
     }
 
     @Override
@@ -78,29 +78,31 @@ public class TimeIntervalKey extends TimeInterval
                 valueType + '}';
     }
 
-    public boolean lessThan( int time )
+    // 以下与TInterval中的同名方法相同, 但参数是long, 不创建TimePointL
+
+    public boolean lessThan( long time )
     {
-        return this.lessThan( new TimePointL( time ) );
+        return time > to();
     }
 
-    public boolean greaterOrEq( int time )
+    public boolean greaterOrEq( long time )
     {
-        return this.greaterOrEq( new TimePointL( time ) );
+        return from() >= time;
     }
 
-    public boolean span( int minTime, int maxTime )
+    public boolean span( long minTime, long maxTime )
     {
-        return this.span( new TimePointL( minTime ), new TimePointL( maxTime ) );
+        return from() < minTime && minTime <= maxTime && maxTime <= to();
     }
 
-    public boolean span( int time )
+    public boolean span( long time )
     {
-        return this.span( new TimePointL( time ) );
+        return from() < time && time <= to();
     }
 
-    public boolean between( int min, int maxTime )
+    public boolean between( long min, long maxTime )
     {
-        return this.between( new TimePointL( min ), new TimePointL( maxTime ) );
+        return min <= from() && to() <= maxTime;
     }
 
     public void encode(SliceOutput out) {
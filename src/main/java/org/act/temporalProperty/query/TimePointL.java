@@ -6,8 +6,6 @@ import org.act.temporalProperty.util.SliceInput;
 import org.act.temporalProperty.util.SliceOutput;
 import org.act.temporalProperty.util.Slices;
 
-import java.util.Objects;
-
 import static org.act.temporalProperty.util.SizeOf.SIZE_OF_LONG;
 
 /**
@@ -103,7 +101,7 @@ public class TimePointL implements TPoint<TimePointL>
 
     @Override
     public int hashCode() {
-        return Objects.hash(time);
+        return Long.hashCode(time);
     }
 
     public Slice encode(){
@@ -117,7 +115,11 @@ public class TimePointL implements TPoint<TimePointL>
     }
 
     public static TimePointL decode(SliceInput in) {
-        long t = in.readLong();
+        return of(in.readLong());
+    }
+
+    // returns the Now/Init singleton for their raw values
+    public static TimePointL of(long t) {
         if(t==NOW_VAL_LONG) return Now;
         else if(t==INIT_VAL_LONG) return Init;
         else return new TimePointL(t);
@@ -2,11 +2,10 @@ package org.act.temporalProperty.query.aggr;
 
 import com.google.common.base.Preconditions;
 import org.act.temporalProperty.impl.InternalEntry;
-import org.act.temporalProperty.impl.InternalKey;
 import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.query.range.CombinableRangeQueryCallBack;
 import org.act.temporalProperty.query.range.InternalEntryRangeQueryCallBack;
 import org.act.temporalProperty.util.Slice;
-import org.act.temporalProperty.vo.TimeIntervalValueEntry;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -15,51 +14,69 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 /**
- * Users who want custom aggregation query should extend this class
+ * Users who want custom aggregation query should extend this class.
+ * All entries of a group are kept until onReturn(); use {@link IncrementalTimeIntervalAggrQuery} when the aggregation can be computed incrementally.
  * Created by song on 2018-04-01.
  */
 public abstract class AbstractTimeIntervalAggrQuery<K,V> implements TimeIntervalEntryAggrQuery<K,V>, InternalEntryRangeQueryCallBack {
     private final Map<K, V> groupValMap = new HashMap<>();
     private final Map<K, List<TimeIntervalEntry>> groupListMap = new HashMap<>();
-    private final TimePointL endTime;
-    private final TimePointL startTime;
-    private boolean hasEntry = false;
-    private InternalEntry lastEntry;
+    private final TimeIntervalCollector collector;
 
     protected AbstractTimeIntervalAggrQuery( TimePointL startTime, TimePointL endTime )
     {
-        this.startTime = startTime;
-        this.endTime = endTime;
+        this.collector = new TimeIntervalCollector( startTime, endTime, entry -> addToGroup( groupListMap, entry ) );
     }
 
     public void onNewEntry(InternalEntry entry) {
-        hasEntry = true;
-        InternalKey key = entry.getKey();
-        TimePointL time = key.getStartTime();
-        if ( lastEntry != null )
+        collector.onNewEntry( entry );
+    }
+
+    public Object onReturn() {
+        collector.finish();
+        return aggregateGroups();
+    }
+
+    /**
+     * Subclasses which implement {@link CombinableRangeQueryCallBack} get this for free,
+     * as long as their {@code computeGroupId} has no side effect (it may be called from several threads).
+     * The partial result of a segment is its group lists.
+     */
+    public InternalEntryRangeQueryCallBack segment( TimePointL start, TimePointL end )
+    {
+        Map<K, List<TimeIntervalEntry>> segmentGroups = new HashMap<>();
+        TimeIntervalCollector segmentCollector = new TimeIntervalCollector( start, end, entry -> addToGroup( segmentGroups, entry ) );
+        return new InternalEntryRangeQueryCallBack()
         {
-            TimePointL lastTime = lastEntry.getKey().getStartTime();
-            if ( lastTime.compareTo(startTime) < 0 )
+            @Override
+            public void setValueType( String valueType ) { AbstractTimeIntervalAggrQuery.this.setValueType( valueType ); }
+
+            @Override
+            public void onNewEntry( InternalEntry entry ) { segmentCollector.onNewEntry( entry ); }
+
+            @Override
+            public Object onReturn()
             {
-                lastTime = startTime;
-                assert time.compareTo(startTime) > 0;
+                segmentCollector.finish();
+                return segmentGroups;
             }
-            onEntry( lastTime, time.pre(), lastEntry.getValue() );
-        }//else: do nothing
-        if ( key.getValueType().isValue() )
-        {
-            lastEntry = entry;
-        }
-        else
+        };
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public Object combine( List<Object> partials )
+    {
+        for ( Object partial : partials )
         {
-            lastEntry = null;
+            for ( Entry<K, List<TimeIntervalEntry>> group : ((Map<K, List<TimeIntervalEntry>>) partial).entrySet() )
+            {
+                groupListMap.computeIfAbsent( group.getKey(), k -> new ArrayList<>() ).addAll( group.getValue() );
+            }
         }
+        return aggregateGroups();
     }
 
-    public Object onReturn() {
-        if(hasEntry && lastEntry!=null && lastEntry.getKey().getStartTime().compareTo(endTime)<=0){
-            onEntry(lastEntry.getKey().getStartTime(), endTime, lastEntry.getValue());
-        }
+    private Object aggregateGroups() {
         for(Entry<K, List<TimeIntervalEntry>> entry : groupListMap.entrySet()){
             V aggrValue = aggregate(entry.getKey(), entry.getValue());
             if(aggrValue!=null) groupValMap.put(entry.getKey(), aggrValue);
@@ -67,12 +84,12 @@ public abstract class AbstractTimeIntervalAggrQuery<K,V> implements TimeInterval
         return onResult(groupValMap);
     }
 
-    private void onEntry(TimePointL start, TimePointL end, Slice value){
-        TimeIntervalEntry entry = new TimeIntervalEntry(start, end, value);
-        K groupId = computeGroupId(entry);
-        if(groupId!=null) {
-            groupListMap.computeIfAbsent(groupId, k -> new ArrayList<>());
-            groupListMap.get(groupId).add(entry);
+    private void addToGroup( Map<K, List<TimeIntervalEntry>> groups, TimeIntervalEntry entry )
+    {
+        K groupId = computeGroupId( entry );
+        if ( groupId != null )
+        {
+            groups.computeIfAbsent( groupId, k -> new ArrayList<>() ).add( entry );
         }
     }
 
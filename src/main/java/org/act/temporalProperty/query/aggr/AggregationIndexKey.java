@@ -41,7 +41,7 @@ public class AggregationIndexKey implements Comparable<AggregationIndexKey>{
     }
 
     public Slice encode(){
-        Slice raw = new Slice(16);
+        Slice raw = new Slice(20); // entity id(8) + time group id(8) + value group id(4)
         SliceOutput out = raw.output();
         out.writeLong( entityId );
         timeGroupId.encode(out);
@@ -61,9 +61,14 @@ public class AggregationIndexKey implements Comparable<AggregationIndexKey>{
             throw new UnsupportedOperationException();
         }
 
+        // compare encoded keys directly, same order as compareTo(), time group id is a full 64bit long.
         @Override
         public int compare(Slice o1, Slice o2) {
-            return new AggregationIndexKey(o1).compareTo(new AggregationIndexKey(o2));
+            int r = Long.compare(o1.getLong(0), o2.getLong(0));
+            if(r!=0) return r;
+            r = Long.compare(o1.getLong(8), o2.getLong(8));
+            if(r!=0) return r;
+            return Integer.compare(o1.getInt(16), o2.getInt(16));
         }
     };
 
@@ -96,7 +101,7 @@ public class AggregationIndexKey implements Comparable<AggregationIndexKey>{
         if ( o == null || getClass() != o.getClass() )
         { return false; }
         AggregationIndexKey that = (AggregationIndexKey) o;
-        return entityId == that.entityId && timeGroupId == that.timeGroupId && valueGroupId == that.valueGroupId;
+        return entityId == that.entityId && timeGroupId.equals( that.timeGroupId ) && valueGroupId == that.valueGroupId;
     }
 
     @Override
@@ -14,6 +14,9 @@ public class AggregationIndexQueryResult
 
     private Map<Integer,Slice> minMaxResult;
     private Map<Integer,Integer> durationResult;
+    private Number sum;
+    private long validDuration;
+    private long count;
     private final int speedUpTime;
 
     public AggregationIndexQueryResult( Map<Integer,Integer> result, int speedUpTime )
@@ -28,6 +31,20 @@ public class AggregationIndexQueryResult
         this.speedUpTime = speedUpTime;
     }
 
+    /**
+     * AGGR_SUM索引的结果
+     * @param sum 值×时长之和, INT, LONG 属性为Long, FLOAT, DOUBLE 属性为Double
+     * @param validDuration 有值的总时长
+     * @param count 查询区间内的值的个数(查询开始时刻的值也算)
+     */
+    public AggregationIndexQueryResult( Number sum, long validDuration, long count, int speedUpTime )
+    {
+        this.sum = sum;
+        this.validDuration = validDuration;
+        this.count = count;
+        this.speedUpTime = speedUpTime;
+    }
+
     public Map<Integer,Slice> getMinMaxResult()
     {
         return minMaxResult;
@@ -38,6 +55,29 @@ public class AggregationIndexQueryResult
         return durationResult;
     }
 
+    public Number getSum()
+    {
+        return sum;
+    }
+
+    public long getValidDuration()
+    {
+        return validDuration;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return 按时长加权的平均值(sum / validDuration), 区间内没有值时为null
+     */
+    public Double getAvg()
+    {
+        return validDuration == 0 ? null : sum.doubleValue() / validDuration;
+    }
+
     public int getAccelerateTime()
     {
         return speedUpTime;
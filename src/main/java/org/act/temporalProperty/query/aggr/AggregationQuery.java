@@ -1,15 +1,11 @@
 package org.act.temporalProperty.query.aggr;
 
-import com.google.common.collect.ImmutableMap;
-import org.act.temporalProperty.impl.InternalEntry;
-import org.act.temporalProperty.impl.InternalKey;
-import org.act.temporalProperty.index.IndexValueType;
+import org.act.temporalProperty.query.TimePointL;
 import org.act.temporalProperty.query.range.TimeRangeQuery;
-import org.act.temporalProperty.util.Slice;
-
-import java.util.Comparator;
 
 /**
+ * Built-in aggregations. The factory methods return a new query object each time, use one per query:
+ * the objects hold the aggregation state and must not be shared by concurrent queries.
  * Created by song on 2018-04-05.
  */
 public interface AggregationQuery extends TimeRangeQuery
@@ -17,100 +13,84 @@ public interface AggregationQuery extends TimeRangeQuery
     int MIN = 0;
     int MAX = 1;
 
-    AggregationQuery Min = new AggregationQuery()
+    /**
+     * @deprecated shared by all callers, not safe for concurrent queries. Use {@link #min()}.
+     */
+    @Deprecated
+    AggregationQuery Min = new MinMaxAggregationQuery( true, false );
+
+    /**
+     * @deprecated shared by all callers, not safe for concurrent queries. Use {@link #max()}.
+     */
+    @Deprecated
+    AggregationQuery Max = new MinMaxAggregationQuery( false, true );
+
+    /**
+     * @deprecated shared by all callers, not safe for concurrent queries. Use {@link #minMax()}.
+     */
+    @Deprecated
+    AggregationQuery MinMax = new MinMaxAggregationQuery( true, true );
+
+    /** @return min value as Slice */
+    static AggregationQuery min()
     {
-        private Comparator<Slice> cp;
-        private Slice min;
-
-        @Override
-        public void setValueType(String valueType )
-        {
-            cp = ValueGroupingMap.getComparator( IndexValueType.convertFrom( valueType ) );
-        }
-
-        @Override
-        public void onNewEntry( InternalEntry entry )
-        {
-            InternalKey key = entry.getKey();
-            if ( key.getValueType().isValue() )
-            {
-                if ( min == null || cp.compare( entry.getValue(), min ) < 0 )
-                { min = entry.getValue(); }
-            }
-        }
-
-        @Override
-        public Object onReturn()
-        {
-            return min;
-        }
-    };
+        return new MinMaxAggregationQuery( true, false );
+    }
 
-    AggregationQuery Max = new AggregationQuery()
+    /** @return max value as Slice */
+    static AggregationQuery max()
     {
-        private Comparator<Slice> cp;
-        private Slice max;
-
-        @Override
-        public void setValueType(String valueType )
-        {
-            cp = ValueGroupingMap.getComparator( IndexValueType.convertFrom( valueType ) );
-        }
-
-        @Override
-        public void onNewEntry( InternalEntry entry )
-        {
-            InternalKey key = entry.getKey();
-            if ( key.getValueType().isValue() )
-            {
-                if ( max == null || cp.compare( entry.getValue(), max ) > 0 )
-                {
-                    max = entry.getValue();
-                }
-            }
-        }
-
-        @Override
-        public Object onReturn()
-        {
-            return max;
-        }
-    };
+        return new MinMaxAggregationQuery( false, true );
+    }
 
-    AggregationQuery MinMax = new AggregationQuery()
+    /** @return Map: {@link #MIN} -> min, {@link #MAX} -> max */
+    static AggregationQuery minMax()
     {
-        private Comparator<Slice> cp;
-        private Slice min;
-        private Slice max;
+        return new MinMaxAggregationQuery( true, true );
+    }
 
-        @Override
-        public void setValueType(String valueType )
-        {
-            cp = ValueGroupingMap.getComparator( IndexValueType.convertFrom( valueType ) );
-        }
+    /** @return sum of the values, Long for INT/LONG properties, Double for FLOAT/DOUBLE */
+    static AggregationQuery sum()
+    {
+        return new NumericAggregationQuery( NumericAggregationQuery.Kind.SUM, null );
+    }
 
-        @Override
-        public void onNewEntry( InternalEntry entry )
-        {
-            InternalKey key = entry.getKey();
-            if ( key.getValueType().isValue() )
-            {
-                if ( min == null || cp.compare( entry.getValue(), min ) < 0 )
-                { min = entry.getValue(); }
+    /** @return number of values (Long) */
+    static AggregationQuery count()
+    {
+        return new NumericAggregationQuery( NumericAggregationQuery.Kind.COUNT, null );
+    }
 
-                if ( max == null || cp.compare( entry.getValue(), max ) > 0 )
-                {
-                    max = entry.getValue();
-                }
-            }
-        }
+    /** @return average of the values (Double), null if there is no value */
+    static AggregationQuery avg()
+    {
+        return new NumericAggregationQuery( NumericAggregationQuery.Kind.AVG, null );
+    }
+
+    /**
+     * @param end the end time of the query, the last value lasts until it
+     * @return average weighted by how long each value lasts (Double), null if there is no value
+     */
+    static AggregationQuery timeWeightedAvg( TimePointL end )
+    {
+        return new NumericAggregationQuery( NumericAggregationQuery.Kind.TIME_WEIGHTED_AVG, end );
+    }
 
-        @Override
-        public Object onReturn()
-        {
-            return ImmutableMap.of( MIN, min, MAX, max );
-        }
-    };
+    /** @return the first value in the range (the value at the start time if there is one), decoded as Integer/Long/Float/Double */
+    static AggregationQuery first()
+    {
+        return new NumericAggregationQuery( NumericAggregationQuery.Kind.FIRST, null );
+    }
 
+    /** @return the last value in the range, decoded as Integer/Long/Float/Double */
+    static AggregationQuery last()
+    {
+        return new NumericAggregationQuery( NumericAggregationQuery.Kind.LAST, null );
+    }
 
+    /** @return population standard deviation of the values (Double), null if there is no value */
+    static AggregationQuery stdDev()
+    {
+        return new NumericAggregationQuery( NumericAggregationQuery.Kind.STD_DEV, null );
+    }
 }
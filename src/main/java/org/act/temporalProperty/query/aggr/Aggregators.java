@@ -0,0 +1,239 @@
+package org.act.temporalProperty.query.aggr;
+
+import org.act.temporalProperty.exception.TPSRuntimeException;
+import org.act.temporalProperty.index.IndexValueType;
+import org.act.temporalProperty.util.Slice;
+
+import java.util.Comparator;
+
+/**
+ * 常用的{@link IncrementalAggregator}. 区间[start, end]的时长为end-start+1个时间点.
+ * duration, min, max, sum, timeWeightedAverage 在区间被切开时结果不变, 可用于分段并行查询; count 不可以.
+ */
+public final class Aggregators
+{
+    private Aggregators()
+    {
+    }
+
+    /**
+     * 分组中各区间的总时长
+     */
+    public static IncrementalAggregator<long[], Long> duration()
+    {
+        return new LongSumAggregator<Long>()
+        {
+            @Override
+            long valueOf( TimeIntervalEntry entry )
+            {
+                return length( entry );
+            }
+
+            @Override
+            public Long finish( long[] acc )
+            {
+                return acc[0];
+            }
+        };
+    }
+
+    /**
+     * 分组中的区间个数
+     */
+    public static IncrementalAggregator<long[], Long> count()
+    {
+        return new LongSumAggregator<Long>()
+        {
+            @Override
+            long valueOf( TimeIntervalEntry entry )
+            {
+                return 1;
+            }
+
+            @Override
+            public Long finish( long[] acc )
+            {
+                return acc[0];
+            }
+        };
+    }
+
+    public static IncrementalAggregator<Slice, Slice> min( Comparator<? super Slice> cp )
+    {
+        return new ExtremeAggregator( cp, -1 );
+    }
+
+    public static IncrementalAggregator<Slice, Slice> max( Comparator<? super Slice> cp )
+    {
+        return new ExtremeAggregator( cp, 1 );
+    }
+
+    /**
+     * 值对时间的累加(值 × 时长之和). INT, LONG 的结果为Long, FLOAT, DOUBLE 的结果为Double
+     */
+    public static IncrementalAggregator<?, Number> sum( IndexValueType type )
+    {
+        checkNumeric( type );
+        if ( type == IndexValueType.INT || type == IndexValueType.LONG )
+        {
+            return new LongSumAggregator<Number>()
+            {
+                @Override
+                long valueOf( TimeIntervalEntry entry )
+                {
+                    long value = type == IndexValueType.INT ? entry.value().getInt( 0 ) : entry.value().getLong( 0 );
+                    return value * length( entry );
+                }
+
+                @Override
+                public Number finish( long[] acc )
+                {
+                    return acc[0];
+                }
+            };
+        }
+        return new WeightedSumAggregator<Number>( type )
+        {
+            @Override
+            public Number finish( double[] acc )
+            {
+                return acc[0];
+            }
+        };
+    }
+
+    /**
+     * 按时长加权的平均值, 即sum / duration
+     */
+    public static IncrementalAggregator<double[], Double> timeWeightedAverage( IndexValueType type )
+    {
+        checkNumeric( type );
+        return new WeightedSumAggregator<Double>( type )
+        {
+            @Override
+            public Double finish( double[] acc )
+            {
+                return acc[1] == 0 ? null : acc[0] / acc[1];
+            }
+        };
+    }
+
+    static double asDouble( IndexValueType type, Slice value )
+    {
+        switch ( type )
+        {
+        case INT: return value.getInt( 0 );
+        case LONG: return value.getLong( 0 );
+        case FLOAT: return value.getFloat( 0 );
+        case DOUBLE: return value.getDouble( 0 );
+        default: throw new TPSRuntimeException( "not a numeric value type: " + type );
+        }
+    }
+
+    private static void checkNumeric( IndexValueType type )
+    {
+        if ( type == IndexValueType.STRING ) throw new TPSRuntimeException( "can not sum STRING values" );
+    }
+
+    private static long length( TimeIntervalEntry entry )
+    {
+        return entry.end().val() - entry.start().val() + 1;
+    }
+
+    private static abstract class LongSumAggregator<R> implements IncrementalAggregator<long[], R>
+    {
+        abstract long valueOf( TimeIntervalEntry entry );
+
+        @Override
+        public long[] init()
+        {
+            return new long[1];
+        }
+
+        @Override
+        public long[] accumulate( long[] acc, TimeIntervalEntry entry )
+        {
+            acc[0] += valueOf( entry );
+            return acc;
+        }
+
+        @Override
+        public long[] merge( long[] a, long[] b )
+        {
+            a[0] += b[0];
+            return a;
+        }
+    }
+
+    // acc[0]: 值 × 时长之和, acc[1]: 总时长
+    private static abstract class WeightedSumAggregator<R> implements IncrementalAggregator<double[], R>
+    {
+        private final IndexValueType type;
+
+        WeightedSumAggregator( IndexValueType type )
+        {
+            this.type = type;
+        }
+
+        @Override
+        public double[] init()
+        {
+            return new double[2];
+        }
+
+        @Override
+        public double[] accumulate( double[] acc, TimeIntervalEntry entry )
+        {
+            long length = length( entry );
+            acc[0] += asDouble( type, entry.value() ) * length;
+            acc[1] += length;
+            return acc;
+        }
+
+        @Override
+        public double[] merge( double[] a, double[] b )
+        {
+            a[0] += b[0];
+            a[1] += b[1];
+            return a;
+        }
+    }
+
+    private static class ExtremeAggregator implements IncrementalAggregator<Slice, Slice>
+    {
+        private final Comparator<? super Slice> cp;
+        private final int sign; // -1: min, 1: max
+
+        ExtremeAggregator( Comparator<? super Slice> cp, int sign )
+        {
+            this.cp = cp;
+            this.sign = sign;
+        }
+
+        @Override
+        public Slice init()
+        {
+            return null;
+        }
+
+        @Override
+        public Slice accumulate( Slice acc, TimeIntervalEntry entry )
+        {
+            return merge( acc, entry.value() );
+        }
+
+        @Override
+        public Slice merge( Slice a, Slice b )
+        {
+            if ( a == null ) return b;
+            if ( b == null ) return a;
+            return cp.compare( b, a ) * sign > 0 ? b : a;
+        }
+
+        @Override
+        public Slice finish( Slice acc )
+        {
+            return acc;
+        }
+    }
+}
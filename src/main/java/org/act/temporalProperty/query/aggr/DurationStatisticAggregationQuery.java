@@ -1,14 +1,17 @@
 package org.act.temporalProperty.query.aggr;
 
 import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.query.range.CombinableRangeQueryCallBack;
 
 import java.util.*;
 
 /**
  * Users who want custom aggregation query should extend this class, rather than implement AggregationQuery interface
+ * Durations of different time segments are simply summed, so this query can be aggregated per disk file in parallel.
+ * Note: computeGroupId() should have no side effect, it may be called from several threads.
  * Created by song on 2018-04-01.
  */
-public abstract class DurationStatisticAggregationQuery<K> extends AbstractTimeIntervalAggrQuery<K,Integer> {
+public abstract class DurationStatisticAggregationQuery<K> extends AbstractTimeIntervalAggrQuery<K,Integer> implements CombinableRangeQueryCallBack {
 
     public DurationStatisticAggregationQuery(TimePointL startTime, TimePointL endTime) {
         super(startTime, endTime);
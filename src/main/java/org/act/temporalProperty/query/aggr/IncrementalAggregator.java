@@ -0,0 +1,20 @@
+package org.act.temporalProperty.query.aggr;
+
+/**
+ * 增量聚合: 每个分组只保存一个累加值, entry到达时立即累加, 不需要保存分组中的所有entry.
+ * 分段并行查询时, 各段的累加值用merge合并(按时间先后, a在b之前).
+ * 常用的实现见{@link Aggregators}.
+ *
+ * @param <A> 累加值的类型, accumulate和merge可以原地修改并返回它
+ * @param <R> 聚合结果的类型
+ */
+public interface IncrementalAggregator<A, R>
+{
+    A init();
+
+    A accumulate( A acc, TimeIntervalEntry entry );
+
+    A merge( A a, A b );
+
+    R finish( A acc );
+}
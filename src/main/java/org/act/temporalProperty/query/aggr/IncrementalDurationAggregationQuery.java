@@ -0,0 +1,17 @@
+package org.act.temporalProperty.query.aggr;
+
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.query.range.CombinableRangeQueryCallBack;
+
+/**
+ * Same as {@link DurationStatisticAggregationQuery}, but durations are summed incrementally ({@link Aggregators#duration()}),
+ * so only one counter is kept per group instead of every entry of the group. Durations are returned as Long.
+ * Note: computeGroupId() should have no side effect, it may be called from several threads.
+ */
+public abstract class IncrementalDurationAggregationQuery<K> extends IncrementalTimeIntervalAggrQuery<K,Long> implements CombinableRangeQueryCallBack {
+
+    public IncrementalDurationAggregationQuery(TimePointL startTime, TimePointL endTime) {
+        super(startTime, endTime, Aggregators.duration());
+    }
+
+}
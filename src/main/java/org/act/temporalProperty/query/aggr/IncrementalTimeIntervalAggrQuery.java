@@ -0,0 +1,149 @@
+package org.act.temporalProperty.query.aggr;
+
+import com.google.common.base.Preconditions;
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.query.range.CombinableRangeQueryCallBack;
+import org.act.temporalProperty.query.range.InternalEntryRangeQueryCallBack;
+import org.act.temporalProperty.util.Slice;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * 分组聚合查询, 每个分组只保存一个{@link IncrementalAggregator}的累加值, 内存占用与分组数成正比, 与entry数无关.
+ * Users who want custom aggregation query can extend this class and give an aggregator, e.g. {@code Aggregators.sum(IndexValueType.INT)}.
+ * Subclasses which implement {@link CombinableRangeQueryCallBack} get segment/combine for free, as long as
+ * {@code computeGroupId} has no side effect and splitting an interval at a segment boundary does not change the result
+ * (true for duration, min, max, sum and time-weighted average, but not for count).
+ * onReturn() resets the groups, so the object can be used again for another query of the same time range.
+ */
+public abstract class IncrementalTimeIntervalAggrQuery<K, V> implements InternalEntryRangeQueryCallBack
+{
+    private final TimePointL startTime;
+    private final TimePointL endTime;
+    private final IncrementalAggregator<Object, V> aggregator;
+    private Map<K, Object> groups;
+    private TimeIntervalCollector collector;
+
+    @SuppressWarnings( "unchecked" )
+    protected <A> IncrementalTimeIntervalAggrQuery( TimePointL startTime, TimePointL endTime, IncrementalAggregator<A, V> aggregator )
+    {
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.aggregator = (IncrementalAggregator<Object, V>) Preconditions.checkNotNull( aggregator );
+        reset();
+    }
+
+    public abstract K computeGroupId( TimeIntervalEntry entry );
+
+    public abstract Object onResult( Map<K, V> result );
+
+    @Override
+    public void onNewEntry( InternalEntry entry )
+    {
+        collector.onNewEntry( entry );
+    }
+
+    @Override
+    public Object onReturn()
+    {
+        collector.finish();
+        Map<K, Object> result = groups;
+        reset();
+        return finishGroups( result );
+    }
+
+    public InternalEntryRangeQueryCallBack segment( TimePointL start, TimePointL end )
+    {
+        Map<K, Object> segmentGroups = new HashMap<>();
+        TimeIntervalCollector segmentCollector = new TimeIntervalCollector( start, end, entry -> accumulate( segmentGroups, entry ) );
+        return new InternalEntryRangeQueryCallBack()
+        {
+            @Override
+            public void setValueType( String valueType ) { IncrementalTimeIntervalAggrQuery.this.setValueType( valueType ); }
+
+            @Override
+            public void onNewEntry( InternalEntry entry ) { segmentCollector.onNewEntry( entry ); }
+
+            @Override
+            public Object onReturn()
+            {
+                segmentCollector.finish();
+                return segmentGroups;
+            }
+        };
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public Object combine( List<Object> partials )
+    {
+        Map<K, Object> result = new HashMap<>();
+        for ( Object partial : partials )
+        {
+            for ( Entry<K, Object> group : ((Map<K, Object>) partial).entrySet() )
+            {
+                result.merge( group.getKey(), group.getValue(), aggregator::merge );
+            }
+        }
+        return finishGroups( result );
+    }
+
+    private void reset()
+    {
+        Map<K, Object> fresh = new HashMap<>();
+        this.groups = fresh;
+        this.collector = new TimeIntervalCollector( startTime, endTime, entry -> accumulate( fresh, entry ) );
+    }
+
+    private void accumulate( Map<K, Object> target, TimeIntervalEntry entry )
+    {
+        K groupId = computeGroupId( entry );
+        if ( groupId != null )
+        {
+            Object acc = target.get( groupId );
+            target.put( groupId, aggregator.accumulate( acc == null ? aggregator.init() : acc, entry ) );
+        }
+    }
+
+    private Object finishGroups( Map<K, Object> accs )
+    {
+        Map<K, V> result = new HashMap<>();
+        for ( Entry<K, Object> group : accs.entrySet() )
+        {
+            V value = aggregator.finish( group.getValue() );
+            if ( value != null ) result.put( group.getKey(), value );
+        }
+        return onResult( result );
+    }
+
+    protected int asInt( Slice value )
+    {
+        Preconditions.checkNotNull( value );
+        Preconditions.checkArgument( value.length() >= 4 );
+        return value.getInt( 0 );
+    }
+
+    protected float asFloat( Slice value )
+    {
+        Preconditions.checkNotNull( value );
+        Preconditions.checkArgument( value.length() >= 4 );
+        return value.getFloat( 0 );
+    }
+
+    protected long asLong( Slice value )
+    {
+        Preconditions.checkNotNull( value );
+        Preconditions.checkArgument( value.length() >= 8 );
+        return value.getLong( 0 );
+    }
+
+    protected double asDouble( Slice value )
+    {
+        Preconditions.checkNotNull( value );
+        Preconditions.checkArgument( value.length() >= 8 );
+        return value.getDouble( 0 );
+    }
+}
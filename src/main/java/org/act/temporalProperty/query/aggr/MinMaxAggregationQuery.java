@@ -0,0 +1,121 @@
+package org.act.temporalProperty.query.aggr;
+
+import com.google.common.collect.ImmutableMap;
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.impl.InternalKey;
+import org.act.temporalProperty.index.IndexValueType;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.query.range.CombinableRangeQueryCallBack;
+import org.act.temporalProperty.query.range.InternalEntryRangeQueryCallBack;
+import org.act.temporalProperty.util.Slice;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Implementation of {@link AggregationQuery#min()}, {@link AggregationQuery#max()} and {@link AggregationQuery#minMax()}.
+ * Min and max of each time segment can be computed independently, so it is combinable.
+ */
+class MinMaxAggregationQuery implements AggregationQuery, CombinableRangeQueryCallBack
+{
+    private final boolean returnMin;
+    private final boolean returnMax;
+    private Comparator<Slice> cp;
+    private Slice min;
+    private Slice max;
+
+    MinMaxAggregationQuery( boolean returnMin, boolean returnMax )
+    {
+        this.returnMin = returnMin;
+        this.returnMax = returnMax;
+    }
+
+    @Override
+    public void setValueType( String valueType )
+    {
+        cp = ValueGroupingMap.getComparator( IndexValueType.convertFrom( valueType ) );
+    }
+
+    @Override
+    public void onNewEntry( InternalEntry entry )
+    {
+        InternalKey key = entry.getKey();
+        if ( key.getValueType().isValue() )
+        {
+            update( entry.getValue() );
+        }
+    }
+
+    private void update( Slice value )
+    {
+        if ( value == null )
+        {
+            return;
+        }
+        if ( min == null || cp.compare( value, min ) < 0 )
+        {
+            min = value;
+        }
+        if ( max == null || cp.compare( value, max ) > 0 )
+        {
+            max = value;
+        }
+    }
+
+    // 结果返回后清空, 被(已废弃的)共享常量顺序地重复使用时各次查询互不影响
+    @Override
+    public Object onReturn()
+    {
+        Object result;
+        if ( returnMin && returnMax )
+        {
+            result = ImmutableMap.of( MIN, min, MAX, max );
+        }
+        else if ( returnMin )
+        {
+            result = min;
+        }
+        else
+        {
+            result = max;
+        }
+        min = null;
+        max = null;
+        return result;
+    }
+
+    @Override
+    public InternalEntryRangeQueryCallBack segment( TimePointL start, TimePointL end )
+    {
+        return new MinMaxAggregationQuery( true, true )
+        {
+            @Override
+            public Object onReturn()
+            {
+                return new Slice[]{ getMin(), getMax() };
+            }
+        };
+    }
+
+    @Override
+    public Object combine( List<Object> partials )
+    {
+        for ( Object partial : partials )
+        {
+            Slice[] minMax = (Slice[]) partial;
+            update( minMax[MIN] );
+            update( minMax[MAX] );
+        }
+        return onReturn();
+    }
+
+    Slice getMin()
+    {
+        return min;
+    }
+
+    Slice getMax()
+    {
+        return max;
+    }
+}
@@ -0,0 +1,222 @@
+package org.act.temporalProperty.query.aggr;
+
+import org.act.temporalProperty.exception.TPSRuntimeException;
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.impl.InternalKey;
+import org.act.temporalProperty.meta.ValueContentType;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.query.range.CombinableRangeQueryCallBack;
+import org.act.temporalProperty.query.range.InternalEntryRangeQueryCallBack;
+import org.act.temporalProperty.util.Slice;
+
+import java.util.List;
+
+/**
+ * Implementation of the numeric aggregations in {@link AggregationQuery} (sum, count, avg, time-weighted avg, first, last, standard deviation).
+ * Each query uses its own instance. Values are decoded once according to the property's {@link ValueContentType}
+ * and accumulated in primitive fields: INT and LONG as long, FLOAT and DOUBLE as double.
+ * Except time-weighted avg, every value entry in the range counts once (the value at the query start time included).
+ */
+class NumericAggregationQuery implements AggregationQuery, CombinableRangeQueryCallBack
+{
+    enum Kind
+    {
+        SUM, COUNT, AVG, TIME_WEIGHTED_AVG, FIRST, LAST, STD_DEV
+    }
+
+    private final Kind kind;
+    private final TimePointL end; // only used by TIME_WEIGHTED_AVG
+    private ValueContentType type;
+    private boolean integral;
+
+    private long count;
+    private long longSum;
+    private double doubleSum;
+    // Welford: 均值和离差平方和
+    private double mean;
+    private double m2;
+    private Slice first;
+    private Slice last;
+    // 按时长加权: 当前值的起始时间, 值×时长之和, 总时长
+    private TimePointL lastTime;
+    private double lastValue;
+    private double weightedSum;
+    private long duration;
+
+    NumericAggregationQuery( Kind kind, TimePointL end )
+    {
+        this.kind = kind;
+        this.end = end;
+    }
+
+    @Override
+    public void setValueType( String valueType )
+    {
+        type = ValueContentType.valueOf( valueType );
+        switch ( type )
+        {
+        case INT:
+        case LONG:
+            integral = true;
+            break;
+        case FLOAT:
+        case DOUBLE:
+            integral = false;
+            break;
+        default:
+            if ( kind != Kind.COUNT && kind != Kind.FIRST && kind != Kind.LAST )
+            {
+                throw new TPSRuntimeException( kind + " needs a numeric property, got " + valueType );
+            }
+        }
+    }
+
+    @Override
+    public void onNewEntry( InternalEntry entry )
+    {
+        InternalKey key = entry.getKey();
+        if ( kind == Kind.TIME_WEIGHTED_AVG ) closeInterval( key.getStartTime() );
+        if ( !key.getValueType().isValue() ) return;
+        Slice value = entry.getValue();
+        count++;
+        switch ( kind )
+        {
+        case SUM:
+        case AVG:
+            if ( integral ) longSum += asLong( value );
+            else doubleSum += asDouble( value );
+            break;
+        case STD_DEV:
+            double x = asDouble( value );
+            double delta = x - mean;
+            mean += delta / count;
+            m2 += delta * (x - mean);
+            break;
+        case FIRST:
+            if ( first == null ) first = value;
+            break;
+        case LAST:
+            last = value;
+            break;
+        case TIME_WEIGHTED_AVG:
+            lastTime = key.getStartTime();
+            lastValue = asDouble( value );
+            break;
+        default:
+        }
+    }
+
+    // 结束从lastTime开始的值, 其有效区间为[lastTime, time - 1]
+    private void closeInterval( TimePointL time )
+    {
+        if ( lastTime == null ) return;
+        long length = time.val() - lastTime.val();
+        weightedSum += lastValue * length;
+        duration += length;
+        lastTime = null;
+    }
+
+    // 最后一个值持续到查询(或分段)的结束时间
+    void closeLastInterval()
+    {
+        if ( lastTime != null && lastTime.compareTo( end ) <= 0 ) closeInterval( end.next() );
+    }
+
+    @Override
+    public Object onReturn()
+    {
+        closeLastInterval();
+        switch ( kind )
+        {
+        case SUM:
+            return integral ? (Object) longSum : (Object) doubleSum;
+        case COUNT:
+            return count;
+        case AVG:
+            return count == 0 ? null : (integral ? (double) longSum : doubleSum) / count;
+        case STD_DEV:
+            return count == 0 ? null : Math.sqrt( m2 / count );
+        case FIRST:
+            return decode( first );
+        case LAST:
+            return decode( last );
+        case TIME_WEIGHTED_AVG:
+            return duration == 0 ? null : weightedSum / duration;
+        default:
+            throw new TPSRuntimeException( "unknown aggregation " + kind );
+        }
+    }
+
+    @Override
+    public InternalEntryRangeQueryCallBack segment( TimePointL start, TimePointL end )
+    {
+        return new NumericAggregationQuery( kind, end )
+        {
+            @Override
+            public Object onReturn()
+            {
+                closeLastInterval();
+                return this;
+            }
+        };
+    }
+
+    @Override
+    public Object combine( List<Object> partials )
+    {
+        for ( Object partial : partials )
+        {
+            merge( (NumericAggregationQuery) partial );
+        }
+        return onReturn();
+    }
+
+    // other在本对象之后
+    private void merge( NumericAggregationQuery other )
+    {
+        if ( other.count > 0 && kind == Kind.STD_DEV )
+        {
+            long n = count + other.count;
+            double delta = other.mean - mean;
+            m2 += other.m2 + delta * delta * count * other.count / n;
+            mean += delta * other.count / n;
+        }
+        count += other.count;
+        longSum += other.longSum;
+        doubleSum += other.doubleSum;
+        if ( first == null ) first = other.first;
+        if ( other.last != null ) last = other.last;
+        weightedSum += other.weightedSum;
+        duration += other.duration;
+    }
+
+    private long asLong( Slice value )
+    {
+        return type == ValueContentType.INT ? value.getInt( 0 ) : value.getLong( 0 );
+    }
+
+    private double asDouble( Slice value )
+    {
+        switch ( type )
+        {
+        case INT: return value.getInt( 0 );
+        case LONG: return value.getLong( 0 );
+        case FLOAT: return value.getFloat( 0 );
+        default: return value.getDouble( 0 );
+        }
+    }
+
+    // FIRST, LAST 返回属性类型的值(Integer, Long, Float, Double), 其他类型返回原始的Slice
+    private Object decode( Slice value )
+    {
+        if ( value == null ) return null;
+        switch ( type )
+        {
+        case INT: return value.getInt( 0 );
+        case LONG: return value.getLong( 0 );
+        case FLOAT: return value.getFloat( 0 );
+        case DOUBLE: return value.getDouble( 0 );
+        default: return value;
+        }
+    }
+}
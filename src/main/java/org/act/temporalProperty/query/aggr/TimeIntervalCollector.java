@@ -0,0 +1,65 @@
+package org.act.temporalProperty.query.aggr;
+
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.impl.InternalKey;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.Slice;
+
+import java.util.function.Consumer;
+
+/**
+ * turns time point entries into time interval entries of [startTime, endTime], and passes them to the consumer.
+ */
+class TimeIntervalCollector
+{
+    private final TimePointL startTime;
+    private final TimePointL endTime;
+    private final Consumer<TimeIntervalEntry> consumer;
+    private boolean hasEntry = false;
+    private InternalEntry lastEntry;
+
+    TimeIntervalCollector( TimePointL startTime, TimePointL endTime, Consumer<TimeIntervalEntry> consumer )
+    {
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.consumer = consumer;
+    }
+
+    void onNewEntry( InternalEntry entry )
+    {
+        hasEntry = true;
+        InternalKey key = entry.getKey();
+        TimePointL time = key.getStartTime();
+        if ( lastEntry != null )
+        {
+            TimePointL lastTime = lastEntry.getKey().getStartTime();
+            if ( lastTime.compareTo( startTime ) < 0 )
+            {
+                lastTime = startTime;
+                assert time.compareTo( startTime ) > 0;
+            }
+            onEntry( lastTime, time.pre(), lastEntry.getValue() );
+        }//else: do nothing
+        if ( key.getValueType().isValue() )
+        {
+            lastEntry = entry;
+        }
+        else
+        {
+            lastEntry = null;
+        }
+    }
+
+    void finish()
+    {
+        if ( hasEntry && lastEntry != null && lastEntry.getKey().getStartTime().compareTo( endTime ) <= 0 )
+        {
+            onEntry( lastEntry.getKey().getStartTime(), endTime, lastEntry.getValue() );
+        }
+    }
+
+    private void onEntry( TimePointL start, TimePointL end, Slice value )
+    {
+        consumer.accept( new TimeIntervalEntry( start, end, value ) );
+    }
+}
@@ -0,0 +1,28 @@
+package org.act.temporalProperty.query.range;
+
+import org.act.temporalProperty.query.TimePointL;
+
+import java.util.List;
+
+/**
+ * 可分段聚合的时间段查询回调.
+ * 若回调实现了此接口, 且查询区间内不含内存(MemTable)中的数据, 则系统会把时间段查询按磁盘文件切分为若干段,
+ * 每一段交给{@link #segment(TimePointL, TimePointL)}返回的回调(并行)处理, 最后通过{@link #combine(List)}合并各段的结果.
+ * 各段的时间区间互不相交, 且按时间先后覆盖整个查询区间.
+ */
+public interface CombinableRangeQueryCallBack extends InternalEntryRangeQueryCallBack
+{
+    /**
+     * 生成只处理一段数据的回调, 调用方会先调用其setValueType, 再依次传入该段的entry, 最后调用onReturn.
+     * 返回的回调可能在其他线程中使用, 因此不能与本对象共享可变状态.
+     * @param start 该段的起始时间(inclusive)
+     * @param end 该段的结束时间(inclusive)
+     */
+    InternalEntryRangeQueryCallBack segment( TimePointL start, TimePointL end );
+
+    /**
+     * @param partials 各段回调onReturn()的返回值, 按时间先后顺序排列
+     * @return 整个查询的结果, 应与把所有entry依次传给本回调后onReturn()的返回值相同
+     */
+    Object combine( List<Object> partials );
+}
@@ -0,0 +1,24 @@
+package org.act.temporalProperty.query.range;
+
+import org.act.temporalProperty.impl.EntryCursor;
+import org.act.temporalProperty.impl.InternalEntry;
+
+/**
+ * 只需要读取基本类型数据的时间段查询回调.
+ * 若回调实现了此接口, 时间段查询会使用{@link EntryCursor}遍历磁盘和内存中的数据, 每个entry都不会创建对象,
+ * 系统调用{@link #onNewEntry(EntryCursor, long)}而不是{@link #onNewEntry(InternalEntry)}.
+ */
+public interface CursorRangeQueryCallBack extends InternalEntryRangeQueryCallBack
+{
+    /**
+     * @param cursor    当前entry, 只在本次调用中有效, 不要保存它; 其valueType()不会是UNKNOWN
+     * @param startTime 当前entry的起始时间. 第一个entry的起始时间会被裁剪到查询的起始时间, 因此应使用此参数而不是cursor.startTimeLong()
+     */
+    void onNewEntry( EntryCursor cursor, long startTime );
+
+    @Override
+    default void onNewEntry( InternalEntry entry )
+    {
+        throw new UnsupportedOperationException( "cursor callback only accepts EntryCursor" );
+    }
+}
@@ -0,0 +1,48 @@
+package org.act.temporalProperty.query.range;
+
+import org.act.temporalProperty.impl.EntryCursor;
+import org.act.temporalProperty.meta.ValueContentType;
+
+import java.util.Arrays;
+
+/**
+ * 时间段查询结果, 值以double保存. 适用于INT/LONG/FLOAT/DOUBLE类型的属性(LONG类型超过2^53的值会损失精度).
+ */
+public class DoubleRangeColumns extends RangeColumns
+{
+    private double[] values = new double[16];
+
+    public double value( int row )
+    {
+        return values[row];
+    }
+
+    public double[] values()
+    {
+        return values;
+    }
+
+    @Override
+    protected boolean accept( ValueContentType type )
+    {
+        return type != ValueContentType.STRING;
+    }
+
+    @Override
+    protected void setValue( int row, EntryCursor cursor )
+    {
+        switch ( valueType )
+        {
+            case INT: values[row] = cursor.valueInt(); break;
+            case LONG: values[row] = cursor.valueLong(); break;
+            case FLOAT: values[row] = cursor.valueFloat(); break;
+            default: values[row] = cursor.valueDouble();
+        }
+    }
+
+    @Override
+    protected void growValues( int capacity )
+    {
+        values = Arrays.copyOf( values, capacity );
+    }
+}
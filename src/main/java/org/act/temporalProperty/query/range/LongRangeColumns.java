@@ -0,0 +1,42 @@
+package org.act.temporalProperty.query.range;
+
+import org.act.temporalProperty.impl.EntryCursor;
+import org.act.temporalProperty.meta.ValueContentType;
+
+import java.util.Arrays;
+
+/**
+ * 时间段查询结果, 值以long保存. 只适用于INT/LONG类型的属性.
+ */
+public class LongRangeColumns extends RangeColumns
+{
+    private long[] values = new long[16];
+
+    public long value( int row )
+    {
+        return values[row];
+    }
+
+    public long[] values()
+    {
+        return values;
+    }
+
+    @Override
+    protected boolean accept( ValueContentType type )
+    {
+        return type == ValueContentType.INT || type == ValueContentType.LONG;
+    }
+
+    @Override
+    protected void setValue( int row, EntryCursor cursor )
+    {
+        values[row] = (valueType == ValueContentType.INT) ? cursor.valueInt() : cursor.valueLong();
+    }
+
+    @Override
+    protected void growValues( int capacity )
+    {
+        values = Arrays.copyOf( values, capacity );
+    }
+}
@@ -0,0 +1,132 @@
+package org.act.temporalProperty.query.range;
+
+import org.act.temporalProperty.exception.TPSRuntimeException;
+import org.act.temporalProperty.impl.EntryCursor;
+import org.act.temporalProperty.meta.ValueContentType;
+import org.act.temporalProperty.query.TimePointL;
+
+import java.util.Arrays;
+
+/**
+ * 数值类型属性的时间段查询结果, 按列保存: 第i行表示区间[starts[i], ends[i]]上的值, 值为INVALID时isValid(i)为false.
+ * 本身就是时间段查询的回调(通过游标读取, 每个entry不创建对象), 可以反复用于多次查询以避免分配数组:
+ * 每次查询前会被清空, 数组只在容量不够时扩大.
+ * starts()/ends()/values()返回的是内部数组, 其长度可能大于size().
+ */
+public abstract class RangeColumns implements CursorRangeQueryCallBack
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size;
+    private long[] starts = new long[INITIAL_CAPACITY];
+    private long[] ends = new long[INITIAL_CAPACITY];
+    private long[] validBits = new long[(INITIAL_CAPACITY + 63) >>> 6];
+    private long endTime;
+    protected ValueContentType valueType;
+
+    /**
+     * 清空结果, 准备进行查询[start, end]. 由存储系统在查询前调用.
+     */
+    public void reset( TimePointL start, TimePointL end )
+    {
+        size = 0;
+        endTime = end.val();
+        Arrays.fill( validBits, 0L );
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public long start( int row )
+    {
+        return starts[row];
+    }
+
+    public long end( int row )
+    {
+        return ends[row];
+    }
+
+    public boolean isValid( int row )
+    {
+        return (validBits[row >>> 6] & (1L << row)) != 0;
+    }
+
+    public long[] starts()
+    {
+        return starts;
+    }
+
+    public long[] ends()
+    {
+        return ends;
+    }
+
+    /**
+     * 有效位图, 第i行对应validBits[i/64]的第(i%64)位
+     */
+    public long[] validBits()
+    {
+        return validBits;
+    }
+
+    @Override
+    public void setValueType( String valueType )
+    {
+        ValueContentType type = ValueContentType.valueOf( valueType );
+        if ( !accept( type ) )
+        {
+            throw new TPSRuntimeException( getClass().getSimpleName() + " does not support property of type " + type );
+        }
+        this.valueType = type;
+    }
+
+    @Override
+    public void onNewEntry( EntryCursor cursor, long startTime )
+    {
+        if ( startTime > endTime )
+        {
+            return; // no data in [start, end]
+        }
+        if ( size > 0 )
+        {
+            ends[size - 1] = startTime - 1;
+        }
+        ensureCapacity( size + 1 );
+        starts[size] = startTime;
+        ends[size] = endTime;
+        if ( cursor.valueType().isValue() )
+        {
+            validBits[size >>> 6] |= (1L << size);
+            setValue( size, cursor );
+        }
+        size++;
+    }
+
+    @Override
+    public Object onReturn()
+    {
+        return this;
+    }
+
+    protected abstract boolean accept( ValueContentType type );
+
+    protected abstract void setValue( int row, EntryCursor cursor );
+
+    protected abstract void growValues( int capacity );
+
+    private void ensureCapacity( int minCapacity )
+    {
+        if ( starts.length >= minCapacity )
+        {
+            return;
+        }
+        int capacity = starts.length << 1;
+        starts = Arrays.copyOf( starts, capacity );
+        ends = Arrays.copyOf( ends, capacity );
+        validBits = Arrays.copyOf( validBits, (capacity + 63) >>> 6 );
+        growValues( capacity );
+    }
+}
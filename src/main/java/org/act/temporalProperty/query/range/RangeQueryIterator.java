@@ -0,0 +1,95 @@
+package org.act.temporalProperty.query.range;
+
+import com.google.common.collect.AbstractIterator;
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.impl.InternalKey;
+import org.act.temporalProperty.impl.SearchableIterator;
+import org.act.temporalProperty.query.TimeIntervalKey;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.vo.EntityPropertyId;
+import org.act.temporalProperty.vo.TimeIntervalValueEntry;
+
+import java.io.Closeable;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 时间段查询的拉取式(pull)结果, 按时间先后依次返回[start, end]内的有效值区间(不含INVALID/UNKNOWN的区间).
+ * 区间在调用next()时才计算, 调用方不再拉取时, 不会再读取(解码)更多的数据块.
+ *
+ * 读取的是创建时的数据快照(已打开的文件和内存数据的副本), 迭代期间不持有系统的锁, 不阻塞写操作和合并, 之后的写入不可见.
+ * 不再使用时应调用close()(可在任意线程中调用), 已打开的文件在迭代器不再被引用后由TableCache关闭.
+ * 推荐写法: {@code try( RangeQueryIterator iter = store.rangeIterator(...) ){ ... }}
+ */
+public class RangeQueryIterator extends AbstractIterator<TimeIntervalValueEntry> implements Closeable
+{
+    private final SearchableIterator iterator;
+    private final TimePointL start;
+    private final TimePointL end;
+    private volatile boolean closed = false;
+
+    /**
+     * @param iterator 已合并内存及磁盘数据, 且不含UNKNOWN的entry迭代器, 不依赖系统的锁
+     */
+    public RangeQueryIterator( EntityPropertyId id, SearchableIterator iterator, TimePointL start, TimePointL end )
+    {
+        this.iterator = iterator;
+        this.start = start;
+        this.end = end;
+        this.iterator.seekFloor( new InternalKey( id, start ) );
+    }
+
+    @Override
+    protected TimeIntervalValueEntry computeNext()
+    {
+        while ( !closed && iterator.hasNext() )
+        {
+            InternalEntry entry = iterator.next();
+            InternalKey key = entry.getKey();
+            long time = key.getStartTimeLong();
+            if ( time > end.val() )
+            {
+                break;
+            }
+            if ( key.getValueType().isValue() )
+            {
+                TimePointL intervalStart = time < start.val() ? start : key.getStartTime();
+                TimePointL intervalEnd = end;
+                if ( iterator.hasNext() && iterator.peek().getKey().getStartTimeLong() <= end.val() )
+                {
+                    intervalEnd = TimePointL.of( iterator.peek().getKey().getStartTimeLong() - 1 );
+                }
+                return new TimeIntervalValueEntry( new TimeIntervalKey( key.getId(), intervalStart, intervalEnd, key.getValueType() ), entry.getValue() );
+            }
+        }
+        return endOfData();
+    }
+
+    /**
+     * 停止迭代, 可重复调用. 关闭后hasNext()返回false.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+    }
+
+    /**
+     * 顺序的(不可分割的)Spliterator, 元素按时间有序.
+     */
+    public Spliterator<TimeIntervalValueEntry> spliterator()
+    {
+        return Spliterators.spliteratorUnknownSize( this, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE );
+    }
+
+    /**
+     * 关闭返回的Stream时会关闭本迭代器, 因此应在try-with-resources中使用Stream, 例如:
+     * {@code try( Stream<TimeIntervalValueEntry> s = store.rangeIterator(...).stream() ){ s.limit( 10 )... }}
+     */
+    public Stream<TimeIntervalValueEntry> stream()
+    {
+        return StreamSupport.stream( spliterator(), false ).onClose( this::close );
+    }
+}
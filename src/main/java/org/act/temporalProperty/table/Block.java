@@ -121,6 +121,14 @@ public class Block
         return new BlockIterator(data, restartPositions, comparator);
     }
 
+    /**
+     * 只能用于key为InternalKey的数据Block
+     */
+    public BlockCursor cursor()
+    {
+        return new BlockCursor(data, restartPositions);
+    }
+
     public BlockLatestValueIterator latestValueIterator()
     {
         return new BlockLatestValueIterator( data, restartPositions, comparator );
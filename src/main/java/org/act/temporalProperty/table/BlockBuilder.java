@@ -21,6 +21,7 @@ public class BlockBuilder
     private final int blockRestartInterval;
     private final IntVector restartPositions;
     private final Comparator<Slice> comparator;
+    private final boolean deltaInternalKey;
 
     private int entryCount;
     private int restartBlockEntryCount;
@@ -36,6 +37,14 @@ public class BlockBuilder
      * @param comparator 对数据的比较方式
      */
     public BlockBuilder(int estimatedSize, int blockRestartInterval, Comparator<Slice> comparator)
+    {
+        this(estimatedSize, blockRestartInterval, comparator, false);
+    }
+
+    /**
+     * @param deltaInternalKey key为InternalKey时, 同一restart段中同一(proId, entityId)的key使用{@link InternalKeyDelta}编码
+     */
+    public BlockBuilder(int estimatedSize, int blockRestartInterval, Comparator<Slice> comparator, boolean deltaInternalKey)
     {
         Preconditions.checkArgument(estimatedSize >= 0, "estimatedSize is negative");
         Preconditions.checkArgument(blockRestartInterval >= 0, "blockRestartInterval is negative");
@@ -44,6 +53,7 @@ public class BlockBuilder
         this.block = new DynamicSliceOutput(estimatedSize);
         this.blockRestartInterval = blockRestartInterval;
         this.comparator = comparator;
+        this.deltaInternalKey = deltaInternalKey;
 
         restartPositions = new IntVector(32);
         restartPositions.add(0);  // first restart point must be 0
@@ -120,6 +130,22 @@ public class BlockBuilder
 
         //stop using the sharedkey, make easy for update the record
         sharedKeyBytes = 0;
+
+        if (deltaInternalKey && restartBlockEntryCount > 0) {
+            long delta = InternalKeyDelta.delta(lastKey, key);
+            if (delta >= 0) {
+                // write "<12><0><value_size><delta>"
+                VariableLengthQuantity.writeVariableLengthInt(InternalKeyDelta.ID_LENGTH, block);
+                VariableLengthQuantity.writeVariableLengthInt(0, block);
+                VariableLengthQuantity.writeVariableLengthInt(value.length(), block);
+                VariableLengthQuantity.writeVariableLengthLong(delta, block);
+                block.writeBytes(value, 0, value.length());
+                lastKey = key;
+                entryCount++;
+                restartBlockEntryCount++;
+                return;
+            }
+        }
         
         int nonSharedKeyBytes = key.length() - sharedKeyBytes;
 
@@ -0,0 +1,244 @@
+package org.act.temporalProperty.table;
+
+import com.google.common.base.Preconditions;
+import org.act.temporalProperty.impl.EntryCursor;
+import org.act.temporalProperty.impl.SequenceNumber;
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.util.SliceInput;
+import org.act.temporalProperty.util.VariableLengthQuantity;
+
+import static org.act.temporalProperty.util.SizeOf.SIZE_OF_INT;
+
+/**
+ * 对数据Block(key为InternalKey)进行遍历的游标, 是{@link BlockIterator}的无对象分配版本.
+ * 前缀压缩的key被解码到两个轮换使用的buffer中(当前key和上一个key), 所以回退一步(seek时)也不需要重新分配.
+ */
+public class BlockCursor implements EntryCursor
+{
+    private static final int KEY_LENGTH = 20;
+
+    private final SliceInput data;
+    private final Slice dataSlice;
+    private final Slice restartPositions;
+    private final int restartCount;
+
+    private Slice curKey = new Slice( KEY_LENGTH );
+    private Slice preKey = new Slice( KEY_LENGTH );
+    private int curValueOffset;
+    private int curValueLength;
+    private int preValueOffset;
+    private int preValueLength;
+
+    private int propertyId;
+    private long entityId;
+    private long time;
+    private ValueType valueType;
+
+    private boolean valid = false;   // whether curKey holds a decoded entry
+    private boolean pending = false; // whether the current entry should be returned by the next advance()
+
+    public BlockCursor( Slice data, Slice restartPositions )
+    {
+        Preconditions.checkNotNull( data, "data is null" );
+        Preconditions.checkNotNull( restartPositions, "restartPositions is null" );
+        Preconditions.checkArgument( restartPositions.length() % SIZE_OF_INT == 0, "restartPositions.readableBytes() must be a multiple of %s", SIZE_OF_INT );
+        this.dataSlice = data;
+        this.data = data.input();
+        this.restartPositions = restartPositions.slice();
+        this.restartCount = this.restartPositions.length() / SIZE_OF_INT;
+        seekToFirst();
+    }
+
+    @Override
+    public void seekToFirst()
+    {
+        if ( restartCount > 0 )
+        {
+            seekToRestartPosition( 0 );
+        }
+        else
+        {
+            data.setPosition( dataSlice.length() );
+            valid = false;
+            pending = false;
+        }
+    }
+
+    @Override
+    public void seekFloor( int propertyId, long entityId, long time )
+    {
+        if ( restartCount == 0 )
+        {
+            seekToFirst();
+            return;
+        }
+
+        // binary search restart positions to find the restart position immediately before the target
+        int left = 0;
+        int right = restartCount - 1;
+        while ( left < right )
+        {
+            int mid = (left + right + 1) / 2;
+            seekToRestartPosition( mid );
+            if ( EntryCursor.compare( this, propertyId, entityId, time ) < 0 )
+            {
+                left = mid;
+            }
+            else
+            {
+                right = mid - 1;
+            }
+        }
+
+        // linear search (within restart block) for the last key less than or equal to target
+        seekToRestartPosition( left );
+        while ( EntryCursor.compare( this, propertyId, entityId, time ) <= 0 && data.isReadable() )
+        {
+            int entryStart = data.position();
+            readEntry();
+            if ( EntryCursor.compare( this, propertyId, entityId, time ) > 0 )
+            {
+                stepBack( entryStart );
+                break;
+            }
+        }
+        pending = true;
+    }
+
+    @Override
+    public boolean advance()
+    {
+        if ( pending )
+        {
+            pending = false;
+            return true;
+        }
+        if ( data.isReadable() )
+        {
+            readEntry();
+            return true;
+        }
+        else
+        {
+            valid = false;
+            return false;
+        }
+    }
+
+    private void seekToRestartPosition( int restartPosition )
+    {
+        Preconditions.checkPositionIndex( restartPosition, restartCount, "restartPosition" );
+        data.setPosition( restartPositions.getInt( restartPosition * SIZE_OF_INT ) );
+        valid = false;
+        readEntry();
+        pending = true;
+    }
+
+    private void readEntry()
+    {
+        int sharedKeyLength = VariableLengthQuantity.readVariableLengthInt( data );
+        int nonSharedKeyLength = VariableLengthQuantity.readVariableLengthInt( data );
+        int valueLength = VariableLengthQuantity.readVariableLengthInt( data );
+        Preconditions.checkState( sharedKeyLength == 0 || valid, "Entry has a shared key but no previous entry was provided" );
+
+        // the new key is written into the buffer of the previous-previous key, then buffers are swapped.
+        Slice newKey = preKey;
+        if ( InternalKeyDelta.isDelta( sharedKeyLength, nonSharedKeyLength ) )
+        {
+            InternalKeyDelta.decode( curKey, VariableLengthQuantity.readVariableLengthLong( data ), newKey );
+        }
+        else
+        {
+            Preconditions.checkState( sharedKeyLength + nonSharedKeyLength == KEY_LENGTH, "not a valid InternalKey, got len: %s", sharedKeyLength + nonSharedKeyLength );
+            if ( sharedKeyLength > 0 )
+            {
+                newKey.setBytes( 0, curKey, 0, sharedKeyLength );
+            }
+            data.readBytes( newKey, sharedKeyLength, nonSharedKeyLength );
+        }
+        preKey = curKey;
+        curKey = newKey;
+
+        preValueOffset = curValueOffset;
+        preValueLength = curValueLength;
+        curValueOffset = data.position();
+        curValueLength = valueLength;
+        data.skipBytes( valueLength );
+
+        valid = true;
+        decodeKey();
+    }
+
+    // go back to the previous entry, entryStart is the position of the entry just read.
+    private void stepBack( int entryStart )
+    {
+        Slice tmp = curKey;
+        curKey = preKey;
+        preKey = tmp;
+        curValueOffset = preValueOffset;
+        curValueLength = preValueLength;
+        data.setPosition( entryStart );
+        decodeKey();
+    }
+
+    private void decodeKey()
+    {
+        propertyId = curKey.getInt( 0 );
+        entityId = curKey.getLong( SIZE_OF_INT );
+        long packed = curKey.getLong( SIZE_OF_INT + 8 );
+        time = SequenceNumber.unpackTime( packed );
+        valueType = SequenceNumber.unpackValueType( packed );
+    }
+
+    @Override
+    public int propertyId()
+    {
+        return propertyId;
+    }
+
+    @Override
+    public long entityId()
+    {
+        return entityId;
+    }
+
+    @Override
+    public long startTimeLong()
+    {
+        return time;
+    }
+
+    @Override
+    public ValueType valueType()
+    {
+        return valueType;
+    }
+
+    @Override
+    public Slice valueBase()
+    {
+        return dataSlice;
+    }
+
+    @Override
+    public int valueOffset()
+    {
+        return curValueOffset;
+    }
+
+    @Override
+    public int valueLength()
+    {
+        return curValueLength;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BlockCursor{" +
+                "restartCount=" + restartCount +
+                ", position=" + data.position() +
+                '}';
+    }
+}
@@ -196,6 +196,12 @@ public class BlockIterator
         int nonSharedKeyLength = VariableLengthQuantity.readVariableLengthInt(data);
         int valueLength = VariableLengthQuantity.readVariableLengthInt(data);
 
+        if (InternalKeyDelta.isDelta(sharedKeyLength, nonSharedKeyLength)) {
+            Preconditions.checkState(previousEntry != null, "Entry has a shared key but no previous entry was provided");
+            Slice key = InternalKeyDelta.decode(previousEntry.getKey(), VariableLengthQuantity.readVariableLengthLong(data));
+            return new BlockEntry(key, data.readSlice(valueLength));
+        }
+
         // read key
         Slice key = Slices.allocate(sharedKeyLength + nonSharedKeyLength);
         SliceOutput sliceOutput = key.output();
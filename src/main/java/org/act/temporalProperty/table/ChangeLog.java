@@ -0,0 +1,243 @@
+package org.act.temporalProperty.table;
+
+import org.act.temporalProperty.impl.EntryCursor;
+import org.act.temporalProperty.query.TimePointL;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * 数据文件的变更日志(可选, 见Options.changeLog): 按时间排序的(startTime, entityId)记录, 每条16字节.
+ * 与数据文件一一对应(Filename.changeLogFileName), 由MergeTask生成, Buffer写回文件时追加Buffer中的entry.
+ * 用于回答"某段时间内哪些entity的值发生了变化", 查询时二分查找起始时间后顺序读取, 耗时与变化的数量成正比.
+ * 生成StableFile时为每个entity在文件起始时间补写的值(不是真正的变化)不记录在内.
+ */
+public class ChangeLog
+{
+    private static final int RECORD_SIZE = 16;
+    private static final int READ_BATCH = 4096;
+
+    private ChangeLog()
+    {
+    }
+
+    /**
+     * 查找file中startTime在[from, to]内的记录, 把其entityId加入out
+     */
+    public static void read( File file, long from, long to, IdCollector out ) throws IOException
+    {
+        try ( FileInputStream in = new FileInputStream( file ); FileChannel channel = in.getChannel() )
+        {
+            long count = channel.size() / RECORD_SIZE;
+            ByteBuffer record = ByteBuffer.allocate( RECORD_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+            // 第一条time>=from的记录
+            long low = 0, high = count;
+            while ( low < high )
+            {
+                long mid = (low + high) >>> 1;
+                record.clear();
+                readFully( channel, record, mid * RECORD_SIZE );
+                if ( record.getLong( 0 ) < from ) low = mid + 1;
+                else high = mid;
+            }
+            ByteBuffer batch = ByteBuffer.allocate( RECORD_SIZE * READ_BATCH ).order( ByteOrder.LITTLE_ENDIAN );
+            for ( long i = low; i < count; )
+            {
+                int n = (int) Math.min( READ_BATCH, count - i );
+                batch.clear();
+                batch.limit( n * RECORD_SIZE );
+                readFully( channel, batch, i * RECORD_SIZE );
+                for ( int j = 0; j < n; j++ )
+                {
+                    if ( batch.getLong( j * RECORD_SIZE ) > to ) return;
+                    out.add( batch.getLong( j * RECORD_SIZE + 8 ) );
+                }
+                i += n;
+            }
+        }
+    }
+
+    /**
+     * 没有变更日志的数据(MemTable, Buffer, 未生成日志的文件)只能顺序扫描一遍
+     */
+    public static void scan( EntryCursor cursor, int proId, long from, long to, IdCollector out )
+    {
+        cursor.seekFloor( proId, 0, TimePointL.Init.val() );
+        while ( cursor.advance() )
+        {
+            if ( cursor.propertyId() < proId ) continue;
+            if ( cursor.propertyId() > proId ) break;
+            long time = cursor.startTimeLong();
+            if ( from <= time && time <= to ) out.add( cursor.entityId() );
+        }
+    }
+
+    /**
+     * 读入已有的变更日志, 以便追加记录后重新写出
+     */
+    public static Builder load( File file ) throws IOException
+    {
+        Builder builder = new Builder();
+        try ( FileInputStream in = new FileInputStream( file ); FileChannel channel = in.getChannel() )
+        {
+            ByteBuffer batch = ByteBuffer.allocate( RECORD_SIZE * READ_BATCH ).order( ByteOrder.LITTLE_ENDIAN );
+            long count = channel.size() / RECORD_SIZE;
+            for ( long i = 0; i < count; )
+            {
+                int n = (int) Math.min( READ_BATCH, count - i );
+                batch.clear();
+                batch.limit( n * RECORD_SIZE );
+                readFully( channel, batch, i * RECORD_SIZE );
+                for ( int j = 0; j < n; j++ )
+                {
+                    builder.add( batch.getLong( j * RECORD_SIZE ), batch.getLong( j * RECORD_SIZE + 8 ) );
+                }
+                i += n;
+            }
+        }
+        return builder;
+    }
+
+    private static void readFully( FileChannel channel, ByteBuffer buf, long position ) throws IOException
+    {
+        while ( buf.hasRemaining() )
+        {
+            int read = channel.read( buf, position );
+            if ( read < 0 ) throw new IOException( "unexpected end of change log" );
+            position += read;
+        }
+    }
+
+    /**
+     * 收集(time, entityId)记录, 按(time, entityId)排序去重后写入文件
+     */
+    public static class Builder
+    {
+        private long[] times = new long[1024];
+        private long[] ids = new long[1024];
+        private int size;
+
+        public void add( long time, long entityId )
+        {
+            if ( size == times.length )
+            {
+                times = Arrays.copyOf( times, Math.max( size * 2, 1024 ) );
+                ids = Arrays.copyOf( ids, Math.max( size * 2, 1024 ) );
+            }
+            times[size] = time;
+            ids[size] = entityId;
+            size++;
+        }
+
+        public int size()
+        {
+            return size;
+        }
+
+        public void writeTo( File file ) throws IOException
+        {
+            sort();
+            try ( FileOutputStream stream = new FileOutputStream( file ); FileChannel channel = stream.getChannel() )
+            {
+                ByteBuffer batch = ByteBuffer.allocate( RECORD_SIZE * READ_BATCH ).order( ByteOrder.LITTLE_ENDIAN );
+                for ( int i = 0; i < size; i++ )
+                {
+                    if ( i > 0 && times[i] == times[i - 1] && ids[i] == ids[i - 1] ) continue;
+                    if ( !batch.hasRemaining() ) flush( channel, batch );
+                    batch.putLong( times[i] ).putLong( ids[i] );
+                }
+                flush( channel, batch );
+                channel.force( true );
+            }
+        }
+
+        private static void flush( FileChannel channel, ByteBuffer batch ) throws IOException
+        {
+            batch.flip();
+            while ( batch.hasRemaining() ) channel.write( batch );
+            batch.clear();
+        }
+
+        // 自底向上的归并排序, 两个数组同时移动, 避免装箱
+        private void sort()
+        {
+            long[] srcT = times, srcI = ids;
+            long[] dstT = new long[size], dstI = new long[size];
+            for ( int width = 1; width < size; width *= 2 )
+            {
+                for ( int low = 0; low < size; low += 2 * width )
+                {
+                    int mid = Math.min( low + width, size ), high = Math.min( low + 2 * width, size );
+                    int i = low, j = mid, k = low;
+                    while ( i < mid && j < high )
+                    {
+                        if ( srcT[j] < srcT[i] || (srcT[j] == srcT[i] && srcI[j] < srcI[i]) )
+                        {
+                            dstT[k] = srcT[j];
+                            dstI[k++] = srcI[j++];
+                        }
+                        else
+                        {
+                            dstT[k] = srcT[i];
+                            dstI[k++] = srcI[i++];
+                        }
+                    }
+                    while ( i < mid )
+                    {
+                        dstT[k] = srcT[i];
+                        dstI[k++] = srcI[i++];
+                    }
+                    while ( j < high )
+                    {
+                        dstT[k] = srcT[j];
+                        dstI[k++] = srcI[j++];
+                    }
+                }
+                long[] t = srcT; srcT = dstT; dstT = t;
+                t = srcI; srcI = dstI; dstI = t;
+            }
+            times = srcT;
+            ids = srcI;
+        }
+    }
+
+    /**
+     * 收集entityId, 结果排序去重
+     */
+    public static class IdCollector
+    {
+        private long[] ids = new long[64];
+        private int size;
+
+        public void add( long entityId )
+        {
+            if ( size == ids.length ) ids = Arrays.copyOf( ids, size * 2 );
+            ids[size++] = entityId;
+        }
+
+        /**
+         * 若最后加入的是entityId则去掉它
+         */
+        public void removeLast( long entityId )
+        {
+            if ( size > 0 && ids[size - 1] == entityId ) size--;
+        }
+
+        public long[] toSortedArray()
+        {
+            Arrays.sort( ids, 0, size );
+            int n = 0;
+            for ( int i = 0; i < size; i++ )
+            {
+                if ( n == 0 || ids[i] != ids[n - 1] ) ids[n++] = ids[i];
+            }
+            return Arrays.copyOf( ids, n );
+        }
+    }
+}
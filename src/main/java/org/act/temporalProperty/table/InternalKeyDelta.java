@@ -0,0 +1,67 @@
+package org.act.temporalProperty.table;
+
+import org.act.temporalProperty.impl.SequenceNumber;
+import org.act.temporalProperty.util.Slice;
+
+/**
+ * 数据Block中InternalKey的紧凑编码.
+ * 当一个key与同一restart段中的上一个key属于同一(proId, entityId)时, entry头部写为 shared=12, nonShared=0,
+ * 头部之后用一个varint写 (与上一个key的时间差 << 3 | valueType), 代替完整的20字节key.
+ * 旧格式的entry总是 shared=0, nonShared=20, 因此读取时可以逐个entry区分两种格式, 旧文件无需转换.
+ */
+public final class InternalKeyDelta
+{
+    public static final int KEY_LENGTH = 20;
+    public static final int ID_LENGTH = 12;
+
+    private InternalKeyDelta()
+    {
+    }
+
+    public static boolean isDelta( int sharedKeyLength, int nonSharedKeyLength )
+    {
+        return sharedKeyLength == ID_LENGTH && nonSharedKeyLength == 0;
+    }
+
+    /**
+     * @return (时间差 << 3 | valueType), 若key不能相对previous编码则返回-1
+     */
+    public static long delta( Slice previous, Slice key )
+    {
+        if ( previous == null || previous.length() != KEY_LENGTH || key.length() != KEY_LENGTH )
+        {
+            return -1;
+        }
+        if ( previous.getInt( 0 ) != key.getInt( 0 ) || previous.getLong( 4 ) != key.getLong( 4 ) )
+        {
+            return -1;
+        }
+        long packed = key.getLong( ID_LENGTH );
+        long delta = SequenceNumber.unpackTime( packed ) - SequenceNumber.unpackTime( previous.getLong( ID_LENGTH ) );
+        if ( delta < 0 || delta > (Long.MAX_VALUE >>> 3) )
+        {
+            return -1;
+        }
+        return (delta << 3) | (packed >>> 61);
+    }
+
+    /**
+     * 把previous的id和还原出的时间及valueType写入dst(长度为20)
+     */
+    public static void decode( Slice previous, long deltaAndType, Slice dst )
+    {
+        long time = SequenceNumber.unpackTime( previous.getLong( ID_LENGTH ) ) + (deltaAndType >>> 3);
+        if ( dst != previous )
+        {
+            dst.setBytes( 0, previous, 0, ID_LENGTH );
+        }
+        dst.setLong( ID_LENGTH, ((deltaAndType & 7) << 61) | (time & 0x1FFF_FFFF_FFFF_FFFFL) );
+    }
+
+    public static Slice decode( Slice previous, long deltaAndType )
+    {
+        Slice key = new Slice( KEY_LENGTH );
+        decode( previous, deltaAndType, key );
+        return key;
+    }
+}
@@ -37,12 +37,14 @@ import static org.act.temporalProperty.impl.CompressionType.SNAPPY;
 
 /**
  * 以MMap形式打开文件并提供读取接口的类，以Block为单文进行文件读取
- *
+ * 文件按SEGMENT_SIZE分段映射, 因此可以超过2GB. 跨越两个分段的Block(很少见)用pread读取.
  */
 public class MMapTable
         extends Table
 {
-    private MappedByteBuffer data;
+    public static final long SEGMENT_SIZE = 1L << 30;
+
+    private MappedByteBuffer[] segments;
 
     public MMapTable(String name, FileChannel fileChannel, Comparator<Slice> comparator, boolean verifyChecksums)
             throws IOException
@@ -55,21 +57,36 @@ public class MMapTable
             throws IOException
     {
         long size = fileChannel.size();
-        data = fileChannel.map(MapMode.READ_ONLY, 0, size);
-        Slice footerSlice = Slices.copiedBuffer(data, (int) size - Footer.ENCODED_LENGTH, Footer.ENCODED_LENGTH);
+        long segmentSize = segmentSize();
+        segments = new MappedByteBuffer[(int) ((size + segmentSize - 1) / segmentSize)];
+        for (int i = 0; i < segments.length; i++) {
+            long position = i * segmentSize;
+            segments[i] = fileChannel.map(MapMode.READ_ONLY, position, Math.min(segmentSize, size - position));
+        }
+        Slice footerSlice = Slices.copiedBuffer(read(size - Footer.ENCODED_LENGTH, Footer.ENCODED_LENGTH));
         return Footer.readFooter(footerSlice);
     }
 
+    /**
+     * 每个映射分段的大小. 在父类构造函数中就会被调用, 因此子类(测试)只能返回常量.
+     */
+    protected long segmentSize()
+    {
+        return SEGMENT_SIZE;
+    }
+
     @Override
     public Callable<?> closer()
     {
-        return new Closer(name, fileChannel, data);
+        return new Closer(name, fileChannel, segments);
     }
     
     @Override
     public void close()
     {
-        ByteBufferSupport.unmap(data);
+        for (MappedByteBuffer segment : segments) {
+            ByteBufferSupport.unmap(segment);
+        }
         try
         {
             fileChannel.close();
@@ -84,18 +101,20 @@ public class MMapTable
     {
         private final String name;
         private final Closeable closeable;
-        private final MappedByteBuffer data;
+        private final MappedByteBuffer[] segments;
 
-        public Closer(String name, Closeable closeable, MappedByteBuffer data)
+        public Closer(String name, Closeable closeable, MappedByteBuffer[] segments)
         {
             this.name = name;
             this.closeable = closeable;
-            this.data = data;
+            this.segments = segments;
         }
 
         public Void call()
         {
-            ByteBufferSupport.unmap(data);
+            for (MappedByteBuffer segment : segments) {
+                ByteBufferSupport.unmap(segment);
+            }
             Closeables.closeQuietly(closeable);
             return null;
         }
@@ -107,9 +126,9 @@ public class MMapTable
             throws IOException
     {
         // read block trailer
-        BlockTrailer blockTrailer = BlockTrailer.readBlockTrailer(Slices.copiedBuffer(this.data,
-                (int) blockHandle.getOffset() + blockHandle.getDataSize(),
-                BlockTrailer.ENCODED_LENGTH));
+        BlockTrailer blockTrailer = BlockTrailer.readBlockTrailer(Slices.copiedBuffer(read(
+                blockHandle.getOffset() + blockHandle.getDataSize(),
+                BlockTrailer.ENCODED_LENGTH)));
 
 // todo re-enable crc check when ported to support direct buffers
 //        // only verify check sums if explicitly asked by the user
@@ -124,7 +143,7 @@ public class MMapTable
 
         // decompress data
         Slice uncompressedData;
-        ByteBuffer uncompressedBuffer = read(this.data, (int) blockHandle.getOffset(), blockHandle.getDataSize());
+        ByteBuffer uncompressedBuffer = read(blockHandle.getOffset(), blockHandle.getDataSize());
         if (blockTrailer.getCompressionType() == SNAPPY) {
             synchronized (MMapTable.class) {
                 int uncompressedLength = uncompressedLength(uncompressedBuffer);
@@ -144,6 +163,28 @@ public class MMapTable
         return new Block(uncompressedData, comparator);
     }
 
+    /**
+     * 读取文件中[offset, offset+length)的数据. 在一个分段内时直接返回映射的视图, 否则用pread读到堆内.
+     */
+    private ByteBuffer read(long offset, int length)
+            throws IOException
+    {
+        long segmentSize = segmentSize();
+        int index = (int) (offset / segmentSize);
+        int inSegment = (int) (offset % segmentSize);
+        if (inSegment + length <= segments[index].capacity()) {
+            return read(segments[index], inSegment, length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (fileChannel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("unexpected end of file " + name + " at " + (offset + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
     public static ByteBuffer read(MappedByteBuffer data, int offset, int length)
             throws IOException
     {
@@ -156,9 +197,9 @@ public class MMapTable
     protected IndexBlock readIndexBlock( BlockHandle blockHandle ) throws IOException
     {
      // read block trailer
-        BlockTrailer blockTrailer = BlockTrailer.readBlockTrailer(Slices.copiedBuffer(this.data,
-                (int) blockHandle.getOffset() + blockHandle.getDataSize(),
-                BlockTrailer.ENCODED_LENGTH));
+        BlockTrailer blockTrailer = BlockTrailer.readBlockTrailer(Slices.copiedBuffer(read(
+                blockHandle.getOffset() + blockHandle.getDataSize(),
+                BlockTrailer.ENCODED_LENGTH)));
 
 // todo re-enable crc check when ported to support direct buffers
 //        // only verify check sums if explicitly asked by the user
@@ -173,7 +214,7 @@ public class MMapTable
 
         // decompress data
         Slice uncompressedData;
-        ByteBuffer uncompressedBuffer = read(this.data, (int) blockHandle.getOffset(), blockHandle.getDataSize());
+        ByteBuffer uncompressedBuffer = read(blockHandle.getOffset(), blockHandle.getDataSize());
         if (blockTrailer.getCompressionType() == SNAPPY) {
             synchronized (MMapTable.class) {
                 int uncompressedLength = uncompressedLength(uncompressedBuffer);
@@ -8,7 +8,13 @@ import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import org.act.temporalProperty.exception.TPSNHException;
+import org.act.temporalProperty.helper.AbstractSearchableIterator;
 import org.act.temporalProperty.helper.EqualValFilterIterator;
 import org.act.temporalProperty.helper.InvalidEntityFilterIterator;
 import org.act.temporalProperty.helper.SameLevelMergeIterator;
@@ -18,6 +24,7 @@ import org.act.temporalProperty.index.IndexUpdater;
 import org.act.temporalProperty.meta.PropertyMetaData;
 import org.act.temporalProperty.meta.SystemMeta;
 import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.FileUtils;
 import org.act.temporalProperty.util.TableLatestValueIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,13 +40,28 @@ public class MergeProcess extends Thread
     private volatile MemTable memTable = null;
     private volatile boolean shouldGo = true;
     private volatile boolean hasIndexToCreate = false;
+    private volatile boolean hasExpiredFiles = false;
     private static Logger log = LoggerFactory.getLogger( MergeProcess.class );
     private final IndexStore index;
+    private final Options options;
+    // 已在后台写好的Buffer写回任务, 由合并线程在merge锁内替换文件, 所有元信息的修改和force都只在合并线程中进行
+    private final Queue<BackgroundTask> rewritten = new ConcurrentLinkedQueue<>();
+    // Buffer写回文件的任务在这里执行, 不阻塞MemTable的合并
+    private final ExecutorService bufferRewriter = Executors.newSingleThreadExecutor( r -> {
+        Thread t = new Thread( r, "TPS-BufferRewrite" );
+        t.setDaemon( true );
+        return t;
+    } );
 
     public MergeProcess(String storePath, SystemMeta systemMeta, IndexStore index) {
+        this(storePath, systemMeta, index, new Options());
+    }
+
+    public MergeProcess(String storePath, SystemMeta systemMeta, IndexStore index, Options options) {
         this.storeDir = storePath;
         this.systemMeta = systemMeta;
         this.index = index;
+        this.options = options;
     }
 
     // this is called from a writer thread.
@@ -71,6 +93,11 @@ public class MergeProcess extends Thread
     public void shutdown() throws InterruptedException {
         this.shouldGo = false;
         this.join();
+        bufferRewriter.shutdown();
+        bufferRewriter.awaitTermination( Long.MAX_VALUE, TimeUnit.MILLISECONDS );
+        // 合并线程已退出, 来不及替换的结果放弃, 冻结的内容留在Buffer中
+        BackgroundTask task;
+        while ( (task = rewritten.poll()) != null ) cleanUpRewrite( task );
     }
 
     @Override
@@ -78,14 +105,16 @@ public class MergeProcess extends Thread
         Thread.currentThread().setName(getMyName());
         try{
             while(!Thread.interrupted()) {
+                applyRewrites();
                 if(shouldGo) {
                     if ( memTable != null )
                     {
                         startMergeProcess(memTable);
                     } else {
-                        if ( hasIndexToCreate )
+                        if ( hasIndexToCreate || hasExpiredFiles )
                         {
                             hasIndexToCreate = false;
+                            hasExpiredFiles = false;
                             startMergeProcess( new MemTable() );
                         }
                         else
@@ -129,11 +158,18 @@ public class MergeProcess extends Thread
             Map<Integer,MemTable> tables = temp.separateByProperty();
             for ( Entry<Integer,MemTable> propEntry : tables.entrySet() )
             {
-                MergeTask task = systemMeta.getStore( propEntry.getKey() ).merge( propEntry.getValue() );
+                SinglePropertyStore store = systemMeta.getStore( propEntry.getKey() );
+                MergeTask task = store.merge( propEntry.getValue() );
                 if ( task != null )
                 {
+                    task.setTargetFileSize( options.targetFileSize() );
+                    task.setBuildChangeLog( options.changeLog() );
                     taskList.add( task );
                 }
+                for ( BackgroundTask rewrite : store.pollRewriteTasks() )
+                {
+                    bufferRewriter.execute( () -> rewriteBuffer( rewrite ) );
+                }
             }
         }
         else
@@ -146,6 +182,7 @@ public class MergeProcess extends Thread
             task.runTask();
         }
 
+        List<File> expiredFiles = new LinkedList<>();
         systemMeta.lock.mergeLockExclusive();
         try
         {
@@ -153,6 +190,10 @@ public class MergeProcess extends Thread
             {
                 task.updateMeta();
             }
+            for ( SinglePropertyStore store : systemMeta.proStores().values() )
+            {
+                expiredFiles.addAll( store.dropExpiredFiles() );
+            }
             systemMeta.force( new File( storeDir ) );
             memTable = null;
             systemMeta.lock.mergeDone();
@@ -166,6 +207,67 @@ public class MergeProcess extends Thread
         {
             task.cleanUp();
         }
+        for ( File f : expiredFiles )
+        {
+            Files.deleteIfExists( f.toPath() );
+        }
+    }
+
+    // 在bufferRewriter线程中执行, 不持有锁也不修改元信息. 写好的结果交给合并线程(applyRewrites)替换
+    private void rewriteBuffer( BackgroundTask task )
+    {
+        try
+        {
+            task.runTask();
+            rewritten.add( task );
+        }
+        catch ( Throwable e )
+        {
+            log.error( "rewrite buffer failed: " + task, e );
+            cleanUpRewrite( task );
+        }
+    }
+
+    // 在合并线程中执行: 与MemTable的合并互不重叠, 所以参与合并的文件不会在合并过程中被替换
+    private void applyRewrites() throws IOException
+    {
+        if ( rewritten.isEmpty() ) return;
+        List<BackgroundTask> tasks = new ArrayList<>();
+        BackgroundTask task;
+        while ( (task = rewritten.poll()) != null ) tasks.add( task );
+        systemMeta.lock.mergeLockExclusive();
+        try
+        {
+            for ( BackgroundTask t : tasks )
+            {
+                try
+                {
+                    t.updateMeta();
+                }
+                catch ( IOException e )
+                {
+                    log.error( "replace file with rewritten buffer failed: " + t, e );
+                }
+            }
+            systemMeta.force( new File( storeDir ) );
+        }
+        finally
+        {
+            systemMeta.lock.mergeUnlockExclusive();
+        }
+        for ( BackgroundTask t : tasks ) cleanUpRewrite( t );
+    }
+
+    private void cleanUpRewrite( BackgroundTask task )
+    {
+        try
+        {
+            task.cleanUp();
+        }
+        catch ( IOException e )
+        {
+            log.error( "clean up buffer rewrite failed: " + task, e );
+        }
     }
 
     public void createNewIndex()
@@ -173,6 +275,12 @@ public class MergeProcess extends Thread
         hasIndexToCreate = true;
     }
 
+    // 保留期限前移后, 由合并线程删除过期的文件
+    public void dropExpiredFiles()
+    {
+        hasExpiredFiles = true;
+    }
+
     // 将MemTable写入磁盘并与UnStableFile进行合并
     public static class MergeTask implements BackgroundTask
     {
@@ -191,10 +299,18 @@ public class MergeProcess extends Thread
         private int entryCount;
         private TimePointL minTime;
         private TimePointL maxTime;
-        private FileChannel targetChannel;
+        private final List<FileChannel> targetChannels = new ArrayList<>();
         private IndexStore index;
         private IndexUpdater indexUpdater;
-        private FileMetaData targetMeta;
+        private final List<FileMetaData> targetMetas = new ArrayList<>();
+        private long targetFileSize = Long.MAX_VALUE;
+        private List<TimePointL> partStarts;
+        private boolean buildChangeLog = false;
+        // stableLatestValIter补写的entry(不是真正的变化), 按key顺序排列, 已经越过的从头部移除
+        private final ArrayDeque<InternalEntry> carried = new ArrayDeque<>();
+        private long continuedTime = Long.MIN_VALUE;
+        private long[] continuedIds = new long[0];
+        private long[] changedAtStart;
 
         /**
          * @param memTable2merge 写入磁盘的MemTable
@@ -216,26 +332,57 @@ public class MergeProcess extends Thread
             }
         }
 
+        /**
+         * 生成StableFile时, 预计大小超过targetFileSize则把输出按时间分为多个StableFile
+         */
+        public void setTargetFileSize( long targetFileSize )
+        {
+            this.targetFileSize = targetFileSize;
+        }
+
+        /**
+         * 是否为输出文件生成变更日志(ChangeLog)
+         */
+        public void setBuildChangeLog( boolean buildChangeLog )
+        {
+            this.buildChangeLog = buildChangeLog;
+        }
+
+        /**
+         * MemTable中跨越磁盘文件结尾的区间被切开, 后半段从time开始写入本次合并, 其值并没有变化, 不记入变更日志
+         * @param entityIds 从小到大排列
+         */
+        public void setContinued( long time, long[] entityIds )
+        {
+            this.continuedTime = time;
+            this.continuedIds = entityIds;
+        }
+
         private TimePointL calcMergeMinTime() {
             return pMeta.getUnStableFiles().get(Collections.max(mergeParticipants)).getSmallest();
         }
 
+        // 输出总是写到元信息中还没有的编号, 先落盘, 在updateMeta中发布, 之后才删除参与合并的文件.
+        // 目标文件已存在只可能是上次崩溃时没写完的文件, 引用中的文件绝不删除
         private TableBuilder mergeInit(String targetFileName) throws IOException
         {
             boolean success;
 
             File targetFile = new File( propStoreDir, targetFileName );
-//            Files.deleteIfExists(targetFile.toPath());
             if( targetFile.exists() ) {
-                success = targetFile.delete();
-                if (!success) {
-                    throw new IOException("merge init error: fail to delete exist file");
+                Filename.FileInfo info = Filename.parseFileName( targetFile );
+                if ( info == null || isLive( info ) )
+                {
+                    throw new TPSNHException( "merge target " + targetFile + " is still in use" );
                 }
+                log.warn( "remove unfinished merge output {}", targetFile );
+                Files.delete( targetFile.toPath() );
             }
             success = targetFile.createNewFile();
             if (success) {
                 FileOutputStream targetStream = new FileOutputStream(targetFile);
-                targetChannel = targetStream.getChannel();
+                FileChannel targetChannel = targetStream.getChannel();
+                this.targetChannels.add( targetChannel );
                 this.channel2close.add( targetStream );
                 this.channel2close.add( targetChannel );
                 return new TableBuilder( new Options(), targetChannel, TableComparator.instance() );
@@ -244,6 +391,16 @@ public class MergeProcess extends Thread
             }
         }
 
+        private boolean isLive( Filename.FileInfo info )
+        {
+            switch ( info.getFileType() )
+            {
+            case STABLEFILE: return pMeta.getStableFiles().containsKey( info.getFileNumber() );
+            case UNSTABLEFILE: return pMeta.getUnStableFiles().containsKey( info.getFileNumber() );
+            default: return true;
+            }
+        }
+
         //deleteObsoleteFiles
         @Override
         public void cleanUp() throws IOException
@@ -259,7 +416,8 @@ public class MergeProcess extends Thread
                 cache.evict( filePath );
             }
 //            delete unused.
-            for( File f : files2delete ) Files.delete( f.toPath() );
+            // Buffer中已写回文件的delta可能已被BufferRewriteTask删除
+            for( File f : files2delete ) Files.deleteIfExists( f.toPath() );
 //            clean up index.
             indexUpdater.cleanUp();
         }
@@ -282,21 +440,25 @@ public class MergeProcess extends Thread
                 for (Long fileNumber : mergeParticipants) {
 //                    log.debug("merge {}", fileNumber);
                     File mergeSource = new File(propStoreDir, Filename.unStableFileName(fileNumber));
+                    // 先取Buffer的iterator再打开文件: 若两者之间Buffer被写回并替换了文件, 新文件已包含被写回的内容
+                    FileBuffer filebuffer = pMeta.getUnstableBuffers(fileNumber);
+                    SearchableIterator bufferIter = null == filebuffer ? null : filebuffer.iterator();
                     Table table = cache.getTable(mergeSource.getAbsolutePath());
                     SearchableIterator mergeIterator;
-                    FileBuffer filebuffer = pMeta.getUnstableBuffers(fileNumber);
                     if (null != filebuffer) {
-                        mergeIterator = TwoLevelMergeIterator.merge(filebuffer.iterator(), new PackInternalKeyIterator(table.iterator()));
+                        mergeIterator = TwoLevelMergeIterator.merge(bufferIter, new PackInternalKeyIterator(table.iterator()));
                         channel2close.add(filebuffer);
-                        files2delete.add(new File(propStoreDir, Filename.unbufferFileName(fileNumber)));
+                        files2delete.addAll(filebuffer.files());
                     } else {
                         mergeIterator = new PackInternalKeyIterator(table.iterator());
                     }
                     unstableIter.add(mergeIterator);
 
+                    // 只从缓存中移除, 不直接关闭: 不持锁的读取者(如rangeIterator)可能仍在读取, 由TableCache在其不再被引用后关闭
                     table2evict.add(mergeSource.getAbsolutePath());
                     files2delete.add(mergeSource);
-                    channel2close.add(table);
+                    File changeLog = new File(propStoreDir, Filename.changeLogFileName(fileNumber, false));
+                    if (changeLog.exists()) files2delete.add(changeLog);
                 }
                 SearchableIterator diskDataIter;
                 if (createStableFile() && pMeta.hasStable()) {
@@ -311,6 +473,62 @@ public class MergeProcess extends Thread
             }
         }
 
+        /**
+         * 各个输出文件的起始时间. StableFile按时间划分, 所以输出在参与合并的UnStableFile的起始时间处切分:
+         * 按时间顺序累计各文件的大小, 超过targetFileSize后从下一个文件的起始时间开始一个新的StableFile.
+         */
+        private List<TimePointL> calcPartStarts()
+        {
+            List<TimePointL> starts = new ArrayList<>();
+            starts.add( mergeParticipantsMinTime );
+            if ( !createStableFile() ) return starts;
+            List<FileMetaData> files = new ArrayList<>();
+            for ( Long fileNumber : mergeParticipants )
+            {
+                files.add( pMeta.getUnStableFiles().get( fileNumber ) );
+            }
+            files.sort( Comparator.comparing( FileMetaData::getSmallest ) );
+            long size = 0;
+            for ( FileMetaData file : files )
+            {
+                if ( size >= targetFileSize && file.getSmallest().compareTo( starts.get( starts.size() - 1 ) ) > 0 )
+                {
+                    starts.add( file.getSmallest() );
+                    size = 0;
+                }
+                size += file.getFileSize();
+            }
+            return starts;
+        }
+
+        // 最后一个起始时间不晚于time的输出文件
+        private int partOf( TimePointL time )
+        {
+            int part = 0;
+            while ( part + 1 < partStarts.size() && partStarts.get( part + 1 ).compareTo( time ) <= 0 ) part++;
+            return part;
+        }
+
+        /**
+         * 每个StableFile都要包含每个动态属性在其起始时间的值(与TableLatestValueIterator.setNewStart相同),
+         * 因此把entry以新的起始时间写入[from, to]中的各个文件, 若nextTime恰好是to的起始时间则to不需要.
+         */
+        private void carry( List<TableBuilder> builders, InternalEntry entry, int from, int to, TimePointL nextTime ) throws IOException
+        {
+            InternalKey key = entry.getKey();
+            for ( int part = from; part <= to; part++ )
+            {
+                TimePointL start = partStarts.get( part );
+                if ( part == to && start.equals( nextTime ) ) break;
+                builders.get( part ).add( new InternalKey( key.getPropertyId(), key.getEntityId(), start, key.getValueType() ).encode(), entry.getValue() );
+            }
+        }
+
+        // 该UnStableFile(及其Buffer)是否参与本次合并
+        public boolean merges(long unstableNumber){
+            return mergeParticipants.contains(unstableNumber);
+        }
+
         public boolean createStableFile(){
             return mergeParticipants.size()>=5;
         }
@@ -328,6 +546,7 @@ public class MergeProcess extends Thread
             entryCount = 0;
 
             String targetFileName;
+            partStarts = calcPartStarts();
 
             if(createStableFile()) {
                 long fileId = pMeta.nextStableId();
@@ -343,25 +562,52 @@ public class MergeProcess extends Thread
                 indexUpdater = index.emptyUpdate();
             }
 
-            TableBuilder builder = this.mergeInit(targetFileName);
+            List<TableBuilder> builders = new ArrayList<>();
+            builders.add( this.mergeInit(targetFileName) );
+            for ( int part = 1; part < partStarts.size(); part++ )
+            {
+                builders.add( this.mergeInit( Filename.stableFileName( pMeta.nextStableId() + part ) ) );
+            }
+            int lastPart = builders.size() - 1;
+            ChangeLog.Builder[] changes = null;
+            if ( buildChangeLog )
+            {
+                changes = new ChangeLog.Builder[builders.size()];
+                for ( int part = 0; part <= lastPart; part++ ) changes[part] = new ChangeLog.Builder();
+                if ( !onlyDumpMemTable() ) changedAtStart = calcChangedAtStart();
+            }
+            InternalEntry pre = null;
+            int prePart = 0;
             SearchableIterator buildIterator = getDataIterator();
             while( buildIterator.hasNext() ){
                 InternalEntry entry = buildIterator.next();
                 InternalKey key = entry.getKey();
-                if( key.getStartTime().compareTo(minTime) < 0 ) minTime = key.getStartTime();
-                if( key.getStartTime().compareTo(maxTime) > 0 ) maxTime = key.getStartTime();
+                if( key.getStartTimeLong() < minTime.val() ) minTime = key.getStartTime();
+                if( key.getStartTimeLong() > maxTime.val() ) maxTime = key.getStartTime();
+                int part = partOf( key.getStartTime() );
+                if ( pre != null && lastPart > 0 )
+                {
+                    if ( pre.getKey().sameId( key ) ) carry( builders, pre, prePart + 1, part, key.getStartTime() );
+                    else carry( builders, pre, prePart + 1, lastPart, null );
+                }
                 try {
-                    builder.add(entry.getKey().encode(), entry.getValue());
+                    builders.get( part ).add(entry.getKey().encode(), entry.getValue());
                 }catch(AssertionError e){
                     System.err.println(buildIterator);
                     throw e;
                 }
                 indexUpdater.update( entry );
+                if ( changes != null && isChange( entry, pre ) ) changes[part].add( key.getStartTimeLong(), key.getEntityId() );
                 entryCount++;
+                pre = entry;
+                prePart = part;
             }
-            builder.finish();
-            this.targetMeta = generateNewFileMeta();
-            indexUpdater.finish( targetMeta );
+            if ( pre != null && lastPart > 0 ) carry( builders, pre, prePart + 1, lastPart, null );
+            for ( TableBuilder builder : builders ) builder.finish();
+            generateNewFileMeta();
+            writeChangeLogs( changes );
+            for ( FileMetaData targetMeta : targetMetas ) indexUpdater.finish( targetMeta );
+            FileUtils.syncDirectory( propStoreDir );
         }
 
         private MemTable mergedMemTableAndBuffer()
@@ -378,9 +624,10 @@ public class MergeProcess extends Thread
             return mem;
         }
 
-        private FileMetaData generateNewFileMeta() throws IOException
+        private void generateNewFileMeta() throws IOException
         {
             // build new meta
+            FileChannel targetChannel = targetChannels.get( 0 );
             FileMetaData targetMeta;
 
             if(onlyDumpMemTable()){
@@ -399,9 +646,16 @@ public class MergeProcess extends Thread
                     fileNumber = mergeParticipants.size();
                 }
                 assert mergeParticipantsMinTime.compareTo(minTime)<=0:"start time should <= minTime! ("+mergeParticipantsMinTime+", min:"+minTime+")";
-                targetMeta = new FileMetaData( fileNumber, targetChannel.size(), mergeParticipantsMinTime, maxTime );
+                int lastPart = partStarts.size() - 1;
+                for ( int part = 0; part < lastPart; part++ )
+                {
+                    targetMetas.add( new FileMetaData( fileNumber + part, targetChannels.get( part ).size(), partStarts.get( part ), partStarts.get( part + 1 ).pre() ) );
+                }
+                TimePointL lastStart = partStarts.get( lastPart );
+                TimePointL largest = lastPart > 0 && maxTime.compareTo( lastStart ) < 0 ? lastStart : maxTime;
+                targetMeta = new FileMetaData( fileNumber + lastPart, targetChannels.get( lastPart ).size(), lastStart, largest );
             }
-            return targetMeta;
+            targetMetas.add( targetMeta );
         }
 
         @Override
@@ -415,9 +669,9 @@ public class MergeProcess extends Thread
             }
 
             if(createStableFile()){
-                pMeta.addStable( targetMeta );
+                for ( FileMetaData targetMeta : targetMetas ) pMeta.addStable( targetMeta );
             }else{
-                pMeta.addUnstable( targetMeta );
+                pMeta.addUnstable( targetMetas.get( 0 ) );
             }
 
             indexUpdater.updateMeta();
@@ -427,12 +681,88 @@ public class MergeProcess extends Thread
         private SearchableIterator stableLatestValIter(TimePointL mergeResultStartTime) {
             FileMetaData meta = pMeta.latestStableMeta();
             String filePath = Filename.stPath(propStoreDir, meta.getNumber());
-            SearchableIterator fileIterator = cache.newIterator(filePath);
+            // 同getDataIterator, 先取Buffer的iterator再打开文件
             FileBuffer buffer = pMeta.getStableBuffers( meta.getNumber() );
+            SearchableIterator bufferIter = null == buffer ? null : buffer.iterator();
+            SearchableIterator fileIterator = cache.newIterator(filePath);
             if( null != buffer ){
-                fileIterator = TwoLevelMergeIterator.merge(buffer.iterator(), fileIterator);
+                fileIterator = TwoLevelMergeIterator.merge(bufferIter, fileIterator);
+            }
+            SearchableIterator latest = TableLatestValueIterator.setNewStart(fileIterator, mergeResultStartTime);
+            if( !buildChangeLog ) return latest;
+            return new AbstractSearchableIterator() {
+                @Override
+                protected InternalEntry computeNext() {
+                    if( !latest.hasNext() ) return endOfData();
+                    InternalEntry entry = latest.next();
+                    carried.addLast( entry );
+                    return entry;
+                }
+
+                @Override
+                public void seekToFirst() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public boolean seekFloor(InternalKey targetKey) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        /**
+         * entry的值相对于该entity之前的值是否有变化. 不是变化的有: stableLatestValIter补写的entry(及与之相同的值),
+         * 与前一个entry相同的值(只写MemTable时没有EqualValFilterIterator), 以及被切开的区间的后半段.
+         * 输出按key有序, 所以key更小的补写entry已经被输出或过滤掉了.
+         */
+        private boolean isChange( InternalEntry entry, InternalEntry pre )
+        {
+            InternalKey key = entry.getKey();
+            while( !carried.isEmpty() && carried.peekFirst().getKey().compareTo( key ) < 0 ) carried.pollFirst();
+            InternalEntry stable = carried.peekFirst();
+            if( stable != null && stable.getKey().compareTo( key ) == 0 ){
+                carried.pollFirst();
+                if( stable == entry || sameValue( stable, entry ) ) return false;
+            }else if( pre != null && pre.getKey().sameId( key ) && sameValue( pre, entry ) ){
+                return false;
+            }
+            if( changedAtStart != null && key.getStartTimeLong() == mergeParticipantsMinTime.val() ){
+                return Arrays.binarySearch( changedAtStart, key.getEntityId() ) >= 0;
+            }
+            return key.getStartTimeLong() != continuedTime || Arrays.binarySearch( continuedIds, key.getEntityId() ) < 0;
+        }
+
+        /**
+         * 合并起始时间上的entry可能只是前一个文件中的值的延续(如被切开的区间), 以最早的参与文件自己的变更日志
+         * 和Buffer为准. 该文件没有变更日志时返回null.
+         */
+        private long[] calcChangedAtStart() throws IOException
+        {
+            long fileNumber = Collections.max( mergeParticipants );
+            File log = new File( propStoreDir, Filename.changeLogFileName( fileNumber, false ) );
+            if( !log.exists() ) return null;
+            long time = mergeParticipantsMinTime.val();
+            ChangeLog.IdCollector ids = new ChangeLog.IdCollector();
+            ChangeLog.read( log, time, time, ids );
+            FileBuffer buffer = pMeta.getUnstableBuffers( fileNumber );
+            if( null != buffer ) ChangeLog.scan( buffer.cursor(), pMeta.getPropertyId(), time, time, ids );
+            return ids.toSortedArray();
+        }
+
+        private static boolean sameValue( InternalEntry a, InternalEntry b )
+        {
+            return a.getKey().getValueType() == b.getKey().getValueType() && a.getValue().equals( b.getValue() );
+        }
+
+        private void writeChangeLogs( ChangeLog.Builder[] changes ) throws IOException
+        {
+            for ( int part = 0; part < targetMetas.size(); part++ )
+            {
+                File file = new File( propStoreDir, Filename.changeLogFileName( targetMetas.get( part ).getNumber(), createStableFile() ) );
+                if ( changes != null ) changes[part].writeTo( file );
+                else Files.deleteIfExists( file.toPath() );
             }
-            return TableLatestValueIterator.setNewStart(fileIterator, mergeResultStartTime);
         }
 
 
@@ -106,7 +106,8 @@ public class TableBuilder
         blockDataSize = (int)(blockSize*options.blockEmptyRatio());
         compressionType = options.compressionType();
 
-        dataBlockBuilder = new BlockBuilder((int) Math.min((int)(blockSize*1.11) , TARGET_FILE_SIZE), blockRestartInterval, userComparator);
+        boolean deltaKey = userComparator instanceof TableComparator && ((TableComparator) userComparator).isInternalKey();
+        dataBlockBuilder = new BlockBuilder((int) Math.min((int)(blockSize*1.11) , TARGET_FILE_SIZE), blockRestartInterval, userComparator, deltaKey);
 
 //        // with expected 50% compression
 //        int expectedNumberOfBlocks = 1024;
@@ -1,6 +1,6 @@
 package org.act.temporalProperty.table;
 
-import org.act.temporalProperty.impl.InternalKey;
+import org.act.temporalProperty.impl.SequenceNumber;
 import org.act.temporalProperty.query.aggr.AggregationIndexKey;
 import org.act.temporalProperty.util.Slice;
 
@@ -12,20 +12,42 @@ public class TableComparator implements UserComparator
 {
 
     private Comparator<Slice> userComparator;
+    private final boolean internalKey;
 
-    private TableComparator( Comparator<Slice> c )
+    private TableComparator( Comparator<Slice> c, boolean internalKey )
     {
         this.userComparator = c;
+        this.internalKey = internalKey;
     }
     
     public static synchronized TableComparator instance()
     {
-        return new TableComparator(Comparator.comparing(InternalKey::decode));
+        return new TableComparator( TableComparator::compareInternalKey, true );
     }
 
     public static synchronized TableComparator forAggrIndex()
     {
-        return new TableComparator( AggregationIndexKey.sliceComparator );
+        return new TableComparator( AggregationIndexKey.sliceComparator, false );
+    }
+
+    /**
+     * 比较的key是否为InternalKey(数据Block可以使用{@link InternalKeyDelta}编码)
+     */
+    public boolean isInternalKey()
+    {
+        return internalKey;
+    }
+
+    /**
+     * 直接比较编码后的InternalKey, 顺序与InternalKey.compareTo相同: (proId, entityId, 61bit time)
+     */
+    public static int compareInternalKey( Slice a, Slice b )
+    {
+        int r = Integer.compare( a.getInt( 0 ), b.getInt( 0 ) );
+        if ( r != 0 ) return r;
+        r = Long.compare( a.getLong( 4 ), b.getLong( 4 ) );
+        if ( r != 0 ) return r;
+        return Long.compare( SequenceNumber.unpackTime( a.getLong( 12 ) ), SequenceNumber.unpackTime( b.getLong( 12 ) ) );
     }
 
     @Override
@@ -0,0 +1,134 @@
+package org.act.temporalProperty.table;
+
+import org.act.temporalProperty.impl.EntryCursor;
+import org.act.temporalProperty.impl.InternalKey;
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.util.Slice;
+
+import java.util.Comparator;
+
+/**
+ * 对Table进行遍历的游标, 是{@link TableIterator}的无对象分配版本.
+ * 每读取一个新的数据Block时会创建少量对象(Block, BlockCursor), 但读取Block中的entry时不创建对象.
+ */
+public class TableCursor implements EntryCursor
+{
+    private final Table table;
+    private final BlockIterator blockIterator;
+    private final Comparator<Slice> comparator;
+    private BlockCursor current;
+
+    public TableCursor( Table table, BlockIterator blockIterator )
+    {
+        this.table = table;
+        this.blockIterator = blockIterator;
+        this.comparator = table.comparator;
+        this.current = null;
+    }
+
+    @Override
+    public void seekToFirst()
+    {
+        blockIterator.seekToFirst();
+        current = null;
+    }
+
+    @Override
+    public void seekFloor( int propertyId, long entityId, long time )
+    {
+        Slice targetKey = new InternalKey( propertyId, entityId, time, ValueType.VALUE ).encode();
+        // same positioning logic as TableIterator.seekInternal
+        blockIterator.seek( targetKey );
+        if ( blockIterator.hasNext() )
+        {
+            BlockEntry pre = null;
+            if ( comparator.compare( blockIterator.peek().getKey(), targetKey ) == 0 )
+            {
+                pre = blockIterator.next();
+            }
+            current = openBlock( blockIterator.hasNext() ? blockIterator.next() : pre );
+            current.seekFloor( propertyId, entityId, time );
+        }
+        else
+        {
+            current = null;
+        }
+    }
+
+    @Override
+    public boolean advance()
+    {
+        while ( true )
+        {
+            if ( current != null && current.advance() )
+            {
+                return true;
+            }
+            if ( blockIterator.hasNext() )
+            {
+                current = openBlock( blockIterator.next() );
+            }
+            else
+            {
+                current = null;
+                return false;
+            }
+        }
+    }
+
+    private BlockCursor openBlock( BlockEntry entry )
+    {
+        return table.openBlock( entry.getValue() ).cursor();
+    }
+
+    @Override
+    public int propertyId()
+    {
+        return current.propertyId();
+    }
+
+    @Override
+    public long entityId()
+    {
+        return current.entityId();
+    }
+
+    @Override
+    public long startTimeLong()
+    {
+        return current.startTimeLong();
+    }
+
+    @Override
+    public ValueType valueType()
+    {
+        return current.valueType();
+    }
+
+    @Override
+    public Slice valueBase()
+    {
+        return current.valueBase();
+    }
+
+    @Override
+    public int valueOffset()
+    {
+        return current.valueOffset();
+    }
+
+    @Override
+    public int valueLength()
+    {
+        return current.valueLength();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TableCursor{" +
+                "blockIterator=" + blockIterator +
+                ", current=" + current +
+                '}';
+    }
+}
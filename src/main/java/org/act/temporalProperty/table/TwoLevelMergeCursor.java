@@ -0,0 +1,251 @@
+package org.act.temporalProperty.table;
+
+import org.act.temporalProperty.impl.EntryCursor;
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.util.Slice;
+
+/**
+ * TwoLevelMergeIterator的游标版本: 将相邻Level的数据（如某文件及其Buffer）合并, latest中的数据覆盖old中的数据.
+ * 合并逻辑与TwoLevelMergeIterator完全相同, 只是把"当前entry"和"oldCurrent"保存为基本类型的字段, 而不是InternalEntry对象.
+ * 使用前必须先调用seekFloor()或seekToFirst().
+ */
+public class TwoLevelMergeCursor implements EntryCursor
+{
+    private final EntryCursor latest;
+    private final EntryCursor old;
+    private boolean latestHas = false;
+    private boolean oldHas = false;
+
+    private final Entry current = new Entry();
+    private final Entry oldCurrent = new Entry();
+
+    public TwoLevelMergeCursor( EntryCursor latest, EntryCursor old )
+    {
+        this.latest = latest;
+        this.old = old;
+    }
+
+    @Override
+    public boolean advance()
+    {
+        if ( latestHas && oldHas )
+        {
+            int r = EntryCursor.compare( old, latest );
+            if ( r < 0 )
+            {
+                oldCurrent.copy( old );
+                current.copy( old );
+                oldHas = old.advance();
+            }
+            else if ( r == 0 )
+            { // disk==mem
+                boolean unknown = latest.valueType() == ValueType.UNKNOWN;
+                oldCurrent.copy( old );
+                current.copy( unknown ? old : latest );
+                latestHas = latest.advance();
+                oldHas = old.advance();
+                if ( !unknown ) delOld();
+            }
+            else
+            { // disk > mem > oldCurrent
+                if ( latest.valueType() == ValueType.UNKNOWN )
+                {
+                    latestUnknown();
+                }
+                else
+                {
+                    oldCurrent.copy( old );
+                    current.copy( latest );
+                    latestHas = latest.advance(); // must advance latest before delOld
+                    delOld();
+                }
+            }
+            return true;
+        }
+        else if ( latestHas )
+        { // old ran out
+            if ( latest.valueType() == ValueType.UNKNOWN )
+            {
+                latestUnknown();
+            }
+            else
+            {
+                current.copy( latest );
+                latestHas = latest.advance();
+            }
+            return true;
+        }
+        else if ( oldHas )
+        { // latest ran out
+            current.copy( old );
+            oldHas = old.advance();
+            return true;
+        }
+        else
+        {
+            return false;
+        }
+    }
+
+    // an UNKNOWN entry in latest means the value in old is still valid from its start time.
+    private void latestUnknown()
+    {
+        if ( oldCurrent.valid && oldCurrent.sameId( latest ) )
+        {
+            oldCurrent.time = latest.startTimeLong();
+            current.copy( oldCurrent );
+        }
+        else
+        {
+            oldCurrent.valid = false;
+            current.copy( latest );
+        }
+        latestHas = latest.advance();
+    }
+
+    // remove entries of current id from old until the key of latest.
+    private void delOld()
+    {
+        int proId = current.propertyId;
+        long eid = current.entityId;
+        while ( oldHas && old.propertyId() == proId && old.entityId() == eid &&
+                (!latestHas || EntryCursor.compare( old, latest ) < 0) )
+        {
+            oldCurrent.copy( old );
+            oldHas = old.advance();
+        }
+    }
+
+    @Override
+    public void seekToFirst()
+    {
+        oldCurrent.valid = false;
+        latest.seekToFirst();
+        old.seekToFirst();
+        latestHas = latest.advance();
+        oldHas = old.advance();
+    }
+
+    @Override
+    public void seekFloor( int propertyId, long entityId, long time )
+    {
+        oldCurrent.valid = false;
+        latest.seekFloor( propertyId, entityId, time );
+        old.seekFloor( propertyId, entityId, time );
+        latestHas = latest.advance();
+        oldHas = old.advance();
+        // latest's floor is later than old's floor: entries of old before it are not the floor.
+        // old's floor is later and latest's floor is UNKNOWN or of a smaller entity: it covers nothing, the floor is in old.
+        if ( latestHas && EntryCursor.compare( latest, propertyId, entityId, time ) <= 0 )
+        {
+            while ( oldHas && EntryCursor.compare( old, latest ) < 0 )
+            {
+                oldCurrent.copy( old );
+                oldHas = old.advance();
+            }
+            boolean sameEntity = oldHas && old.propertyId() == latest.propertyId() && old.entityId() == latest.entityId();
+            if ( (latest.valueType() == ValueType.UNKNOWN || !sameEntity) && oldHas &&
+                    EntryCursor.compare( old, latest ) > 0 && EntryCursor.compare( old, propertyId, entityId, time ) <= 0 )
+            {
+                do
+                {
+                    latestHas = latest.advance();
+                }
+                while ( latestHas && EntryCursor.compare( latest, old ) < 0 );
+            }
+        }
+    }
+
+    @Override
+    public int propertyId()
+    {
+        return current.propertyId;
+    }
+
+    @Override
+    public long entityId()
+    {
+        return current.entityId;
+    }
+
+    @Override
+    public long startTimeLong()
+    {
+        return current.time;
+    }
+
+    @Override
+    public ValueType valueType()
+    {
+        return current.valueType;
+    }
+
+    @Override
+    public Slice valueBase()
+    {
+        return current.valueBase;
+    }
+
+    @Override
+    public int valueOffset()
+    {
+        return current.valueOffset;
+    }
+
+    @Override
+    public int valueLength()
+    {
+        return current.valueLength;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TwoLevelMergeCursor{" +
+                "latest=" + latest +
+                ", old=" + old +
+                '}';
+    }
+
+    // mutable copy of a cursor position
+    private static class Entry
+    {
+        private boolean valid;
+        private int propertyId;
+        private long entityId;
+        private long time;
+        private ValueType valueType;
+        private Slice valueBase;
+        private int valueOffset;
+        private int valueLength;
+
+        void copy( EntryCursor c )
+        {
+            valid = true;
+            propertyId = c.propertyId();
+            entityId = c.entityId();
+            time = c.startTimeLong();
+            valueType = c.valueType();
+            valueBase = c.valueBase();
+            valueOffset = c.valueOffset();
+            valueLength = c.valueLength();
+        }
+
+        void copy( Entry e )
+        {
+            valid = e.valid;
+            propertyId = e.propertyId;
+            entityId = e.entityId;
+            time = e.time;
+            valueType = e.valueType;
+            valueBase = e.valueBase;
+            valueOffset = e.valueOffset;
+            valueLength = e.valueLength;
+        }
+
+        boolean sameId( EntryCursor c )
+        {
+            return propertyId == c.propertyId() && entityId == c.entityId();
+        }
+    }
+}
@@ -6,7 +6,6 @@ import org.act.temporalProperty.impl.InternalEntry;
 import org.act.temporalProperty.impl.InternalKey;
 import org.act.temporalProperty.impl.SearchableIterator;
 import org.act.temporalProperty.impl.ValueType;
-import org.act.temporalProperty.vo.EntityPropertyId;
 
 /**
  * 将相邻Level的数据（如某文件及其Buffer）合并，并组成统一的Iterator。
@@ -48,13 +47,14 @@ public class TwoLevelMergeIterator extends AbstractSearchableIterator
                     oldCurrent = disk;
                     latest.next();//==mem
                     old.next();
+                    delOld(memKey); // 与下面的分支相同, mem覆盖的old项也要删除
                     return mem;
                 }
             }else{ // disk > mem > oldCurrent.getKey()
                 if(memKey.getValueType()==ValueType.UNKNOWN ){
                     //无需delOld因为这个是unknown所以old里是需要被返回的，所以disk也不用next
-                    if(oldCurrent!=null && oldCurrent.getKey().getId().equals(memKey.getId())){
-                        InternalKey tmp = new InternalKey(memKey.getId(), memKey.getStartTime(), oldCurrent.getKey().getValueType());
+                    if(oldCurrent!=null && oldCurrent.getKey().sameId(memKey)){
+                        InternalKey tmp = new InternalKey(memKey.getPropertyId(), memKey.getEntityId(), memKey.getStartTimeLong(), oldCurrent.getKey().getValueType());
                         oldCurrent = new InternalEntry(tmp, oldCurrent.getValue());
                         latest.next();//==mem
                         return oldCurrent;
@@ -66,7 +66,7 @@ public class TwoLevelMergeIterator extends AbstractSearchableIterator
                 } else {
                     oldCurrent = disk;
                     latest.next();//必须先调latest的next再delOld
-                    delOld(memKey.getId());
+                    delOld(memKey);
                     return mem;
                 }
             }
@@ -74,8 +74,8 @@ public class TwoLevelMergeIterator extends AbstractSearchableIterator
             InternalKey memKey = latest.peek().getKey();
             if(memKey.getValueType()==ValueType.UNKNOWN ){
                 //此处逻辑同上
-                if(oldCurrent!=null && oldCurrent.getKey().getId().equals(memKey.getId())){
-                    InternalKey tmp = new InternalKey(memKey.getId(), memKey.getStartTime(), oldCurrent.getKey().getValueType());
+                if(oldCurrent!=null && oldCurrent.getKey().sameId(memKey)){
+                    InternalKey tmp = new InternalKey(memKey.getPropertyId(), memKey.getEntityId(), memKey.getStartTimeLong(), oldCurrent.getKey().getValueType());
                     oldCurrent = new InternalEntry(tmp, oldCurrent.getValue());
                     latest.next();
                     return oldCurrent;
@@ -94,12 +94,12 @@ public class TwoLevelMergeIterator extends AbstractSearchableIterator
     }
 
     //从old中移除项，直到相同ID的项
-    private void delOld(EntityPropertyId id) {
+    private void delOld(InternalKey id) {
         if(latest.hasNext()){
             InternalKey until = latest.peek().getKey();
             while(old.hasNext()){
                 InternalKey oldKey = old.peek().getKey();
-                if(oldKey.getId().equals(id) && oldKey.compareTo(until)<0){
+                if(oldKey.sameId(id) && oldKey.compareTo(until)<0){
                     oldCurrent = old.next();
                 }else{
                     return;
@@ -108,7 +108,7 @@ public class TwoLevelMergeIterator extends AbstractSearchableIterator
         }else{
             while(old.hasNext()) {
                 InternalKey oldKey = old.peek().getKey();
-                if(oldKey.getId().equals(id)) {
+                if(oldKey.sameId(id)) {
                     oldCurrent = old.next();
                 }else{
                     return;
@@ -132,6 +132,26 @@ public class TwoLevelMergeIterator extends AbstractSearchableIterator
         oldCurrent = null;
         this.latest.seekFloor( targetKey );
         this.old.seekFloor( targetKey );
+        // latest的floor晚于old的floor时, old中在它之前的项不是floor, 跳过(作为oldCurrent, 供UNKNOWN使用);
+        // old的floor更晚而latest的floor是UNKNOWN或属于更小的entity时, 它不能覆盖old, floor是old中的项
+        if ( latest.hasNext() && latest.peek().getKey().compareTo( targetKey ) <= 0 )
+        {
+            InternalKey latestFloor = latest.peek().getKey();
+            while ( old.hasNext() && old.peek().getKey().compareTo( latestFloor ) < 0 )
+            {
+                oldCurrent = old.next();
+            }
+            if ( old.hasNext() && (latestFloor.getValueType() == ValueType.UNKNOWN || !old.peek().getKey().sameId( latestFloor )) &&
+                    old.peek().getKey().compareTo( latestFloor ) > 0 && old.peek().getKey().compareTo( targetKey ) <= 0 )
+            {
+                InternalKey oldFloor = old.peek().getKey();
+                do
+                {
+                    latest.next();
+                }
+                while ( latest.hasNext() && latest.peek().getKey().compareTo( oldFloor ) < 0 );
+            }
+        }
         return super.seekFloor(targetKey);
     }
 
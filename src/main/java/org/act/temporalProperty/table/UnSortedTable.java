@@ -22,7 +22,8 @@ public class UnSortedTable implements Closeable
     public UnSortedTable( File tableFile ) throws IOException
     {
         this.file = tableFile;
-        this.log = new FileChannelLogWriter(tableFile, 0);
+        // 追加写入, 否则重启时已有的内容在回放之前就被清空了
+        this.log = new FileChannelLogWriter(tableFile, 0, true);
     }
 
     public void initFromFile( MemTable table ) throws IOException
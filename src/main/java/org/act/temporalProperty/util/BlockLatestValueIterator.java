@@ -8,6 +8,7 @@ import java.util.NoSuchElementException;
 import org.act.temporalProperty.impl.InternalKey;
 import org.act.temporalProperty.impl.SeekingIterator;
 import org.act.temporalProperty.table.BlockEntry;
+import org.act.temporalProperty.table.InternalKeyDelta;
 
 import com.google.common.base.Preconditions;
 
@@ -72,7 +73,7 @@ public class BlockLatestValueIterator implements SeekingIterator<Slice, Slice>
             {
                 InternalKey nextKey = InternalKey.decode( nextEntry.getKey() );
                 InternalKey preKey = InternalKey.decode( entry.getKey() );
-                if( nextKey.getId().equals( preKey.getId() ) && hasNext() )
+                if( nextKey.sameId( preKey ) && hasNext() )
                 {
                     return next();
                 }
@@ -196,6 +197,12 @@ public class BlockLatestValueIterator implements SeekingIterator<Slice, Slice>
         int nonSharedKeyLength = VariableLengthQuantity.readVariableLengthInt(data);
         int valueLength = VariableLengthQuantity.readVariableLengthInt(data);
 
+        if (InternalKeyDelta.isDelta(sharedKeyLength, nonSharedKeyLength)) {
+            Preconditions.checkState(previousEntry != null, "Entry has a shared key but no previous entry was provided");
+            Slice key = InternalKeyDelta.decode(previousEntry.getKey(), VariableLengthQuantity.readVariableLengthLong(data));
+            return new BlockEntry(key, data.readSlice(valueLength));
+        }
+
         // read key
         Slice key = Slices.allocate(sharedKeyLength + nonSharedKeyLength);
         SliceOutput sliceOutput = key.output();
@@ -24,6 +24,8 @@ import com.google.common.io.Files;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 public final class FileUtils
 {
@@ -93,6 +95,19 @@ public final class FileUtils
                 + baseName + "0 to " + baseName + (TEMP_DIR_ATTEMPTS - 1) + ')');
     }
 
+    /**
+     * 把目录项(改名, 新建文件)刷到磁盘, 保证rename发布的文件在掉电后仍然存在.
+     * 有的平台(如Windows)不能打开目录, 此时忽略.
+     */
+    public static void syncDirectory(File directory)
+    {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        catch (IOException ignored) {
+        }
+    }
+
     public static boolean deleteDirectoryContents(File directory)
     {
         Preconditions.checkArgument(directory.isDirectory(), "Not a directory: %s", directory);
@@ -0,0 +1,166 @@
+package org.act.temporalProperty.util;
+
+import org.act.temporalProperty.exception.TPSRuntimeException;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 堆外(direct ByteBuffer)的只追加内存区, 用于保存MemTable中的值, 使这些数据不参与GC.
+ * 内存按固定大小的chunk分配, 超过chunk大小的值单独占用一个chunk. 地址的格式为 chunk序号(12bit) | chunk内偏移(20bit).
+ * 写入只能由一个线程进行(MemTable的写入本来就在排它锁下), 读取可以并发.
+ * release()一次性释放所有chunk, 之后不能再访问.
+ */
+public class OffHeapArena
+{
+    private static final int OFFSET_BITS = 20;
+    public static final int CHUNK_SIZE = 1 << OFFSET_BITS;
+    private static final int MAX_CHUNKS = 1 << (32 - OFFSET_BITS);
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private ByteBuffer current;
+    // current在chunks中的序号, 大值单独占用的chunk可能在它之后
+    private int currentIndex;
+    private long allocated = 0;
+    private volatile boolean released = false;
+
+    /**
+     * 复制value到arena中
+     * @return value的地址
+     */
+    public int allocate( Slice value )
+    {
+        checkNotReleased();
+        int length = value.length();
+        if ( length > CHUNK_SIZE )
+        { // large value: a chunk of its own
+            ByteBuffer chunk = newChunk( length );
+            chunk.put( value.getRawArray(), value.getRawOffset(), length );
+            return (chunks.size() - 1) << OFFSET_BITS;
+        }
+        if ( current == null || current.remaining() < length )
+        {
+            current = newChunk( CHUNK_SIZE );
+            currentIndex = chunks.size() - 1;
+        }
+        int address = (currentIndex << OFFSET_BITS) | current.position();
+        current.put( value.getRawArray(), value.getRawOffset(), length );
+        return address;
+    }
+
+    /**
+     * 把地址上的值复制到一个新的堆内Slice中
+     */
+    public Slice get( int address, int length )
+    {
+        checkNotReleased();
+        ByteBuffer chunk = chunks.get( address >>> OFFSET_BITS ).duplicate();
+        ((Buffer) chunk).position( address & (CHUNK_SIZE - 1) );
+        byte[] data = new byte[length];
+        chunk.get( data );
+        return new Slice( data );
+    }
+
+    /**
+     * 已经分配的堆外内存大小(bytes)
+     */
+    public long allocatedBytes()
+    {
+        return allocated;
+    }
+
+    public boolean isReleased()
+    {
+        return released;
+    }
+
+    /**
+     * 释放所有堆外内存. 调用者需保证此后没有线程再读取该arena.
+     */
+    public void release()
+    {
+        if ( released ) return;
+        released = true;
+        for ( ByteBuffer chunk : chunks )
+        {
+            free( chunk );
+        }
+        chunks.clear();
+        current = null;
+        allocated = 0;
+    }
+
+    private ByteBuffer newChunk( int size )
+    {
+        if ( chunks.size() >= MAX_CHUNKS )
+        {
+            throw new TPSRuntimeException( "off-heap arena full: {} chunks", chunks.size() );
+        }
+        ByteBuffer chunk = ByteBuffer.allocateDirect( size );
+        chunks.add( chunk );
+        allocated += size;
+        return chunk;
+    }
+
+    private void checkNotReleased()
+    {
+        if ( released )
+        {
+            throw new TPSRuntimeException( "off-heap arena already released" );
+        }
+    }
+
+    // free direct memory now instead of waiting for GC, falls back to GC if the JDK internals are not accessible.
+    private static void free( ByteBuffer buffer )
+    {
+        if ( FREE != null )
+        {
+            try
+            {
+                FREE.free( buffer );
+            }
+            catch ( Throwable ignore )
+            {
+                // left to GC
+            }
+        }
+    }
+
+    private interface Freer
+    {
+        void free( ByteBuffer buffer ) throws Throwable;
+    }
+
+    private static final Freer FREE = findFreer();
+
+    private static Freer findFreer()
+    {
+        try
+        { // JDK 9+
+            Class<?> unsafeClass = Class.forName( "sun.misc.Unsafe" );
+            Method invokeCleaner = unsafeClass.getMethod( "invokeCleaner", ByteBuffer.class );
+            Field f = unsafeClass.getDeclaredField( "theUnsafe" );
+            f.setAccessible( true );
+            Object unsafe = f.get( null );
+            return buffer -> invokeCleaner.invoke( unsafe, buffer );
+        }
+        catch ( Throwable ignore )
+        {
+            // try JDK 8
+        }
+        try
+        {
+            Method cleanerMethod = Class.forName( "sun.nio.ch.DirectBuffer" ).getMethod( "cleaner" );
+            Method cleanMethod = Class.forName( "sun.misc.Cleaner" ).getMethod( "clean" );
+            return buffer -> cleanMethod.invoke( cleanerMethod.invoke( buffer ) );
+        }
+        catch ( Throwable ignore )
+        {
+            return null;
+        }
+    }
+}
@@ -719,7 +719,7 @@ public final class Slice
         {
             long id = this.getLong( 0 );
             int proid = this.getInt( 8 );
-            int time = (int)SequenceNumber.unpackTime( this.getLong( 12 ) );
+            long time = SequenceNumber.unpackTime( this.getLong( 12 ) );
             s = " Id = " + id + "," + "ProId = " + proid + "," + "Time = " + time + ",";
         }
         return toret + s + ")";
@@ -53,7 +53,7 @@ public class TableLatestValueIterator implements SearchableIterator
             {
                 this.next = this.iterator.next();
                 this.next_next = this.iterator.next();
-                while( this.next.getKey().getId().equals( this.next_next.getKey().getId() ) )
+                while( this.next.getKey().sameId( this.next_next.getKey() ) )
                 {
                     this.next = this.next_next;
                     this.next_next = this.iterator.next();
@@ -68,7 +68,7 @@ public class TableLatestValueIterator implements SearchableIterator
             try
             {
                 this.next_next = this.iterator.next();
-                while( this.next.getKey().getId().equals( this.next_next.getKey().getId() ) )
+                while( this.next.getKey().sameId( this.next_next.getKey() ) )
                 {
                     this.next = this.next_next;
                     this.next_next = this.iterator.next();
@@ -143,7 +143,7 @@ public class TableLatestValueIterator implements SearchableIterator
             if(input.hasNext()){
                 InternalEntry entry = input.next();
                 InternalKey key = entry.getKey();
-                InternalKey newKey = new InternalKey(key.getId(), startTime, key.getValueType());
+                InternalKey newKey = new InternalKey(key.getPropertyId(), key.getEntityId(), startTime, key.getValueType());
                 return new InternalEntry(newKey, entry.getValue());
             }else{
                 return endOfData();
@@ -4,12 +4,11 @@ import org.act.temporalProperty.util.SliceInput;
 import org.act.temporalProperty.util.SliceOutput;
 
 import java.io.Serializable;
-import java.util.Objects;
 
 
 public class EntityPropertyId implements Comparable<EntityPropertyId>, Serializable {
-    private long entityId;
-    private int propertyId;
+    private final long entityId;
+    private final int propertyId;
 
     public EntityPropertyId(long entityId, int propertyId) {
         this.entityId = entityId;
@@ -45,7 +44,7 @@ public class EntityPropertyId implements Comparable<EntityPropertyId>, Serializa
 
     @Override
     public int hashCode() {
-        return Objects.hash(entityId, propertyId);
+        return 31 * Long.hashCode(entityId) + propertyId;
     }
 
     @Override
@@ -0,0 +1,54 @@
+package org.act.temporalProperty.helper;
+
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.impl.InternalKey;
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.vo.EntityPropertyId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EPAppendIteratorTest
+{
+    private static final EntityPropertyId ID = new EntityPropertyId( 1, 0 );
+
+    private static SortedEntryListIterator file( long... times )
+    {
+        List<InternalEntry> entries = new ArrayList<>();
+        for ( long t : times )
+        {
+            Slice val = new Slice( 4 );
+            val.setInt( 0, (int) t );
+            entries.add( new InternalEntry( new InternalKey( ID, new TimePointL( t ), ValueType.INT ), val ) );
+        }
+        return new SortedEntryListIterator( entries );
+    }
+
+    private static List<Long> drain( EPAppendIterator iterator )
+    {
+        List<Long> result = new ArrayList<>();
+        while ( iterator.hasNext() ) result.add( iterator.next().getKey().getStartTime().val() );
+        return result;
+    }
+
+    // 多个文件都有不晚于查询时间的entry时, 只从最后一个floor entry开始
+    @Test
+    public void seekFloorAcrossFiles()
+    {
+        EPAppendIterator iterator = new EPAppendIterator( ID );
+        iterator.append( file( 1, 5 ) );
+        iterator.append( file( 6, 10, 15 ) );
+        iterator.append( file() );
+        iterator.append( file( 20, 30 ) );
+        Assert.assertTrue( iterator.seekFloor( new InternalKey( ID, new TimePointL( 8 ) ) ) );
+        Assert.assertEquals( "[6, 10, 15, 20, 30]", drain( iterator ).toString() );
+        Assert.assertTrue( iterator.seekFloor( new InternalKey( ID, new TimePointL( 25 ) ) ) );
+        Assert.assertEquals( "[20, 30]", drain( iterator ).toString() );
+        Assert.assertFalse( iterator.seekFloor( new InternalKey( ID, new TimePointL( 0 ) ) ) );
+        Assert.assertEquals( "[1, 5, 6, 10, 15, 20, 30]", drain( iterator ).toString() );
+    }
+}
@@ -0,0 +1,48 @@
+package org.act.temporalProperty.helper;
+
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.impl.MemTable;
+import org.act.temporalProperty.impl.SearchableIterator;
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.query.TimeIntervalKey;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.vo.EntityPropertyId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ExpiredEntryFilterIteratorTest
+{
+    private static void put( MemTable mem, long eid, long start, TimePointL end, int val )
+    {
+        Slice value = new Slice( 4 );
+        value.setInt( 0, val );
+        mem.addInterval( new TimeIntervalKey( new EntityPropertyId( eid, 1 ), new TimePointL( start ), end, ValueType.INT ), value );
+    }
+
+    // 保留期限之前结束的entry被去掉, 覆盖期限的entry保留原起始时间
+    @Test
+    public void dropEntriesBeforeHorizon()
+    {
+        MemTable mem = new MemTable();
+        put( mem, 0, 0, new TimePointL( 9 ), 0 );
+        put( mem, 0, 10, new TimePointL( 19 ), 10 );
+        put( mem, 0, 20, TimePointL.Now, 20 );
+        put( mem, 1, 0, new TimePointL( 14 ), 0 );
+        put( mem, 1, 15, TimePointL.Now, 15 );
+        put( mem, 2, 30, TimePointL.Now, 30 );
+
+        SearchableIterator iter = new ExpiredEntryFilterIterator( mem.iterator(), new TimePointL( 15 ) );
+        List<String> result = new ArrayList<>();
+        while ( iter.hasNext() )
+        {
+            InternalEntry entry = iter.next();
+            result.add( entry.getKey().getEntityId() + "@" + entry.getKey().getStartTimeLong() );
+        }
+        Assert.assertEquals( Arrays.asList( "0@10", "0@20", "1@15", "2@30" ), result );
+    }
+}
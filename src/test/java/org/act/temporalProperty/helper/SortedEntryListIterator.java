@@ -0,0 +1,73 @@
+package org.act.temporalProperty.helper;
+
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.impl.InternalKey;
+
+import java.util.List;
+
+/**
+ * Searchable view of an already decoded, key-ordered entry list.
+ * Used to feed the result of a parallel file scan into the normal merge iterators.
+ */
+public class SortedEntryListIterator extends AbstractSearchableIterator
+{
+    private final List<InternalEntry> entries;
+    private int cursor = 0;
+
+    public SortedEntryListIterator( List<InternalEntry> entries )
+    {
+        this.entries = entries;
+    }
+
+    @Override
+    protected InternalEntry computeNext()
+    {
+        if ( cursor < entries.size() )
+        {
+            return entries.get( cursor++ );
+        }
+        else
+        {
+            return endOfData();
+        }
+    }
+
+    @Override
+    public void seekToFirst()
+    {
+        super.resetState();
+        cursor = 0;
+    }
+
+    @Override
+    public boolean seekFloor( InternalKey targetKey )
+    {
+        int low = 0;
+        int high = entries.size() - 1;
+        int floor = -1;
+        while ( low <= high )
+        {
+            int mid = (low + high) >>> 1;
+            if ( entries.get( mid ).getKey().compareTo( targetKey ) <= 0 )
+            {
+                floor = mid;
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid - 1;
+            }
+        }
+        cursor = Math.max( floor, 0 );
+        return super.seekFloor( targetKey );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SortedEntryListIterator{" +
+                "size=" + entries.size() +
+                ", cursor=" + cursor +
+                '}';
+    }
+}
@@ -0,0 +1,95 @@
+package org.act.temporalProperty.helper;
+
+import org.act.temporalProperty.impl.FileMetaData;
+import org.act.temporalProperty.impl.Filename;
+import org.act.temporalProperty.impl.Filename.FileType;
+import org.act.temporalProperty.meta.PropertyMetaData;
+import org.act.temporalProperty.meta.SystemMeta;
+import org.act.temporalProperty.meta.ValueContentType;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class StoreInitialTest
+{
+    private static Set<String> list( File dir )
+    {
+        return new HashSet<>( Arrays.asList( dir.list() ) );
+    }
+
+    private static void touch( File dir, String name ) throws IOException
+    {
+        Files.createFile( new File( dir, name ).toPath() );
+    }
+
+    @Test
+    public void parseFileName()
+    {
+        Assert.assertEquals( FileType.STABLEFILE, Filename.parseFileName( new File( Filename.stableFileName( 3 ) ) ).getFileType() );
+        Assert.assertEquals( 3, Filename.parseFileName( new File( Filename.unStableFileName( 3 ) ) ).getFileNumber() );
+        Assert.assertEquals( FileType.BUFFER_DELTA, Filename.parseFileName( new File( Filename.bufferDeltaFileName( Filename.unbufferFileName( 2 ), 5 ) ) ).getFileType() );
+        Assert.assertEquals( 2, Filename.parseFileName( new File( Filename.bufferDeltaFileName( Filename.stbufferFileName( 2 ), 5 ) ) ).getFileNumber() );
+        Assert.assertEquals( FileType.STABLE_CHANGE_LOG, Filename.parseFileName( new File( Filename.changeLogFileName( 1, true ) ) ).getFileType() );
+        Assert.assertEquals( FileType.AGGR_INDEX, Filename.parseFileName( new File( Filename.aggrIndexFileName( 1 ) ) ).getFileType() );
+        Assert.assertEquals( FileType.UNFINISHED, Filename.parseFileName( new File( Filename.stableFileName( 1 ) + ".tmp" ) ).getFileType() );
+        Assert.assertEquals( FileType.TEMP, Filename.parseFileName( new File( Filename.tempFileName( 0 ) ) ).getFileType() );
+        Assert.assertEquals( FileType.META_INFO, Filename.parseFileName( new File( "meta.info.tmp" ) ).getFileType() );
+        Assert.assertEquals( FileType.DESCRIPTOR, Filename.parseFileName( new File( Filename.descriptorFileName( 4 ) ) ).getFileType() );
+        Assert.assertNull( Filename.parseFileName( new File( "st.abc.table" ) ) );
+    }
+
+    // 崩溃后留下的文件按元信息删除, 未写入元信息的Buffer重新加入
+    @Test
+    public void removeOrphanFiles() throws IOException
+    {
+        File dir = Files.createTempDirectory( "orphan" ).toFile();
+        try
+        {
+            SystemMeta meta = new SystemMeta();
+            PropertyMetaData p = new PropertyMetaData( 1, ValueContentType.INT );
+            p.addStable( new FileMetaData( 0, 0, new TimePointL( 0 ), new TimePointL( 99 ) ) );
+            p.addUnstable( new FileMetaData( 0, 0, new TimePointL( 100 ), new TimePointL( 199 ) ) );
+            meta.addProperty( p );
+
+            File proDir = new File( dir, "1" );
+            File indexDir = new File( dir, "index" );
+            Files.createDirectory( proDir.toPath() );
+            Files.createDirectory( indexDir.toPath() );
+            touch( dir, Filename.tempFileName( 0 ) );
+            touch( proDir, Filename.stableFileName( 0 ) );
+            touch( proDir, Filename.changeLogFileName( 0, true ) );
+            touch( proDir, Filename.unStableFileName( 0 ) );
+            touch( proDir, Filename.unbufferFileName( 0 ) );
+            touch( proDir, Filename.stableFileName( 1 ) );                     // 未发布的合并结果
+            touch( proDir, Filename.changeLogFileName( 1, true ) );
+            touch( proDir, Filename.unStableFileName( 1 ) );                   // 已合并但未删除
+            touch( proDir, Filename.unbufferFileName( 1 ) );
+            touch( proDir, Filename.bufferDeltaFileName( Filename.unbufferFileName( 1 ), 0 ) );
+            touch( proDir, Filename.stableFileName( 0 ) + ".tmp" );
+            touch( proDir, "README" );
+            touch( indexDir, Filename.valIndexFileName( 3 ) );
+            touch( indexDir, Filename.valIndexFileName( 4 ) + ".tmp" );
+
+            new StoreInitial( dir ).removeOrphanFiles( meta );
+
+            Assert.assertEquals( new HashSet<>( Arrays.asList( Filename.stableFileName( 0 ), Filename.changeLogFileName( 0, true ),
+                    Filename.unStableFileName( 0 ), Filename.unbufferFileName( 0 ), "README" ) ), list( proDir ) );
+            Assert.assertEquals( new HashSet<>( Arrays.asList( Filename.valIndexFileName( 3 ) ) ), list( indexDir ) );
+            Assert.assertTrue( new File( dir, Filename.tempFileName( 0 ) ).exists() );
+            Assert.assertNotNull( p.getUnstableBuffers( 0 ) );
+            Assert.assertNull( p.getStableBuffers( 0 ) );
+        }
+        finally
+        {
+            FileUtils.deleteRecursively( dir );
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.act.temporalProperty.impl;
+
+import org.act.temporalProperty.index.IndexStore;
+import org.act.temporalProperty.meta.PropertyMetaData;
+import org.act.temporalProperty.meta.ValueContentType;
+import org.act.temporalProperty.query.TimeIntervalKey;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.table.MergeProcess.MergeTask;
+import org.act.temporalProperty.table.TableComparator;
+import org.act.temporalProperty.util.FileUtils;
+import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.vo.EntityPropertyId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashSet;
+
+public class BufferRewriteTaskTest
+{
+    private static final int ENTITIES = 10;
+
+    private static MemTable write( long start, long end, int base )
+    {
+        MemTable mem = new MemTable();
+        for ( long e = 0; e < ENTITIES; e++ )
+        {
+            Slice value = new Slice( 4 );
+            value.setInt( 0, base + (int) e );
+            mem.addInterval( new TimeIntervalKey( new EntityPropertyId( e, 1 ), new TimePointL( start ), new TimePointL( end ), ValueType.INT ), value );
+        }
+        return mem;
+    }
+
+    private static void assertValues( SinglePropertyStore store, long time, int base )
+    {
+        for ( long e = 0; e < ENTITIES; e++ )
+        {
+            Slice value = store.getPointValue( new InternalKey( new EntityPropertyId( e, 1 ), new TimePointL( time ) ) );
+            Assert.assertEquals( "entity " + e + " at " + time, base + e, value.getInt( 0 ) );
+        }
+    }
+
+    private static int count( SearchableIterator iterator )
+    {
+        int n = 0;
+        while ( iterator.hasNext() )
+        {
+            iterator.next();
+            n++;
+        }
+        return n;
+    }
+
+    // 冻结后的写入留在Buffer中, 冻结的内容写回文件; Buffer已被合并掉时放弃写回
+    @Test
+    public void freezeWriteSwapAbandon() throws Throwable
+    {
+        File dir = Files.createTempDirectory( "rewrite" ).toFile();
+        TableCache cache = new TableCache( 4, TableComparator.instance(), false );
+        IndexStore index = new IndexStore( new File( dir, "index" ), null, new HashSet<>(), 0, 0, new Options() );
+        try
+        {
+            PropertyMetaData pMeta = new PropertyMetaData( 1, ValueContentType.INT );
+            SinglePropertyStore store = new SinglePropertyStore( pMeta, dir, cache, index );
+            MergeTask dump = store.merge( write( 0, 100, 100 ) );
+            dump.runTask();
+            dump.updateMeta();
+            dump.cleanUp();
+            FileMetaData file = pMeta.getUnStableFiles().get( 0L );
+
+            Assert.assertNull( store.merge( write( 10, 20, 200 ) ) );
+            FileBuffer buffer = pMeta.getUnstableBuffers( 0 );
+            SinglePropertyStore.BufferRewriteTask task = store.new BufferRewriteTask( file, buffer, false );
+            Assert.assertTrue( buffer.isFrozen() );
+            Assert.assertNull( store.merge( write( 30, 40, 300 ) ) ); // 冻结期间继续写入
+            task.runTask();
+            task.updateMeta();
+            task.cleanUp();
+            Assert.assertFalse( buffer.isFrozen() );
+            Assert.assertEquals( 2 * ENTITIES, count( buffer.iterator() ) ); // 只剩冻结之后写入的[30, 40]
+            assertValues( store, 15, 200 );
+            assertValues( store, 35, 300 );
+            assertValues( store, 5, 100 );
+
+            // 写回完成之前Buffer已随文件被合并, 结果被放弃, 文件不变
+            Assert.assertNull( store.merge( write( 50, 60, 500 ) ) );
+            SinglePropertyStore.BufferRewriteTask abandoned = store.new BufferRewriteTask( file, buffer, false );
+            abandoned.runTask();
+            pMeta.delUnstableBuffer( 0L );
+            abandoned.updateMeta();
+            abandoned.cleanUp();
+            Assert.assertFalse( buffer.isFrozen() );
+            Assert.assertFalse( new File( Filename.unPath( new File( dir, "1" ), 0 ) + ".tmp" ).exists() );
+            assertValues( store, 15, 200 );
+            Assert.assertNull( store.getPointValue( new InternalKey( new EntityPropertyId( 0, 1 ), new TimePointL( 55 ) ) ) );
+            buffer.close();
+        }
+        finally
+        {
+            index.close();
+            FileUtils.deleteRecursively( dir );
+        }
+    }
+
+    // 写回读取文件之前, 同一个UnStableFile已被合并: 合并的cleanUp关闭了缓存中的Table并删除了文件, 写回仍能读完, 结果被放弃
+    @Test
+    public void mergeSameFileBeforeRewrite() throws Throwable
+    {
+        File dir = Files.createTempDirectory( "rewrite" ).toFile();
+        TableCache cache = new TableCache( 4, TableComparator.instance(), false );
+        IndexStore index = new IndexStore( new File( dir, "index" ), null, new HashSet<>(), 0, 0, new Options() );
+        try
+        {
+            PropertyMetaData pMeta = new PropertyMetaData( 1, ValueContentType.INT );
+            SinglePropertyStore store = new SinglePropertyStore( pMeta, dir, cache, index );
+            MergeTask dump = store.merge( write( 0, 100, 100 ) );
+            dump.runTask();
+            dump.updateMeta();
+            dump.cleanUp();
+            FileMetaData file = pMeta.getUnStableFiles().get( 0L );
+
+            Assert.assertNull( store.merge( write( 10, 20, 200 ) ) );
+            FileBuffer buffer = pMeta.getUnstableBuffers( 0 );
+            SinglePropertyStore.BufferRewriteTask rewrite = store.new BufferRewriteTask( file, buffer, false );
+            MergeTask merge = store.merge( write( 200, 300, 400 ) );
+            Assert.assertTrue( merge.merges( 0 ) );
+            merge.runTask();
+            merge.updateMeta();
+            merge.cleanUp();
+            Assert.assertFalse( new File( Filename.unPath( new File( dir, "1" ), 0 ) ).exists() );
+
+            rewrite.runTask();
+            rewrite.updateMeta();
+            rewrite.cleanUp();
+            Assert.assertFalse( new File( Filename.unPath( new File( dir, "1" ), 0 ) + ".tmp" ).exists() );
+            Assert.assertNull( pMeta.getUnStableFiles().get( 0L ) );
+            assertValues( store, 5, 100 );
+            assertValues( store, 15, 200 );
+            assertValues( store, 250, 400 );
+        }
+        finally
+        {
+            index.close();
+            FileUtils.deleteRecursively( dir );
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.act.temporalProperty.impl;
+
+import org.act.temporalProperty.query.TimeIntervalKey;
+import org.act.temporalProperty.table.TableComparator;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.FileUtils;
+import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.vo.EntityPropertyId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class FileBufferTest
+{
+    private final TableCache cache = new TableCache( 4, TableComparator.instance(), false );
+
+    private static void add( FileBuffer buffer, long eid, long time ) throws IOException
+    {
+        Slice value = new Slice( 4 );
+        value.setInt( 0, (int) time );
+        buffer.add( new TimeIntervalKey( new EntityPropertyId( eid, 1 ), new TimePointL( time ), new TimePointL( time ), ValueType.INT ), value );
+    }
+
+    private static int count( FileBuffer buffer )
+    {
+        int n = 0;
+        SearchableIterator iter = buffer.iterator();
+        while ( iter.hasNext() )
+        {
+            iter.next();
+            n++;
+        }
+        return n;
+    }
+
+    // 重新打开的Buffer在第一次访问时回放备份文件, 之后的写入追加在已有内容之后
+    @Test
+    public void reopenAndAppend() throws IOException
+    {
+        File file = File.createTempFile( "stable", "buffer" );
+        file.deleteOnExit();
+        FileBuffer buffer = new FileBuffer( file, 0, cache );
+        for ( long t = 0; t < 100; t += 2 ) add( buffer, 0, t );
+        buffer.force();
+        buffer.close();
+
+        FileBuffer reopened = new FileBuffer( 0 );
+        reopened.init( file, cache );
+        Assert.assertEquals( 100, count( reopened ) );
+        for ( long t = 200; t < 300; t += 2 ) add( reopened, 1, t );
+        reopened.force();
+        reopened.close();
+
+        FileBuffer again = new FileBuffer( 0 );
+        again.init( file, cache );
+        again.load();
+        Assert.assertEquals( 200, count( again ) );
+        // [1, 1]只有时间点0之后的Unknown标记, 与MemTable.overlap相同, 也算有数据
+        Assert.assertTrue( again.overlap( new EntityPropertyId( 0, 1 ), new TimePointL( 1 ), new TimePointL( 1 ) ) );
+        Assert.assertFalse( again.overlap( new EntityPropertyId( 0, 1 ), new TimePointL( 150 ), new TimePointL( 160 ) ) );
+        again.close();
+    }
+
+    // 超过阈值的写入溢出为有序的delta文件, 日志只保留之后的写入; 重新打开后合并读取, 后写入的值覆盖delta中的值
+    @Test
+    public void spillToDeltas() throws IOException
+    {
+        File dir = Files.createTempDirectory( "buffer" ).toFile();
+        try
+        {
+            File file = new File( dir, Filename.stbufferFileName( 0 ) );
+            FileBuffer buffer = new FileBuffer( file, 0, cache );
+            int n = 0;
+            while ( buffer.files().size() < 3 )
+            {
+                add( buffer, n % 1000, n );
+                n++;
+            }
+            Assert.assertTrue( file.length() < 1024 * 1024 );
+            add( buffer, 0, 0 ); // 覆盖已溢出的数据
+            buffer.force();
+            buffer.close();
+
+            FileBuffer reopened = new FileBuffer( 0 );
+            reopened.init( file, cache );
+            Assert.assertEquals( 2 * n, count( reopened ) ); // 每个点还有其后的Unknown标记
+            Assert.assertTrue( reopened.overlap( new EntityPropertyId( 999, 1 ), new TimePointL( 999 ), new TimePointL( 999 ) ) );
+            Assert.assertFalse( reopened.overlap( 2, TimePointL.Init, TimePointL.Now ) );
+            reopened.close();
+            for ( File f : reopened.files() ) Files.delete( f.toPath() );
+            Assert.assertEquals( 0, dir.list().length );
+        }
+        finally
+        {
+            FileUtils.deleteRecursively( dir );
+        }
+    }
+}
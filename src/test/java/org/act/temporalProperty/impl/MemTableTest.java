@@ -4,9 +4,11 @@ import com.google.common.collect.PeekingIterator;
 import org.act.temporalProperty.exception.ValueUnknownException;
 import org.act.temporalProperty.query.TimeIntervalKey;
 import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.OffHeapArena;
 import org.act.temporalProperty.util.Slice;
 import org.act.temporalProperty.util.Slices;
 import org.act.temporalProperty.vo.EntityPropertyId;
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Map;
@@ -75,6 +77,95 @@ public class MemTableTest
 
     }
 
+    @Test
+    public void offHeapSameAsHeap() {
+        MemTable heap = new MemTable();
+        OffHeapArena arena = new OffHeapArena();
+        MemTable offHeap = new MemTable(arena);
+        for(int t=10; t<100; t+=5){
+            for(long entityId=0; entityId<10; entityId++) {
+                set(heap, entityId, 2, t, t+4, t);
+                set(offHeap, entityId, 2, t, t+4, t);
+                set(heap, entityId, 3, t+1, t+2, t);
+                set(offHeap, entityId, 3, t+1, t+2, t);
+            }
+        }
+        SearchableIterator expected = heap.iterator();
+        SearchableIterator actual = offHeap.iterator();
+        EntryCursor cursor = offHeap.cursor();
+        cursor.seekToFirst();
+        while (expected.hasNext()) {
+            InternalEntry e = expected.next();
+            Assert.assertEquals(e.getKey().encode(), actual.next().getKey().encode());
+            Assert.assertTrue(cursor.advance());
+            Assert.assertEquals(e.getKey().getStartTime().val(), cursor.startTimeLong());
+            Assert.assertEquals(e.getValue(), cursor.value());
+        }
+        Assert.assertFalse(actual.hasNext());
+        Assert.assertFalse(cursor.advance());
+        Assert.assertTrue(offHeap.approximateMemUsage() >= arena.allocatedBytes());
+
+        offHeap.release();
+        Assert.assertTrue(arena.isReleased());
+        Assert.assertEquals(0, arena.allocatedBytes());
+    }
+
+    // 快照只含一个id的数据, 之后的写入和堆外内存的释放都不影响它
+    @Test
+    public void snapshotOfEntity() {
+        OffHeapArena arena = new OffHeapArena();
+        MemTable offHeap = new MemTable(arena);
+        for(long entityId=0; entityId<3; entityId++) {
+            set(offHeap, entityId, 2, 10, 19, (int) entityId);
+            set(offHeap, entityId, 2, 30, 39, (int) entityId + 30);
+        }
+        MemTable snapshot = offHeap.snapshot(new EntityPropertyId(1, 2));
+        set(offHeap, 1, 2, 15, 35, 99);
+        offHeap.release();
+
+        SearchableIterator iter = snapshot.iterator();
+        int[][] expected = {{10, 1}, {20, -1}, {30, 31}, {40, -1}}; // -1: unknown
+        for (int[] e : expected) {
+            InternalEntry entry = iter.next();
+            Assert.assertTrue(entry.getKey().hasId(2, 1));
+            Assert.assertEquals(e[0], entry.getKey().getStartTimeLong());
+            if (e[1] < 0) Assert.assertEquals(ValueType.UNKNOWN, entry.getKey().getValueType());
+            else Assert.assertEquals(e[1], entry.getValue().getInt(0));
+        }
+        Assert.assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void seekMissingEntity() {
+        MemTable table = new MemTable();
+        for(long entityId=0; entityId<10; entityId+=2) {
+            set(table, entityId, 2, 10, 19, (int) entityId);
+        }
+        // entity 3 does not exist: cursor continues from entity 4
+        EntryCursor cursor = table.cursor();
+        cursor.seekFloor(2, 3, 15);
+        Assert.assertTrue(cursor.advance());
+        Assert.assertEquals(4, cursor.entityId());
+        Assert.assertEquals(10, cursor.startTimeLong());
+        cursor.seekFloor(2, 9, 15);
+        Assert.assertFalse(cursor.advance());
+        cursor.seekFloor(2, 4, 15);
+        Assert.assertTrue(cursor.advance());
+        Assert.assertEquals(4, cursor.entityId());
+
+        // before every key: iterator starts from the first entity
+        SearchableIterator iter = table.iterator();
+        Assert.assertFalse(iter.seekFloor(new InternalKey(1, 0, 0, ValueType.VALUE)));
+        InternalKey first = iter.next().getKey();
+        Assert.assertTrue(first.hasId(2, 0));
+        Assert.assertEquals(new InternalKey(2, 0, 10, ValueType.INT), first);
+        Assert.assertEquals(new InternalKey(2, 0, 10, ValueType.INT).hashCode(), first.hashCode());
+
+        // before the first time of an entity: iterator starts from the first point of that entity
+        Assert.assertFalse(iter.seekFloor(new InternalKey(2, 4, 5, ValueType.VALUE)));
+        Assert.assertEquals(new InternalKey(2, 4, 10, ValueType.INT), iter.next().getKey());
+    }
+
     private void set(MemTable table, long entityId, int propId, int timeStart, int timeEnd, int value) {
         Slice valSlice = Slices.allocate(8);
         valSlice.output().writeInt(value);
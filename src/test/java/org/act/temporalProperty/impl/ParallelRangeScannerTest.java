@@ -0,0 +1,134 @@
+package org.act.temporalProperty.impl;
+
+import org.act.temporalProperty.helper.SortedEntryListIterator;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.query.range.CombinableRangeQueryCallBack;
+import org.act.temporalProperty.query.range.InternalEntryRangeQueryCallBack;
+import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.vo.EntityPropertyId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class ParallelRangeScannerTest
+{
+    private static final EntityPropertyId ID = new EntityPropertyId( 1, 0 );
+
+    private static InternalEntry entry( long time )
+    {
+        Slice val = new Slice( 4 );
+        val.setInt( 0, (int) time );
+        return new InternalEntry( new InternalKey( ID, new TimePointL( time ), ValueType.INT ), val );
+    }
+
+    private static List<InternalEntry> entries( long... times )
+    {
+        List<InternalEntry> result = new ArrayList<>();
+        for ( long t : times ) result.add( entry( t ) );
+        return result;
+    }
+
+    private static long[] times( List<InternalEntry> entries )
+    {
+        return entries.stream().mapToLong( e -> e.getKey().getStartTime().val() ).toArray();
+    }
+
+    private static long[] times( ParallelRangeScanner.Segment segment )
+    {
+        return new long[]{ segment.start.val(), segment.end.val() };
+    }
+
+    @Test
+    public void planKeepsOnlyLastFloorSegment()
+    {
+        List<SearchableIterator> segments = Arrays.asList(
+                new SortedEntryListIterator( entries( 0, 5 ) ),
+                new SortedEntryListIterator( entries( 6, 10, 15 ) ),
+                new SortedEntryListIterator( entries( 20, 30 ) ),
+                new SortedEntryListIterator( entries( 40 ) ) );
+        List<ParallelRangeScanner.Segment> plan = ParallelRangeScanner.plan( ID, segments, new TimePointL( 8 ), new TimePointL( 25 ) );
+        Assert.assertEquals( 2, plan.size() );
+        Assert.assertArrayEquals( new long[]{8, 19}, times( plan.get( 0 ) ) );
+        Assert.assertArrayEquals( new long[]{20, 25}, times( plan.get( 1 ) ) );
+    }
+
+    @Test
+    public void planWithoutFloorEntry()
+    {
+        List<SearchableIterator> segments = Arrays.asList(
+                new SortedEntryListIterator( entries() ),
+                new SortedEntryListIterator( entries( 12, 14 ) ),
+                new SortedEntryListIterator( entries() ) );
+        List<ParallelRangeScanner.Segment> plan = ParallelRangeScanner.plan( ID, segments, new TimePointL( 10 ), new TimePointL( 20 ) );
+        Assert.assertEquals( 1, plan.size() );
+        Assert.assertArrayEquals( new long[]{10, 20}, times( plan.get( 0 ) ) );
+        Assert.assertTrue( ParallelRangeScanner.plan( ID, segments, new TimePointL( 15 ), new TimePointL( 20 ) ).size() == 1 );
+        Assert.assertTrue( ParallelRangeScanner.plan( ID, segments, new TimePointL( 0 ), new TimePointL( 5 ) ).isEmpty() );
+    }
+
+    // 每段回调收到的entry(第一个被截到段的开始时间), 合并后与顺序读取相同
+    @Test
+    public void aggregateStreamsSegments()
+    {
+        List<SearchableIterator> segments = Arrays.asList(
+                new SortedEntryListIterator( entries( 0, 5 ) ),
+                new SortedEntryListIterator( entries( 6, 10, 15 ) ),
+                new SortedEntryListIterator( entries( 20, 30 ) ) );
+        CombinableRangeQueryCallBack collect = new CombinableRangeQueryCallBack()
+        {
+            @Override public void setValueType( String valueType ) { }
+            @Override public void onNewEntry( InternalEntry entry ) { throw new UnsupportedOperationException(); }
+            @Override public Object onReturn() { throw new UnsupportedOperationException(); }
+
+            @Override
+            public InternalEntryRangeQueryCallBack segment( TimePointL start, TimePointL end )
+            {
+                List<InternalEntry> seen = new ArrayList<>();
+                return new InternalEntryRangeQueryCallBack()
+                {
+                    @Override public void setValueType( String valueType ) { }
+                    @Override public void onNewEntry( InternalEntry entry ) { seen.add( entry ); }
+                    @Override public Object onReturn() { return seen; }
+                };
+            }
+
+            @Override
+            @SuppressWarnings( "unchecked" )
+            public Object combine( List<Object> partials )
+            {
+                List<InternalEntry> all = new ArrayList<>();
+                for ( Object p : partials ) all.addAll( (List<InternalEntry>) p );
+                return all;
+            }
+        };
+        ParallelRangeScanner scanner = new ParallelRangeScanner( ForkJoinPool.commonPool() );
+        List<ParallelRangeScanner.Segment> plan = ParallelRangeScanner.plan( ID, segments, new TimePointL( 8 ), new TimePointL( 25 ) );
+        @SuppressWarnings( "unchecked" )
+        List<InternalEntry> result = (List<InternalEntry>) scanner.aggregate( collect, "INT", plan );
+        Assert.assertArrayEquals( new long[]{8, 10, 15, 20}, times( result ) );
+        Assert.assertEquals( 6, result.get( 0 ).getValue().getInt( 0 ) );
+    }
+
+    @Test
+    public void sortedListSeekFloor()
+    {
+        SortedEntryListIterator iter = new SortedEntryListIterator( entries( 2, 4, 6 ) );
+        iter.seekFloor( new InternalKey( ID, new TimePointL( 5 ) ) );
+        Assert.assertEquals( 4, iter.next().getKey().getStartTime().val() );
+        iter.seekFloor( new InternalKey( ID, new TimePointL( 1 ) ) );
+        Assert.assertEquals( 2, iter.next().getKey().getStartTime().val() );
+        iter.seekToFirst();
+        Assert.assertArrayEquals( new long[]{2, 4, 6}, times( drain( iter ) ) );
+    }
+
+    private static List<InternalEntry> drain( SearchableIterator iter )
+    {
+        List<InternalEntry> result = new ArrayList<>();
+        while ( iter.hasNext() ) result.add( iter.next() );
+        return result;
+    }
+}
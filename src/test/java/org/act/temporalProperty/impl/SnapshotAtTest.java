@@ -0,0 +1,51 @@
+package org.act.temporalProperty.impl;
+
+import org.act.temporalProperty.query.TimeIntervalKey;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.table.TwoLevelMergeCursor;
+import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.vo.EntityPropertyId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SnapshotAtTest
+{
+    private static void put( MemTable mem, long eid, int proId, long start, long end, int val )
+    {
+        Slice value = new Slice( 4 );
+        value.setInt( 0, val );
+        mem.addInterval( new TimeIntervalKey( new EntityPropertyId( eid, proId ), new TimePointL( start ), new TimePointL( end ), ValueType.INT ), value );
+    }
+
+    private static List<String> snapshot( EntryCursor cursor, int proId, long time )
+    {
+        List<String> result = new ArrayList<>();
+        TemporalPropertyStoreImpl.snapshot( cursor, proId, time, ( eid, value ) -> result.add( eid + "=" + value.getInt( 0 ) ) );
+        return result;
+    }
+
+    @Test
+    public void floorPerEntity()
+    {
+        MemTable old = new MemTable();
+        MemTable latest = new MemTable();
+        for ( long eid = 0; eid < 4; eid++ )
+        {
+            put( old, eid, 1, 0, 9, (int) eid );
+            put( old, eid, 1, 10, 19, (int) eid + 10 );
+            put( old, eid, 2, 0, 19, -1 );
+        }
+        put( latest, 2, 1, 5, 12, 99 );
+        put( old, 5, 1, 20, 30, 50 ); // no value at time 12
+
+        EntryCursor cursor = new TwoLevelMergeCursor( latest.cursor(), old.cursor() );
+        Assert.assertEquals( Arrays.asList( "0=10", "1=11", "2=99", "3=13" ), snapshot( cursor, 1, 12 ) );
+        Assert.assertEquals( Arrays.asList( "0=10", "1=11", "2=12", "3=13" ), snapshot( cursor, 1, 13 ) );
+        Assert.assertEquals( Arrays.asList( "0=-1", "1=-1", "2=-1", "3=-1" ), snapshot( cursor, 2, 3 ) );
+        Assert.assertEquals( Arrays.asList( "5=50" ), snapshot( cursor, 1, 25 ) );
+    }
+}
@@ -0,0 +1,54 @@
+package org.act.temporalProperty.index;
+
+import org.act.temporalProperty.impl.Options;
+import org.act.temporalProperty.impl.SeekingIterator;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.query.aggr.AggregationIndexKey;
+import org.act.temporalProperty.table.TableBuilder;
+import org.act.temporalProperty.util.Slice;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Map.Entry;
+
+public class IndexTableCacheTest
+{
+    // 同一个索引文件的多次查询共用一个解析好的Table, 移出缓存后重新打开
+    @Test
+    public void aggrTableReused() throws IOException
+    {
+        File tmp = File.createTempFile( "aggr", "temp" );
+        tmp.deleteOnExit();
+        try ( FileChannel channel = new FileOutputStream( tmp ).getChannel() )
+        {
+            TableBuilder builder = new TableBuilder( new Options(), channel, AggregationIndexKey.sliceComparator );
+            for ( long t = 0; t < 100; t++ )
+            {
+                Slice value = new Slice( 8 );
+                value.setLong( 0, t );
+                builder.add( new AggregationIndexKey( 1, new TimePointL( t ), 0 ).encode(), value );
+            }
+            builder.finish();
+        }
+        String path = tmp.getAbsolutePath();
+        IndexTableCache cache = new IndexTableCache( tmp.getParentFile(), 2 );
+        Assert.assertNull( cache.getTable( path ).openedAggrTable() );
+
+        SeekingIterator<Slice,Slice> iterator = cache.getTable( path ).aggrIterator( path );
+        iterator.seek( new AggregationIndexKey( 1, new TimePointL( 40 ), 0 ).encode() );
+        Entry<Slice,Slice> entry = iterator.next();
+        Assert.assertEquals( 40, entry.getValue().getLong( 0 ) );
+        Assert.assertSame( cache.getTable( path ).openedAggrTable(), cache.getTable( path ).openedAggrTable() );
+        Assert.assertNotNull( cache.getTable( path ).openedAggrTable() );
+
+        cache.getTable( path ).aggrIterator( path );
+        IndexTable before = cache.getTable( path );
+        cache.evict( path );
+        Assert.assertNotSame( before, cache.getTable( path ) );
+        Assert.assertNull( cache.getTable( path ).openedAggrTable() );
+    }
+}
@@ -0,0 +1,50 @@
+package org.act.temporalProperty.index;
+
+import org.act.temporalProperty.impl.FileMetaData;
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.impl.InternalKey;
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.Slice;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class IndexUpdaterTest
+{
+    private static InternalEntry entry( long entityId, long time )
+    {
+        Slice val = new Slice( 4 );
+        val.setInt( 0, (int) time );
+        return new InternalEntry( new InternalKey( 1, entityId, new TimePointL( time ), ValueType.INT ), val );
+    }
+
+    private static String clip( List<InternalEntry> data, long start, long end )
+    {
+        List<String> result = new ArrayList<>();
+        for ( InternalEntry e : IndexUpdater.clip( data, new FileMetaData( 0, 0, new TimePointL( start ), new TimePointL( end ) ) ) )
+        {
+            result.add( e.getKey().getEntityId() + "@" + e.getKey().getStartTime().val() + "=" + e.getValue().getInt( 0 ) );
+        }
+        return result.toString();
+    }
+
+    // 分为多个输出文件时, 每个文件的索引只包含该文件时间范围内的数据
+    @Test
+    public void clipToPart()
+    {
+        List<InternalEntry> data = new ArrayList<>();
+        data.add( entry( 0, 1 ) );
+        data.add( entry( 0, 5 ) );
+        data.add( entry( 0, 12 ) );
+        data.add( entry( 0, 25 ) );
+        data.add( entry( 1, 10 ) );
+        data.add( entry( 1, 30 ) );
+        data.add( entry( 2, 3 ) );
+        Assert.assertEquals( "[0@1=1, 0@5=5, 2@3=3]", clip( data, 1, 9 ) );
+        Assert.assertEquals( "[0@10=5, 0@12=12, 1@10=10, 2@10=3]", clip( data, 10, 19 ) );
+        Assert.assertEquals( "[0@20=12, 0@25=25, 1@20=10, 1@30=30, 2@20=3]", clip( data, 20, 40 ) );
+    }
+}
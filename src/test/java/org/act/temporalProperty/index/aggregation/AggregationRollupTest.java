@@ -0,0 +1,120 @@
+package org.act.temporalProperty.index.aggregation;
+
+import org.act.temporalProperty.impl.Options;
+import org.act.temporalProperty.impl.SeekingIterator;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.query.aggr.AggregationIndexKey;
+import org.act.temporalProperty.table.MMapTable;
+import org.act.temporalProperty.table.TableBuilder;
+import org.act.temporalProperty.util.Slice;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class AggregationRollupTest
+{
+    @Test
+    public void levelEncoding()
+    {
+        for ( int vg : new int[]{ -1, 0, 1, 5, -(1 << 23), (1 << 23) - 1 } )
+        {
+            Assert.assertEquals( vg, AggregationRollup.encode( 0, vg ) );
+            Assert.assertEquals( 0, AggregationRollup.levelOf( vg ) );
+            for ( int level = 1; level < 31; level++ )
+            {
+                int id = AggregationRollup.encode( level, vg );
+                Assert.assertEquals( level, AggregationRollup.levelOf( id ) );
+                Assert.assertEquals( vg, AggregationRollup.valueGroupOf( id ) );
+            }
+        }
+    }
+
+    @Test
+    public void decompose()
+    {
+        for ( int from = 0; from < 40; from++ )
+        {
+            for ( int to = from; to <= 40; to++ )
+            {
+                int next = from;
+                for ( int[] node : AggregationRollup.decompose( from, to, 5 ) )
+                {
+                    Assert.assertEquals( next, node[1] );
+                    Assert.assertEquals( 0, node[1] % (1 << node[0]) );
+                    Assert.assertTrue( node[0] <= 5 );
+                    next += 1 << node[0];
+                }
+                Assert.assertEquals( to, next );
+            }
+        }
+        // 对齐的2^k个time group只需要一个节点
+        Assert.assertEquals( 1, AggregationRollup.decompose( 16, 32, 5 ).size() );
+        Assert.assertTrue( AggregationRollup.decompose( 1, 37, 5 ).size() <= 2 * 5 );
+    }
+
+    // 11个time group, 2个entity, 每个time group的value group 0的值为序号+1, 偶数序号另有value group -1的值1
+    @Test
+    public void writeAndRead() throws IOException
+    {
+        int groupCount = 11;
+        List<TimePointL> groups = new ArrayList<>();
+        for ( int i = 0; i <= groupCount; i++ ) groups.add( new TimePointL( i * 100 ) );
+        Map<AggregationIndexKey,Slice> level0 = new TreeMap<>();
+        for ( long entity = 0; entity < 2; entity++ )
+        {
+            for ( int i = 0; i < groupCount; i++ )
+            {
+                level0.put( new AggregationIndexKey( entity, groups.get( i ), 0 ), longValue( i + 1 + entity * 100 ) );
+                if ( i % 2 == 0 ) level0.put( new AggregationIndexKey( entity, groups.get( i ), -1 ), longValue( 1 ) );
+            }
+        }
+
+        File tmp = File.createTempFile( "rollup", "temp" );
+        tmp.deleteOnExit();
+        FileChannel channel = new FileOutputStream( tmp ).getChannel();
+        TableBuilder builder = new TableBuilder( new Options(), channel, AggregationIndexKey.sliceComparator );
+        AggregationRollup.write( builder, level0, groups, ( vg, a, b ) -> longValue( a.getLong( 0 ) + b.getLong( 0 ) ) );
+        builder.finish();
+        channel.close();
+
+        channel = new FileInputStream( tmp ).getChannel();
+        SeekingIterator<Slice,Slice> iterator = new MMapTable( "", channel, AggregationIndexKey.sliceComparator, false ).iterator();
+        for ( long entity = 0; entity < 2; entity++ )
+        {
+            for ( int from = 0; from < groupCount; from++ )
+            {
+                for ( int to = from + 1; to <= groupCount; to++ )
+                {
+                    Map<Integer,Long> result = new HashMap<>();
+                    AggregationRollup.read( iterator, entity, groups, from, to, ( vg, v ) -> result.merge( vg, v.getLong( 0 ), Long::sum ) );
+                    long expected = 0, odd = 0;
+                    for ( int i = from; i < to; i++ )
+                    {
+                        expected += i + 1 + entity * 100;
+                        if ( i % 2 == 0 ) odd++;
+                    }
+                    Assert.assertEquals( expected, (long) result.get( 0 ) );
+                    Assert.assertEquals( odd, (long) result.getOrDefault( -1, 0L ) );
+                }
+            }
+        }
+        channel.close();
+    }
+
+    private static Slice longValue( long v )
+    {
+        Slice value = new Slice( 8 );
+        value.setLong( 0, v );
+        return value;
+    }
+}
@@ -0,0 +1,77 @@
+package org.act.temporalProperty.index.aggregation;
+
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.impl.InternalKey;
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.index.EntityTimeIntervalEntry;
+import org.act.temporalProperty.index.IndexValueType;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.Slice;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+
+public class SumAggrIndexTest
+{
+    private static Slice intValue( int v )
+    {
+        Slice value = new Slice( 4 );
+        value.setInt( 0, v );
+        return value;
+    }
+
+    private static InternalEntry entry( long time, int v )
+    {
+        return new InternalEntry( new InternalKey( 1, 0, new TimePointL( time ), ValueType.INT ), intValue( v ) );
+    }
+
+    // 时间分组[0,9], [10,19], [20,29]; 值[0,14]=2, [15,34]=4
+    @Test
+    public void groupsSplitIntervals()
+    {
+        TreeSet<TimePointL> groups = new TreeSet<>();
+        for ( long t = 0; t <= 30; t += 10 ) groups.add( new TimePointL( t ) );
+        SumAggrIndexWriter w = new SumAggrIndexWriter( Arrays.asList(
+                new EntityTimeIntervalEntry( 0, new TimePointL( 0 ), new TimePointL( 14 ), intValue( 2 ) ),
+                new EntityTimeIntervalEntry( 0, new TimePointL( 15 ), new TimePointL( 34 ), intValue( 4 ) ) ).iterator(),
+                groups, IndexValueType.INT, new File( "unused" ) );
+        Map<Pair<Long,TimePointL>,SumAggrValue> result = w.groups();
+        Assert.assertEquals( 3, result.size() );
+        long[][] expected = { { 20, 10, 1 }, { 30, 10, 1 }, { 40, 10, 0 } };
+        for ( int i = 0; i < 3; i++ )
+        {
+            SumAggrValue v = result.get( Pair.of( 0L, new TimePointL( i * 10 ) ) );
+            Assert.assertEquals( expected[i][0], v.getSum() );
+            Assert.assertEquals( expected[i][1], v.getDuration() );
+            Assert.assertEquals( expected[i][2], v.getCount() );
+            SumAggrValue decoded = SumAggrValue.decode( v.encode(), IndexValueType.INT );
+            Assert.assertEquals( v.getSum(), decoded.getSum() );
+            Assert.assertEquals( v.getCount(), decoded.getCount() );
+        }
+    }
+
+    // 值[5,9]=2, [10,19]=4, [20,Now]=9, range查询从from的前一个时间点开始, 第一个entry被截到查询开始时间
+    @Test
+    public void edgeQuery()
+    {
+        SumEdgeQuery carried = new SumEdgeQuery( IndexValueType.INT, new TimePointL( 7 ), new TimePointL( 24 ) );
+        for ( InternalEntry e : Arrays.asList( entry( 6, 2 ), entry( 10, 4 ), entry( 20, 9 ) ) ) carried.onNewEntry( e );
+        SumAggrValue r = carried.onReturn();
+        Assert.assertEquals( 2L * 3 + 4 * 10 + 9 * 5, r.getSum() );
+        Assert.assertEquals( 18, r.getDuration() );
+        Assert.assertEquals( 2, r.getCount() );
+        Assert.assertTrue( carried.isCarried() );
+
+        SumEdgeQuery aligned = new SumEdgeQuery( IndexValueType.INT, new TimePointL( 10 ), new TimePointL( 24 ) );
+        for ( InternalEntry e : Arrays.asList( entry( 9, 2 ), entry( 10, 4 ), entry( 20, 9 ) ) ) aligned.onNewEntry( e );
+        r = aligned.onReturn();
+        Assert.assertEquals( 4L * 10 + 9 * 5, r.getSum() );
+        Assert.assertEquals( 2, r.getCount() );
+        Assert.assertFalse( aligned.isCarried() );
+    }
+}
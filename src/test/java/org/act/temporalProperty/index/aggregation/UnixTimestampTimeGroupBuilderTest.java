@@ -0,0 +1,66 @@
+package org.act.temporalProperty.index.aggregation;
+
+import org.act.temporalProperty.query.TimePointL;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+public class UnixTimestampTimeGroupBuilderTest
+{
+    // 原来的实现: 从索引开始时间逐个Calendar.add
+    private static NavigableSet<TimePointL> byCalendar( long indexStart, long begin, long finish, int every, int timeUnit )
+    {
+        Calendar tmp = Calendar.getInstance();
+        tmp.setTimeInMillis( indexStart );
+        Calendar cur = DateUtils.ceiling( tmp, timeUnit );
+        TreeSet<TimePointL> set = new TreeSet<>();
+        while ( cur.getTimeInMillis() < begin ) cur.add( timeUnit, every );
+        while ( cur.getTimeInMillis() < finish )
+        {
+            set.add( new TimePointL( cur.getTimeInMillis() ) );
+            cur.add( timeUnit, every );
+        }
+        return set;
+    }
+
+    // 包含夏令时切换的时区, 日以下的单位不受影响, 日以上的单位与Calendar的结果相同
+    @Test
+    public void sameAsCalendar()
+    {
+        TimeZone old = TimeZone.getDefault();
+        TimeZone.setDefault( TimeZone.getTimeZone( "America/New_York" ) );
+        try
+        {
+            Random r = new Random( 3 );
+            long indexStart = 1_500_000_000_123L;
+            long indexEnd = indexStart + 3L * 365 * DateUtils.MILLIS_PER_DAY;
+            int[][] units = { { Calendar.SECOND, 7 }, { Calendar.MINUTE, 15 }, { Calendar.HOUR, 5 }, { Calendar.DATE, 1 }, { Calendar.DATE, 3 },
+                              { Calendar.MONTH, 1 }, { Calendar.YEAR, 1 } };
+            for ( int[] unit : units )
+            {
+                UnixTimestampTimeGroupBuilder builder =
+                        new UnixTimestampTimeGroupBuilder( new TimePointL( indexStart ), new TimePointL( indexEnd ), unit[1], unit[0] );
+                long span = unit[0] == Calendar.SECOND ? DateUtils.MILLIS_PER_DAY : indexEnd - indexStart;
+                for ( int k = 0; k < 50; k++ )
+                {
+                    long min = indexStart - DateUtils.MILLIS_PER_HOUR + (long) (r.nextDouble() * span);
+                    long max = Math.min( indexEnd, min + (long) (r.nextDouble() * span / 4) );
+                    long begin = Math.max( min, indexStart );
+                    Assert.assertEquals( "unit " + unit[0] + " [" + min + "," + max + "]",
+                                         byCalendar( indexStart, begin, max, unit[1], unit[0] ),
+                                         builder.calcNewGroup( new TimePointL( min ), new TimePointL( max ) ) );
+                }
+            }
+        }
+        finally
+        {
+            TimeZone.setDefault( old );
+        }
+    }
+}
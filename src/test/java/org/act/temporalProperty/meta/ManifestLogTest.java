@@ -0,0 +1,75 @@
+package org.act.temporalProperty.meta;
+
+import org.act.temporalProperty.impl.FileBuffer;
+import org.act.temporalProperty.impl.FileMetaData;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class ManifestLogTest
+{
+    private static FileMetaData file( long number, long start, long end )
+    {
+        return new FileMetaData( number, 1024, new TimePointL( start ), new TimePointL( end ) );
+    }
+
+    @Test
+    public void replayEdits() throws IOException
+    {
+        File dir = Files.createTempDirectory( "manifest" ).toFile();
+        try
+        {
+            SystemMeta meta = new SystemMeta();
+            PropertyMetaData p = new PropertyMetaData( 1, ValueContentType.INT );
+            p.addStable( file( 0, 0, 99 ) );
+            p.addUnstable( file( 0, 100, 199 ) );
+            meta.addProperty( p );
+            meta.force( dir );
+
+            // 合并: UnStableFile 0 变为 StableFile 1, 新增Buffer, 新属性和保留期限
+            p.delUnstable( 0L );
+            p.addStable( file( 1, 100, 199 ) );
+            p.addStableBuffer( 0, new FileBuffer( 0 ) );
+            p.setRetentionHorizon( new TimePointL( 50 ) );
+            meta.addProperty( new PropertyMetaData( 2, ValueContentType.DOUBLE ) );
+            meta.setIndexNextFileId( 7 );
+            meta.force( dir );
+            meta.force( dir );
+
+            SystemMeta recovered = ManifestLog.recover( dir );
+            meta.closeManifest();
+            Assert.assertNotNull( recovered );
+            Assert.assertEquals( 2, recovered.getProperties().size() );
+            PropertyMetaData r = recovered.getProperties().get( 1 );
+            Assert.assertEquals( Arrays.asList( 0L, 1L ), Arrays.asList( r.getStableFiles().keySet().toArray() ) );
+            Assert.assertTrue( r.getUnStableFiles().isEmpty() );
+            Assert.assertEquals( new TimePointL( 199 ), r.getStableFiles().get( 1L ).getLargest() );
+            Assert.assertTrue( r.getStableBuffers().containsKey( 0L ) );
+            Assert.assertEquals( new TimePointL( 50 ), r.getRetentionHorizon() );
+            Assert.assertEquals( ValueContentType.DOUBLE, recovered.getProperties().get( 2 ).getType() );
+            Assert.assertEquals( 7, recovered.indexNextFileId() );
+            Assert.assertEquals( 1, dir.list().length );
+
+            // 重新打开日志后删除属性和Buffer
+            meta.force( dir );
+            meta.delProperty( 2 );
+            p.delStableBuffer( 0 );
+            meta.force( dir );
+            recovered = ManifestLog.recover( dir );
+            meta.closeManifest();
+            Assert.assertEquals( 1, recovered.getProperties().size() );
+            Assert.assertTrue( recovered.getProperties().get( 1 ).getStableBuffers().isEmpty() );
+            Assert.assertEquals( 2, recovered.getProperties().get( 1 ).getStableFiles().size() );
+        }
+        finally
+        {
+            FileUtils.deleteRecursively( dir );
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.act.temporalProperty.query;
+
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.util.Slice;
+import org.apache.commons.lang3.tuple.Triple;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * PrimitiveTemporalValue与TemporalValue在随机写入下的结果应当完全相同
+ */
+public class PrimitiveTemporalValueTest
+{
+    @Test
+    public void sameAsTemporalValue()
+    {
+        Random random = new Random( 42 );
+        for ( int round = 0; round < 50; round++ )
+        {
+            TemporalValue<Integer> expected = new TemporalValue<>();
+            PrimitiveTemporalValue actual = new PrimitiveTemporalValue();
+            for ( int i = 0; i < 200; i++ )
+            {
+                int start = random.nextInt( 1000 );
+                TimeInterval interval = random.nextInt( 5 ) == 0 ?
+                        new TimeInterval( new TimePointL( start ) ) :
+                        new TimeInterval( new TimePointL( start ), new TimePointL( start + random.nextInt( 50 ) ) );
+                Slice value = new Slice( 4 + random.nextInt( 8 ) );
+                value.setInt( 0, i );
+                expected.put( interval, i );
+                actual.put( interval, ValueType.INT, value );
+                assertSame( expected, actual );
+            }
+        }
+    }
+
+    @Test
+    public void inOrderAppend()
+    {
+        PrimitiveTemporalValue tv = new PrimitiveTemporalValue();
+        Slice value = new Slice( 4 );
+        for ( int t = 0; t < 10000; t++ )
+        {
+            value.setInt( 0, t );
+            tv.put( new TimeInterval( new TimePointL( t ) ), ValueType.INT, value );
+        }
+        Assert.assertEquals( 10000, tv.size() );
+        Assert.assertEquals( 1234, tv.value( tv.floorIndex( 1234 ) ).getInt( 0 ) );
+        // 16 bytes per point + 4 bytes value, arrays grow by doubling
+        Assert.assertTrue( tv.memUsage() < 2 * 10000 * 20 + PrimitiveTemporalValue.OBJECT_OVERHEAD );
+    }
+
+    // 写在较长区间中间的区间, 之后的部分仍是原来的值, 而不是Unknown
+    @Test
+    public void putInsideLongerInterval()
+    {
+        PrimitiveTemporalValue tv = new PrimitiveTemporalValue();
+        Slice value = new Slice( 4 );
+        value.setInt( 0, 7 );
+        tv.put( new TimeInterval( TimePointL.Init, TimePointL.Now ), ValueType.INT, value );
+        value.setInt( 0, 99 );
+        tv.put( new TimeInterval( new TimePointL( 50 ), new TimePointL( 59 ) ), ValueType.INT, value );
+        int i = tv.floorIndex( 60 );
+        Assert.assertEquals( 60, tv.time( i ) );
+        Assert.assertFalse( tv.isUnknown( i ) );
+        Assert.assertEquals( 7, tv.value( i ).getInt( 0 ) );
+        Assert.assertEquals( 99, tv.value( tv.floorIndex( 55 ) ).getInt( 0 ) );
+    }
+
+    private void assertSame( TemporalValue<Integer> expected, PrimitiveTemporalValue actual )
+    {
+        Iterator<Triple<TimePointL,Boolean,Integer>> it = expected.pointEntries();
+        int i = 0;
+        while ( it.hasNext() )
+        {
+            Triple<TimePointL,Boolean,Integer> e = it.next();
+            Assert.assertEquals( e.getLeft().val(), actual.time( i ) );
+            Assert.assertEquals( e.getMiddle(), actual.isUnknown( i ) );
+            if ( !e.getMiddle() )
+            {
+                Assert.assertEquals( (int) e.getRight(), actual.value( i ).getInt( 0 ) );
+            }
+            i++;
+        }
+        Assert.assertEquals( i, actual.size() );
+    }
+}
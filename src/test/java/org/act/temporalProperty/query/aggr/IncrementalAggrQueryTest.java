@@ -0,0 +1,110 @@
+package org.act.temporalProperty.query.aggr;
+
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.impl.MemTable;
+import org.act.temporalProperty.impl.SearchableIterator;
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.index.IndexValueType;
+import org.act.temporalProperty.query.TimeIntervalKey;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.query.range.InternalEntryRangeQueryCallBack;
+import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.vo.EntityPropertyId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class IncrementalAggrQueryTest
+{
+    // [0,9]=1, [10,19]=3, [20,Now]=5
+    private static List<InternalEntry> entries()
+    {
+        MemTable mem = new MemTable();
+        int[][] data = { { 0, 9, 1 }, { 10, 19, 3 }, { 20, -1, 5 } };
+        for ( int[] d : data )
+        {
+            Slice value = new Slice( 4 );
+            value.setInt( 0, d[2] );
+            TimePointL end = d[1] < 0 ? TimePointL.Now : new TimePointL( d[1] );
+            mem.addInterval( new TimeIntervalKey( new EntityPropertyId( 0, 1 ), new TimePointL( d[0] ), end, ValueType.INT ), value );
+        }
+        List<InternalEntry> result = new ArrayList<>();
+        SearchableIterator iter = mem.iterator();
+        while ( iter.hasNext() ) result.add( iter.next() );
+        return result;
+    }
+
+    private static Object run( InternalEntryRangeQueryCallBack query, List<InternalEntry> entries )
+    {
+        query.setValueType( "INT" );
+        for ( InternalEntry entry : entries ) query.onNewEntry( entry );
+        return query.onReturn();
+    }
+
+    private static <V> IncrementalTimeIntervalAggrQuery<Integer, V> oneGroup( IncrementalAggregator<?, V> aggregator )
+    {
+        return new IncrementalTimeIntervalAggrQuery<Integer, V>( new TimePointL( 5 ), new TimePointL( 24 ), aggregator )
+        {
+            @Override public void setValueType( String valueType ) { }
+            @Override public Integer computeGroupId( TimeIntervalEntry entry ) { return 0; }
+            @Override public Object onResult( Map<Integer, V> result ) { return result.get( 0 ); }
+        };
+    }
+
+    @Test
+    public void aggregators()
+    {
+        List<InternalEntry> entries = entries();
+        Assert.assertEquals( 20L, run( oneGroup( Aggregators.duration() ), entries ) );
+        Assert.assertEquals( 3L, run( oneGroup( Aggregators.count() ), entries ) );
+        Assert.assertEquals( 1, ((Slice) run( oneGroup( Aggregators.min( ValueGroupingMap.getComparator( IndexValueType.INT ) ) ), entries )).getInt( 0 ) );
+        Assert.assertEquals( 5, ((Slice) run( oneGroup( Aggregators.max( ValueGroupingMap.getComparator( IndexValueType.INT ) ) ), entries )).getInt( 0 ) );
+        Assert.assertEquals( 5L * 1 + 10 * 3 + 5 * 5, run( oneGroup( Aggregators.sum( IndexValueType.INT ) ), entries ) );
+        Assert.assertEquals( 60.0 / 20, (Double) run( oneGroup( Aggregators.timeWeightedAverage( IndexValueType.INT ) ), entries ), 1e-9 );
+    }
+
+    // 分段的结果合并后与顺序查询相同, 查询对象可以重复使用
+    @Test
+    public void durationBySegments()
+    {
+        IncrementalDurationAggregationQuery<Integer> query = new IncrementalDurationAggregationQuery<Integer>( new TimePointL( 5 ), new TimePointL( 24 ) )
+        {
+            @Override public void setValueType( String valueType ) { }
+            @Override public Integer computeGroupId( TimeIntervalEntry entry ) { return asInt( entry.value() ); }
+            @Override public Object onResult( Map<Integer, Long> result ) { return result; }
+        };
+        List<InternalEntry> entries = entries();
+        Map<Integer, Long> expected = new HashMap<>();
+        expected.put( 1, 5L );
+        expected.put( 3, 10L );
+        expected.put( 5, 5L );
+        Assert.assertEquals( expected, run( query, entries ) );
+        Assert.assertEquals( expected, run( query, entries ) );
+
+        Object first = run( query.segment( new TimePointL( 5 ), new TimePointL( 14 ) ), entries.subList( 0, 2 ) );
+        Object second = run( query.segment( new TimePointL( 15 ), new TimePointL( 24 ) ), entries.subList( 1, 3 ) );
+        Assert.assertEquals( expected, query.combine( Arrays.asList( first, second ) ) );
+    }
+
+    // 原有的DurationStatisticAggregationQuery保持不变(按entry列表求和, 结果为Integer), 与增量版本的结果一致
+    @Test
+    public void durationStatisticUnchanged()
+    {
+        DurationStatisticAggregationQuery<Integer> query = new DurationStatisticAggregationQuery<Integer>( new TimePointL( 5 ), new TimePointL( 24 ) )
+        {
+            @Override public void setValueType( String valueType ) { }
+            @Override public Integer computeGroupId( TimeIntervalEntry entry ) { return asInt( entry.value() ); }
+            @Override public Object onResult( Map<Integer, Integer> result ) { return result; }
+        };
+        Map<Integer, Integer> expected = new HashMap<>();
+        expected.put( 1, 5 );
+        expected.put( 3, 10 );
+        expected.put( 5, 5 );
+        Assert.assertEquals( expected, run( query, entries() ) );
+    }
+}
@@ -0,0 +1,95 @@
+package org.act.temporalProperty.query.aggr;
+
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.impl.MemTable;
+import org.act.temporalProperty.impl.SearchableIterator;
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.query.TimeIntervalKey;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.query.range.CombinableRangeQueryCallBack;
+import org.act.temporalProperty.query.range.InternalEntryRangeQueryCallBack;
+import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.vo.EntityPropertyId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+public class NumericAggregationQueryTest
+{
+    private static final TimePointL END = new TimePointL( 24 );
+
+    // 查询[5, 24]: [5,9]=2, [10,19]=4, [20,Now]=9
+    private static List<InternalEntry> entries()
+    {
+        MemTable mem = new MemTable();
+        int[][] data = { { 5, 9, 2 }, { 10, 19, 4 }, { 20, -1, 9 } };
+        for ( int[] d : data )
+        {
+            Slice value = new Slice( 4 );
+            value.setInt( 0, d[2] );
+            TimePointL end = d[1] < 0 ? TimePointL.Now : new TimePointL( d[1] );
+            mem.addInterval( new TimeIntervalKey( new EntityPropertyId( 0, 1 ), new TimePointL( d[0] ), end, ValueType.INT ), value );
+        }
+        List<InternalEntry> result = new ArrayList<>();
+        SearchableIterator iter = mem.iterator();
+        while ( iter.hasNext() ) result.add( iter.next() );
+        return result;
+    }
+
+    private static Object run( InternalEntryRangeQueryCallBack query, List<InternalEntry> entries )
+    {
+        query.setValueType( "INT" );
+        for ( InternalEntry entry : entries ) query.onNewEntry( entry );
+        return query.onReturn();
+    }
+
+    // 按文件分段: [5,19]和[20,24]
+    private static Object runBySegments( AggregationQuery query, List<InternalEntry> entries )
+    {
+        CombinableRangeQueryCallBack c = (CombinableRangeQueryCallBack) query;
+        c.setValueType( "INT" );
+        Object first = run( c.segment( new TimePointL( 5 ), new TimePointL( 19 ) ), entries.subList( 0, 2 ) );
+        Object second = run( c.segment( new TimePointL( 20 ), END ), entries.subList( 2, 3 ) );
+        return c.combine( Arrays.asList( first, second ) );
+    }
+
+    @Test
+    public void aggregate()
+    {
+        List<InternalEntry> entries = entries();
+        Assert.assertEquals( 3, entries.size() );
+        Assert.assertEquals( 15L, run( AggregationQuery.sum(), entries ) );
+        Assert.assertEquals( 3L, run( AggregationQuery.count(), entries ) );
+        Assert.assertEquals( 5.0, run( AggregationQuery.avg(), entries ) );
+        Assert.assertEquals( (2 * 5 + 4 * 10 + 9 * 5) / 20.0, run( AggregationQuery.timeWeightedAvg( END ), entries ) );
+        Assert.assertEquals( 2, run( AggregationQuery.first(), entries ) );
+        Assert.assertEquals( 9, run( AggregationQuery.last(), entries ) );
+        Assert.assertEquals( Math.sqrt( 26 / 3.0 ), (Double) run( AggregationQuery.stdDev(), entries ), 1e-9 );
+    }
+
+    @Test
+    public void segmentsGiveSameResult()
+    {
+        List<InternalEntry> entries = entries();
+        List<Supplier<AggregationQuery>> queries = Arrays.asList( AggregationQuery::sum, AggregationQuery::count, AggregationQuery::avg,
+                () -> AggregationQuery.timeWeightedAvg( END ), AggregationQuery::first, AggregationQuery::last );
+        for ( Supplier<AggregationQuery> query : queries )
+        {
+            Assert.assertEquals( run( query.get(), entries ), runBySegments( query.get(), entries ) );
+        }
+        Object sequential = run( AggregationQuery.stdDev(), entries );
+        Assert.assertEquals( (Double) sequential, (Double) runBySegments( AggregationQuery.stdDev(), entries ), 1e-9 );
+    }
+
+    // 每次调用工厂方法得到独立的对象
+    @Test
+    public void independentInstances()
+    {
+        Assert.assertNotSame( AggregationQuery.sum(), AggregationQuery.sum() );
+        Assert.assertNotSame( AggregationQuery.min(), AggregationQuery.min() );
+    }
+}
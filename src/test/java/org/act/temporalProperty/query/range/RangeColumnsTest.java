@@ -0,0 +1,76 @@
+package org.act.temporalProperty.query.range;
+
+import org.act.temporalProperty.impl.EntryCursor;
+import org.act.temporalProperty.impl.MemTable;
+import org.act.temporalProperty.impl.UnknownToInvalidCursor;
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.query.TimeIntervalKey;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.vo.EntityPropertyId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class RangeColumnsTest
+{
+    private static final EntityPropertyId ID = new EntityPropertyId( 3, 1 );
+
+    private static void put( MemTable mem, long start, long end, int val )
+    {
+        Slice value = new Slice( 4 );
+        value.setInt( 0, val );
+        mem.addInterval( new TimeIntervalKey( ID, new TimePointL( start ), new TimePointL( end ), ValueType.INT ), value );
+    }
+
+    // what TemporalPropertyStoreImpl does for cursor callbacks, without disk files.
+    private static void query( MemTable mem, RangeColumns result, long start, long end )
+    {
+        result.reset( new TimePointL( start ), new TimePointL( end ) );
+        result.setValueType( "INT" );
+        EntryCursor cursor = new UnknownToInvalidCursor( mem.cursor() );
+        cursor.seekFloor( ID.getPropertyId(), ID.getEntityId(), start );
+        boolean first = true;
+        while ( cursor.advance() && cursor.startTimeLong() <= end )
+        {
+            result.onNewEntry( cursor, first ? Math.max( cursor.startTimeLong(), start ) : cursor.startTimeLong() );
+            first = false;
+        }
+        result.onReturn();
+    }
+
+    @Test
+    public void fillColumnsAndReuse()
+    {
+        MemTable mem = new MemTable();
+        put( mem, 0, 9, 1 );
+        put( mem, 10, 19, 2 );
+        put( mem, 30, 39, 4 );
+
+        DoubleRangeColumns doubles = new DoubleRangeColumns();
+        query( mem, doubles, 5, 35 );
+        Assert.assertEquals( 4, doubles.size() );
+        Assert.assertArrayEquals( new long[]{5, 10, 20, 30}, Arrays.copyOf( doubles.starts(), 4 ) );
+        Assert.assertArrayEquals( new long[]{9, 19, 29, 35}, Arrays.copyOf( doubles.ends(), 4 ) );
+        Assert.assertEquals( 2.0, doubles.value( 1 ), 0 );
+        Assert.assertFalse( doubles.isValid( 2 ) );
+        Assert.assertEquals( 4.0, doubles.value( 3 ), 0 );
+
+        for ( int t = 40; t < 400; t += 2 )
+        {
+            put( mem, t, t, t );
+        }
+        LongRangeColumns longs = new LongRangeColumns();
+        query( mem, longs, 0, 1000 );
+        int size = longs.size();
+        Assert.assertTrue( size > 100 );
+        Assert.assertTrue( longs.isValid( size - 2 ) );
+        Assert.assertFalse( longs.isValid( size - 1 ) );
+        Assert.assertEquals( 398, longs.value( size - 2 ) );
+        query( mem, longs, 12, 15 );
+        Assert.assertEquals( 1, longs.size() );
+        Assert.assertEquals( 2, longs.value( 0 ) );
+        Assert.assertEquals( 15, longs.end( 0 ) );
+    }
+}
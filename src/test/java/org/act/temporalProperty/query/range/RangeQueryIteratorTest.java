@@ -0,0 +1,64 @@
+package org.act.temporalProperty.query.range;
+
+import org.act.temporalProperty.helper.SortedEntryListIterator;
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.impl.InternalKey;
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.vo.EntityPropertyId;
+import org.act.temporalProperty.vo.TimeIntervalValueEntry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class RangeQueryIteratorTest
+{
+    private static final EntityPropertyId ID = new EntityPropertyId( 1, 0 );
+
+    private static InternalEntry entry( long time, ValueType type )
+    {
+        Slice val = new Slice( 4 );
+        val.setInt( 0, (int) time );
+        return new InternalEntry( new InternalKey( ID, new TimePointL( time ), type ), val );
+    }
+
+    // values at [0,9], [10,19], invalid at [20,29], value from 30
+    private static RangeQueryIterator iterator( long start, long end )
+    {
+        List<InternalEntry> entries = Arrays.asList(
+                entry( 0, ValueType.INT ), entry( 10, ValueType.INT ), entry( 20, ValueType.INVALID ), entry( 30, ValueType.INT ) );
+        return new RangeQueryIterator( ID, new SortedEntryListIterator( entries ), new TimePointL( start ), new TimePointL( end ) );
+    }
+
+    private static String str( TimeIntervalValueEntry e )
+    {
+        return e.getKey().start().val() + "-" + e.getKey().end().val();
+    }
+
+    @Test
+    public void clipsIntervalsAndSkipsInvalid()
+    {
+        try ( RangeQueryIterator iter = iterator( 5, 35 ) )
+        {
+            List<String> result = iter.stream().map( RangeQueryIteratorTest::str ).collect( Collectors.toList() );
+            Assert.assertEquals( Arrays.asList( "5-9", "10-19", "30-35" ), result );
+        }
+    }
+
+    @Test
+    public void stopsEarlyAndClosesOnStreamClose()
+    {
+        RangeQueryIterator iter = iterator( 0, 100 );
+        try ( Stream<TimeIntervalValueEntry> s = iter.stream() )
+        {
+            Assert.assertEquals( Arrays.asList( "0-9" ), s.limit( 1 ).map( RangeQueryIteratorTest::str ).collect( Collectors.toList() ) );
+        }
+        Assert.assertFalse( iter.hasNext() );
+        iter.close();
+    }
+}
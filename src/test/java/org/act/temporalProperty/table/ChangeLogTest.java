@@ -0,0 +1,59 @@
+package org.act.temporalProperty.table;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class ChangeLogTest
+{
+    @Test
+    public void readTimeRange() throws IOException
+    {
+        File file = File.createTempFile( "change", "log" );
+        file.deleteOnExit();
+        // 按(entity, time)顺序加入, 与合并输出的顺序相同
+        ChangeLog.Builder builder = new ChangeLog.Builder();
+        for ( long eid = 0; eid < 3000; eid++ )
+        {
+            for ( long t = eid % 7; t < 100; t += 7 )
+            {
+                builder.add( t, eid );
+            }
+        }
+        builder.writeTo( file );
+
+        assertRange( file, 10, 10 );
+        assertRange( file, 0, 3 );
+        assertRange( file, 95, 200 );
+        ChangeLog.IdCollector none = new ChangeLog.IdCollector();
+        ChangeLog.read( file, 100, 200, none );
+        Assert.assertEquals( 0, none.toSortedArray().length );
+
+        // 追加记录(含重复)后重新写出
+        ChangeLog.Builder appended = ChangeLog.load( file );
+        appended.add( 150, 5 );
+        appended.add( 10, 3 );
+        appended.writeTo( file );
+        Assert.assertEquals( 16L * (builder.size() + 1), file.length() );
+        ChangeLog.IdCollector ids = new ChangeLog.IdCollector();
+        ChangeLog.read( file, 120, 150, ids );
+        Assert.assertArrayEquals( new long[]{5}, ids.toSortedArray() );
+    }
+
+    private void assertRange( File file, long from, long to ) throws IOException
+    {
+        ChangeLog.IdCollector ids = new ChangeLog.IdCollector();
+        ChangeLog.read( file, from, to, ids );
+        long[] actual = ids.toSortedArray();
+        int n = 0;
+        for ( long eid = 0; eid < 3000; eid++ )
+        {
+            boolean changed = false;
+            for ( long t = eid % 7; t < 100; t += 7 ) changed |= from <= t && t <= to;
+            if ( changed ) Assert.assertEquals( eid, actual[n++] );
+        }
+        Assert.assertEquals( n, actual.length );
+    }
+}
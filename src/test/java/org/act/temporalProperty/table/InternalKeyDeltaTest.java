@@ -0,0 +1,89 @@
+package org.act.temporalProperty.table;
+
+import org.act.temporalProperty.impl.InternalKey;
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.Slice;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 64bit(毫秒)时间的InternalKey在新旧两种Block格式下都能被正确读出, 且新格式更小.
+ */
+public class InternalKeyDeltaTest
+{
+    private static final long BASE = 1_600_000_000_000L; // millisecond unix timestamp
+
+    private Slice buildBlock( boolean delta )
+    {
+        BlockBuilder builder = new BlockBuilder( 1024, 16, TableComparator.instance(), delta );
+        for ( long eid = 0; eid < 5; eid++ )
+        {
+            for ( int i = 0; i < 40; i++ )
+            {
+                Slice value = new Slice( 4 );
+                value.setInt( 0, i );
+                ValueType type = i % 7 == 3 ? ValueType.INVALID : ValueType.INT;
+                builder.add( new InternalKey( 2, eid, new TimePointL( BASE + i * 1000L + eid ), type ).encode(), value );
+            }
+        }
+        return builder.finish();
+    }
+
+    private List<String> readByIterator( Slice blockData )
+    {
+        List<String> result = new ArrayList<>();
+        BlockIterator it = new Block( blockData, TableComparator.instance() ).iterator();
+        while ( it.hasNext() )
+        {
+            BlockEntry e = it.next();
+            InternalKey k = InternalKey.decode( e.getKey() );
+            result.add( k.getEntityId() + "@" + k.getStartTime().val() + k.getValueType() + "=" + e.getValue().getInt( 0 ) );
+        }
+        return result;
+    }
+
+    private List<String> readByCursor( Slice blockData )
+    {
+        List<String> result = new ArrayList<>();
+        BlockCursor c = new Block( blockData, TableComparator.instance() ).cursor();
+        while ( c.advance() )
+        {
+            result.add( c.entityId() + "@" + c.startTimeLong() + c.valueType() + "=" + c.valueInt() );
+        }
+        return result;
+    }
+
+    @Test
+    public void bothFormatsReadable()
+    {
+        Slice oldFormat = buildBlock( false );
+        Slice newFormat = buildBlock( true );
+        List<String> expected = readByIterator( oldFormat );
+        Assert.assertEquals( 200, expected.size() );
+        Assert.assertEquals( "0@" + BASE + "INT=0", expected.get( 0 ) );
+        Assert.assertEquals( expected, readByIterator( newFormat ) );
+        Assert.assertEquals( expected, readByCursor( oldFormat ) );
+        Assert.assertEquals( expected, readByCursor( newFormat ) );
+        Assert.assertTrue( newFormat.length() * 2 < oldFormat.length() );
+    }
+
+    @Test
+    public void seekInDeltaBlock()
+    {
+        Block block = new Block( buildBlock( true ), TableComparator.instance() );
+        BlockCursor c = block.cursor();
+        c.seekFloor( 2, 3, BASE + 10500 );
+        Assert.assertTrue( c.advance() );
+        Assert.assertEquals( 3, c.entityId() );
+        Assert.assertEquals( BASE + 10003, c.startTimeLong() );
+
+        BlockIterator it = block.iterator();
+        it.seek( new InternalKey( 2, 3, new TimePointL( BASE + 10500 ), ValueType.VALUE ).encode() );
+        Assert.assertEquals( BASE + 10003, InternalKey.decode( it.next().getKey() ).getStartTime().val() );
+        Assert.assertEquals( BASE + 11003, InternalKey.decode( it.next().getKey() ).getStartTime().val() );
+    }
+}
@@ -54,6 +54,48 @@ public class TableBuildAndIterateTest
         channel.close();
     }
 
+    // 用很小的分段映射, 使许多Block跨越分段边界
+    @Test
+    public void segmentedMapping() throws IOException
+    {
+        File tmp = File.createTempFile( "segment", "temp" );
+        tmp.deleteOnExit();
+        FileChannel channel = new FileOutputStream( tmp ).getChannel();
+        TableBuilder builder = new TableBuilder( new Options(), channel, new BytewiseComparator() );
+        for ( long i = 0; i < 20000; i++ )
+        {
+            Slice key = new Slice( 8 );
+            key.setLong( 0, i );
+            builder.add( key, key );
+        }
+        builder.finish();
+        channel.close();
+
+        channel = new FileInputStream( tmp ).getChannel();
+        Table table = new MMapTable( "", channel, new BytewiseComparator(), false )
+        {
+            @Override
+            protected long segmentSize()
+            {
+                return 1000;
+            }
+        };
+        long id = 0;
+        for ( Entry<Slice,Slice> entry : table )
+        {
+            Assert.assertEquals( id, entry.getKey().getLong( 0 ) );
+            Assert.assertEquals( id, entry.getValue().getLong( 0 ) );
+            id++;
+        }
+        Assert.assertEquals( 20000, id );
+        TableIterator iterator = table.iterator();
+        Slice searchKey = new Slice( 8 );
+        searchKey.setLong( 0, 12345 );
+        iterator.seek( searchKey );
+        Assert.assertEquals( 12345, iterator.next().getKey().getLong( 0 ) );
+        channel.close();
+    }
+
     //    @Before
     public void buildFile()
     {
@@ -0,0 +1,125 @@
+package org.act.temporalProperty.table;
+
+import org.act.temporalProperty.impl.EntryCursor;
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.impl.InternalKey;
+import org.act.temporalProperty.impl.MemTable;
+import org.act.temporalProperty.impl.Options;
+import org.act.temporalProperty.impl.PackInternalKeyIterator;
+import org.act.temporalProperty.impl.SearchableIterator;
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.query.TimeIntervalKey;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.vo.EntityPropertyId;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * cursors should return exactly what the corresponding iterators return.
+ */
+public class TableCursorTest
+{
+    private static FileChannel channel;
+    private static Table table;
+
+    @BeforeClass
+    public static void buildTable() throws IOException
+    {
+        File tmp = File.createTempFile( "cursor", "table" );
+        tmp.deleteOnExit();
+        FileChannel out = new FileOutputStream( tmp ).getChannel();
+        TableBuilder builder = new TableBuilder( new Options().blockRestartInterval( 4 ).blockSize( 256 ), out, TableComparator.instance() );
+        for ( long eid = 0; eid < 20; eid++ )
+        {
+            for ( int t = 0; t < 50; t += 5 )
+            {
+                Slice value = new Slice( 4 );
+                value.setInt( 0, (int) (eid * 100 + t) );
+                builder.add( new InternalKey( 1, eid, new TimePointL( t ), t % 15 == 10 ? ValueType.INVALID : ValueType.INT ).encode(), value );
+            }
+        }
+        builder.finish();
+        out.close();
+        channel = new FileInputStream( tmp ).getChannel();
+        table = new FileChannelTable( tmp.getName(), channel, TableComparator.instance(), false );
+    }
+
+    @AfterClass
+    public static void close() throws IOException
+    {
+        channel.close();
+    }
+
+    private static String str( InternalEntry e )
+    {
+        InternalKey k = e.getKey();
+        return k.getPropertyId() + ":" + k.getEntityId() + "@" + k.getStartTime().val() + k.getValueType() + "=" + e.getValue().getInt( 0 );
+    }
+
+    private static String str( EntryCursor c )
+    {
+        return c.propertyId() + ":" + c.entityId() + "@" + c.startTimeLong() + c.valueType() + "=" + c.valueInt();
+    }
+
+    private static List<String> drain( SearchableIterator iter, int max )
+    {
+        List<String> result = new ArrayList<>();
+        while ( iter.hasNext() && result.size() < max ) result.add( str( iter.next() ) );
+        return result;
+    }
+
+    private static List<String> drain( EntryCursor cursor, int max )
+    {
+        List<String> result = new ArrayList<>();
+        while ( result.size() < max && cursor.advance() ) result.add( str( cursor ) );
+        return result;
+    }
+
+    @Test
+    public void scanAndSeekSameAsIterator()
+    {
+        SearchableIterator iter = new PackInternalKeyIterator( table.iterator() );
+        EntryCursor cursor = table.cursor();
+        cursor.seekToFirst();
+        iter.seekToFirst();
+        Assert.assertEquals( drain( iter, Integer.MAX_VALUE ), drain( cursor, Integer.MAX_VALUE ) );
+
+        for ( long eid = 0; eid < 21; eid += 3 )
+        {
+            for ( int t = 0; t < 60; t += 7 )
+            {
+                iter.seekFloor( new InternalKey( new EntityPropertyId( eid, 1 ), new TimePointL( t ) ) );
+                cursor.seekFloor( 1, eid, t );
+                Assert.assertEquals( "eid " + eid + " t " + t, drain( iter, 30 ), drain( cursor, 30 ) );
+            }
+        }
+    }
+
+    @Test
+    public void mergeWithMemTableSameAsIterator()
+    {
+        MemTable mem = new MemTable();
+        for ( long eid = 2; eid < 6; eid++ )
+        {
+            Slice value = new Slice( 4 );
+            value.setInt( 0, -1 );
+            mem.addInterval( new TimeIntervalKey( new EntityPropertyId( eid, 1 ), new TimePointL( 12 ), new TimePointL( 27 ), ValueType.INT ), value );
+        }
+        SearchableIterator iter = TwoLevelMergeIterator.merge( mem.iterator(), new PackInternalKeyIterator( table.iterator() ) );
+        EntryCursor cursor = new TwoLevelMergeCursor( mem.cursor(), table.cursor() );
+        iter.seekToFirst();
+        cursor.seekToFirst();
+        Assert.assertEquals( drain( iter, Integer.MAX_VALUE ), drain( cursor, Integer.MAX_VALUE ) );
+    }
+}
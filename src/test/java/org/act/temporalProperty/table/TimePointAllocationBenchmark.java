@@ -0,0 +1,89 @@
+package org.act.temporalProperty.table;
+
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.impl.InternalKey;
+import org.act.temporalProperty.impl.Options;
+import org.act.temporalProperty.impl.PackInternalKeyIterator;
+import org.act.temporalProperty.impl.SearchableIterator;
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.Slice;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+
+/**
+ * 比较顺序扫描一个文件时, 以TimePointL(旧的方式)和以long读取每个entry起始时间的内存分配量和耗时.
+ * 不是单元测试, 直接运行main. (没有使用JMH, 分配量用com.sun.management.ThreadMXBean统计)
+ */
+public class TimePointAllocationBenchmark
+{
+    private static final int ENTITY_COUNT = 1000;
+    private static final int TIME_COUNT = 1000;
+    private static final int ROUNDS = 5;
+
+    public static void main( String[] args ) throws IOException
+    {
+        File file = File.createTempFile( "time-point-bench", "table" );
+        file.deleteOnExit();
+        try ( FileChannel channel = new FileOutputStream( file ).getChannel() )
+        {
+            TableBuilder builder = new TableBuilder( new Options(), channel, TableComparator.instance() );
+            Slice value = new Slice( 4 );
+            for ( long eid = 0; eid < ENTITY_COUNT; eid++ )
+            {
+                for ( long t = 0; t < TIME_COUNT; t++ )
+                {
+                    value.setInt( 0, (int) t );
+                    builder.add( new InternalKey( 1, eid, t * 10, ValueType.INT ).encode(), value );
+                }
+            }
+            builder.finish();
+        }
+
+        try ( FileChannel channel = new FileInputStream( file ).getChannel() )
+        {
+            Table table = new FileChannelTable( file.getName(), channel, TableComparator.instance(), false );
+            for ( int round = 0; round < ROUNDS; round++ )
+            {
+                report( "TimePointL", scan( table, true ) );
+                report( "long      ", scan( table, false ) );
+            }
+        }
+    }
+
+    // returns {allocated bytes, nanos, checksum}
+    private static long[] scan( Table table, boolean timePoint )
+    {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long bytes = mx.getThreadAllocatedBytes( tid );
+        long begin = System.nanoTime();
+        long sum = 0;
+        SearchableIterator iter = new PackInternalKeyIterator( table.iterator() );
+        while ( iter.hasNext() )
+        {
+            InternalEntry entry = iter.next();
+            if ( timePoint )
+            {
+                TimePointL time = entry.getKey().getStartTime();
+                sum += time.next().val();
+            }
+            else
+            {
+                sum += entry.getKey().getStartTimeLong() + 1;
+            }
+        }
+        return new long[]{mx.getThreadAllocatedBytes( tid ) - bytes, System.nanoTime() - begin, sum};
+    }
+
+    private static void report( String name, long[] r )
+    {
+        long entries = (long) ENTITY_COUNT * TIME_COUNT;
+        System.out.printf( "%s: %6.1f bytes/entry, %6.1f ns/entry (checksum %d)%n", name, (double) r[0] / entries, (double) r[1] / entries, r[2] );
+    }
+}
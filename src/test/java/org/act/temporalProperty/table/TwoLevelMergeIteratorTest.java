@@ -0,0 +1,132 @@
+package org.act.temporalProperty.table;
+
+import org.act.temporalProperty.helper.InvalidEntityFilterIterator;
+import org.act.temporalProperty.impl.EntryCursor;
+import org.act.temporalProperty.impl.InternalEntry;
+import org.act.temporalProperty.impl.InternalKey;
+import org.act.temporalProperty.impl.MemTable;
+import org.act.temporalProperty.impl.SearchableIterator;
+import org.act.temporalProperty.impl.UnknownToInvalidIterator;
+import org.act.temporalProperty.impl.ValueType;
+import org.act.temporalProperty.query.TimeIntervalKey;
+import org.act.temporalProperty.query.TimePointL;
+import org.act.temporalProperty.util.Slice;
+import org.act.temporalProperty.util.Slices;
+import org.act.temporalProperty.vo.EntityPropertyId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TwoLevelMergeIteratorTest
+{
+    private static void put( MemTable mem, long eid, long start, TimePointL end, int val )
+    {
+        Slice value = new Slice( 4 );
+        value.setInt( 0, val );
+        mem.addInterval( new TimeIntervalKey( new EntityPropertyId( eid, 1 ), new TimePointL( start ), end, ValueType.INT ), value );
+    }
+
+    private static void delete( MemTable mem, long eid, TimePointL start, TimePointL end )
+    {
+        mem.addInterval( new TimeIntervalKey( new EntityPropertyId( eid, 1 ), start, end, ValueType.INVALID ), Slices.EMPTY_SLICE );
+    }
+
+    private static String str( InternalEntry entry )
+    {
+        InternalKey key = entry.getKey();
+        String val = key.getValueType() == ValueType.INVALID ? "-" : String.valueOf( entry.getValue().getInt( 0 ) );
+        return key.getEntityId() + "@" + key.getStartTimeLong() + "=" + val;
+    }
+
+    private static List<String> entries( SearchableIterator iter )
+    {
+        List<String> result = new ArrayList<>();
+        while ( iter.hasNext() )
+        {
+            result.add( str( iter.next() ) );
+        }
+        return result;
+    }
+
+    private static String floor( SearchableIterator iter, long eid, long time )
+    {
+        Assert.assertTrue( iter.seekFloor( new InternalKey( new EntityPropertyId( eid, 1 ), new TimePointL( time ) ) ) );
+        return str( iter.next() );
+    }
+
+    // INVALID区间作为范围删除标记: 覆盖旧数据中该区间内的entry, 区间之后恢复旧值
+    @Test
+    public void rangeTombstone()
+    {
+        MemTable old = new MemTable();
+        for ( long eid = 0; eid < 3; eid++ )
+        {
+            put( old, eid, 0, new TimePointL( 9 ), 0 );
+            put( old, eid, 10, new TimePointL( 19 ), 10 );
+            put( old, eid, 20, TimePointL.Now, 20 );
+        }
+        MemTable latest = new MemTable();
+        delete( latest, 0, new TimePointL( 5 ), new TimePointL( 14 ) );
+        delete( latest, 1, TimePointL.Init, TimePointL.Now );
+
+        SearchableIterator merged = new UnknownToInvalidIterator( new InvalidEntityFilterIterator(
+                TwoLevelMergeIterator.merge( latest.iterator(), old.iterator() ) ) );
+        Assert.assertEquals( Arrays.asList(
+                "0@0=0", "0@5=-", "0@15=10", "0@20=20",
+                "2@0=0", "2@10=10", "2@20=20" ), entries( merged ) );
+    }
+
+    // 与旧数据起始时间相同的删除标记同样覆盖其后的旧数据
+    @Test
+    public void tombstoneAtSameStart()
+    {
+        MemTable old = new MemTable();
+        put( old, 0, 0, new TimePointL( 9 ), 0 );
+        put( old, 0, 10, new TimePointL( 19 ), 10 );
+        put( old, 0, 20, TimePointL.Now, 20 );
+        MemTable latest = new MemTable();
+        delete( latest, 0, new TimePointL( 0 ), new TimePointL( 14 ) );
+
+        Assert.assertEquals( Arrays.asList( "0@0=-", "0@15=10", "0@20=20" ),
+                entries( TwoLevelMergeIterator.merge( latest.iterator(), old.iterator() ) ) );
+    }
+
+    // seekFloor应定位到两层中较晚的floor, latest中的UNKNOWN不覆盖old
+    @Test
+    public void seekFloor()
+    {
+        MemTable old = new MemTable();
+        put( old, 0, 0, new TimePointL( 9 ), 0 );
+        put( old, 0, 10, TimePointL.Now, 10 );
+        MemTable latest = new MemTable();
+        put( latest, 0, 3, new TimePointL( 4 ), 99 );
+        put( latest, 0, 15, new TimePointL( 16 ), 99 );
+
+        SearchableIterator merged = TwoLevelMergeIterator.merge( latest.iterator(), old.iterator() );
+        Assert.assertEquals( "0@3=99", floor( merged, 0, 4 ) );
+        Assert.assertEquals( "0@5=0", floor( merged, 0, 7 ) );
+        Assert.assertEquals( "0@10=10", floor( merged, 0, 12 ) );
+        Assert.assertEquals( "0@15=99", floor( merged, 0, 16 ) );
+        Assert.assertEquals( "0@17=10", floor( merged, 0, 18 ) );
+    }
+
+    // latest的floor属于更小的entity时, floor是old中目标entity的项
+    @Test
+    public void seekFloorOtherEntity()
+    {
+        MemTable old = new MemTable();
+        put( old, 5, 0, new TimePointL( 9 ), 50 );
+        MemTable latest = new MemTable();
+        put( latest, 3, 0, new TimePointL( 9 ), 30 );
+
+        Assert.assertEquals( "5@0=50", floor( TwoLevelMergeIterator.merge( latest.iterator(), old.iterator() ), 5, 4 ) );
+        EntryCursor cursor = new TwoLevelMergeCursor( latest.cursor(), old.cursor() );
+        cursor.seekFloor( 1, 5, 4 );
+        Assert.assertTrue( cursor.advance() );
+        Assert.assertEquals( 5, cursor.entityId() );
+        Assert.assertEquals( 0, cursor.startTimeLong() );
+    }
+}
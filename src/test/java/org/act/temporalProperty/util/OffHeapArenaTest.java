@@ -0,0 +1,38 @@
+package org.act.temporalProperty.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class OffHeapArenaTest
+{
+    private static Slice value( int length, int seed )
+    {
+        Slice value = new Slice( length );
+        for ( int i = 0; i < length; i++ ) value.setByte( i, (byte) (seed * 31 + i) );
+        return value;
+    }
+
+    // 大值单独占用chunk之后, 小值仍写入之前的chunk, 地址必须指向那个chunk
+    @Test
+    public void smallValuesAfterLargeValue()
+    {
+        OffHeapArena arena = new OffHeapArena();
+        List<Slice> values = new ArrayList<>();
+        values.add( value( 100, 0 ) );
+        values.add( value( OffHeapArena.CHUNK_SIZE + 10, 1 ) );
+        values.add( value( 200, 2 ) );
+        values.add( value( 300, 3 ) );
+        values.add( value( OffHeapArena.CHUNK_SIZE * 2, 4 ) );
+        values.add( value( 50, 5 ) );
+        List<Integer> addresses = new ArrayList<>();
+        for ( Slice v : values ) addresses.add( arena.allocate( v ) );
+        for ( int i = 0; i < values.size(); i++ )
+        {
+            Assert.assertEquals( "value " + i, values.get( i ), arena.get( addresses.get( i ), values.get( i ).length() ) );
+        }
+        arena.release();
+    }
+}